@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 
@@ -38,7 +39,7 @@ import org.apache.log4j.Logger;
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  */
-public class BufferedFileDataInput
+public class BufferedFileDataInput implements FileDataInput
 {
     private static Logger       logger = Logger.getLogger(BufferedFileDataInput.class);
     // Read parameters.
@@ -54,6 +55,11 @@ public class BufferedFileDataInput
     private long                available;
     private FileChannel         fileChannel;
 
+    // Optional notifier from a writer in the same process and interval for
+    // checking the file when no notification arrives.
+    private WriteNotifier       writeNotifier;
+    private int                 notifierPollMillis = 1000;
+
     /**
      * Creates instance positioned on start of file.
      * 
@@ -77,6 +83,22 @@ public class BufferedFileDataInput
         this(file, 1024);
     }
 
+    /**
+     * Sets a notifier that signals when a writer in this process has added
+     * data to the file. If set, waitAvailable() waits for notifications instead
+     * of polling the file size every 50 milliseconds, and only checks the file
+     * at the given poll interval when no notification arrives.
+     * 
+     * @param writeNotifier Notifier shared with the writer or null to poll
+     * @param pollMillis Maximum time to wait for a notification before
+     *            checking the file size
+     */
+    public void setWriteNotifier(WriteNotifier writeNotifier, int pollMillis)
+    {
+        this.writeNotifier = writeNotifier;
+        this.notifierPollMillis = pollMillis;
+    }
+
     /**
      * Returns the current offset position.
      */
@@ -128,9 +150,12 @@ public class BufferedFileDataInput
             return available;
 
         // Since there is not enough, wait until we see enough data to do a read
-        // or exceed the timeout.
+        // or exceed the timeout. If we have a notifier, take the write count
+        // before checking the file so that we cannot miss a write.
         long timeoutMillis = System.currentTimeMillis() + waitMillis;
         long nextReportMillis = System.currentTimeMillis() + 1000;
+        long writeCount = (writeNotifier == null) ? 0 : writeNotifier
+                .getWriteCount();
         while (available() < requested
                 && System.currentTimeMillis() < timeoutMillis)
         {
@@ -139,8 +164,18 @@ public class BufferedFileDataInput
             if (Thread.interrupted())
                 throw new InterruptedException();
 
-            // Now bide a wee.
-            Thread.sleep(50);
+            // Now bide a wee, either until the writer tells us there are new
+            // data or for a fixed interval if there is no notifier.
+            if (writeNotifier == null)
+                Thread.sleep(50);
+            else
+            {
+                long remainingMillis = timeoutMillis
+                        - System.currentTimeMillis();
+                writeNotifier.waitForWrite(writeCount,
+                        Math.min(remainingMillis, notifierPollMillis));
+                writeCount = writeNotifier.getWriteCount();
+            }
             if (System.currentTimeMillis() > nextReportMillis)
             {
                 if (logger.isDebugEnabled())
@@ -308,6 +343,18 @@ public class BufferedFileDataInput
         available -= len;
     }
 
+    /**
+     * Reads bytes into a new heap buffer, which belongs to the caller.
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readBuffer(int)
+     */
+    public ByteBuffer readBuffer(int len) throws IOException
+    {
+        byte[] bytes = new byte[len];
+        readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
     /** Close and release all resources. */
     public void close()
     {
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 
 import org.apache.log4j.Logger;
@@ -39,17 +40,18 @@ import org.apache.log4j.Logger;
  */
 public class BufferedFileDataOutput
 {
-    private static Logger        logger = Logger
-                                                .getLogger(BufferedFileDataOutput.class);
+    private static Logger             logger = Logger
+                                                     .getLogger(BufferedFileDataOutput.class);
     // Read parameters.
-    private File                 file;
-    private int                  bufferSize;
+    private File                      file;
+    private int                       bufferSize;
 
-    // Variables to control writing.
-    private FileOutputStream     fileOutput;
-    private BufferedOutputStream bufferedOutput;
-    private DataOutputStream     dataOutput;
-    private long                 offset = -1;
+    // Variables to control writing. The file output stream is volatile as
+    // force() may be called from another thread.
+    private volatile FileOutputStream fileOutput;
+    private BufferedOutputStream      bufferedOutput;
+    private DataOutputStream          dataOutput;
+    private long                      offset = -1;
 
     /**
      * Creates instance positioned on end of file and read to write.
@@ -165,7 +167,31 @@ public class BufferedFileDataOutput
     public void fsync() throws IOException
     {
         flush();
-        //fileOutput.getFD().sync();
+        force();
+    }
+
+    /**
+     * Forces data that have already been flushed to the file down to storage.
+     * Unlike other methods this may be called from a thread other than the
+     * writer, which allows the writer to continue while a sync is in progress.
+     * If the file has been closed in the meantime this does nothing.
+     * 
+     * @throws IOException Thrown if the sync fails
+     */
+    public void force() throws IOException
+    {
+        FileOutputStream out = fileOutput;
+        if (out != null)
+        {
+            try
+            {
+                out.getChannel().force(false);
+            }
+            catch (ClosedChannelException e)
+            {
+                // The writer closed the file while we were syncing.
+            }
+        }
     }
 
     /**
@@ -0,0 +1,127 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a ByteBuffer as an input stream. Reads advance
+ * the position of the buffer, so callers that need to keep the buffer position
+ * should supply a duplicate.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class ByteBufferInputStream extends InputStream
+{
+    private final ByteBuffer buffer;
+    private int              mark;
+
+    /**
+     * Creates a stream on the remaining bytes of a buffer.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.mark = buffer.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read()
+     */
+    public int read()
+    {
+        if (buffer.hasRemaining())
+            return buffer.get() & 0xff;
+        else
+            return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(byte[] bytes, int off, int len)
+    {
+        if (len == 0)
+            return 0;
+        else if (!buffer.hasRemaining())
+            return -1;
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(bytes, off, count);
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#skip(long)
+     */
+    public long skip(long n)
+    {
+        int count = (int) Math.min(Math.max(n, 0), buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#available()
+     */
+    public int available()
+    {
+        return buffer.remaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#markSupported()
+     */
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#mark(int)
+     */
+    public synchronized void mark(int readLimit)
+    {
+        mark = buffer.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#reset()
+     */
+    public synchronized void reset()
+    {
+        buffer.position(mark);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Denotes a positioned, data-oriented reader on a file. Implementations may
+ * buffer file contents on the heap or read them from a memory-mapped region.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface FileDataInput
+{
+    /**
+     * Returns the current offset position.
+     */
+    public long getOffset();
+
+    /**
+     * Returns the number of bytes available for immediate read without
+     * blocking.
+     */
+    public long available() throws IOException, InterruptedException;
+
+    /**
+     * Waits for a specified number of bytes to be available for a non-blocking
+     * read.
+     * 
+     * @param requested Number of bytes to read
+     * @param waitMillis Milliseconds to wait before timeout
+     * @return Number of bytes available for non-blocking read
+     */
+    public long waitAvailable(int requested, int waitMillis)
+            throws IOException, InterruptedException;
+
+    /**
+     * Mark stream to read up to limit.
+     * 
+     * @param readLimit Number of bytes that may be read before resetting
+     */
+    public void mark(int readLimit);
+
+    /**
+     * Reset stream back to last mark.
+     */
+    public void reset() throws IOException, InterruptedException;
+
+    /**
+     * Skip requested number of bytes.
+     * 
+     * @return Number of bytes actually skipped
+     */
+    public long skip(long bytes) throws IOException;
+
+    /**
+     * Seek to a specific offset in the file.
+     * 
+     * @param seekBytes Number of bytes from start of file
+     */
+    public void seek(long seekBytes) throws FileNotFoundException,
+            IOException, InterruptedException;
+
+    /** Reads a single byte. */
+    public byte readByte() throws IOException;
+
+    /** Reads a single short. */
+    public short readShort() throws IOException;
+
+    /** Read a single integer. */
+    public int readInt() throws IOException;
+
+    /** Reads a single long. */
+    public long readLong() throws IOException;
+
+    /**
+     * Reads a full byte array completely.
+     */
+    public void readFully(byte[] bytes) throws IOException;
+
+    /**
+     * Reads len bytes into a byte array starting at the given position.
+     */
+    public void readFully(byte[] bytes, int start, int len) throws IOException;
+
+    /**
+     * Reads the requested number of bytes and returns them as a buffer
+     * positioned at 0. Implementations may return a view of their own storage
+     * rather than a copy, in which case the buffer is read-only and valid only
+     * until this reader is closed.
+     * 
+     * @param len Number of bytes to read
+     * @throws IOException Thrown if the bytes cannot be read
+     */
+    public ByteBuffer readBuffer(int len) throws IOException;
+
+    /** Close and release all resources. */
+    public void close();
+}
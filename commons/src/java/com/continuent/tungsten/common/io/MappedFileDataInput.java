@@ -0,0 +1,295 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads an immutable file through a memory mapping obtained from a
+ * {@link MappedFilePool}. Reads do not copy data to an intermediate heap
+ * buffer, and {@link #readBuffer(int)} returns slices of the mapping itself.
+ * The file must not change while it is open, as the reader neither waits for
+ * data nor sees bytes added after the file was mapped.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MappedFileDataInput implements FileDataInput
+{
+    private final File             file;
+    private final MappedFilePool   pool;
+    private MappedFilePool.Mapping mapping;
+    private ByteBuffer             buffer;
+    private long                   markOffset = -1;
+
+    /**
+     * Creates instance positioned on start of file.
+     * 
+     * @param file File from which to read
+     * @param pool Pool that provides the file mapping
+     * @throws IOException Thrown if the file cannot be mapped
+     */
+    public MappedFileDataInput(File file, MappedFilePool pool)
+            throws IOException
+    {
+        this.file = file;
+        this.pool = pool;
+        this.mapping = pool.acquire(file);
+        this.buffer = mapping.buffer.duplicate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#getOffset()
+     */
+    public long getOffset()
+    {
+        if (buffer == null)
+            return -1;
+        else
+            return buffer.position();
+    }
+
+    /**
+     * Returns the number of bytes between the current offset and the end of
+     * the mapping.
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#available()
+     */
+    public long available()
+    {
+        return buffer.remaining();
+    }
+
+    /**
+     * Returns the available bytes immediately, as the file cannot grow.
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#waitAvailable(int,
+     *      int)
+     */
+    public long waitAvailable(int requested, int waitMillis)
+    {
+        return buffer.remaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#mark(int)
+     */
+    public void mark(int readLimit)
+    {
+        markOffset = buffer.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#reset()
+     */
+    public void reset() throws IOException
+    {
+        if (markOffset < 0)
+            throw new IOException("Reset called without mark: file="
+                    + file.getName());
+        buffer.position((int) markOffset);
+        markOffset = -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#skip(long)
+     */
+    public long skip(long bytes)
+    {
+        int skipped = (int) Math.min(Math.max(bytes, 0), buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#seek(long)
+     */
+    public void seek(long seekBytes) throws IOException
+    {
+        if (seekBytes < 0 || seekBytes > buffer.limit())
+            throw new EOFException("Seek beyond end of mapped file: file="
+                    + file.getName() + " offset=" + seekBytes + " length="
+                    + buffer.limit());
+        buffer.position((int) seekBytes);
+        markOffset = -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readByte()
+     */
+    public byte readByte() throws IOException
+    {
+        try
+        {
+            return buffer.get();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw eof(1);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readShort()
+     */
+    public short readShort() throws IOException
+    {
+        try
+        {
+            return buffer.getShort();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw eof(2);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readInt()
+     */
+    public int readInt() throws IOException
+    {
+        try
+        {
+            return buffer.getInt();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw eof(4);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readLong()
+     */
+    public long readLong() throws IOException
+    {
+        try
+        {
+            return buffer.getLong();
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw eof(8);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readFully(byte[])
+     */
+    public void readFully(byte[] bytes) throws IOException
+    {
+        readFully(bytes, 0, bytes.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readFully(byte[],
+     *      int, int)
+     */
+    public void readFully(byte[] bytes, int start, int len) throws IOException
+    {
+        try
+        {
+            buffer.get(bytes, start, len);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw eof(len);
+        }
+    }
+
+    /**
+     * Returns a read-only slice of the mapping without copying. The slice is
+     * valid only until this reader is closed.
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#readBuffer(int)
+     */
+    public ByteBuffer readBuffer(int len) throws IOException
+    {
+        if (len > buffer.remaining())
+            throw eof(len);
+        ByteBuffer slice = buffer.slice();
+        slice.limit(len);
+        buffer.position(buffer.position() + len);
+        return slice;
+    }
+
+    /**
+     * Releases the mapping to the pool.
+     * 
+     * @see com.continuent.tungsten.common.io.FileDataInput#close()
+     */
+    public void close()
+    {
+        if (mapping != null)
+        {
+            buffer = null;
+            pool.release(mapping);
+            mapping = null;
+        }
+    }
+
+    // Generate an exception for a read past the end of the mapping.
+    private EOFException eof(int requested)
+    {
+        return new EOFException("Read beyond end of mapped file: file="
+                + file.getName() + " offset=" + buffer.position()
+                + " requested=" + requested + " available="
+                + buffer.remaining());
+    }
+
+    /**
+     * Print contents of the reader.
+     */
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(this.getClass().getSimpleName());
+        sb.append(" file=").append(file.getName());
+        sb.append(" offset=").append(getOffset());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Shares read-only memory mappings of immutable files among readers. Mappings
+ * are reference counted. When the last reader of a file releases its mapping,
+ * the mapping is kept on an LRU list of idle mappings so that readers that
+ * reopen the file do not map it again. Idle mappings beyond the pool size are
+ * unmapped at once rather than waiting for garbage collection, which prevents
+ * mappings from accumulating when readers traverse many files.
+ * <p>
+ * Buffers obtained from a mapping, including slices, must not be used after
+ * the mapping is released.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MappedFilePool
+{
+    private static Logger                        logger   = Logger.getLogger(MappedFilePool.class);
+
+    // Maximum number of idle mappings to retain.
+    private final int                            maxIdle;
+
+    // Current mappings by file path and idle mappings in LRU order.
+    private final Map<String, Mapping>           mappings = new HashMap<String, Mapping>();
+    private final LinkedHashMap<String, Mapping> idle     = new LinkedHashMap<String, Mapping>(
+                                                                  16, 0.75f,
+                                                                  true);
+
+    // Statistics.
+    private long                                 maps     = 0;
+    private long                                 unmaps   = 0;
+    private long                                 hits     = 0;
+
+    /**
+     * Mapping of a single file shared by readers.
+     */
+    static class Mapping
+    {
+        final String           path;
+        final long             length;
+        final long             lastModified;
+        final MappedByteBuffer buffer;
+        int                    refs  = 0;
+        boolean                stale = false;
+
+        Mapping(String path, long length, long lastModified,
+                MappedByteBuffer buffer)
+        {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Creates a new pool.
+     * 
+     * @param maxIdle Maximum number of mappings to retain when no reader is
+     *            using them
+     */
+    public MappedFilePool(int maxIdle)
+    {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns a mapping of the entire file, mapping the file if it is not
+     * already mapped or has changed since it was mapped. Callers must release
+     * the mapping when done.
+     * 
+     * @throws IOException Thrown if the file cannot be mapped, for example
+     *             because it is too large
+     */
+    synchronized Mapping acquire(File file) throws IOException
+    {
+        String path = file.getAbsolutePath();
+        Mapping mapping = mappings.get(path);
+        if (mapping != null
+                && (mapping.length != file.length() || mapping.lastModified != file
+                        .lastModified()))
+        {
+            retire(mapping);
+            mapping = null;
+        }
+
+        if (mapping == null)
+            mapping = map(file, path);
+        else
+        {
+            idle.remove(path);
+            hits++;
+        }
+        mapping.refs++;
+        return mapping;
+    }
+
+    /**
+     * Releases a mapping obtained from acquire().
+     */
+    synchronized void release(Mapping mapping)
+    {
+        mapping.refs--;
+        if (mapping.refs > 0)
+            return;
+        else if (mapping.stale)
+            unmap(mapping);
+        else
+        {
+            idle.put(mapping.path, mapping);
+            trim(maxIdle);
+        }
+    }
+
+    /**
+     * Drops the mapping of a file that has been modified or deleted. The
+     * mapping is unmapped once no reader uses it.
+     */
+    public synchronized void invalidate(File file)
+    {
+        Mapping mapping = mappings.get(file.getAbsolutePath());
+        if (mapping != null)
+            retire(mapping);
+    }
+
+    /**
+     * Unmaps all idle mappings. Mappings in use are unmapped when released.
+     */
+    public synchronized void clear()
+    {
+        trim(0);
+        for (Mapping mapping : mappings.values())
+            mapping.stale = true;
+        mappings.clear();
+    }
+
+    /** Returns the number of files currently mapped. */
+    public synchronized int getMappedFiles()
+    {
+        return mappings.size();
+    }
+
+    /** Returns the number of idle mappings. */
+    public synchronized int getIdleFiles()
+    {
+        return idle.size();
+    }
+
+    /** Returns the number of times a file was mapped. */
+    public synchronized long getMaps()
+    {
+        return maps;
+    }
+
+    /** Returns the number of mappings explicitly released. */
+    public synchronized long getUnmaps()
+    {
+        return unmaps;
+    }
+
+    /** Returns the number of times an existing mapping was reused. */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    // Map a file.
+    private Mapping map(File file, String path) throws IOException
+    {
+        long lastModified = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("File is too large to map: file="
+                        + file.getName() + " length=" + length);
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, length);
+            Mapping mapping = new Mapping(path, length, lastModified, buffer);
+            mappings.put(path, mapping);
+            maps++;
+            if (logger.isDebugEnabled())
+                logger.debug("Mapped file: file=" + path + " length=" + length);
+            return mapping;
+        }
+        finally
+        {
+            // The mapping remains valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    // Remove a mapping from the pool and unmap it if it is not in use.
+    private void retire(Mapping mapping)
+    {
+        mappings.remove(mapping.path);
+        idle.remove(mapping.path);
+        mapping.stale = true;
+        if (mapping.refs == 0)
+            unmap(mapping);
+    }
+
+    // Unmap idle mappings until no more than the given number remain.
+    private void trim(int size)
+    {
+        Iterator<Mapping> iter = idle.values().iterator();
+        while (idle.size() > size && iter.hasNext())
+        {
+            Mapping mapping = iter.next();
+            iter.remove();
+            mappings.remove(mapping.path);
+            unmap(mapping);
+        }
+    }
+
+    // Release the memory mapping.
+    private void unmap(Mapping mapping)
+    {
+        if (unmap(mapping.buffer))
+            unmaps++;
+        if (logger.isDebugEnabled())
+            logger.debug("Unmapped file: file=" + mapping.path);
+    }
+
+    /**
+     * Releases a mapped buffer immediately. The JVM otherwise releases mappings
+     * only when the buffer is garbage collected. There is no public API for
+     * this, so we try the cleaner used by Java 8 and earlier followed by the
+     * one used by later releases.
+     * 
+     * @return True if the buffer was unmapped, false if we must rely on garbage
+     *         collection
+     */
+    static boolean unmap(ByteBuffer buffer)
+    {
+        try
+        {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+            {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+                return true;
+            }
+        }
+        catch (Exception e)
+        {
+            // Fall through to the newer API.
+        }
+
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        }
+        catch (Exception e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Unable to unmap buffer explicitly: "
+                        + e.getMessage());
+            return false;
+        }
+    }
+}
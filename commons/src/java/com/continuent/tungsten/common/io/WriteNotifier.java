@@ -0,0 +1,76 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+/**
+ * Signals readers in the same process that a writer has made new data visible
+ * in a file. Writers call {@link #notifyWrite()} after flushing. Readers
+ * record the current write count, check whether data are available, and then
+ * wait for the count to change. This avoids sleep-based polling for readers
+ * that share a notifier with the writer.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class WriteNotifier
+{
+    private long writeCount = 0;
+
+    /**
+     * Returns the number of writes signaled so far.
+     */
+    public synchronized long getWriteCount()
+    {
+        return writeCount;
+    }
+
+    /**
+     * Signals that new data have been written and wakes all waiting readers.
+     */
+    public synchronized void notifyWrite()
+    {
+        writeCount++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a write is signaled after the given write count or the
+     * timeout expires.
+     * 
+     * @param lastWriteCount Write count seen by the caller before checking for
+     *            data
+     * @param waitMillis Maximum milliseconds to wait
+     * @return True if a write was signaled, false if we timed out
+     * @throws InterruptedException Thrown if we are interrupted while waiting
+     */
+    public synchronized boolean waitForWrite(long lastWriteCount,
+            long waitMillis) throws InterruptedException
+    {
+        long timeoutMillis = System.currentTimeMillis() + waitMillis;
+        while (writeCount == lastWriteCount)
+        {
+            long remainingMillis = timeoutMillis - System.currentTimeMillis();
+            if (remainingMillis <= 0)
+                return false;
+            wait(remainingMillis);
+        }
+        return true;
+    }
+}
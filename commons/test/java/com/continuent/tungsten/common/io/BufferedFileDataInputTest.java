@@ -403,6 +403,62 @@ public class BufferedFileDataInputTest extends TestCase
         bfdi.close();
     }
 
+    /**
+     * Confirm that a reader with a write notifier wakes up as soon as a write
+     * is signaled rather than waiting for its poll interval, and that it still
+     * sees unsignaled data once the poll interval expires.
+     */
+    public void testInputWaitNotifier() throws Exception
+    {
+        File f = this.initFile("testInputWaitNotifier");
+        FileOutputStream fos = new FileOutputStream(f);
+        final DataOutputStream dos = new DataOutputStream(fos);
+        final WriteNotifier notifier = new WriteNotifier();
+        BufferedFileDataInput bfdi = new BufferedFileDataInput(f);
+
+        // Write and signal from another thread while the reader waits with a
+        // poll interval much longer than the expected wait.
+        bfdi.setWriteNotifier(notifier, 30000);
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                    dos.writeInt(1);
+                    dos.flush();
+                    notifier.notifyWrite();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Write failed", e);
+                }
+            }
+        };
+        long startMillis = System.currentTimeMillis();
+        writer.start();
+        assertEquals("notified data", 4, bfdi.waitAvailable(4, 60000));
+        long elapsed = System.currentTimeMillis() - startMillis;
+        assertTrue("woke on notification: elapsed=" + elapsed, elapsed < 10000);
+        writer.join();
+        bfdi.readInt();
+
+        // Data written without a signal are found after the poll interval.
+        bfdi.setWriteNotifier(notifier, 100);
+        dos.writeInt(2);
+        dos.flush();
+        assertEquals("polled data", 4, bfdi.waitAvailable(4, 60000));
+
+        // Wait times out normally if nothing is written.
+        bfdi.readInt();
+        assertEquals("data exhausted", 0, bfdi.waitAvailable(4, 250));
+
+        // Clean up.
+        dos.close();
+        bfdi.close();
+    }
+
     /**
      * Confirm that if we interrupt waiting for input an InterruptedException is
      * returned. This is important because underlying Java NIO routines may turn
@@ -0,0 +1,158 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.common.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Test memory-mapped reads on files and sharing of mappings through a pool.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class MappedFileDataInputTest extends TestCase
+{
+    /**
+     * Confirm that mapped reads return the same data as buffered reads,
+     * including seek, mark/reset, and slices, and that reads past the end of
+     * the file fail.
+     */
+    public void testMappedRead() throws Exception
+    {
+        File f = initFile("testMappedRead");
+        writeAscendingIntFile(f, 1000);
+        MappedFilePool pool = new MappedFilePool(4);
+        MappedFileDataInput mfdi = new MappedFileDataInput(f, pool);
+
+        assertEquals("Available", 4000, mfdi.available());
+        for (int i = 0; i < 10; i++)
+            assertEquals("Read int", i, mfdi.readInt());
+        assertEquals("Offset", 40, mfdi.getOffset());
+
+        mfdi.mark(100);
+        assertEquals("Read after mark", 10, mfdi.readInt());
+        mfdi.reset();
+        assertEquals("Read after reset", 10, mfdi.readInt());
+
+        mfdi.seek(400);
+        ByteBuffer slice = mfdi.readBuffer(8);
+        assertEquals("Slice position", 0, slice.position());
+        assertEquals("Slice limit", 8, slice.limit());
+        assertEquals("Slice int 1", 100, slice.getInt());
+        assertEquals("Slice int 2", 101, slice.getInt());
+        assertEquals("Offset after slice", 408, mfdi.getOffset());
+        assertEquals("Read after slice", 102, mfdi.readInt());
+
+        mfdi.seek(3996);
+        assertEquals("Last int", 999, mfdi.readInt());
+        try
+        {
+            mfdi.readInt();
+            throw new Exception("Able to read past end of file");
+        }
+        catch (EOFException e)
+        {
+        }
+        mfdi.close();
+        pool.clear();
+    }
+
+    /**
+     * Confirm that readers share mappings, that idle mappings beyond the pool
+     * size are released, and that changed files are mapped again.
+     */
+    public void testMappedFilePool() throws Exception
+    {
+        MappedFilePool pool = new MappedFilePool(2);
+        File[] files = new File[4];
+        for (int i = 0; i < files.length; i++)
+        {
+            files[i] = initFile("testMappedFilePool" + i);
+            writeAscendingIntFile(files[i], 100);
+        }
+
+        // Two readers of the same file share a mapping.
+        MappedFileDataInput r1 = new MappedFileDataInput(files[0], pool);
+        MappedFileDataInput r2 = new MappedFileDataInput(files[0], pool);
+        assertEquals("Maps", 1, pool.getMaps());
+        assertEquals("Hits", 1, pool.getHits());
+        r1.readInt();
+        assertEquals("Readers have separate positions", 0, r2.readInt());
+        r1.close();
+        r2.close();
+        assertEquals("Idle files", 1, pool.getIdleFiles());
+
+        // Reading all files leaves no more than the pool size mapped.
+        for (File f : files)
+        {
+            MappedFileDataInput r = new MappedFileDataInput(f, pool);
+            r.readInt();
+            r.close();
+        }
+        assertEquals("Maps", 4, pool.getMaps());
+        assertEquals("Mapped files", 2, pool.getMappedFiles());
+        assertEquals("Idle files", 2, pool.getIdleFiles());
+        assertEquals("Unmaps", 2, pool.getUnmaps());
+
+        // A file that changes is mapped again.
+        writeAscendingIntFile(files[3], 200);
+        MappedFileDataInput r3 = new MappedFileDataInput(files[3], pool);
+        assertEquals("New file length", 800, r3.available());
+        assertEquals("Maps", 5, pool.getMaps());
+
+        // Clearing releases idle mappings; the open one is released on close.
+        pool.clear();
+        assertEquals("Mapped files", 0, pool.getMappedFiles());
+        assertEquals("Open reader still works", 0, r3.readInt());
+        r3.close();
+        assertEquals("Unmaps", 5, pool.getUnmaps());
+    }
+
+    // Initialize a test file by clearing and return the File instance.
+    private File initFile(String name)
+    {
+        File f = new File(name);
+        if (f.exists())
+            f.delete();
+        return f;
+    }
+
+    // Writes a file filled with ascending int values up to a specified value.
+    // The resulting file is 4 * n bytes long. The last int value is n - 1.
+    private void writeAscendingIntFile(File f, int n) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(f);
+        BufferedOutputStream bos = new BufferedOutputStream(fos);
+        DataOutputStream dos = new DataOutputStream(bos);
+
+        for (int i = 0; i < n; i++)
+            dos.writeInt(i);
+        dos.close();
+    }
+}
@@ -17,6 +17,24 @@ replicator.applier.dbms.parallelization=1
 replicator.applier.dbms.timezone=GMT+0:00
 #replicator.applier.dbms.charset=UTF-8
 
+# If true, load each block in a background thread while the next block is 
+# written to CSV files in a second staging directory.  Blocks still load and
+# update trep_commit_seqno one at a time in order.  Commits return before 
+# the block loads, so stage progress and commit watches may run up to one 
+# block ahead of trep_commit_seqno, which remains the restart position.  Do 
+# not combine with parallel apply that partitions by row dependencies.  If 
+# a background load fails, the replicator goes offline at once and loads 
+# the failed block again after restart.  
+replicator.applier.dbms.pipelinedLoad=false
+
+# If true, reduce row changes within each block to the net change for each
+# primary key before writing CSV files, so that rows updated many times are
+# staged once.  Row changes without a primary key or that change the key are
+# written as usual.  Up to netChangeMaxKeys keys are held in memory; beyond 
+# that, pending changes are written out and compaction starts again.  
+replicator.applier.dbms.netChangeCompaction=false
+replicator.applier.dbms.netChangeMaxKeys=100000
+
 # Location for writing CSV files. 
 replicator.applier.dbms.stageDirectory=/tmp/staging/${service.name}
 
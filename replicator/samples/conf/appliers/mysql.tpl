@@ -5,6 +5,18 @@ replicator.applier.dbms.ignoreSessionVars=autocommit
 replicator.applier.dbms.getColumnMetadataFromDB=true
 replicator.applier.dbms.optimizeRowEvents=@{REPL_SVC_APPLIER_OPTIMIZE_ROW_EVENTS}
 
+# If true, apply row changes using JDBC batches of up to maxBatchRows rows. 
+# Batches are checked for 0-row updates like single statements. Adding 
+# rewriteBatchedStatements=true to the JDBC URL lets the driver send batched 
+# inserts as multi-row statements. 
+replicator.applier.dbms.batchRowChanges=false
+replicator.applier.dbms.maxBatchRows=1000
+
+# Number of row change prepared statements kept open across transactions. 
+# Statements are closed when DDL alters, renames, or drops their table. 
+# Set to 0 to prepare statements separately for each row change. 
+replicator.applier.dbms.preparedStatementCacheSize=100
+
 # If true, similate time-zone unaware operation to process events from older
 # Tungsten masters that do not extract events in a time zone-aware manner. 
 # This option should only be enabled for upgrades if there is a chance of 
@@ -22,6 +22,14 @@ replicator.extractor.dbms.usingBytesForString=@{REPL_MYSQL_USE_BYTES_FOR_STRING}
 # will occur.  1M bytes is a good size for most installations.
 replicator.extractor.dbms.transaction_frag_size=1000000
 
+# Number of threads that decode row images.  0 means row images are decoded
+# by the thread that reads the binlog.  Decoding runs in parallel only 
+# within a transaction, or a fragment of one, since every row image is 
+# decoded before the event is returned.  Values of 2-4 can help extraction 
+# keep up with large row-based transactions on multi-core hosts but do 
+# little for many small ones.  Row changes are still emitted in binlog order.
+replicator.extractor.dbms.rowDecodeThreads=0
+
 # When using relay logs we download from the master into binlog_dir.  This
 # is used for off-board replication.
 replicator.extractor.dbms.useRelayLogs=@{EXTRACTOR.REPL_DISABLE_RELAY_LOGS}
@@ -44,6 +52,12 @@ replicator.extractor.dbms.relayLogReadTimeout=30
 # them automatically.
 replicator.extractor.dbms.relayLogRetention=10
 
+# The relay log buffer size is the maximum number of bytes of binlog events
+# the relay client hands to the extractor in memory, so that the extractor
+# does not read them back from the relay log.  Relay logs are still written
+# for restart.  0 turns off the buffer.
+replicator.extractor.dbms.relayLogBufferSize=0
+
 # The serverId is the ID used when logging into MySQL to download binlog 
 # data.  MySQL requires all clients to use a unique value.  If multiple
 # replicators or MySQL slaves read from the same master, you must ensure
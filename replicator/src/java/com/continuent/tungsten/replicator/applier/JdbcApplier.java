@@ -23,9 +23,11 @@ package com.continuent.tungsten.replicator.applier;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.sql.Types;
@@ -49,10 +51,13 @@ import com.continuent.tungsten.replicator.consistency.ConsistencyTable;
 import com.continuent.tungsten.replicator.database.Column;
 import com.continuent.tungsten.replicator.database.Database;
 import com.continuent.tungsten.replicator.database.MySQLOperationMatcher;
+import com.continuent.tungsten.replicator.database.PreparedStatementCache;
 import com.continuent.tungsten.replicator.database.SqlOperation;
 import com.continuent.tungsten.replicator.database.SqlOperationMatcher;
 import com.continuent.tungsten.replicator.database.Table;
 import com.continuent.tungsten.replicator.database.TableMetadataCache;
+import com.continuent.tungsten.replicator.database.TableMetadataRegistry;
+import com.continuent.tungsten.replicator.database.TableMetadataService;
 import com.continuent.tungsten.replicator.datasource.CommitSeqno;
 import com.continuent.tungsten.replicator.datasource.CommitSeqnoAccessor;
 import com.continuent.tungsten.replicator.datasource.UniversalDataSource;
@@ -124,6 +129,9 @@ public class JdbcApplier implements RawApplier
 
     private TableMetadataCache        tableMetadataCache;
 
+    // Metadata shared with other components, which we invalidate on DDL.
+    private TableMetadataRegistry     sharedTableMetadata;
+
     private boolean                   transactionStarted         = false;
 
     private ReplDBMSHeader            lastProcessedEvent         = null;
@@ -148,6 +156,32 @@ public class JdbcApplier implements RawApplier
     private String                    setTimestampQuery          = "";
     private boolean                   applyTS                    = false;
 
+    // Indicates whether row changes should be applied using JDBC batches and
+    // the maximum number of rows per batch.
+    protected boolean                 batchRowChanges            = false;
+    protected int                     maxBatchRows               = 1000;
+
+    // Pending row batch and flag set if the driver does not return update
+    // counts for batches, in which case UPDATE and DELETE are not batched.
+    private RowBatch                  rowBatch                   = null;
+    private boolean                   batchCountsUnknown         = false;
+
+    // Prepared statements for row changes are kept across events up to this
+    // many statements. 0 disables caching.
+    protected int                     preparedStatementCacheSize = 100;
+    private PreparedStatementCache    statementCache;
+
+    // Rows added to a single JDBC batch, with the row changes they came from
+    // so that update counts can be checked and errors reported.
+    private static class RowBatch
+    {
+        PreparedStatement        statement;
+        StringBuffer             sql;
+        RowChangeData.ActionType action;
+        List<OneRowChange>       changes = new ArrayList<OneRowChange>();
+        List<Integer>            rows    = new ArrayList<Integer>();
+    }
+
     /**
      * Sets the optimizeRowEvents value.
      * 
@@ -158,6 +192,46 @@ public class JdbcApplier implements RawApplier
         this.optimizeRowEvents = optimizeRowEvents;
     }
 
+    /**
+     * If set to true, row changes are applied using JDBC batch execution.
+     * Consecutive rows that use the same SQL statement, including rows from
+     * consecutive row changes on the same table, are sent in a single batch.
+     */
+    public void setBatchRowChanges(boolean batchRowChanges)
+    {
+        this.batchRowChanges = batchRowChanges;
+    }
+
+    /**
+     * Sets the maximum number of rows in a single JDBC batch.
+     */
+    public void setMaxBatchRows(int maxBatchRows)
+    {
+        this.maxBatchRows = maxBatchRows;
+    }
+
+    /**
+     * Sets the number of row change prepared statements to keep open across
+     * events. Statements are released on DDL that affects their table. A
+     * value of 0 disables the cache.
+     */
+    public void setPreparedStatementCacheSize(int preparedStatementCacheSize)
+    {
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+    }
+
+    /** Returns the number of row statements found in the statement cache. */
+    public long getPreparedStatementCacheHits()
+    {
+        return (statementCache == null) ? 0 : statementCache.getHits();
+    }
+
+    /** Returns the number of row statements that had to be prepared. */
+    public long getPreparedStatementCacheMisses()
+    {
+        return (statementCache == null) ? 0 : statementCache.getMisses();
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -966,6 +1040,16 @@ public class JdbcApplier implements RawApplier
     protected void applyOneRowChangePrepared(OneRowChange oneRowChange)
             throws ReplicatorException
     {
+        // Use a batch if enabled and we can still check update counts.
+        if (batchRowChanges
+                && (oneRowChange.getAction() == RowChangeData.ActionType.INSERT || !batchCountsUnknown))
+        {
+            applyOneRowChangeBatched(oneRowChange);
+            return;
+        }
+        else
+            flushRowBatch();
+
         PreparedStatement prepStatement = null;
 
         getColumnInfomation(oneRowChange);
@@ -1008,7 +1092,10 @@ public class JdbcApplier implements RawApplier
                             keyValuesOfThisRow, colValuesOfThisRow);
 
                     runtime.getMonitor().incrementEvents(columnValues.size());
-                    prepStatement = conn.prepareStatement(stmt.toString());
+                    closeRowStatement(prepStatement);
+                    prepStatement = prepareRowStatement(
+                            oneRowChange.getSchemaName(),
+                            oneRowChange.getTableName(), stmt.toString());
                 }
 
                 int bindLoc = 1; /* Start binding at index 1 */
@@ -1068,6 +1155,7 @@ public class JdbcApplier implements RawApplier
         }
         catch (SQLException e)
         {
+            invalidateStatementCache();
             ApplierException applierException = new ApplierException(e);
             applierException.setExtraData(logFailedRowChangeSQL(stmt,
                     oneRowChange));
@@ -1075,15 +1163,399 @@ public class JdbcApplier implements RawApplier
         }
         finally
         {
-            if (prepStatement != null)
+            closeRowStatement(prepStatement);
+        }
+    }
+
+    /**
+     * Returns a prepared statement for a row change on the given table, taking
+     * it from the statement cache if possible. Statements must be returned
+     * using closeRowStatement().
+     */
+    protected PreparedStatement prepareRowStatement(String schema,
+            String table, String sql) throws SQLException
+    {
+        if (statementCache == null)
+            return conn.prepareStatement(sql);
+
+        String key = PreparedStatementCache.generateKey(schema, table, sql);
+        PreparedStatement ps = statementCache.retrieve(key);
+        if (ps == null)
+        {
+            ps = conn.prepareStatement(sql);
+            statementCache.store(key, ps, sql);
+        }
+        else
+            ps.clearParameters();
+        return ps;
+    }
+
+    /**
+     * Releases a statement from prepareRowStatement(). Cached statements stay
+     * open for reuse.
+     */
+    protected void closeRowStatement(PreparedStatement ps)
+    {
+        if (ps == null || statementCache != null)
+            return;
+        try
+        {
+            ps.close();
+        }
+        catch (SQLException ignore)
+        {
+        }
+    }
+
+    // Close cached statements after a failure, as they may not be usable.
+    private void invalidateStatementCache()
+    {
+        if (statementCache != null)
+            statementCache.invalidateAll();
+    }
+
+    /**
+     * Adds the rows of a row change to the pending JDBC batch. The batch is
+     * executed when the SQL statement changes, when it reaches maxBatchRows,
+     * or when flushRowBatch() is called.
+     */
+    protected void applyOneRowChangeBatched(OneRowChange oneRowChange)
+            throws ReplicatorException
+    {
+        getColumnInfomation(oneRowChange);
+
+        ArrayList<OneRowChange.ColumnSpec> key = oneRowChange.getKeySpec();
+        ArrayList<OneRowChange.ColumnSpec> columns = oneRowChange
+                .getColumnSpec();
+        ArrayList<ArrayList<OneRowChange.ColumnVal>> keyValues = oneRowChange
+                .getKeyValues();
+        ArrayList<ArrayList<OneRowChange.ColumnVal>> columnValues = oneRowChange
+                .getColumnValues();
+        StringBuffer stmt = null;
+
+        try
+        {
+            for (int row = 0; row < columnValues.size()
+                    || row < keyValues.size(); row++)
+            {
+                // Generate SQL for the first row, after a full batch has been
+                // sent, or if the pattern of null values changes.
+                if (row == 0
+                        || rowBatch == null
+                        || needNewSQLStatement(row, keyValues, key,
+                                columnValues, columns))
+                {
+                    ArrayList<OneRowChange.ColumnVal> keyValuesOfThisRow = null;
+                    if (keyValues.size() > 0)
+                        keyValuesOfThisRow = keyValues.get(row);
+                    ArrayList<OneRowChange.ColumnVal> colValuesOfThisRow = null;
+                    if (columnValues.size() > 0)
+                        colValuesOfThisRow = columnValues.get(row);
+
+                    stmt = constructStatement(oneRowChange.getAction(),
+                            oneRowChange.getSchemaName(),
+                            oneRowChange.getTableName(), columns, key,
+                            keyValuesOfThisRow, colValuesOfThisRow);
+                    runtime.getMonitor().incrementEvents(columnValues.size());
+
+                    // Start a new batch unless the pending one uses the same
+                    // statement.
+                    if (rowBatch == null
+                            || !rowBatch.sql.toString().equals(stmt.toString()))
+                    {
+                        flushRowBatch();
+                        rowBatch = new RowBatch();
+                        rowBatch.sql = stmt;
+                        rowBatch.action = oneRowChange.getAction();
+                        rowBatch.statement = prepareRowStatement(
+                                oneRowChange.getSchemaName(),
+                                oneRowChange.getTableName(), stmt.toString());
+                    }
+                }
+
+                bindRow(rowBatch.statement, oneRowChange, row);
+                rowBatch.statement.addBatch();
+                rowBatch.changes.add(oneRowChange);
+                rowBatch.rows.add(row);
+
+                if (rowBatch.rows.size() >= maxBatchRows)
+                    flushRowBatch();
+            }
+        }
+        catch (SQLException e)
+        {
+            discardRowBatch();
+            invalidateStatementCache();
+            ApplierException applierException = new ApplierException(e);
+            applierException.setExtraData(logFailedRowChangeSQL(stmt,
+                    oneRowChange));
+            throw applierException;
+        }
+    }
+
+    /**
+     * Executes the pending JDBC batch, if any, and checks the update count of
+     * each row according to the policy for 0-row updates. UPDATE and DELETE
+     * batches that need counts run inside a savepoint. If the driver does not
+     * return a count for every row, the batch is rolled back to the savepoint
+     * and its rows are applied one at a time, and UPDATE and DELETE are not
+     * batched from then on.
+     */
+    protected void flushRowBatch() throws ReplicatorException
+    {
+        if (rowBatch == null)
+            return;
+
+        RowBatch batch = rowBatch;
+        rowBatch = null;
+        boolean checkCounts = batch.action != RowChangeData.ActionType.INSERT
+                && runtime.getApplierFailurePolicyOn0RowUpdates() != FailurePolicy.IGNORE;
+        try
+        {
+            Savepoint savepoint = null;
+            if (checkCounts)
+            {
+                try
+                {
+                    savepoint = conn.getConnection().setSavepoint();
+                }
+                catch (SQLException e)
+                {
+                    logger.warn("Unable to set savepoint to check update counts of batched statements; UPDATE and DELETE statements will no longer be batched: "
+                            + e.getMessage());
+                    batchCountsUnknown = true;
+                    applyRowBatchSingly(batch);
+                    return;
+                }
+            }
+
+            int[] counts;
+            try
+            {
+                counts = batch.statement.executeBatch();
+            }
+            catch (SQLWarning e)
+            {
+                String msg = "While applying SQL event:\n"
+                        + batch.sql.toString() + "\nWarning: "
+                        + e.getMessage();
+                logger.warn(msg);
+                return;
+            }
+
+            if (checkCounts)
+            {
+                // Inserts always change a row if they succeed. For other
+                // statements, fall back to single rows if the driver does
+                // not tell us how many rows each one changed.
+                if (hasUnknownCounts(counts, batch.rows.size()))
+                {
+                    conn.getConnection().rollback(savepoint);
+                    logger.warn("JDBC driver does not return update counts for batches; UPDATE and DELETE statements will no longer be batched");
+                    batchCountsUnknown = true;
+                    applyRowBatchSingly(batch);
+                    return;
+                }
+                releaseSavepoint(savepoint);
+            }
+
+            for (int i = 0; i < counts.length; i++)
+            {
+                checkRowUpdateCount(counts[i], batch.sql, batch.changes.get(i),
+                        batch.rows.get(i));
+            }
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Applied batch (rows " + counts.length + "): "
+                        + batch.sql.toString());
+            }
+        }
+        catch (BatchUpdateException e)
+        {
+            invalidateStatementCache();
+            ApplierException applierException = new ApplierException(e);
+            int failed = findFailedRow(e.getUpdateCounts(), batch.rows.size());
+            if (failed >= 0)
+                applierException.setExtraData(logFailedRowChangeSQL(batch.sql,
+                        batch.changes.get(failed), batch.rows.get(failed)));
+            else
+                applierException.setExtraData(logFailedRowChangeSQL(batch.sql,
+                        batch.changes.get(0)));
+            throw applierException;
+        }
+        catch (SQLException e)
+        {
+            invalidateStatementCache();
+            ApplierException applierException = new ApplierException(e);
+            applierException.setExtraData(logFailedRowChangeSQL(batch.sql,
+                    batch.changes.get(0)));
+            throw applierException;
+        }
+        finally
+        {
+            closeRowBatch(batch);
+        }
+    }
+
+    // Apply the rows of a batch that has not been executed, or that has been
+    // rolled back, one at a time so that each update count can be checked.
+    private void applyRowBatchSingly(RowBatch batch)
+            throws ReplicatorException
+    {
+        int i = 0;
+        try
+        {
+            batch.statement.clearBatch();
+            for (i = 0; i < batch.rows.size(); i++)
             {
+                batch.statement.clearParameters();
+                bindRow(batch.statement, batch.changes.get(i),
+                        batch.rows.get(i));
+                int count;
                 try
                 {
-                    prepStatement.close();
+                    count = batch.statement.executeUpdate();
                 }
-                catch (SQLException ignore)
+                catch (SQLWarning e)
                 {
+                    String msg = "While applying SQL event:\n"
+                            + batch.sql.toString() + "\nWarning: "
+                            + e.getMessage();
+                    logger.warn(msg);
+                    continue;
                 }
+                checkRowUpdateCount(count, batch.sql, batch.changes.get(i),
+                        batch.rows.get(i));
+            }
+        }
+        catch (SQLException e)
+        {
+            invalidateStatementCache();
+            ApplierException applierException = new ApplierException(e);
+            int failed = Math.min(i, batch.rows.size() - 1);
+            applierException.setExtraData(logFailedRowChangeSQL(batch.sql,
+                    batch.changes.get(failed), batch.rows.get(failed)));
+            throw applierException;
+        }
+    }
+
+    // Bind the column and key values of one row of a row change.
+    private void bindRow(PreparedStatement prepStatement,
+            OneRowChange oneRowChange, int row) throws SQLException
+    {
+        int bindLoc = 1; /* Start binding at index 1 */
+        if (oneRowChange.getColumnValues().size() > 0)
+        {
+            bindLoc = bindColumnValues(prepStatement, oneRowChange
+                    .getColumnValues().get(row), bindLoc,
+                    oneRowChange.getColumnSpec(), false);
+        }
+        if (oneRowChange.getAction() != RowChangeData.ActionType.INSERT
+                && oneRowChange.getKeyValues().size() > 0)
+        {
+            bindLoc = bindColumnValues(prepStatement, oneRowChange
+                    .getKeyValues().get(row), bindLoc,
+                    oneRowChange.getKeySpec(), true);
+        }
+    }
+
+    // Check the update count of a row according to the policy for 0-row
+    // updates.
+    private void checkRowUpdateCount(int count, StringBuffer sql,
+            OneRowChange oneRowChange, int row) throws ReplicatorException
+    {
+        if (count != 0)
+            return;
+        if (runtime.getApplierFailurePolicyOn0RowUpdates() == FailurePolicy.WARN)
+            logger.warn("UPDATE or DELETE statement did not process any row"
+                    + logFailedRowChangeSQL(sql, oneRowChange, row));
+        else if (runtime.getApplierFailurePolicyOn0RowUpdates() == FailurePolicy.STOP)
+        {
+            ReplicatorException replicatorException = new ReplicatorException(
+                    "UPDATE or DELETE statement did not process any row");
+            replicatorException.setExtraData(logFailedRowChangeSQL(sql,
+                    oneRowChange, row));
+            throw replicatorException;
+        }
+        // else IGNORE
+    }
+
+    // Returns true if the driver did not return a count for every row.
+    private static boolean hasUnknownCounts(int[] counts, int rows)
+    {
+        if (counts == null || counts.length != rows)
+            return true;
+        for (int count : counts)
+        {
+            if (count == Statement.SUCCESS_NO_INFO)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the row that failed in a batch, or -1 if it cannot
+     * be determined. Drivers that stop at the first failure return counts for
+     * the rows that succeeded, so the next row is the one that failed. Drivers
+     * that continue mark failed rows with EXECUTE_FAILED.
+     * 
+     * @param counts Update counts from a BatchUpdateException
+     * @param rows Number of rows in the batch
+     */
+    protected static int findFailedRow(int[] counts, int rows)
+    {
+        if (counts == null)
+            return -1;
+        else if (counts.length < rows)
+            return counts.length;
+        for (int i = 0; i < counts.length && i < rows; i++)
+        {
+            if (counts[i] == Statement.EXECUTE_FAILED)
+                return i;
+        }
+        return -1;
+    }
+
+    // Release a savepoint. Some drivers do not support this, in which case
+    // the savepoint is released on commit.
+    private void releaseSavepoint(Savepoint savepoint)
+    {
+        try
+        {
+            conn.getConnection().releaseSavepoint(savepoint);
+        }
+        catch (SQLException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Unable to release savepoint: " + e.getMessage());
+        }
+    }
+
+    // Throw away the pending batch, e.g., after a failure.
+    private void discardRowBatch()
+    {
+        if (rowBatch != null)
+        {
+            closeRowBatch(rowBatch);
+            rowBatch = null;
+        }
+    }
+
+    // Close the statement of a batch or clear it if it is cached.
+    private void closeRowBatch(RowBatch batch)
+    {
+        if (statementCache == null)
+            closeRowStatement(batch.statement);
+        else
+        {
+            try
+            {
+                batch.statement.clearBatch();
+            }
+            catch (SQLException e)
+            {
+                invalidateStatementCache();
             }
         }
     }
@@ -1268,9 +1740,17 @@ public class JdbcApplier implements RawApplier
             }
         }
 
-        for (OneRowChange row : data.getRowChanges())
+        try
         {
-            applyOneRowChangePrepared(row);
+            for (OneRowChange row : data.getRowChanges())
+            {
+                applyOneRowChangePrepared(row);
+            }
+            flushRowBatch();
+        }
+        finally
+        {
+            discardRowBatch();
         }
     }
 
@@ -1398,6 +1878,12 @@ public class JdbcApplier implements RawApplier
 
                         int invalidated = tableMetadataCache.invalidate(
                                 sqlOperation, sdata.getDefaultSchema());
+                        if (sharedTableMetadata != null)
+                            sharedTableMetadata.invalidate(sqlOperation,
+                                    sdata.getDefaultSchema());
+                        if (statementCache != null)
+                            invalidated += statementCache.invalidate(
+                                    sqlOperation, sdata.getDefaultSchema());
                         if (invalidated > 0)
                         {
                             if (logger.isDebugEnabled())
@@ -1827,7 +2313,16 @@ public class JdbcApplier implements RawApplier
                 conn.setSessionVariable("TREPSLAVE", "YES");
             }
 
+            // Look up metadata on our own connection, which sees DDL we
+            // have applied in the current transaction. Other components
+            // that share metadata for this data source learn of DDL from
+            // us through the shared registry, if there is one.
             tableMetadataCache = new TableMetadataCache(5000);
+            sharedTableMetadata = TableMetadataService.findRegistry(context,
+                    dataSource);
+            if (preparedStatementCacheSize > 0)
+                statementCache = new PreparedStatementCache(
+                        preparedStatementCacheSize);
 
             // Set up heartbeat table.
             heartbeatTable = new HeartbeatTable(
@@ -1881,6 +2376,14 @@ public class JdbcApplier implements RawApplier
         currentOptions = null;
 
         statement = null;
+        if (statementCache != null)
+        {
+            logger.info("Prepared statement cache: hits="
+                    + statementCache.getHits() + " misses="
+                    + statementCache.getMisses());
+            statementCache.invalidateAll();
+            statementCache = null;
+        }
         if (conn != null)
         {
             conn.close();
@@ -1892,6 +2395,7 @@ public class JdbcApplier implements RawApplier
             tableMetadataCache.invalidateAll();
             tableMetadataCache = null;
         }
+        sharedTableMetadata = null;
     }
 
     protected void applyVariables(Long timestamp, List<ReplOption> options)
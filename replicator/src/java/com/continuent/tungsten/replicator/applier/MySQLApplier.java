@@ -345,6 +345,7 @@ public class MySQLApplier extends JdbcApplier
             {
                 // optimize inserts
                 getColumnInfomation(oneRowChange);
+                flushRowBatch();
 
                 executePreparedStatement(oneRowChange,
                         prepareOptimizedInsertStatement(oneRowChange),
@@ -378,6 +379,7 @@ public class MySQLApplier extends JdbcApplier
                 {
                     String keyName = t.getPrimaryKey().getColumns().get(0)
                             .getName();
+                    flushRowBatch();
 
                     executePreparedStatement(
                             oneRowChange,
@@ -0,0 +1,290 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.applier.batch;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.continuent.tungsten.replicator.database.Table;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnSpec;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnVal;
+import com.continuent.tungsten.replicator.dbms.RowChangeData.ActionType;
+
+/**
+ * Reduces row changes within a batch to the net change for each primary key.
+ * Each key keeps the action that first touched it, which tells whether a row
+ * existed before the batch, and the final row image, if any. Keys are kept in
+ * the order in which they first appear for each table.
+ * <p>
+ * Row changes can only be compacted if they have a primary key that is
+ * smaller than the full row and, for updates, if the key does not change. It
+ * is up to the caller to write out pending changes for a table before writing
+ * row changes that cannot be compacted. The compactor is full when it holds
+ * the maximum number of keys, at which point the caller should write out all
+ * pending changes.
+ * <p>
+ * This class is not synchronized as it is used by a single applier thread.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class NetChangeCompactor
+{
+    /**
+     * Net change for a single key.
+     */
+    public class NetChange
+    {
+        // Table and first action on this key within the batch.
+        public final Table                tableMetadata;
+        public final ActionType           firstAction;
+
+        // Key of the row before the batch along with the header values of
+        // the first change. Used to delete the row if it already existed.
+        public final List<ColumnSpec>     keySpecs;
+        public final ArrayList<ColumnVal> keyValues;
+        public final long                 firstSeqno;
+        public final Timestamp            firstCommitTimestamp;
+        public final String               firstService;
+
+        // Final row image and the header values of the last change. The
+        // row image is null if the row was deleted.
+        public List<ColumnSpec>           colSpecs;
+        public ArrayList<ColumnVal>       colValues;
+        public long                       lastSeqno;
+        public Timestamp                  lastCommitTimestamp;
+        public String                     lastService;
+
+        NetChange(Table tableMetadata, ActionType firstAction,
+                List<ColumnSpec> keySpecs, ArrayList<ColumnVal> keyValues,
+                long seqno, Timestamp commitTimestamp, String service)
+        {
+            this.tableMetadata = tableMetadata;
+            this.firstAction = firstAction;
+            this.keySpecs = keySpecs;
+            this.keyValues = keyValues;
+            this.firstSeqno = seqno;
+            this.firstCommitTimestamp = commitTimestamp;
+            this.firstService = service;
+        }
+
+        /** Returns true if the row existed before the batch. */
+        public boolean existedBefore()
+        {
+            return firstAction != ActionType.INSERT;
+        }
+
+        /** Returns true if the row exists after the batch. */
+        public boolean existsAfter()
+        {
+            return colValues != null;
+        }
+    }
+
+    private final int                                           maxKeys;
+
+    // Pending changes by table name and then key.
+    private Map<String, LinkedHashMap<List<Object>, NetChange>> tables = new LinkedHashMap<String, LinkedHashMap<List<Object>, NetChange>>();
+    private int                                                 keyCount;
+
+    // Counters of row changes received and compacted away.
+    private long                                                rowsIn;
+    private long                                                rowsOut;
+
+    /**
+     * Creates a new compactor.
+     * 
+     * @param maxKeys Maximum number of keys held before the compactor is full
+     */
+    public NetChangeCompactor(int maxKeys)
+    {
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    /**
+     * Adds row changes for a single table and action if they can be compacted.
+     * Either all rows are added or none are.
+     * 
+     * @param tableMetadata Table to which the changes apply
+     * @param action Row change action
+     * @param seqno Seqno of the transaction
+     * @param commitTimestamp Commit time of the transaction
+     * @param service Service of the transaction
+     * @param keySpecs Key column specifications
+     * @param keyValues Key values for updates and deletes, otherwise null
+     * @param colSpecs Column specifications for inserts and updates
+     * @param colValues Row images for inserts and updates, otherwise null
+     * @return True if the changes were added, false if they cannot be compacted
+     */
+    public boolean add(Table tableMetadata, ActionType action, long seqno,
+            Timestamp commitTimestamp, String service,
+            List<ColumnSpec> keySpecs,
+            ArrayList<ArrayList<ColumnVal>> keyValues,
+            List<ColumnSpec> colSpecs, ArrayList<ArrayList<ColumnVal>> colValues)
+    {
+        // Ensure we have a primary key rather than a full row match.
+        if (keySpecs == null || keySpecs.size() == 0
+                || keySpecs.size() >= tableMetadata.getAllColumns().size())
+            return false;
+
+        // Compute the key of each row, which is the old key for updates and
+        // deletes. Updates are compacted only if the key does not change,
+        // which the caller must check beforehand.
+        int rows = (action == ActionType.INSERT)
+                ? colValues.size()
+                : keyValues.size();
+        List<List<Object>> keys = new ArrayList<List<Object>>(rows);
+        for (int row = 0; row < rows; row++)
+        {
+            List<Object> key;
+            if (action == ActionType.INSERT)
+                key = extractKey(keySpecs, colSpecs, colValues.get(row));
+            else
+                key = extractKey(keySpecs, keySpecs, keyValues.get(row));
+            if (key == null)
+                return false;
+            keys.add(key);
+        }
+
+        // Merge each row into the net change for its key.
+        String tableName = tableMetadata.fullyQualifiedName();
+        LinkedHashMap<List<Object>, NetChange> changes = tables.get(tableName);
+        if (changes == null)
+        {
+            changes = new LinkedHashMap<List<Object>, NetChange>();
+            tables.put(tableName, changes);
+        }
+        for (int row = 0; row < rows; row++)
+        {
+            NetChange change = changes.get(keys.get(row));
+            if (change == null)
+            {
+                ArrayList<ColumnVal> oldKey = (action == ActionType.INSERT)
+                        ? null
+                        : keyValues.get(row);
+                change = new NetChange(tableMetadata, action, keySpecs,
+                        oldKey, seqno, commitTimestamp, service);
+                changes.put(keys.get(row), change);
+                keyCount++;
+            }
+            if (action == ActionType.DELETE)
+            {
+                change.colSpecs = null;
+                change.colValues = null;
+            }
+            else
+            {
+                change.colSpecs = colSpecs;
+                change.colValues = colValues.get(row);
+            }
+            change.lastSeqno = seqno;
+            change.lastCommitTimestamp = commitTimestamp;
+            change.lastService = service;
+        }
+        rowsIn += rows;
+        return true;
+    }
+
+    /**
+     * Returns true if the compactor holds the maximum number of keys.
+     */
+    public boolean isFull()
+    {
+        return keyCount >= maxKeys;
+    }
+
+    /**
+     * Removes and returns pending changes for a single table in the order
+     * keys first appeared.
+     */
+    public Collection<NetChange> remove(Table tableMetadata)
+    {
+        LinkedHashMap<List<Object>, NetChange> changes = tables
+                .remove(tableMetadata.fullyQualifiedName());
+        if (changes == null)
+            return new ArrayList<NetChange>();
+        keyCount -= changes.size();
+        rowsOut += changes.size();
+        return changes.values();
+    }
+
+    /**
+     * Removes and returns all pending changes, grouped by table.
+     */
+    public List<NetChange> removeAll()
+    {
+        List<NetChange> all = new ArrayList<NetChange>(keyCount);
+        for (LinkedHashMap<List<Object>, NetChange> changes : tables.values())
+            all.addAll(changes.values());
+        tables.clear();
+        rowsOut += keyCount;
+        keyCount = 0;
+        return all;
+    }
+
+    /** Returns the number of keys currently held. */
+    public int getKeyCount()
+    {
+        return keyCount;
+    }
+
+    /** Returns the number of row changes added. */
+    public long getRowsIn()
+    {
+        return rowsIn;
+    }
+
+    /** Returns the number of net changes removed for writing. */
+    public long getRowsOut()
+    {
+        return rowsOut;
+    }
+
+    // Extracts key values from a row by matching the index of each key column
+    // to a column in the row. Binary values are wrapped so that keys compare
+    // by content. Returns null if a key column is missing.
+    private List<Object> extractKey(List<ColumnSpec> keySpecs,
+            List<ColumnSpec> rowSpecs, ArrayList<ColumnVal> row)
+    {
+        Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+        for (int i = 0; i < rowSpecs.size(); i++)
+            positions.put(rowSpecs.get(i).getIndex(), i);
+
+        List<Object> key = new ArrayList<Object>(keySpecs.size());
+        for (ColumnSpec keySpec : keySpecs)
+        {
+            Integer position = positions.get(keySpec.getIndex());
+            if (position == null || position >= row.size())
+                return null;
+            Object value = row.get(position).getValue();
+            if (value instanceof byte[])
+                value = ByteBuffer.wrap((byte[]) value);
+            key.add(value);
+        }
+        return key;
+    }
+}
@@ -27,19 +27,27 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
+import com.continuent.tungsten.common.concurrent.SimpleJobService;
 import com.continuent.tungsten.common.csv.CsvException;
 import com.continuent.tungsten.common.csv.CsvWriter;
+import com.continuent.tungsten.fsm.event.EventDispatcher;
+import com.continuent.tungsten.replicator.ErrorNotification;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.applier.RawApplier;
+import com.continuent.tungsten.replicator.applier.batch.NetChangeCompactor.NetChange;
 import com.continuent.tungsten.replicator.consistency.ConsistencyException;
 import com.continuent.tungsten.replicator.consistency.ConsistencyTable;
 import com.continuent.tungsten.replicator.csv.CsvDataFormat;
@@ -147,12 +155,18 @@ public class SimpleBatchApplier implements RawApplier
     protected int                       parallelization     = 1;
     protected boolean                   useUpdateOpcode     = false;
     protected boolean                   distinguishUpdates  = false;
+    protected boolean                   pipelinedLoad       = false;
+    protected boolean                   netChangeCompaction = false;
+    protected int                       netChangeMaxKeys    = 100000;
 
     // Replication context
     PluginContext                       context;
 
-    // Load file directory for this task.
+    // Load file directory for this task. Pipelined loading alternates
+    // between two directories, so that one block can load while the next
+    // is written.
     private File                        stageDir;
+    private File[]                      stageDirs;
 
     // Character set for writing CSV files.
     private Charset                     outputCharset;
@@ -160,6 +174,9 @@ public class SimpleBatchApplier implements RawApplier
     // Open CSV file map for current transaction.
     private Map<String, CsvFileSet>     openCsvSets         = new TreeMap<String, CsvFileSet>();
 
+    // Net changes of rows not yet written to CSV, if compaction is enabled.
+    private NetChangeCompactor          netChanges;
+
     // Formatter to use when writing objects to CSV.
     private CsvDataFormat               csvDataFormat;
 
@@ -168,6 +185,10 @@ public class SimpleBatchApplier implements RawApplier
     private boolean                     hasBeginMethod;
     private boolean                     hasCommitMethod;
 
+    // Load thread and the block it is loading when loads are pipelined.
+    private SimpleJobService<Long>      loadService;
+    private Future<Long>                pendingLoad;
+
     // Latest event.
     private ReplDBMSHeader              latestHeader;
 
@@ -322,6 +343,41 @@ public class SimpleBatchApplier implements RawApplier
         this.distinguishUpdates = distinguishUpdates;
     }
 
+    /**
+     * If true, load each block in a background thread while the next block is
+     * written to CSV. Blocks still load and update trep_commit_seqno strictly
+     * in order.
+     * <p/>
+     * Commit returns before the block has loaded, so stage progress, commit
+     * watches, and the committed seqno seen by other components may be up to
+     * one block ahead of trep_commit_seqno, which alone is the restart
+     * position. Do not combine this with partitioners that release
+     * dependencies by committed seqno. A failed load sends an error
+     * notification at once and is also reported by the next apply or commit.
+     */
+    public void setPipelinedLoad(boolean pipelinedLoad)
+    {
+        this.pipelinedLoad = pipelinedLoad;
+    }
+
+    /**
+     * If true, reduce row changes to the net change for each primary key
+     * before writing them to CSV.
+     */
+    public void setNetChangeCompaction(boolean netChangeCompaction)
+    {
+        this.netChangeCompaction = netChangeCompaction;
+    }
+
+    /**
+     * Sets the maximum number of keys held for net change compaction. Once
+     * this is reached, pending changes are written to CSV.
+     */
+    public void setNetChangeMaxKeys(int netChangeMaxKeys)
+    {
+        this.netChangeMaxKeys = netChangeMaxKeys;
+    }
+
     /**
      * Applies row updates using a batch loading scheme. Statements are
      * discarded. {@inheritDoc}
@@ -340,6 +396,11 @@ public class SimpleBatchApplier implements RawApplier
         String service = event.getMetadataOptionValue(ReplOptionParams.SERVICE);
         ArrayList<DBMSData> dbmsDataValues = event.getData();
 
+        // If the previous block failed to load in the background, report
+        // it now rather than at the next commit.
+        if (pendingLoad != null && pendingLoad.isDone())
+            waitForPendingLoad();
+
         // Update the starting sequence number in the range.
         if (startSeqno < 0)
             startSeqno = seqno;
@@ -415,6 +476,12 @@ public class SimpleBatchApplier implements RawApplier
                         Table tableMetadata = this.getTableMetadata(schema,
                                 table, colSpecs, keySpecs);
 
+                        // Compact changes if possible.
+                        if (compactRowChanges(seqno, commitTimestamp, service,
+                                tableMetadata, action, keySpecs, null,
+                                colSpecs, colValues))
+                            continue;
+
                         // Insert each column into the CSV file.
                         writeValues(seqno, commitTimestamp, service,
                                 tableMetadata, colSpecs, colValues, INSERT);
@@ -433,6 +500,12 @@ public class SimpleBatchApplier implements RawApplier
                         Table tableMetadata = this.getTableMetadata(schema,
                                 table, colSpecs, keySpecs);
 
+                        // Compact changes if possible.
+                        if (compactRowChanges(seqno, commitTimestamp, service,
+                                tableMetadata, action, keySpecs, keyValues,
+                                colSpecs, colValues))
+                            continue;
+
                         // If we are programmed to use a U opcode, see if it
                         // is safe to do a single line update.
                         boolean updateOpcode;
@@ -510,6 +583,12 @@ public class SimpleBatchApplier implements RawApplier
                         Table tableMetadata = this.getTableMetadata(schema,
                                 table, colSpecs, keySpecs);
 
+                        // Compact changes if possible.
+                        if (compactRowChanges(seqno, commitTimestamp, service,
+                                tableMetadata, action, keySpecs, keyValues,
+                                colSpecs, null))
+                            continue;
+
                         // Insert each column into the CSV file.
                         writeValues(seqno, commitTimestamp, service,
                                 tableMetadata, keySpecs, keyValues, DELETE);
@@ -544,6 +623,95 @@ public class SimpleBatchApplier implements RawApplier
             commit();
     }
 
+    /**
+     * Adds row changes to the net change compactor if compaction is enabled
+     * and the changes can be compacted. Otherwise writes out pending net
+     * changes for the table, so that the caller can write the row changes
+     * after them.
+     *
+     * @return True if the row changes were compacted
+     */
+    private boolean compactRowChanges(long seqno, Timestamp commitTimestamp,
+            String service, Table tableMetadata, ActionType action,
+            List<ColumnSpec> keySpecs,
+            ArrayList<ArrayList<ColumnVal>> keyValues,
+            List<ColumnSpec> colSpecs, ArrayList<ArrayList<ColumnVal>> colValues)
+            throws ReplicatorException
+    {
+        if (netChanges == null)
+            return false;
+
+        // Updates without a primary key or that change the key cannot be
+        // compacted.
+        boolean compacted;
+        if (action.equals(ActionType.UPDATE)
+                && (keySpecs.size() == colSpecs.size() || !this.keysUnchanged(
+                        keySpecs, keyValues, colSpecs, colValues)))
+            compacted = false;
+        else
+            compacted = netChanges.add(tableMetadata, action, seqno,
+                    commitTimestamp, service, keySpecs, keyValues, colSpecs,
+                    colValues);
+
+        if (!compacted)
+        {
+            writeNetChanges(netChanges.remove(tableMetadata));
+        }
+        else if (netChanges.isFull())
+        {
+            // Spill to CSV to keep memory bounded.
+            if (logger.isDebugEnabled())
+                logger.debug("Net change compaction is full; writing keys: "
+                        + netChanges.getKeyCount());
+            writeNetChanges(netChanges.removeAll());
+        }
+        return compacted;
+    }
+
+    /**
+     * Writes net changes to CSV. A row that existed before the batch is
+     * deleted, and a row that exists after the batch is inserted, which
+     * matches the way load scripts merge staged rows. Rows whose first change
+     * is an update are written using the same opcodes as plain updates.
+     */
+    private void writeNetChanges(Collection<NetChange> changes)
+            throws ReplicatorException
+    {
+        for (NetChange change : changes)
+        {
+            ArrayList<ArrayList<ColumnVal>> keyValues = new ArrayList<ArrayList<ColumnVal>>(
+                    1);
+            keyValues.add(change.keyValues);
+            ArrayList<ArrayList<ColumnVal>> colValues = new ArrayList<ArrayList<ColumnVal>>(
+                    1);
+            colValues.add(change.colValues);
+            boolean updated = change.existsAfter()
+                    && change.firstAction.equals(ActionType.UPDATE);
+
+            if (updated && useUpdateOpcode)
+            {
+                writeValues(change.lastSeqno, change.lastCommitTimestamp,
+                        change.lastService, change.tableMetadata,
+                        change.colSpecs, colValues, UPDATE);
+                continue;
+            }
+            if (change.existedBefore())
+            {
+                writeValues(change.firstSeqno, change.firstCommitTimestamp,
+                        change.firstService, change.tableMetadata,
+                        change.keySpecs, keyValues,
+                        (updated && distinguishUpdates) ? UPDATE_DELETE : DELETE);
+            }
+            if (change.existsAfter())
+            {
+                writeValues(change.lastSeqno, change.lastCommitTimestamp,
+                        change.lastService, change.tableMetadata,
+                        change.colSpecs, colValues,
+                        (updated && distinguishUpdates) ? UPDATE_INSERT : INSERT);
+            }
+        }
+    }
+
     /**
      * Determines whether keys have changed. This is a relatively costly and
      * complex call that is only undertaken when using the U opcode. This code
@@ -623,6 +791,84 @@ public class SimpleBatchApplier implements RawApplier
         if (startSeqno < 0)
             startSeqno = latestHeader.getSeqno();
 
+        // Write out net changes, if any.
+        if (netChanges != null)
+        {
+            writeNetChanges(netChanges.removeAll());
+            if (logger.isDebugEnabled())
+                logger.debug("Net change compaction: rowsIn="
+                        + netChanges.getRowsIn() + " rowsOut="
+                        + netChanges.getRowsOut());
+        }
+
+        // Flush open CSV files now so that data become visible in case we
+        // abort.
+        for (CsvFileSet fileSet : this.openCsvSets.values())
+        {
+            fileSet.flushAndCloseCsvFiles();
+        }
+
+        // Load the block. If loads are pipelined, we first wait for the
+        // previous block so that blocks load and update trep_commit_seqno
+        // strictly in order, then hand this block to the load thread and
+        // write the next block into the other staging directory.
+        final Map<String, CsvFileSet> csvSets = this.openCsvSets;
+        final long blockStartSeqno = startSeqno;
+        final ReplDBMSHeader blockHeader = latestHeader;
+        final File blockDir = stageDir;
+        if (pipelinedLoad)
+        {
+            waitForPendingLoad();
+            pendingLoad = loadService.submit(new Callable<Long>()
+            {
+                public Long call() throws Exception
+                {
+                    try
+                    {
+                        loadBlock(csvSets, blockStartSeqno, blockHeader,
+                                blockDir);
+                    }
+                    catch (ReplicatorException e)
+                    {
+                        notifyLoadFailure(blockHeader, e);
+                        throw e;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        notifyLoadFailure(blockHeader, e);
+                        throw e;
+                    }
+                    return blockHeader.getSeqno();
+                }
+            });
+            stageDir = (stageDir == stageDirs[0]) ? stageDirs[1] : stageDirs[0];
+        }
+        else
+        {
+            loadBlock(csvSets, blockStartSeqno, blockHeader, blockDir);
+        }
+
+        // Clear the starting sequence number in anticipation of the next
+        // transaction.
+        startSeqno = -1;
+
+        // Start a new CSV file cache.
+        this.openCsvSets = new TreeMap<String, CsvFileSet>();
+
+        // Clear the metadata cache. Otherwise we will get errors if there is a
+        // schema change between commits.
+        fullMetadataCache.invalidateAll();
+    }
+
+    /**
+     * Loads the CSV files of a block, updates trep_commit_seqno, and commits.
+     * This runs in the load thread if loads are pipelined, so it must use only
+     * its arguments and state that does not change after prepare().
+     */
+    private void loadBlock(Map<String, CsvFileSet> csvSets, long startSeqno,
+            ReplDBMSHeader header, File dir) throws ReplicatorException,
+            InterruptedException
+    {
         // Invoke begin method on load scripts to show transaction is starting.
         if (hasBeginMethod)
         {
@@ -632,13 +878,10 @@ public class SimpleBatchApplier implements RawApplier
             }
         }
 
-        // Flush open CSV files now so that data become visible in case we
-        // abort. Count them along the way so we know how big the request
-        // queue should be.
+        // Count CSV files so we know how big the request queue should be.
         int pendingCsvCount = 0;
-        for (CsvFileSet fileSet : this.openCsvSets.values())
+        for (CsvFileSet fileSet : csvSets.values())
         {
-            fileSet.flushAndCloseCsvFiles();
             pendingCsvCount += fileSet.size();
         }
 
@@ -646,10 +889,10 @@ public class SimpleBatchApplier implements RawApplier
         // this commit in CsvInfo as that helps the batch load scripts generate
         // unique file names that associate easily with the trep_commit_seqno
         // position.
-        long endSeqno = latestHeader.getSeqno();
+        long endSeqno = header.getSeqno();
         ScriptExecutorService execService = new ScriptExecutorService(
                 "batch-load", loadScriptExecutors, Math.max(1, pendingCsvCount));
-        for (CsvFileSet fileSet : this.openCsvSets.values())
+        for (CsvFileSet fileSet : csvSets.values())
         {
             // Set the transaction boundaries.
             fileSet.setStartSeqno(startSeqno);
@@ -714,7 +957,7 @@ public class SimpleBatchApplier implements RawApplier
         }
 
         // Update trep_commit_seqno.
-        commitSeqnoAccessor.updateLastCommitSeqno(this.latestHeader, 0);
+        commitSeqnoAccessor.updateLastCommitSeqno(header, 0);
 
         // Commit on data source.
         try
@@ -739,20 +982,54 @@ public class SimpleBatchApplier implements RawApplier
             throw new ReplicatorException("Unable to commit transaction", e);
         }
 
-        // Clear the starting sequence number in anticipation of the next
-        // transaction.
-        startSeqno = -1;
+        // Clear the load directory if desired.
+        if (cleanUpFiles)
+            purgeDirIfExists(dir, false);
+    }
 
-        // Clear the CSV file cache.
-        this.openCsvSets.clear();
+    // Report a failed pipelined load right away so that the replicator goes
+    // offline even if no further events arrive to apply or commit.
+    private void notifyLoadFailure(ReplDBMSHeader header, Exception e)
+            throws InterruptedException
+    {
+        String msg = "Pipelined CSV load failed: seqno=" + header.getSeqno()
+                + " message=" + e.getMessage();
+        logger.error(msg, e);
+        EventDispatcher dispatcher = context.getEventDispatcher();
+        if (dispatcher != null)
+        {
+            dispatcher.put(new ErrorNotification(msg, header.getSeqno(),
+                    header.getEventId(), e));
+        }
+    }
 
-        // Clear the metadata cache. Otherwise we will get errors if there is a
-        // schema change between commits.
-        fullMetadataCache.invalidateAll();
+    // Wait for the block in the load thread, if any, to finish loading and
+    // report its failure if it did not load.
+    private void waitForPendingLoad() throws ReplicatorException,
+            InterruptedException
+    {
+        if (pendingLoad == null)
+            return;
 
-        // Clear the load directories if desired.
-        if (cleanUpFiles)
-            purgeDirIfExists(stageDir, false);
+        try
+        {
+            long seqno = pendingLoad.get();
+            pendingLoad = null;
+            if (logger.isDebugEnabled())
+                logger.debug("Pipelined load completed: seqno=" + seqno);
+        }
+        catch (ExecutionException e)
+        {
+            pendingLoad = null;
+            Throwable cause = e.getCause();
+            if (cause instanceof ReplicatorException)
+                throw (ReplicatorException) cause;
+            else if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            else
+                throw new ReplicatorException("Pipelined CSV load failed: "
+                        + cause.getMessage(), cause);
+        }
     }
 
     /**
@@ -775,6 +1052,22 @@ public class SimpleBatchApplier implements RawApplier
     @Override
     public void rollback() throws InterruptedException
     {
+        // Wait for a pipelined load to finish so that connections are idle.
+        // If it failed, trep_commit_seqno still points to the previous
+        // block, so the failed block is applied again after restart.
+        if (pendingLoad != null)
+        {
+            try
+            {
+                waitForPendingLoad();
+            }
+            catch (ReplicatorException e)
+            {
+                logger.warn("Pipelined load failed before rollback: "
+                        + e.getMessage());
+            }
+        }
+
         // Roll back connection.
         for (UniversalConnection conn : connections)
         {
@@ -791,21 +1084,25 @@ public class SimpleBatchApplier implements RawApplier
             }
         }
 
-        // Clear the CSV file cache.
+        // Clear the CSV file cache and pending net changes.
         openCsvSets.clear();
+        if (netChanges != null)
+            netChanges.removeAll();
 
         // Clear the load directories if desired.
         if (cleanUpFiles)
         {
-            try
-            {
-                purgeDirIfExists(stageDir, false);
-            }
-            catch (ReplicatorException e)
+            for (File dir : stageDirs)
             {
-                logger.error(
-                        "Unable to purge staging directory; "
-                                + stageDir.getAbsolutePath(), e);
+                try
+                {
+                    purgeDirIfExists(dir, false);
+                }
+                catch (ReplicatorException e)
+                {
+                    logger.error("Unable to purge staging directory; "
+                            + dir.getAbsolutePath(), e);
+                }
             }
         }
     }
@@ -926,14 +1223,36 @@ public class SimpleBatchApplier implements RawApplier
         File staging = new File(stageDirectory);
         createDirIfNotExist(staging);
 
-        // Define and create the load sub-directory.
+        // Define and create the load sub-directory. Pipelined loads need a
+        // second directory as well as a thread to run loads.
         stageDir = new File(staging, "staging" + taskId);
-        purgeDirIfExists(stageDir, true);
-        createDirIfNotExist(stageDir);
+        if (pipelinedLoad)
+        {
+            stageDirs = new File[]{stageDir,
+                    new File(staging, "staging" + taskId + "-1")};
+            loadService = new SimpleJobService<Long>(
+                    "batch-load-pipeline-" + taskId, 1, 1, 60);
+            logger.info("Pipelined CSV loading is enabled");
+        }
+        else
+            stageDirs = new File[]{stageDir};
+        for (File dir : stageDirs)
+        {
+            purgeDirIfExists(dir, true);
+            createDirIfNotExist(dir);
+        }
 
         // Initialize table metadata cache.
         fullMetadataCache = new TableMetadataCache(5000);
 
+        // Set up net change compaction if desired.
+        if (netChangeCompaction)
+        {
+            logger.info("Net change compaction is enabled: maxKeys="
+                    + netChangeMaxKeys);
+            netChanges = new NetChangeCompactor(netChangeMaxKeys);
+        }
+
         // Prepare accessor(s) to data.
         CommitSeqno commitSeqno = dataSourceImpl.getCommitSeqno();
         commitSeqnoAccessor = commitSeqno.createAccessor(taskId,
@@ -1146,6 +1465,23 @@ public class SimpleBatchApplier implements RawApplier
     public void release(PluginContext context) throws ReplicatorException,
             InterruptedException
     {
+        // Let a pipelined load finish before releasing the resources it uses.
+        if (loadService != null)
+        {
+            try
+            {
+                waitForPendingLoad();
+            }
+            catch (ReplicatorException e)
+            {
+                logger.error(
+                        "Pipelined load failed; block will be applied again on restart",
+                        e);
+            }
+            loadService.shutdown();
+            loadService = null;
+        }
+
         // Release load script. This calls the release method.
         if (loadScriptExecutors != null)
         {
@@ -1164,11 +1500,15 @@ public class SimpleBatchApplier implements RawApplier
             loadScriptExecutors = null;
         }
 
-        // Release staging directory if cleanup is requested.
-        if (stageDir != null && cleanUpFiles)
+        // Release staging directories if cleanup is requested.
+        if (stageDirs != null && cleanUpFiles)
         {
-            purgeDirIfExists(stageDir, true);
+            for (File dir : stageDirs)
+            {
+                purgeDirIfExists(dir, true);
+            }
             stageDir = null;
+            stageDirs = null;
         }
 
         // Release table cache.
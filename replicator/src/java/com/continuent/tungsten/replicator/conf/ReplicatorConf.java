@@ -245,6 +245,10 @@ public class ReplicatorConf
     public static final String   THL_PROTOCOL_DEFAULT                  = "com.continuent.tungsten.replicator.thl.Connector";
     public static final String   THL_PROTOCOL_BUFFER_SIZE              = "replicator.thl.protocol.buffer_size";
     public static final String   THL_PROTOCOL_BUFFER_SIZE_DEFAULT      = "0";
+    public static final String   THL_PROTOCOL_FRAMED                   = "replicator.thl.protocol.framed";
+    public static final String   THL_PROTOCOL_FRAMED_DEFAULT           = "false";
+    public static final String   THL_PROTOCOL_WINDOW_SIZE              = "replicator.thl.protocol.window_size";
+    public static final String   THL_PROTOCOL_WINDOW_SIZE_DEFAULT      = "0";
 
     static public final String   MONITOR_DETAIL_ENABLED                = "replicator.monitor.detail_enabled";
 
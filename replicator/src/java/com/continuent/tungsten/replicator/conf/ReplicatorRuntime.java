@@ -52,6 +52,7 @@ import com.continuent.tungsten.replicator.plugin.PluginLoader;
 import com.continuent.tungsten.replicator.plugin.PluginSpecification;
 import com.continuent.tungsten.replicator.plugin.ReplicatorPlugin;
 import com.continuent.tungsten.replicator.service.PipelineService;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
 import com.continuent.tungsten.replicator.storage.Store;
 
 /**
@@ -350,6 +351,10 @@ public class ReplicatorRuntime implements PluginContext
 
         assertPropertyDefault(ReplicatorConf.THL_PROTOCOL_BUFFER_SIZE,
                 ReplicatorConf.THL_PROTOCOL_BUFFER_SIZE_DEFAULT);
+        assertPropertyDefault(ReplicatorConf.THL_PROTOCOL_FRAMED,
+                ReplicatorConf.THL_PROTOCOL_FRAMED_DEFAULT);
+        assertPropertyDefault(ReplicatorConf.THL_PROTOCOL_WINDOW_SIZE,
+                ReplicatorConf.THL_PROTOCOL_WINDOW_SIZE_DEFAULT);
 
         // Set default for resource JDBC URL so that unit tests run properly.
         // This value is normally set in the replicator properties.
@@ -520,6 +525,13 @@ public class ReplicatorRuntime implements PluginContext
 
         newPipeline.setSyncTHLWithExtractor(syncTHLWithExtractor);
 
+        // Set the pipeline-wide limit on bytes in in-memory queues, if any.
+        String maxQueueBytesProperty = ReplicatorConf.PIPELINE_ROOT + "."
+                + name + ".maxQueueBytes";
+        if (properties.get(maxQueueBytesProperty) != null)
+            newPipeline.setMaxQueueBytes(properties
+                    .getLong(maxQueueBytesProperty));
+
         // Add pipeline services, if any.
         String servicesProperty = ReplicatorConf.PIPELINE_ROOT + "." + name
                 + ".services";
@@ -1039,6 +1051,8 @@ public class ReplicatorRuntime implements PluginContext
     public List<Stage> getStages()
     {
         ArrayList<Stage> stages = new ArrayList<Stage>();
+        if (pipeline == null)
+            return stages;
         for (Stage stage : pipeline.getStages())
         {
             stages.add(stage);
@@ -1229,6 +1243,20 @@ public class ReplicatorRuntime implements PluginContext
             return p.getChannels();
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.plugin.PluginContext#getQueueBudget()
+     */
+    public QueueMemoryBudget getQueueBudget()
+    {
+        Pipeline p = pipeline;
+        if (p == null)
+            return null;
+        else
+            return p.getQueueBudget();
+    }
+
     /**
      * {@inheritDoc}
      * 
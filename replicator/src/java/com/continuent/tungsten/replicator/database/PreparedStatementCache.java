@@ -28,7 +28,10 @@ import com.continuent.tungsten.common.cache.IndexedLRUCache;
 
 /**
  * Implements a cache for prepared statements, which are identified by a single
- * key.
+ * key. Callers that cache statements for a particular table should generate
+ * keys using {@link #generateKey(String, String, String)}, which allows
+ * statements to be invalidated by schema or table when DDL changes the table
+ * definition.
  */
 public class PreparedStatementCache
         implements
@@ -36,6 +39,10 @@ public class PreparedStatementCache
 {
     IndexedLRUCache<PreparedStatementHolder> cache;
 
+    // Cache effectiveness counters.
+    private long                             hits   = 0;
+    private long                             misses = 0;
+
     /**
      * Creates a new table metadata cache.
      */
@@ -94,15 +101,93 @@ public class PreparedStatementCache
      */
     public PreparedStatementHolder retrieveExtended(String key)
     {
-        return cache.get(key);
+        PreparedStatementHolder psh = cache.get(key);
+        if (psh == null)
+            misses++;
+        else
+            hits++;
+        return psh;
+    }
+
+    /** Returns the number of lookups that found a statement. */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not find a statement. */
+    public long getMisses()
+    {
+        return misses;
     }
 
     /**
      * Release one prepared statement.
      */
-    public void invalidate(String key)
+    public int invalidate(String key)
+    {
+        return cache.invalidate(key);
+    }
+
+    /**
+     * Release all prepared statements for tables in a given schema.
+     */
+    public int invalidateSchema(String schema)
     {
-        cache.invalidate(key);
+        return cache.invalidateByPrefix(schema + ".");
+    }
+
+    /**
+     * Release all prepared statements for a single table.
+     */
+    public int invalidateTable(String schema, String tableName)
+    {
+        return cache.invalidateByPrefix(generateKey(schema, tableName, ""));
+    }
+
+    /**
+     * Invalidate prepared statements whose tables are affected by a particular
+     * SQL operation. This follows the same rules as
+     * {@link TableMetadataCache#invalidate(SqlOperation, String)}.
+     * 
+     * @param sqlOperation A SQLOperation from parsing
+     * @param defaultSchema Default schema in case it is not supplied by
+     *            sqlOperation
+     */
+    public int invalidate(SqlOperation sqlOperation, String defaultSchema)
+    {
+        if (sqlOperation.getOperation() == SqlOperation.DROP
+                && sqlOperation.getObjectType() == SqlOperation.SCHEMA)
+        {
+            return invalidateSchema(sqlOperation.getSchema());
+        }
+        else if (sqlOperation.getOperation() == SqlOperation.DROP
+                && sqlOperation.getObjectType() == SqlOperation.TABLE)
+        {
+            return invalidateTable(sqlOperation.getSchema(), defaultSchema,
+                    sqlOperation.getName());
+        }
+        else if (sqlOperation.getOperation() == SqlOperation.ALTER)
+        {
+            return invalidateTable(sqlOperation.getSchema(), defaultSchema,
+                    sqlOperation.getName());
+        }
+        else if (sqlOperation.getOperation() == SqlOperation.RENAME)
+        {
+            int count = invalidateTable(sqlOperation.getSchema(),
+                    defaultSchema, sqlOperation.getName());
+            if (sqlOperation.hasMoreDatabaseObjects())
+            {
+                for (SqlObject sqlObject : sqlOperation
+                        .getMoreDatabaseObjects())
+                {
+                    count += invalidateTable(sqlObject.getSchema(),
+                            defaultSchema, sqlObject.getName());
+                }
+            }
+            return count;
+        }
+        return 0;
     }
 
     /**
@@ -112,4 +197,30 @@ public class PreparedStatementCache
     {
         cache.invalidateAll();
     }
-}
\ No newline at end of file
+
+    /**
+     * Generates a key for a statement on a particular table. The statement
+     * text distinguishes different statements on the same table.
+     */
+    public static String generateKey(String schema, String tableName,
+            String statement)
+    {
+        StringBuffer key = new StringBuffer();
+        key.append(schema);
+        key.append(".");
+        key.append(tableName);
+        key.append("|");
+        key.append(statement);
+        return key.toString();
+    }
+
+    // Utility method to drop statements for a table.
+    private int invalidateTable(String schema, String defaultSchema,
+            String tableName)
+    {
+        if (schema == null)
+            return invalidateTable(defaultSchema, tableName);
+        else
+            return invalidateTable(schema, tableName);
+    }
+}
@@ -0,0 +1,759 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+
+/**
+ * Tracks table definitions by replication sequence number so that metadata
+ * lookups may be answered at the point in the replication stream where an
+ * event occurred instead of from the current schema in the DBMS. Definitions
+ * come from DDL statements in the stream, which are parsed with
+ * {@link TableDefinitionParser}, and from DBMS lookups for tables that have no
+ * known definition yet.
+ * <p/>
+ * Each table has a list of versions keyed by the seqno from which they apply.
+ * A null version means the definition is unknown from that seqno on, which
+ * happens when a table is dropped or DDL cannot be parsed. Clients then look
+ * up the table in the DBMS and record the result here.
+ * <p/>
+ * Versions are appended to a log file so that history survives restarts. The
+ * log is rewritten without duplicates each time it is opened. DDL at or below
+ * the highest DDL seqno in the log has already been applied and is ignored,
+ * as is DDL seen again by another client of the same history.
+ * <p/>
+ * The log is only valid for the replication stream that produced it. DDL
+ * versions therefore record the epoch number of their events so that clients
+ * can check the history against the THL after opening it. Clients call
+ * {@link #truncate(long)} to drop versions from events the THL no longer has,
+ * {@link #prune(long)} to drop versions that no longer apply to any event in
+ * the THL, and {@link #clear()} to discard history from another stream.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class SchemaHistory
+{
+    private static Logger               logger         = Logger.getLogger(SchemaHistory.class);
+
+    // Record types in the log.
+    private static final String         DDL            = "D";
+    private static final String         LOOKUP         = "L";
+
+    private final File                  file;
+    private final TableDefinitionParser parser         = new TableDefinitionParser();
+
+    // Table histories indexed by schema.table.
+    private Map<String, TableHistory>   tables         = new TreeMap<String, TableHistory>();
+    private int                         versionCount   = 0;
+    private BufferedWriter              writer;
+
+    // Positions used to ignore DDL that has already been recorded.
+    private long                        loadedSeqno    = -1;
+    private long                        lastSeqno      = -1;
+    private Set<String>                 lastStatements = new HashSet<String>();
+
+    // Versions of a single table.
+    private static class TableHistory
+    {
+        final String               schema;
+        final String               name;
+        final TreeMap<Long, Table> versions  = new TreeMap<Long, Table>();
+
+        // Epoch numbers of versions recorded from DDL, keyed by seqno.
+        final Map<Long, Long>      ddlEpochs = new HashMap<Long, Long>();
+
+        TableHistory(String schema, String name)
+        {
+            this.schema = schema;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Creates a new history.
+     * 
+     * @param file Log file in which to store table versions
+     */
+    public SchemaHistory(File file)
+    {
+        this.file = file;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /** Returns the number of tables that have a history. */
+    public synchronized int getTableCount()
+    {
+        return tables.size();
+    }
+
+    /** Returns the number of table versions in the history. */
+    public synchronized int getVersionCount()
+    {
+        return versionCount;
+    }
+
+    /**
+     * Loads history from the log file, compacts the log, and opens it for
+     * writing.
+     */
+    public synchronized void open() throws ReplicatorException
+    {
+        tables.clear();
+        if (file.exists())
+            load();
+        rewrite();
+
+        logger.info("Opened schema history: file=" + file.getAbsolutePath()
+                + " tables=" + tables.size() + " versions=" + versionCount
+                + " lastDdlSeqno=" + loadedSeqno);
+    }
+
+    /**
+     * Returns the highest seqno of DDL in the history or -1 if there is none.
+     */
+    public synchronized long getLastDdlSeqno()
+    {
+        long last = -1;
+        for (TableHistory history : tables.values())
+        {
+            for (Long seqno : history.ddlEpochs.keySet())
+                last = Math.max(last, seqno);
+        }
+        return last;
+    }
+
+    /**
+     * Returns the epoch number of the event whose DDL produced versions at a
+     * seqno.
+     * 
+     * @return Epoch number or -1 if there is no DDL at the seqno
+     */
+    public synchronized long getDdlEpoch(long seqno)
+    {
+        for (TableHistory history : tables.values())
+        {
+            Long epoch = history.ddlEpochs.get(seqno);
+            if (epoch != null)
+                return epoch;
+        }
+        return -1;
+    }
+
+    /**
+     * Drops versions above a seqno, for example after the THL has been
+     * truncated there. DDL after the seqno is recorded again when it is seen.
+     * 
+     * @param seqno Highest seqno whose versions are kept
+     * @return Number of versions dropped
+     */
+    public synchronized int truncate(long seqno) throws ReplicatorException
+    {
+        int dropped = 0;
+        for (TableHistory history : tables.values())
+        {
+            SortedMap<Long, Table> tail = history.versions.tailMap(seqno + 1);
+            for (Long versionSeqno : tail.keySet())
+                history.ddlEpochs.remove(versionSeqno);
+            dropped += tail.size();
+            tail.clear();
+        }
+        if (dropped > 0)
+        {
+            logger.info("Truncating schema history: file="
+                    + file.getAbsolutePath() + " seqno=" + seqno
+                    + " versions=" + dropped);
+            removeEmptyHistories();
+            rewrite();
+        }
+        return dropped;
+    }
+
+    /**
+     * Drops versions that no longer apply to events at or above a seqno, for
+     * example after the THL has been purged below it. The version of each
+     * table in effect at the seqno is kept.
+     * 
+     * @param seqno Lowest seqno for which definitions are still needed
+     * @return Number of versions dropped
+     */
+    public synchronized int prune(long seqno) throws ReplicatorException
+    {
+        int dropped = 0;
+        for (TableHistory history : tables.values())
+        {
+            Long floor = floorKey(history.versions, seqno);
+            if (floor == null)
+                continue;
+
+            // An unknown version in effect at the seqno is the same as none.
+            SortedMap<Long, Table> head;
+            if (history.versions.get(floor) == null)
+                head = history.versions.headMap(floor + 1);
+            else
+                head = history.versions.headMap(floor);
+            for (Long versionSeqno : head.keySet())
+                history.ddlEpochs.remove(versionSeqno);
+            dropped += head.size();
+            head.clear();
+        }
+        if (dropped > 0)
+        {
+            logger.info("Pruning schema history: file="
+                    + file.getAbsolutePath() + " seqno=" + seqno
+                    + " versions=" + dropped);
+            removeEmptyHistories();
+            rewrite();
+        }
+        return dropped;
+    }
+
+    /**
+     * Discards all versions, for example because the history belongs to a
+     * replication stream that the THL no longer contains.
+     */
+    public synchronized void clear() throws ReplicatorException
+    {
+        logger.info("Clearing schema history: file=" + file.getAbsolutePath()
+                + " versions=" + versionCount);
+        tables.clear();
+        rewrite();
+    }
+
+    // Rewrites the log so that it contains each version once and recomputes
+    // the counts and seqno positions from the versions that remain.
+    private void rewrite() throws ReplicatorException
+    {
+        versionCount = 0;
+        for (TableHistory history : tables.values())
+            versionCount += history.versions.size();
+        loadedSeqno = getLastDdlSeqno();
+        lastSeqno = -1;
+        lastStatements.clear();
+
+        if (writer != null)
+        {
+            try
+            {
+                writer.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Unable to close schema history: "
+                        + file.getAbsolutePath(), e);
+            }
+            writer = null;
+        }
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try
+        {
+            writer = openWriter(tmpFile, false);
+            for (TableHistory history : tables.values())
+            {
+                for (Long seqno : history.versions.keySet())
+                {
+                    Long epoch = history.ddlEpochs.get(seqno);
+                    write(epoch, seqno, history, history.versions.get(seqno));
+                }
+            }
+            writer.close();
+            if (file.exists() && !file.delete())
+                throw new IOException("Unable to delete old log file");
+            if (!tmpFile.renameTo(file))
+                throw new IOException("Unable to rename compacted log file");
+            writer = openWriter(file, true);
+        }
+        catch (IOException e)
+        {
+            throw new ReplicatorException("Unable to write schema history: "
+                    + file.getAbsolutePath(), e);
+        }
+    }
+
+    // Drops histories that no longer have versions.
+    private void removeEmptyHistories()
+    {
+        Iterator<TableHistory> iter = tables.values().iterator();
+        while (iter.hasNext())
+        {
+            if (iter.next().versions.isEmpty())
+                iter.remove();
+        }
+    }
+
+    /**
+     * Closes the log file.
+     */
+    public synchronized void close()
+    {
+        if (writer != null)
+        {
+            try
+            {
+                writer.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Unable to close schema history: "
+                        + file.getAbsolutePath(), e);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Returns the definition of a table at a seqno. Callers must not change
+     * the table, which is shared.
+     * 
+     * @return Table definition or null if the definition is unknown
+     */
+    public synchronized Table getTable(String schema, String tableName,
+            long seqno)
+    {
+        TableHistory history = tables.get(key(schema, tableName));
+        if (history == null)
+            return null;
+        Long floor = floorKey(history.versions, seqno);
+        if (floor == null)
+            return null;
+        else
+            return history.versions.get(floor);
+    }
+
+    /**
+     * Records a table definition read from the DBMS. The DBMS shows the
+     * current schema, so the definition is recorded only if the history has no
+     * later versions of the table. It applies from the last DDL on the table
+     * before the seqno if that DDL left the definition unknown, or otherwise
+     * from the seqno.
+     * 
+     * @param table Table definition
+     * @param seqno Seqno of the event for which the table was read
+     * @return True if the definition was recorded
+     */
+    public synchronized boolean recordTable(Table table, long seqno)
+            throws ReplicatorException
+    {
+        TableHistory history = getHistory(table.getSchema(), table.getName());
+        if (!history.versions.tailMap(seqno + 1).isEmpty())
+            return false;
+
+        Long floor = floorKey(history.versions, seqno);
+        if (floor != null && history.versions.get(floor) == null)
+            store(history, floor, table, history.ddlEpochs.get(floor));
+        else
+            store(history, seqno, table, null);
+        return true;
+    }
+
+    /**
+     * Records the effect of a DDL statement on table definitions. Statements
+     * that do not create, change, or drop tables are ignored.
+     * 
+     * @param sqlOperation Parsed statement
+     * @param defaultSchema Default schema in case it is not supplied by
+     *            sqlOperation
+     * @param seqno Seqno of the event that contains the statement
+     * @param epochNumber Epoch number of the event that contains the statement
+     * @param statement Statement text
+     * @return Number of table versions recorded
+     */
+    public synchronized int recordStatement(SqlOperation sqlOperation,
+            String defaultSchema, long seqno, long epochNumber,
+            String statement) throws ReplicatorException
+    {
+        int operation = sqlOperation.getOperation();
+        int objectType = sqlOperation.getObjectType();
+        boolean dropSchema = objectType == SqlOperation.SCHEMA
+                && operation == SqlOperation.DROP;
+        if (objectType != SqlOperation.TABLE && !dropSchema)
+            return 0;
+        if (operation != SqlOperation.CREATE && operation != SqlOperation.ALTER
+                && operation != SqlOperation.DROP
+                && operation != SqlOperation.RENAME)
+            return 0;
+
+        // Skip statements we have already seen.
+        if (seqno <= loadedSeqno || seqno < lastSeqno)
+            return 0;
+        if (seqno > lastSeqno)
+        {
+            lastSeqno = seqno;
+            lastStatements.clear();
+        }
+        if (!lastStatements.add(statement))
+            return 0;
+
+        String schema = sqlOperation.getSchema();
+        if (schema == null)
+            schema = defaultSchema;
+        String tableName = sqlOperation.getName();
+
+        if (dropSchema)
+        {
+            // Forget all tables in the schema.
+            int count = 0;
+            for (TableHistory history : new ArrayList<TableHistory>(
+                    tables.values()))
+            {
+                if (schema.equals(history.schema))
+                {
+                    store(history, seqno, null, epochNumber);
+                    count++;
+                }
+            }
+            return count;
+        }
+        else if (operation == SqlOperation.CREATE)
+        {
+            if (!sqlOperation.isAutoCommit())
+                return 0;
+            Table table = parser.parseCreate(schema, tableName, statement);
+            store(getHistory(schema, tableName), seqno, table, epochNumber);
+            return 1;
+        }
+        else if (operation == SqlOperation.ALTER)
+        {
+            TableHistory history = getHistory(schema, tableName);
+            Table table = getTable(schema, tableName, seqno);
+            Table newTable = null;
+            if (table != null)
+                newTable = parser.parseAlter(table, statement);
+
+            if (newTable == null)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Unable to track table change: seqno="
+                            + seqno + " statement=" + statement);
+                }
+                store(history, seqno, null, epochNumber);
+                return 1;
+            }
+            else if (key(schema, tableName).equals(
+                    key(newTable.getSchema(), newTable.getName())))
+            {
+                store(history, seqno, newTable, epochNumber);
+                return 1;
+            }
+            else
+            {
+                // ALTER TABLE ... RENAME moves the table.
+                store(history, seqno, null, epochNumber);
+                store(getHistory(newTable.getSchema(), newTable.getName()),
+                        seqno, newTable, epochNumber);
+                return 2;
+            }
+        }
+        else if (operation == SqlOperation.DROP)
+        {
+            List<SqlObject> dropped = parser.parseDrop(schema, statement);
+            if (dropped == null)
+                return 0;
+            for (SqlObject object : dropped)
+                store(getHistory(object.getSchema(), object.getName()), seqno,
+                        null, epochNumber);
+            return dropped.size();
+        }
+        else
+        {
+            // RENAME TABLE a TO b, c TO d, ... moves definitions in order.
+            List<SqlObject> objects = new ArrayList<SqlObject>();
+            objects.add(new SqlObject(sqlOperation.getSchema(), tableName));
+            objects.addAll(sqlOperation.getMoreDatabaseObjects());
+            int count = 0;
+            for (int i = 0; i + 1 < objects.size(); i += 2)
+            {
+                String oldSchema = objects.get(i).getSchema();
+                if (oldSchema == null)
+                    oldSchema = defaultSchema;
+                String newSchema = objects.get(i + 1).getSchema();
+                if (newSchema == null)
+                    newSchema = defaultSchema;
+                String oldName = objects.get(i).getName();
+                String newName = objects.get(i + 1).getName();
+
+                Table table = getTable(oldSchema, oldName, seqno);
+                Table newTable = null;
+                if (table != null)
+                {
+                    newTable = table.clone();
+                    newTable.setSchema(newSchema);
+                    newTable.setTable(newName);
+                }
+                store(getHistory(oldSchema, oldName), seqno, null,
+                        epochNumber);
+                store(getHistory(newSchema, newName), seqno, newTable,
+                        epochNumber);
+                count += 2;
+            }
+            return count;
+        }
+    }
+
+    // Returns the history of a table, creating it if necessary.
+    private TableHistory getHistory(String schema, String tableName)
+    {
+        String key = key(schema, tableName);
+        TableHistory history = tables.get(key);
+        if (history == null)
+        {
+            history = new TableHistory(schema, tableName);
+            tables.put(key, history);
+        }
+        return history;
+    }
+
+    // Returns the highest key at or below a seqno or null if there is none.
+    private Long floorKey(TreeMap<Long, Table> versions, long seqno)
+    {
+        SortedMap<Long, Table> head = versions.headMap(seqno + 1);
+        if (head.isEmpty())
+            return null;
+        else
+            return head.lastKey();
+    }
+
+    // Stores a version and appends it to the log. Versions from DDL have the
+    // epoch number of their event; versions from lookups have none.
+    private void store(TableHistory history, long seqno, Table table,
+            Long epochNumber) throws ReplicatorException
+    {
+        if (!history.versions.containsKey(seqno))
+            versionCount++;
+        history.versions.put(seqno, table);
+        if (epochNumber != null)
+            history.ddlEpochs.put(seqno, epochNumber);
+
+        if (writer != null)
+        {
+            try
+            {
+                write(epochNumber, seqno, history, table);
+                writer.flush();
+            }
+            catch (IOException e)
+            {
+                throw new ReplicatorException(
+                        "Unable to write schema history: "
+                                + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    // Reads versions from the log file. Later records replace earlier records
+    // for the same table and seqno.
+    private void load() throws ReplicatorException
+    {
+        BufferedReader reader = null;
+        int lineNumber = 0;
+        try
+        {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                if (line.length() == 0)
+                    continue;
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 7)
+                {
+                    logger.warn("Ignoring invalid schema history record: file="
+                            + file.getAbsolutePath() + " line=" + lineNumber);
+                    continue;
+                }
+                long seqno = Long.parseLong(fields[0]);
+                Long epochNumber = null;
+                if (DDL.equals(fields[1]))
+                    epochNumber = Long.parseLong(fields[2]);
+                String schema = decode(fields[3]);
+                String tableName = decode(fields[4]);
+                Table table = null;
+                if (!"-".equals(fields[5]))
+                {
+                    table = decodeTable(schema, tableName, fields[5],
+                            fields[6]);
+                }
+
+                store(getHistory(schema, tableName), seqno, table,
+                        epochNumber);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ReplicatorException("Unable to read schema history: "
+                    + file.getAbsolutePath(), e);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ReplicatorException("Invalid schema history record: file="
+                    + file.getAbsolutePath() + " line=" + lineNumber, e);
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                }
+            }
+        }
+    }
+
+    // Writes a version record. Fields are separated by tabs. Columns are
+    // separated by commas and column attributes by colons, which cannot
+    // appear in encoded values. Lookup records have no epoch number.
+    private void write(Long epochNumber, long seqno, TableHistory history,
+            Table table) throws IOException
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(seqno);
+        if (epochNumber == null)
+            sb.append('\t').append(LOOKUP).append("\t-1");
+        else
+            sb.append('\t').append(DDL).append('\t').append(epochNumber);
+        sb.append('\t').append(encode(history.schema));
+        sb.append('\t').append(encode(history.name));
+        if (table == null)
+            sb.append("\t-\t");
+        else
+        {
+            sb.append('\t');
+            List<Column> columns = table.getAllColumns();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                Column column = columns.get(i);
+                if (i > 0)
+                    sb.append(',');
+                sb.append(encode(column.getName()));
+                sb.append(':').append(column.getType());
+                sb.append(':').append(column.getLength());
+                sb.append(':').append(column.isNotNull());
+                sb.append(':').append(column.isSigned());
+                sb.append(':').append(encode(column.getTypeDescription()));
+            }
+            sb.append('\t');
+            Key key = table.getPrimaryKey();
+            if (key != null)
+            {
+                List<Column> keyColumns = key.getColumns();
+                for (int i = 0; i < keyColumns.size(); i++)
+                {
+                    if (i > 0)
+                        sb.append(',');
+                    sb.append(encode(keyColumns.get(i).getName()));
+                }
+            }
+        }
+        writer.write(sb.toString());
+        writer.newLine();
+    }
+
+    // Reads a table definition from encoded columns and key.
+    private Table decodeTable(String schema, String tableName,
+            String columnList, String keyList)
+            throws UnsupportedEncodingException
+    {
+        Table table = new Table(schema, tableName);
+        Map<String, Column> columns = new TreeMap<String, Column>();
+        int position = 1;
+        for (String columnDef : columnList.split(","))
+        {
+            String[] attributes = columnDef.split(":", -1);
+            Column column = new Column(decode(attributes[0]),
+                    Integer.parseInt(attributes[1]),
+                    Long.parseLong(attributes[2]),
+                    Boolean.parseBoolean(attributes[3]), null);
+            column.setSigned(Boolean.parseBoolean(attributes[4]));
+            column.setTypeDescription(decode(attributes[5]));
+            column.setPosition(position++);
+            table.AddColumn(column);
+            columns.put(column.getName(), column);
+        }
+        if (keyList.length() > 0)
+        {
+            Key key = new Key(Key.Primary);
+            for (String name : keyList.split(","))
+                key.AddColumn(columns.get(decode(name)));
+            table.AddKey(key);
+        }
+        return table;
+    }
+
+    // Opens the log for writing.
+    private BufferedWriter openWriter(File logFile, boolean append)
+            throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                logFile, append), "UTF-8"));
+    }
+
+    private String key(String schema, String tableName)
+    {
+        return schema + "." + tableName;
+    }
+
+    private String encode(String value) throws UnsupportedEncodingException
+    {
+        if (value == null)
+            return "";
+        else
+            return URLEncoder.encode(value, "UTF-8");
+    }
+
+    private String decode(String value) throws UnsupportedEncodingException
+    {
+        return URLDecoder.decode(value, "UTF-8");
+    }
+}
@@ -0,0 +1,734 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses MySQL CREATE TABLE, ALTER TABLE, and DROP TABLE statements to track
+ * table definitions from the replication stream. Only column names, types,
+ * signed flags, and primary keys are tracked, which is what filters need to
+ * label row changes. Types and type descriptions follow the values that the
+ * MySQL JDBC driver returns, so that parsed tables look like tables read from
+ * the DBMS.
+ * <p/>
+ * Methods return null if they cannot understand a statement fully. Callers
+ * must then treat the table definition as unknown.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TableDefinitionParser
+{
+    // Type names mapped to the type names and java.sql.Types values that the
+    // MySQL JDBC driver reports.
+    private static final Map<String, String>  typeNames  = new HashMap<String, String>();
+    private static final Map<String, Integer> typeCodes  = new HashMap<String, Integer>();
+
+    // Numeric types, which may be unsigned.
+    private static final List<String>         numerics   = new ArrayList<String>();
+
+    // Keywords that start index and constraint definitions.
+    private static final List<String>         indexWords = new ArrayList<String>();
+
+    static
+    {
+        addType("BIT", "BIT", Types.BIT, false);
+        addType("BOOL", "TINYINT", Types.TINYINT, true);
+        addType("BOOLEAN", "TINYINT", Types.TINYINT, true);
+        addType("TINYINT", "TINYINT", Types.TINYINT, true);
+        addType("SMALLINT", "SMALLINT", Types.SMALLINT, true);
+        addType("MEDIUMINT", "MEDIUMINT", Types.INTEGER, true);
+        addType("INT", "INT", Types.INTEGER, true);
+        addType("INTEGER", "INT", Types.INTEGER, true);
+        addType("BIGINT", "BIGINT", Types.BIGINT, true);
+        addType("SERIAL", "BIGINT UNSIGNED", Types.BIGINT, false);
+        addType("FLOAT", "FLOAT", Types.REAL, true);
+        addType("DOUBLE", "DOUBLE", Types.DOUBLE, true);
+        addType("REAL", "DOUBLE", Types.DOUBLE, true);
+        addType("DECIMAL", "DECIMAL", Types.DECIMAL, true);
+        addType("DEC", "DECIMAL", Types.DECIMAL, true);
+        addType("NUMERIC", "DECIMAL", Types.DECIMAL, true);
+        addType("FIXED", "DECIMAL", Types.DECIMAL, true);
+        addType("DATE", "DATE", Types.DATE, false);
+        addType("DATETIME", "DATETIME", Types.TIMESTAMP, false);
+        addType("TIMESTAMP", "TIMESTAMP", Types.TIMESTAMP, false);
+        addType("TIME", "TIME", Types.TIME, false);
+        addType("YEAR", "YEAR", Types.DATE, false);
+        addType("CHAR", "CHAR", Types.CHAR, false);
+        addType("CHARACTER", "CHAR", Types.CHAR, false);
+        addType("NCHAR", "CHAR", Types.CHAR, false);
+        addType("VARCHAR", "VARCHAR", Types.VARCHAR, false);
+        addType("NVARCHAR", "VARCHAR", Types.VARCHAR, false);
+        addType("BINARY", "BINARY", Types.BINARY, false);
+        addType("VARBINARY", "VARBINARY", Types.VARBINARY, false);
+        addType("TINYBLOB", "TINYBLOB", Types.VARBINARY, false);
+        addType("BLOB", "BLOB", Types.LONGVARBINARY, false);
+        addType("MEDIUMBLOB", "MEDIUMBLOB", Types.LONGVARBINARY, false);
+        addType("LONGBLOB", "LONGBLOB", Types.LONGVARBINARY, false);
+        addType("TINYTEXT", "TINYTEXT", Types.VARCHAR, false);
+        addType("TEXT", "TEXT", Types.LONGVARCHAR, false);
+        addType("MEDIUMTEXT", "MEDIUMTEXT", Types.LONGVARCHAR, false);
+        addType("LONGTEXT", "LONGTEXT", Types.LONGVARCHAR, false);
+        addType("JSON", "JSON", Types.LONGVARCHAR, false);
+        addType("ENUM", "ENUM", Types.CHAR, false);
+        addType("SET", "SET", Types.CHAR, false);
+        addType("GEOMETRY", "GEOMETRY", Types.BINARY, false);
+        addType("POINT", "POINT", Types.BINARY, false);
+        addType("LINESTRING", "LINESTRING", Types.BINARY, false);
+        addType("POLYGON", "POLYGON", Types.BINARY, false);
+
+        String[] words = {"CONSTRAINT", "PRIMARY", "KEY", "INDEX", "UNIQUE",
+                "FULLTEXT", "SPATIAL", "FOREIGN", "CHECK"};
+        for (String word : words)
+            indexWords.add(word);
+    }
+
+    private static void addType(String name, String typeName, int typeCode,
+            boolean numeric)
+    {
+        typeNames.put(name, typeName);
+        typeCodes.put(name, typeCode);
+        if (numeric)
+            numerics.add(name);
+    }
+
+    /**
+     * Parses a CREATE TABLE statement.
+     * 
+     * @param schema Schema of the new table
+     * @param tableName Name of the new table
+     * @param statement CREATE TABLE statement
+     * @return Table definition or null if the statement does not define the
+     *         table columns, for example CREATE TABLE ... LIKE or CREATE TABLE
+     *         ... SELECT
+     */
+    public Table parseCreate(String schema, String tableName, String statement)
+    {
+        List<String> tokens = tokenize(statement);
+        int index = skipTableName(tokens);
+        if (index < 0 || index >= tokens.size()
+                || !"(".equals(tokens.get(index)))
+            return null;
+        int end = findClose(tokens, index);
+        if (end < 0)
+            return null;
+
+        // Definitions that depend on other tables cannot be parsed.
+        for (int i = end + 1; i < tokens.size(); i++)
+        {
+            String word = tokens.get(i).toUpperCase();
+            if ("SELECT".equals(word) || "AS".equals(word)
+                    || "LIKE".equals(word))
+                return null;
+        }
+
+        List<Column> columns = new ArrayList<Column>();
+        List<String> primaryKey = new ArrayList<String>();
+        for (List<String> item : split(tokens, index + 1, end))
+        {
+            String word = item.get(0).toUpperCase();
+            if ("LIKE".equals(word))
+                return null;
+            else if (indexWords.contains(word))
+            {
+                List<String> keyColumns = parsePrimaryKey(item);
+                if (keyColumns != null)
+                {
+                    primaryKey.clear();
+                    primaryKey.addAll(keyColumns);
+                }
+            }
+            else
+            {
+                Column column = parseColumn(item, 0);
+                if (column == null)
+                    return null;
+                columns.add(column);
+                if (isInlinePrimaryKey(item))
+                {
+                    primaryKey.clear();
+                    primaryKey.add(column.getName());
+                }
+            }
+        }
+        if (columns.size() == 0)
+            return null;
+        return buildTable(schema, tableName, columns, primaryKey);
+    }
+
+    /**
+     * Applies an ALTER TABLE statement to a table definition. The definition
+     * passed in is not changed.
+     * 
+     * @param table Table definition before the statement
+     * @param statement ALTER TABLE statement
+     * @return New table definition, which has a new schema or name if the
+     *         statement renames the table, or null if the statement contains
+     *         changes that cannot be parsed or do not fit the table
+     */
+    public Table parseAlter(Table table, String statement)
+    {
+        List<String> tokens = tokenize(statement);
+        int index = skipTableName(tokens);
+        if (index < 0)
+            return null;
+
+        // Copy the current definition so that we can change it.
+        String schema = table.getSchema();
+        String tableName = table.getName();
+        List<Column> columns = new ArrayList<Column>();
+        for (Column column : table.getAllColumns())
+            columns.add(copyColumn(column));
+        List<String> primaryKey = new ArrayList<String>();
+        Key key = table.getPrimaryKey();
+        if (key != null)
+        {
+            for (Column column : key.getColumns())
+                primaryKey.add(column.getName());
+        }
+
+        for (List<String> spec : split(tokens, index, tokens.size()))
+        {
+            String word = spec.get(0).toUpperCase();
+            int next = 1;
+            if ("ADD".equals(word))
+            {
+                String object = wordAt(spec, next);
+                if ("COLUMN".equals(object))
+                    object = wordAt(spec, ++next);
+
+                // MariaDB skips columns that exist if IF NOT EXISTS is given.
+                boolean ifNotExists = false;
+                if ("IF".equals(object) && "NOT".equals(wordAt(spec, next + 1))
+                        && "EXISTS".equals(wordAt(spec, next + 2)))
+                {
+                    ifNotExists = true;
+                    next += 3;
+                    object = wordAt(spec, next);
+                }
+
+                if ("(".equals(object))
+                {
+                    // ADD (col1 ..., col2 ...)
+                    int end = findClose(spec, next);
+                    if (end < 0)
+                        return null;
+                    for (List<String> item : split(spec, next + 1, end))
+                    {
+                        if (!addColumn(columns, item, 0, ifNotExists))
+                            return null;
+                    }
+                }
+                else if (indexWords.contains(object))
+                {
+                    List<String> keyColumns = parsePrimaryKey(spec.subList(
+                            next, spec.size()));
+                    if (keyColumns != null)
+                    {
+                        primaryKey.clear();
+                        primaryKey.addAll(keyColumns);
+                    }
+                }
+                else if ("PARTITION".equals(object))
+                    continue;
+                else if (!addColumn(columns, spec, next, ifNotExists))
+                    return null;
+            }
+            else if ("DROP".equals(word))
+            {
+                String object = wordAt(spec, next);
+                if ("COLUMN".equals(object))
+                    object = wordAt(spec, ++next);
+
+                if ("PRIMARY".equals(object))
+                    primaryKey.clear();
+                else if (indexWords.contains(object)
+                        || "PARTITION".equals(object))
+                    continue;
+                else
+                {
+                    int position = findColumn(columns, nameAt(spec, next));
+                    if (position < 0)
+                        return null;
+                    removeName(primaryKey, columns.remove(position).getName());
+                }
+            }
+            else if ("CHANGE".equals(word) || "MODIFY".equals(word))
+            {
+                if ("COLUMN".equals(wordAt(spec, next)))
+                    next++;
+                String oldName;
+                if ("CHANGE".equals(word))
+                    oldName = nameAt(spec, next++);
+                else
+                    oldName = nameAt(spec, next);
+
+                int position = findColumn(columns, oldName);
+                if (position < 0)
+                    return null;
+                Column column = parseColumn(spec, next);
+                if (column == null)
+                    return null;
+                columns.remove(position);
+                if (!placeColumn(columns, column, spec, position))
+                    return null;
+                int keyPosition = removeName(primaryKey, oldName);
+                if (keyPosition >= 0)
+                    primaryKey.add(keyPosition, column.getName());
+            }
+            else if ("RENAME".equals(word))
+            {
+                String object = wordAt(spec, next);
+                if ("COLUMN".equals(object))
+                {
+                    // RENAME COLUMN old TO new
+                    int position = findColumn(columns, nameAt(spec, next + 1));
+                    String newName = nameAt(spec, next + 3);
+                    if (position < 0 || newName == null)
+                        return null;
+                    Column column = columns.get(position);
+                    int keyPosition = removeName(primaryKey, column.getName());
+                    if (keyPosition >= 0)
+                        primaryKey.add(keyPosition, newName);
+                    column.setName(newName);
+                }
+                else if ("INDEX".equals(object) || "KEY".equals(object))
+                    continue;
+                else
+                {
+                    // RENAME [TO | AS] [schema.]table
+                    if ("TO".equals(object) || "AS".equals(object))
+                        next++;
+                    if (".".equals(wordAt(spec, next + 1)))
+                    {
+                        schema = nameAt(spec, next);
+                        next += 2;
+                    }
+                    tableName = nameAt(spec, next);
+                    if (tableName == null)
+                        return null;
+                }
+            }
+            else if ("ALTER".equals(word) || "ENGINE".equals(word)
+                    || "AUTO_INCREMENT".equals(word)
+                    || "DEFAULT".equals(word) || "CHARACTER".equals(word)
+                    || "CHARSET".equals(word) || "COLLATE".equals(word)
+                    || "COMMENT".equals(word) || "ROW_FORMAT".equals(word)
+                    || "KEY_BLOCK_SIZE".equals(word)
+                    || "ALGORITHM".equals(word) || "LOCK".equals(word)
+                    || "FORCE".equals(word) || "ORDER".equals(word)
+                    || "ENABLE".equals(word) || "DISABLE".equals(word)
+                    || "PACK_KEYS".equals(word) || "CHECKSUM".equals(word))
+            {
+                // These change neither columns nor keys.
+                continue;
+            }
+            else
+                return null;
+        }
+
+        return buildTable(schema, tableName, columns, primaryKey);
+    }
+
+    /**
+     * Parses a DROP TABLE statement, which may name several tables.
+     * 
+     * @param defaultSchema Schema of tables without a schema name
+     * @param statement DROP TABLE statement
+     * @return Dropped tables or null if the statement drops temporary tables
+     *         or cannot be parsed
+     */
+    public List<SqlObject> parseDrop(String defaultSchema, String statement)
+    {
+        List<String> tokens = tokenize(statement);
+        if (tokens.size() < 3 || "TEMPORARY".equalsIgnoreCase(tokens.get(1)))
+            return null;
+        int index = 2;
+        if ("IF".equals(wordAt(tokens, index)))
+            index += 2;
+
+        List<SqlObject> tables = new ArrayList<SqlObject>();
+        for (List<String> item : split(tokens, index, tokens.size()))
+        {
+            String schema = defaultSchema;
+            String tableName = nameAt(item, 0);
+            if (item.size() > 2 && ".".equals(item.get(1)))
+            {
+                schema = tableName;
+                tableName = nameAt(item, 2);
+            }
+            if (tableName == null)
+                return null;
+            tables.add(new SqlObject(schema, tableName));
+        }
+        return tables;
+    }
+
+    // Returns the index after the table name in a CREATE or ALTER statement,
+    // or -1 if there is no table name.
+    private int skipTableName(List<String> tokens)
+    {
+        int index = 0;
+        while (index < tokens.size()
+                && !"TABLE".equalsIgnoreCase(tokens.get(index)))
+        {
+            // Temporary tables do not appear in row changes.
+            if ("TEMPORARY".equalsIgnoreCase(tokens.get(index)))
+                return -1;
+            index++;
+        }
+        index++;
+        if ("IF".equals(wordAt(tokens, index)))
+            index += 3;
+        if (index >= tokens.size())
+            return -1;
+        index++;
+        if (".".equals(wordAt(tokens, index)))
+            index += 2;
+        return index;
+    }
+
+    // Parses a column definition starting at the column name.
+    private Column parseColumn(List<String> tokens, int index)
+    {
+        String name = nameAt(tokens, index);
+        String type = wordAt(tokens, index + 1);
+        if (name == null || type == null || indexWords.contains(type))
+            return null;
+
+        // Look for a length and for the UNSIGNED and NOT NULL attributes.
+        long length = 0;
+        boolean unsigned = "SERIAL".equals(type);
+        boolean notNull = false;
+        for (int i = index + 2; i < tokens.size(); i++)
+        {
+            String word = tokens.get(i).toUpperCase();
+            if (i == index + 2 && "(".equals(word) && i + 1 < tokens.size())
+            {
+                try
+                {
+                    length = Long.parseLong(tokens.get(i + 1));
+                }
+                catch (NumberFormatException e)
+                {
+                    // ENUM and SET values are not lengths.
+                }
+            }
+            else if ("UNSIGNED".equals(word) || "ZEROFILL".equals(word))
+                unsigned = true;
+            else if ("NOT".equals(word) && "NULL".equals(wordAt(tokens, i + 1)))
+                notNull = true;
+        }
+
+        String typeName = typeNames.get(type);
+        Integer typeCode = typeCodes.get(type);
+        if (typeName == null)
+        {
+            typeName = type;
+            typeCode = Types.OTHER;
+        }
+        if (unsigned && numerics.contains(type))
+            typeName += " UNSIGNED";
+
+        Column column = new Column(name, typeCode, length, notNull, null);
+        column.setTypeDescription(typeName);
+        column.setSigned(!typeName.contains("UNSIGNED"));
+        return column;
+    }
+
+    // Returns true if a column definition declares the column as primary key.
+    private boolean isInlinePrimaryKey(List<String> tokens)
+    {
+        for (int i = 2; i < tokens.size() - 1; i++)
+        {
+            if ("PRIMARY".equalsIgnoreCase(tokens.get(i))
+                    && "KEY".equalsIgnoreCase(tokens.get(i + 1)))
+                return true;
+        }
+        return false;
+    }
+
+    // Returns the columns of a primary key definition or null if the
+    // definition is for another kind of index.
+    private List<String> parsePrimaryKey(List<String> tokens)
+    {
+        int index = 0;
+        if ("CONSTRAINT".equals(wordAt(tokens, index)))
+        {
+            index++;
+            if (!"PRIMARY".equals(wordAt(tokens, index)))
+                index++;
+        }
+        if (!"PRIMARY".equals(wordAt(tokens, index)))
+            return null;
+
+        // Find the column list and take the first name of each item, which
+        // leaves out prefix lengths and ASC or DESC.
+        while (index < tokens.size() && !"(".equals(tokens.get(index)))
+            index++;
+        int end = findClose(tokens, index);
+        if (end < 0)
+            return null;
+        List<String> keyColumns = new ArrayList<String>();
+        for (List<String> item : split(tokens, index + 1, end))
+            keyColumns.add(nameAt(item, 0));
+        return keyColumns;
+    }
+
+    // Adds a column from an ALTER TABLE ADD specification. Adding a column
+    // that exists fails unless the statement says IF NOT EXISTS, in which
+    // case the existing column is left as it is.
+    private boolean addColumn(List<Column> columns, List<String> tokens,
+            int index, boolean ifNotExists)
+    {
+        Column column = parseColumn(tokens, index);
+        if (column == null)
+            return false;
+        if (findColumn(columns, column.getName()) >= 0)
+            return ifNotExists;
+        return placeColumn(columns, column, tokens, columns.size());
+    }
+
+    // Inserts a column at the position given by FIRST or AFTER, or at the
+    // default position if there is neither.
+    private boolean placeColumn(List<Column> columns, Column column,
+            List<String> tokens, int defaultPosition)
+    {
+        int size = tokens.size();
+        if ("FIRST".equalsIgnoreCase(tokens.get(size - 1)))
+            columns.add(0, column);
+        else if (size > 1 && "AFTER".equalsIgnoreCase(tokens.get(size - 2)))
+        {
+            int position = findColumn(columns, nameAt(tokens, size - 1));
+            if (position < 0)
+                return false;
+            columns.add(position + 1, column);
+        }
+        else
+            columns.add(defaultPosition, column);
+        return true;
+    }
+
+    // Builds a table with positions and primary key set.
+    private Table buildTable(String schema, String tableName,
+            List<Column> columns, List<String> primaryKey)
+    {
+        Table table = new Table(schema, tableName);
+        int position = 1;
+        for (Column column : columns)
+        {
+            column.setPosition(position++);
+            table.AddColumn(column);
+        }
+        if (primaryKey.size() > 0)
+        {
+            Key key = new Key(Key.Primary);
+            for (String name : primaryKey)
+            {
+                int index = findColumn(columns, name);
+                if (index < 0)
+                    return null;
+                key.AddColumn(columns.get(index));
+            }
+            table.AddKey(key);
+        }
+        return table;
+    }
+
+    // Copies a column definition.
+    private Column copyColumn(Column column)
+    {
+        Column copy = new Column(column.getName(), column.getType(),
+                column.getLength(), column.isNotNull(), null);
+        copy.setTypeDescription(column.getTypeDescription());
+        if (column.isSignedSet())
+            copy.setSigned(column.isSigned());
+        copy.setBlob(column.isBlob());
+        copy.setPosition(column.getPosition());
+        return copy;
+    }
+
+    // Finds a column by name. MySQL column names are not case sensitive.
+    private int findColumn(List<Column> columns, String name)
+    {
+        for (int i = 0; i < columns.size(); i++)
+        {
+            if (columns.get(i).getName().equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    // Removes a name from a list, returning its former index or -1.
+    private int removeName(List<String> names, String name)
+    {
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (names.get(i).equalsIgnoreCase(name))
+            {
+                names.remove(i);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns a token in upper case or null if there is none.
+    private String wordAt(List<String> tokens, int index)
+    {
+        if (index < tokens.size())
+            return tokens.get(index).toUpperCase();
+        else
+            return null;
+    }
+
+    // Returns an identifier token without quotes or null if there is none.
+    private String nameAt(List<String> tokens, int index)
+    {
+        if (index >= tokens.size())
+            return null;
+        String token = tokens.get(index);
+        if (token.length() >= 2
+                && (token.startsWith("`") || token.startsWith("\"")))
+        {
+            char quote = token.charAt(0);
+            return token.substring(1, token.length() - 1).replace(
+                    "" + quote + quote, "" + quote);
+        }
+        return token;
+    }
+
+    // Returns the index of the parenthesis that closes the one at index, or
+    // -1 if it is not closed.
+    private int findClose(List<String> tokens, int index)
+    {
+        int depth = 0;
+        for (int i = index; i < tokens.size(); i++)
+        {
+            String token = tokens.get(i);
+            if ("(".equals(token))
+                depth++;
+            else if (")".equals(token) && --depth == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    // Splits tokens between start and end into items separated by commas
+    // that are not inside parentheses. Empty items are dropped.
+    private List<List<String>> split(List<String> tokens, int start, int end)
+    {
+        List<List<String>> items = new ArrayList<List<String>>();
+        List<String> item = new ArrayList<String>();
+        int depth = 0;
+        for (int i = start; i < end; i++)
+        {
+            String token = tokens.get(i);
+            if ("(".equals(token))
+                depth++;
+            else if (")".equals(token))
+                depth--;
+            else if (depth == 0 && (",".equals(token) || ";".equals(token)))
+            {
+                if (item.size() > 0)
+                    items.add(item);
+                item = new ArrayList<String>();
+                continue;
+            }
+            item.add(token);
+        }
+        if (item.size() > 0)
+            items.add(item);
+        return items;
+    }
+
+    // Splits a statement into words, quoted identifiers, quoted strings, and
+    // punctuation. Comments are dropped.
+    private List<String> tokenize(String statement)
+    {
+        List<String> tokens = new ArrayList<String>();
+        int length = statement.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = statement.charAt(i);
+            if (Character.isWhitespace(c))
+                i++;
+            else if (c == '/' && statement.startsWith("/*", i))
+            {
+                int end = statement.indexOf("*/", i + 2);
+                i = (end < 0) ? length : end + 2;
+            }
+            else if (c == '#' || (c == '-' && statement.startsWith("-- ", i)))
+            {
+                int end = statement.indexOf('\n', i);
+                i = (end < 0) ? length : end + 1;
+            }
+            else if (c == '`' || c == '\'' || c == '"')
+            {
+                // Quoted identifier or string. Quotes are escaped by
+                // doubling them or in strings with a backslash.
+                int end = i + 1;
+                while (end < length)
+                {
+                    char q = statement.charAt(end);
+                    if (q == '\\' && c != '`')
+                        end += 2;
+                    else if (q == c && end + 1 < length
+                            && statement.charAt(end + 1) == c)
+                        end += 2;
+                    else if (q == c)
+                        break;
+                    else
+                        end++;
+                }
+                end = Math.min(end + 1, length);
+                tokens.add(statement.substring(i, end));
+                i = end;
+            }
+            else if ("(),;=.".indexOf(c) >= 0)
+            {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+            else
+            {
+                int end = i + 1;
+                while (end < length)
+                {
+                    char w = statement.charAt(end);
+                    if (Character.isWhitespace(w)
+                            || "(),;=.`'\"".indexOf(w) >= 0)
+                        break;
+                    end++;
+                }
+                tokens.add(statement.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+}
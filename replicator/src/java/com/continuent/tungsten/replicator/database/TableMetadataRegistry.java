@@ -0,0 +1,524 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.sql.SQLException;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.datasource.UniversalConnection;
+import com.continuent.tungsten.replicator.datasource.UniversalDataSource;
+
+/**
+ * Caches table metadata for a single data source so that it may be shared by
+ * all components that read metadata from that data source. Lookups use a
+ * single connection and are serialized, so that concurrent requests for the
+ * same table result in a single query. Components must invalidate metadata
+ * when they see DDL in the replication stream.
+ * <p/>
+ * The registry keeps a version that increases whenever metadata are
+ * invalidated. Lookups that started before an invalidation do not cache their
+ * result, which prevents stale definitions from being stored after DDL.
+ * Clients that derive their own data from table metadata may use the version
+ * to tell when to recompute it.
+ * <p/>
+ * A registry may also keep a {@link SchemaHistory}. Clients that pass the
+ * seqno of the event they are processing then get table definitions as of
+ * that event, which matters when the DBMS schema is ahead of the replication
+ * stream, for example when a replicator is far behind or replays old logs.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TableMetadataRegistry
+{
+    private static Logger             logger                    = Logger.getLogger(TableMetadataRegistry.class);
+
+    /** Table ID value that means the caller has no table ID to check. */
+    public static final long          NO_TABLE_ID               = -1;
+
+    private final String              name;
+    private final UniversalDataSource dataSource;
+    private final TableMetadataCache  cache;
+    private long                      reconnectTimeoutInSeconds = 0;
+    private SchemaHistory             schemaHistory;
+
+    // Lookup connection, which is guarded by lookupLock.
+    private final Object              lookupLock                = new Object();
+    private Database                  conn;
+    private boolean                   ownsConnection            = true;
+    private long                      lastConnectionTime;
+
+    // Version and statistics, which are guarded by this.
+    private long                      version                   = 0;
+    private long                      hits                      = 0;
+    private long                      misses                    = 0;
+    private long                      sharedLookups             = 0;
+    private long                      invalidations             = 0;
+    private long                      historyHits               = 0;
+
+    /**
+     * Creates a new registry.
+     * 
+     * @param name Name of the data source, used for logging and status
+     * @param dataSource Data source from which to read metadata
+     * @param capacity Maximum number of tables to cache
+     */
+    public TableMetadataRegistry(String name, UniversalDataSource dataSource,
+            int capacity)
+    {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.cache = new TableMetadataCache(capacity);
+    }
+
+    /**
+     * Creates a new registry that looks up metadata on a connection owned by
+     * the caller. The registry never closes this connection.
+     * 
+     * @param name Name of the data source, used for logging and status
+     * @param conn Connection from which to read metadata
+     * @param capacity Maximum number of tables to cache
+     */
+    public TableMetadataRegistry(String name, Database conn, int capacity)
+    {
+        this.name = name;
+        this.dataSource = null;
+        this.cache = new TableMetadataCache(capacity);
+        this.conn = conn;
+        this.ownsConnection = false;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Sets the number of seconds after which the lookup connection is
+     * reopened. 0 means the connection is kept until it fails.
+     */
+    public void setReconnectTimeoutInSeconds(long reconnectTimeoutInSeconds)
+    {
+        this.reconnectTimeoutInSeconds = reconnectTimeoutInSeconds;
+    }
+
+    /**
+     * Sets the schema history used to answer lookups by seqno. The registry
+     * closes the history when it is released.
+     */
+    public void setSchemaHistory(SchemaHistory schemaHistory)
+    {
+        this.schemaHistory = schemaHistory;
+    }
+
+    public SchemaHistory getSchemaHistory()
+    {
+        return schemaHistory;
+    }
+
+    /** Returns the current metadata version. */
+    public synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /** Returns the number of tables in the cache. */
+    public synchronized int size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Returns metadata for a table, relying on invalidation to detect schema
+     * changes.
+     * 
+     * @see #getTable(String, String, long)
+     */
+    public Table getTable(String schema, String tableName) throws SQLException,
+            ReplicatorException
+    {
+        return getTable(schema, tableName, NO_TABLE_ID);
+    }
+
+    /**
+     * Returns metadata for a table from the cache, or from the data source if
+     * it is not cached. Callers must not change the table, which is shared.
+     * 
+     * @param schema Schema name
+     * @param tableName Table name
+     * @param tableId Table ID from the replication stream. If it does not
+     *            match the cached table, the table is read again. Use
+     *            {@link #NO_TABLE_ID} if there is none.
+     * @return Table metadata or null if the table does not exist
+     */
+    public Table getTable(String schema, String tableName, long tableId)
+            throws SQLException, ReplicatorException
+    {
+        synchronized (this)
+        {
+            Table table = retrieve(schema, tableName, tableId);
+            if (table != null)
+            {
+                hits++;
+                return table;
+            }
+        }
+
+        synchronized (lookupLock)
+        {
+            // Another client may have loaded the table while we waited.
+            long lookupVersion;
+            synchronized (this)
+            {
+                Table table = retrieve(schema, tableName, tableId);
+                if (table != null)
+                {
+                    sharedLookups++;
+                    return table;
+                }
+                misses++;
+                lookupVersion = version;
+            }
+
+            Table table = findTable(schema, tableName);
+            if (table != null)
+            {
+                if (tableId != NO_TABLE_ID)
+                    table.setTableId(tableId);
+                synchronized (this)
+                {
+                    if (lookupVersion == version)
+                        cache.store(table);
+                }
+            }
+            else if (logger.isDebugEnabled())
+            {
+                logger.debug("Table not found: dataSource=" + name + " table="
+                        + schema + "." + tableName);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Returns metadata for a table as of an event in the replication stream.
+     * If there is a schema history that knows the table at this seqno, it
+     * supplies the definition. Otherwise the table is read as for
+     * {@link #getTable(String, String, long)} and added to the history.
+     * 
+     * @param schema Schema name
+     * @param tableName Table name
+     * @param tableId Table ID from the replication stream or
+     *            {@link #NO_TABLE_ID}
+     * @param seqno Seqno of the event that uses the table
+     * @return Table metadata or null if the table does not exist
+     */
+    public Table getTable(String schema, String tableName, long tableId,
+            long seqno) throws SQLException, ReplicatorException
+    {
+        if (schemaHistory == null)
+            return getTable(schema, tableName, tableId);
+
+        Table table = schemaHistory.getTable(schema, tableName, seqno);
+        if (table != null)
+        {
+            synchronized (this)
+            {
+                historyHits++;
+            }
+            return table;
+        }
+
+        table = getTable(schema, tableName, tableId);
+        if (table != null)
+            schemaHistory.recordTable(table, seqno);
+        return table;
+    }
+
+    /**
+     * Reads metadata for a table from the data source even if it is cached
+     * and caches the result. Use this for row changes that carry no table ID,
+     * since a schema change cannot then be detected from the stream.
+     * 
+     * @param schema Schema name
+     * @param tableName Table name
+     * @return Table metadata or null if the table does not exist
+     */
+    public Table reloadTable(String schema, String tableName)
+            throws SQLException, ReplicatorException
+    {
+        synchronized (lookupLock)
+        {
+            long lookupVersion;
+            synchronized (this)
+            {
+                misses++;
+                lookupVersion = version;
+            }
+
+            Table table = findTable(schema, tableName);
+            synchronized (this)
+            {
+                if (table == null)
+                    cache.invalidateTable(schema, tableName);
+                else if (lookupVersion == version)
+                    cache.store(table);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Reads metadata for a table as of an event in the replication stream
+     * without relying on the cache. If there is a schema history that knows
+     * the table at this seqno, it supplies the definition. Otherwise the
+     * table is read as for {@link #reloadTable(String, String)} and added to
+     * the history.
+     * 
+     * @param schema Schema name
+     * @param tableName Table name
+     * @param seqno Seqno of the event that uses the table
+     * @return Table metadata or null if the table does not exist
+     */
+    public Table reloadTable(String schema, String tableName, long seqno)
+            throws SQLException, ReplicatorException
+    {
+        if (schemaHistory == null)
+            return reloadTable(schema, tableName);
+
+        Table table = schemaHistory.getTable(schema, tableName, seqno);
+        if (table != null)
+        {
+            synchronized (this)
+            {
+                historyHits++;
+            }
+            return table;
+        }
+
+        table = reloadTable(schema, tableName);
+        if (table != null)
+            schemaHistory.recordTable(table, seqno);
+        return table;
+    }
+
+    /**
+     * Invalidates metadata affected by a SQL operation seen in the replication
+     * stream and records its effect in the schema history if there is one.
+     * 
+     * @param sqlOperation A SQLOperation from parsing
+     * @param defaultSchema Default schema in case it is not supplied by
+     *            sqlOperation
+     * @param seqno Seqno of the event that contains the statement
+     * @param epochNumber Epoch number of the event that contains the statement
+     * @param statement Statement text
+     * @return Number of tables dropped from the cache
+     */
+    public int invalidate(SqlOperation sqlOperation, String defaultSchema,
+            long seqno, long epochNumber, String statement)
+            throws ReplicatorException
+    {
+        if (schemaHistory != null)
+        {
+            schemaHistory.recordStatement(sqlOperation, defaultSchema, seqno,
+                    epochNumber, statement);
+        }
+        return invalidate(sqlOperation, defaultSchema);
+    }
+
+    /**
+     * Invalidates metadata affected by a SQL operation seen in the replication
+     * stream.
+     * 
+     * @param sqlOperation A SQLOperation from parsing
+     * @param defaultSchema Default schema in case it is not supplied by
+     *            sqlOperation
+     * @return Number of tables dropped from the cache
+     */
+    public synchronized int invalidate(SqlOperation sqlOperation,
+            String defaultSchema)
+    {
+        if (!changesMetadata(sqlOperation))
+            return 0;
+        version++;
+        int invalidated = cache.invalidate(sqlOperation, defaultSchema);
+        invalidations += invalidated;
+        return invalidated;
+    }
+
+    /**
+     * Invalidates metadata for a single table.
+     */
+    public synchronized int invalidateTable(String schema, String tableName)
+    {
+        version++;
+        int invalidated = cache.invalidateTable(schema, tableName);
+        invalidations += invalidated;
+        return invalidated;
+    }
+
+    /**
+     * Drops all cached metadata.
+     */
+    public synchronized void invalidateAll()
+    {
+        version++;
+        invalidations += cache.size();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Drops cached metadata and releases the lookup connection.
+     */
+    public void release()
+    {
+        invalidateAll();
+        synchronized (lookupLock)
+        {
+            releaseConnection();
+        }
+        if (schemaHistory != null)
+            schemaHistory.close();
+        logger.info("Released table metadata registry: " + toString());
+    }
+
+    /**
+     * Adds registry statistics to status properties.
+     */
+    public synchronized void addStatus(TungstenProperties props, String prefix)
+    {
+        props.setLong(prefix + "tables", cache.size());
+        props.setLong(prefix + "version", version);
+        props.setLong(prefix + "hits", hits);
+        props.setLong(prefix + "misses", misses);
+        props.setLong(prefix + "sharedLookups", sharedLookups);
+        props.setLong(prefix + "invalidations", invalidations);
+        if (schemaHistory != null)
+        {
+            props.setLong(prefix + "historyHits", historyHits);
+            props.setLong(prefix + "historyTables",
+                    schemaHistory.getTableCount());
+            props.setLong(prefix + "historyVersions",
+                    schemaHistory.getVersionCount());
+        }
+    }
+
+    // Returns true if the operation changes table definitions.
+    private boolean changesMetadata(SqlOperation sqlOperation)
+    {
+        int operation = sqlOperation.getOperation();
+        if (operation == SqlOperation.DROP)
+        {
+            int objectType = sqlOperation.getObjectType();
+            return objectType == SqlOperation.SCHEMA
+                    || objectType == SqlOperation.TABLE;
+        }
+        else
+            return operation == SqlOperation.ALTER
+                    || operation == SqlOperation.RENAME;
+    }
+
+    // Returns a cached table if it matches the table ID. Caller must hold the
+    // monitor on this.
+    private Table retrieve(String schema, String tableName, long tableId)
+    {
+        Table table = cache.retrieve(schema, tableName);
+        if (table != null && tableId != NO_TABLE_ID
+                && table.getTableId() != tableId)
+        {
+            // The table ID changed, so the table has been altered.
+            if (logger.isDebugEnabled())
+                logger.debug("Detected a schema change for table " + schema
+                        + "." + tableName + " - Removing table metadata");
+            cache.invalidateTable(schema, tableName);
+            version++;
+            return null;
+        }
+        return table;
+    }
+
+    // Reads table metadata, connecting first if needed. Caller must hold
+    // lookupLock.
+    private Table findTable(String schema, String tableName)
+            throws SQLException, ReplicatorException
+    {
+        if (!ownsConnection)
+            return conn.findTable(schema, tableName, false);
+
+        long currentTime = System.currentTimeMillis();
+        if (conn != null && reconnectTimeoutInSeconds > 0
+                && currentTime - lastConnectionTime > reconnectTimeoutInSeconds * 1000)
+        {
+            releaseConnection();
+        }
+        if (conn == null)
+        {
+            UniversalConnection newConn = dataSource.getConnection();
+            if (!(newConn instanceof Database))
+            {
+                dataSource.releaseConnection(newConn);
+                throw new ReplicatorException(
+                        "Data source does not support table metadata lookups: name="
+                                + name);
+            }
+            conn = (Database) newConn;
+            lastConnectionTime = currentTime;
+        }
+
+        try
+        {
+            return conn.findTable(schema, tableName, false);
+        }
+        catch (SQLException e)
+        {
+            // Drop the connection so that the next lookup reconnects.
+            releaseConnection();
+            throw e;
+        }
+    }
+
+    // Closes the lookup connection. We close it directly as the data source
+    // may already be released at shutdown. Caller must hold lookupLock.
+    private void releaseConnection()
+    {
+        if (conn != null && ownsConnection)
+        {
+            conn.close();
+            conn = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public synchronized String toString()
+    {
+        return this.getClass().getSimpleName() + " dataSource=" + name
+                + " tables=" + cache.size() + " version=" + version
+                + " hits=" + hits + " misses=" + misses + " sharedLookups="
+                + sharedLookups + " invalidations=" + invalidations;
+    }
+}
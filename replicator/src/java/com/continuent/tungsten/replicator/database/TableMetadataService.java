@@ -0,0 +1,346 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.datasource.UniversalDataSource;
+import com.continuent.tungsten.replicator.plugin.PluginContext;
+import com.continuent.tungsten.replicator.service.PipelineService;
+import com.continuent.tungsten.replicator.storage.Store;
+import com.continuent.tungsten.replicator.thl.THL;
+import com.continuent.tungsten.replicator.thl.THLEvent;
+import com.continuent.tungsten.replicator.thl.log.LogConnection;
+
+/**
+ * Provides a table metadata registry for each relational data source that is shared
+ * by all components of the replication service. Filters and extractors that
+ * find this service use it instead of keeping their own metadata caches and
+ * connections. Appliers keep looking up tables on their own connections, which
+ * see DDL in their open transactions, and use the registry only to invalidate
+ * tables after DDL. Aliases share the registry of the data source to which
+ * they refer.
+ * <p/>
+ * If schema history is enabled, each registry also tracks table definitions
+ * from DDL in the replication stream in a log in the schema history directory,
+ * so that filters can label events using the schema as of each event. The
+ * history is checked against the THL store whenever it is opened. Versions
+ * from events the THL no longer has are dropped, as are versions that no
+ * longer apply to any event in the THL. If the history comes from another
+ * replication stream, for example after a reset, it is discarded.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TableMetadataService implements PipelineService
+{
+    private static Logger                                   logger                    = Logger.getLogger(TableMetadataService.class);
+
+    // Properties.
+    private String                                          name;
+    private int                                             cacheSize                 = 5000;
+    private long                                            reconnectTimeoutInSeconds = 60;
+    private boolean                                         schemaHistory             = false;
+    private String                                          schemaHistoryDir;
+    private String                                          thlStore                  = "thl";
+
+    // Operational variables.
+    private PluginContext                                   context;
+    private Map<UniversalDataSource, TableMetadataRegistry> registries                = new HashMap<UniversalDataSource, TableMetadataRegistry>();
+
+    /**
+     * Returns the shared registry for a data source if the pipeline has a table
+     * metadata service.
+     * 
+     * @param context Plugin context of the calling component
+     * @param dataSource Name of the data source
+     * @return Shared registry or null if there is no table metadata service or
+     *         no such data source
+     */
+    public static TableMetadataRegistry findRegistry(PluginContext context,
+            String dataSource) throws ReplicatorException
+    {
+        List<PipelineService> services = context.getServices();
+        if (services == null)
+            return null;
+        for (PipelineService service : services)
+        {
+            if (service instanceof TableMetadataService)
+                return ((TableMetadataService) service).getRegistry(dataSource);
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.service.PipelineService#getName()
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.service.PipelineService#setName(java.lang.String)
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /** Sets the maximum number of tables cached for each data source. */
+    public void setCacheSize(int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets the number of seconds after which lookup connections are reopened.
+     */
+    public void setReconnectTimeoutInSeconds(long reconnectTimeoutInSeconds)
+    {
+        this.reconnectTimeoutInSeconds = reconnectTimeoutInSeconds;
+    }
+
+    /**
+     * If true, track table definitions by seqno using DDL from the replication
+     * stream.
+     */
+    public void setSchemaHistory(boolean schemaHistory)
+    {
+        this.schemaHistory = schemaHistory;
+    }
+
+    /** Sets the directory that holds schema history logs. */
+    public void setSchemaHistoryDir(String schemaHistoryDir)
+    {
+        this.schemaHistoryDir = schemaHistoryDir;
+    }
+
+    /**
+     * Sets the name of the THL store against which schema history is checked.
+     */
+    public void setThlStore(String thlStore)
+    {
+        this.thlStore = thlStore;
+    }
+
+    /**
+     * Returns the registry for a data source, creating it if necessary.
+     * 
+     * @param dataSource Name of the data source
+     * @return Registry or null if there is no such data source
+     */
+    public synchronized TableMetadataRegistry getRegistry(String dataSource)
+            throws ReplicatorException
+    {
+        if (context == null)
+        {
+            throw new ReplicatorException(
+                    "Table metadata service is not configured: name=" + name);
+        }
+        UniversalDataSource dataSourceImpl = context.getDataSource(dataSource);
+        if (dataSourceImpl == null)
+            return null;
+
+        TableMetadataRegistry registry = registries.get(dataSourceImpl);
+        if (registry == null)
+        {
+            logger.info("Creating table metadata registry: service=" + name
+                    + " dataSource=" + dataSource);
+            registry = new TableMetadataRegistry(dataSource, dataSourceImpl,
+                    cacheSize);
+            registry.setReconnectTimeoutInSeconds(reconnectTimeoutInSeconds);
+            if (schemaHistory)
+            {
+                // Name the log after the data source rather than the alias
+                // so that it does not depend on which component asks first.
+                File logFile = new File(schemaHistoryDir, "schema-history-"
+                        + dataSourceImpl.getName() + ".log");
+                SchemaHistory history = new SchemaHistory(logFile);
+                history.open();
+                checkSchemaHistory(history);
+                registry.setSchemaHistory(history);
+            }
+            registries.put(dataSourceImpl, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Checks schema history against the THL, which may have been truncated,
+     * purged, or reset since the history was written.
+     */
+    private void checkSchemaHistory(SchemaHistory history)
+            throws ReplicatorException
+    {
+        Store store = context.getStore(thlStore);
+        if (!(store instanceof THL))
+        {
+            logger.warn("Discarding schema history as there is no THL store to check it against: thlStore="
+                    + thlStore);
+            history.clear();
+            return;
+        }
+        THL thl = (THL) store;
+        long minSeqno = thl.getMinStoredSeqno();
+        long maxSeqno = thl.getMaxStoredSeqno();
+        if (maxSeqno < 0)
+        {
+            if (history.getVersionCount() > 0)
+            {
+                logger.info("Discarding schema history as the THL is empty");
+                history.clear();
+            }
+            return;
+        }
+
+        // Forget DDL from events that are no longer in the THL. They are
+        // recorded again if they are extracted again.
+        history.truncate(maxSeqno);
+
+        // DDL that is still in the THL must come from the same events.
+        long ddlSeqno = history.getLastDdlSeqno();
+        if (ddlSeqno >= minSeqno)
+        {
+            long epochNumber = getEpochNumber(thl, ddlSeqno);
+            if (epochNumber != history.getDdlEpoch(ddlSeqno))
+            {
+                logger.info("Discarding schema history from another replication stream: seqno="
+                        + ddlSeqno
+                        + " history epoch="
+                        + history.getDdlEpoch(ddlSeqno)
+                        + " THL epoch=" + epochNumber);
+                history.clear();
+                return;
+            }
+        }
+
+        // Drop versions that no longer apply to any event in the THL.
+        history.prune(minSeqno);
+    }
+
+    // Returns the epoch number of an event in the THL or -1 if it is not
+    // found.
+    private long getEpochNumber(THL thl, long seqno)
+            throws ReplicatorException
+    {
+        LogConnection conn = thl.connect(true);
+        try
+        {
+            if (conn.seek(seqno))
+            {
+                THLEvent event = conn.next(false);
+                if (event != null && event.getSeqno() == seqno)
+                    return event.getEpochNumber();
+            }
+            return -1;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ReplicatorException(
+                    "Interrupted while checking schema history", e);
+        }
+        finally
+        {
+            thl.disconnect(conn);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.plugin.ReplicatorPlugin#configure(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void configure(PluginContext context) throws ReplicatorException,
+            InterruptedException
+    {
+        this.context = context;
+        if (schemaHistory)
+        {
+            if (schemaHistoryDir == null)
+            {
+                throw new ReplicatorException(
+                        "Schema history requires a schemaHistoryDir property: name="
+                                + name);
+            }
+            File dir = new File(schemaHistoryDir);
+            if (!dir.isDirectory() && !dir.mkdirs())
+            {
+                throw new ReplicatorException(
+                        "Unable to create schema history directory: "
+                                + dir.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.plugin.ReplicatorPlugin#prepare(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void prepare(PluginContext context) throws ReplicatorException,
+            InterruptedException
+    {
+        // Registries are created when components first ask for them.
+    }
+
+    /**
+     * Releases all registries. {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.plugin.ReplicatorPlugin#release(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public synchronized void release(PluginContext context)
+            throws ReplicatorException, InterruptedException
+    {
+        for (TableMetadataRegistry registry : registries.values())
+            registry.release();
+        registries.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.service.PipelineService#status()
+     */
+    public synchronized TungstenProperties status()
+    {
+        TungstenProperties props = new TungstenProperties();
+        props.setString("name", name);
+        props.setLong("cacheSize", cacheSize);
+        props.setBoolean("schemaHistory", schemaHistory);
+        props.setLong("registries", registries.size());
+        for (TableMetadataRegistry registry : registries.values())
+            registry.addStatus(props, registry.getName() + ".");
+        return props;
+    }
+}
@@ -44,7 +44,7 @@ import com.continuent.tungsten.replicator.dbms.OneRowChange;
 import com.continuent.tungsten.replicator.dbms.RowChangeData;
 import com.continuent.tungsten.replicator.dbms.RowIdData;
 import com.continuent.tungsten.replicator.dbms.StatementData;
-import com.continuent.tungsten.replicator.filter.Filter;
+import com.continuent.tungsten.replicator.filter.SerialFilter;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 
 /**
@@ -77,7 +77,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  * @version 1.0
  */
-public class EventMetadataFilter implements Filter
+public class EventMetadataFilter implements SerialFilter
 {
     // Settable properties.
     private boolean             unknownSqlUsesDefaultDb = false;
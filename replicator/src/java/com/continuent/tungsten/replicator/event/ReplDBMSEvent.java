@@ -24,6 +24,11 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 
 import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.LoadDataFileFragment;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnVal;
+import com.continuent.tungsten.replicator.dbms.RowChangeData;
+import com.continuent.tungsten.replicator.dbms.StatementData;
 
 /**
  * Storage class for replication events implementing full event management
@@ -46,6 +51,10 @@ public class ReplDBMSEvent extends ReplEvent implements ReplDBMSHeader
     long              epochNumber;
     DBMSEvent         event;
 
+    // Log record data from which this event was deserialized, if known. This
+    // allows stores to write the event again without serializing it.
+    transient byte[]  logRecordData;
+
     /**
      * Construct a new replication event.
      * 
@@ -203,6 +212,106 @@ public class ReplDBMSEvent extends ReplEvent implements ReplDBMSHeader
         return event;
     }
 
+    /**
+     * Returns the serialized log record data from which this event was read or
+     * null if not available.
+     */
+    public byte[] getLogRecordData()
+    {
+        return logRecordData;
+    }
+
+    /**
+     * Sets the serialized log record data from which this event was read.
+     */
+    public void setLogRecordData(byte[] logRecordData)
+    {
+        this.logRecordData = logRecordData;
+    }
+
+    /**
+     * Returns the estimated serialized size of this event. If no size has
+     * been set, it is computed from the event data the first time it is
+     * needed. Serialized log record data, where known, give the exact size.
+     */
+    @Override
+    public int getEstimatedSize()
+    {
+        int size = super.getEstimatedSize();
+        if (size == 0)
+        {
+            if (logRecordData != null)
+                size = logRecordData.length;
+            else
+                size = estimateSize();
+            setEstimatedSize(size);
+        }
+        return size;
+    }
+
+    // Estimate the size of the event from its data.
+    private int estimateSize()
+    {
+        long size = 100;
+        for (DBMSData data : getData())
+        {
+            size += 20;
+            if (data instanceof StatementData)
+            {
+                StatementData statement = (StatementData) data;
+                if (statement.getQuery() != null)
+                    size += statement.getQuery().length();
+                else if (statement.getQueryAsBytes() != null)
+                    size += statement.getQueryAsBytes().length;
+            }
+            else if (data instanceof RowChangeData)
+            {
+                for (OneRowChange rowChange : ((RowChangeData) data)
+                        .getRowChanges())
+                {
+                    size += 50;
+                    if (rowChange.getColumnSpec() != null)
+                        size += 20 * rowChange.getColumnSpec().size();
+                    if (rowChange.getKeySpec() != null)
+                        size += 20 * rowChange.getKeySpec().size();
+                    size += estimateRows(rowChange.getColumnValues());
+                    size += estimateRows(rowChange.getKeyValues());
+                }
+            }
+            else if (data instanceof LoadDataFileFragment)
+            {
+                byte[] fileData = ((LoadDataFileFragment) data).getData();
+                if (fileData != null)
+                    size += fileData.length;
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    // Estimate the size of row images.
+    private static long estimateRows(ArrayList<ArrayList<ColumnVal>> rows)
+    {
+        long size = 0;
+        if (rows == null)
+            return size;
+        for (ArrayList<ColumnVal> row : rows)
+        {
+            for (ColumnVal col : row)
+            {
+                Object value = col.getValue();
+                if (value == null)
+                    size += 1;
+                else if (value instanceof String)
+                    size += ((String) value).length();
+                else if (value instanceof byte[])
+                    size += ((byte[]) value).length;
+                else
+                    size += 8;
+            }
+        }
+        return size;
+    }
+
     @Override
     public long getAppliedLatency()
     {
@@ -295,6 +295,25 @@ public abstract class LogEvent
             boolean parseStatements, boolean useBytesForString,
             boolean prefetchSchemaNameLDI) throws ReplicatorException,
             InterruptedException
+    {
+        return readLogEvent(runtime, position, null, descriptionEvent,
+                parseStatements, useBytesForString, prefetchSchemaNameLDI);
+    }
+
+    /**
+     * Reads a log event from the binlog. If the event bytes have already been
+     * received, for example by the relay log client, they are used instead of
+     * reading the file and the binlog position is moved past the event.
+     * 
+     * @param receivedEvent Event bytes including the common header or null to
+     *            read the event from the binlog
+     */
+    public static LogEvent readLogEvent(ReplicatorRuntime runtime,
+            BinlogReader position, byte[] receivedEvent,
+            FormatDescriptionLogEvent descriptionEvent,
+            boolean parseStatements, boolean useBytesForString,
+            boolean prefetchSchemaNameLDI) throws ReplicatorException,
+            InterruptedException
     {
         int eventLength = 0;
         byte[] header = new byte[descriptionEvent.commonHeaderLength];
@@ -303,24 +322,43 @@ public abstract class LogEvent
         {
             String currentPosition = position.toString();
 
-            // read the header part
-            // timeout is set to 2 minutes.
-            readDataFromBinlog(runtime, position, header, 0, header.length, 120);
+            byte[] fullEvent;
+            if (receivedEvent != null)
+            {
+                // Skip over the event in the file.
+                fullEvent = receivedEvent;
+                eventLength = fullEvent.length - header.length;
+                long skipped = 0;
+                while (skipped < fullEvent.length)
+                {
+                    long bytes = position.skip(fullEvent.length - skipped);
+                    if (bytes <= 0)
+                        throw new EOFException("Unable to skip past event");
+                    skipped += bytes;
+                }
+            }
+            else
+            {
+                // read the header part
+                // timeout is set to 2 minutes.
+                readDataFromBinlog(runtime, position, header, 0,
+                        header.length, 120);
 
-            // Extract event length
-            eventLength = (int) LittleEndianConversion.convert4BytesToLong(
-                    header, MysqlBinlog.EVENT_LEN_OFFSET);
+                // Extract event length
+                eventLength = (int) LittleEndianConversion.convert4BytesToLong(
+                        header, MysqlBinlog.EVENT_LEN_OFFSET);
 
-            eventLength -= header.length;
+                eventLength -= header.length;
 
-            byte[] fullEvent = new byte[header.length + eventLength];
+                fullEvent = new byte[header.length + eventLength];
 
-            // read the event data part
-            // timeout is set to 2 minutes
-            readDataFromBinlog(runtime, position, fullEvent, header.length,
-                    eventLength, 120);
+                // read the event data part
+                // timeout is set to 2 minutes
+                readDataFromBinlog(runtime, position, fullEvent, header.length,
+                        eventLength, 120);
 
-            System.arraycopy(header, 0, fullEvent, 0, header.length);
+                System.arraycopy(header, 0, fullEvent, 0, header.length);
+            }
 
             LogEvent event = readLogEvent(parseStatements, currentPosition,
                     fullEvent, fullEvent.length, descriptionEvent,
@@ -30,6 +30,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
@@ -43,7 +44,8 @@ import com.continuent.tungsten.replicator.database.MySQLOperationMatcher;
 import com.continuent.tungsten.replicator.database.SqlOperation;
 import com.continuent.tungsten.replicator.database.SqlOperationMatcher;
 import com.continuent.tungsten.replicator.database.Table;
-import com.continuent.tungsten.replicator.database.TableMetadataCache;
+import com.continuent.tungsten.replicator.database.TableMetadataRegistry;
+import com.continuent.tungsten.replicator.database.TableMetadataService;
 import com.continuent.tungsten.replicator.datasource.SqlConnectionSpec;
 import com.continuent.tungsten.replicator.datasource.SqlDataSource;
 import com.continuent.tungsten.replicator.dbms.DBMSData;
@@ -98,6 +100,7 @@ public class MySQLExtractor implements RawExtractor
     private long                            relayLogReadTimeout       = 0;
     private boolean                         deterministicIo           = true;
     private int                             relayLogRetention         = 3;
+    private long                            relayLogBufferSize        = 0;
     private String                          relayLogDir               = null;
     private int                             serverId                  = 1;
 
@@ -108,6 +111,11 @@ public class MySQLExtractor implements RawExtractor
     // log-rotate event.
     private static long                     INDEX_CHECK_INTERVAL      = 60000;
 
+    // Bounds on how long to wait for new binlog data before checking again.
+    private static long                     MIN_TAIL_WAIT             = 1;
+    private static long                     MAX_TAIL_WAIT             = 10;
+    private static long                     RELAY_TAIL_WAIT           = 1000;
+
     // SQL parser.
     SqlOperationMatcher                     sqlMatcher                = new MySQLOperationMatcher();
 
@@ -116,10 +124,15 @@ public class MySQLExtractor implements RawExtractor
     private int                             transactionFragSize       = 0;
     private boolean                         fragmentedTransaction     = false;
 
+    // Worker threads to decode row images of the current event.
+    private int                             rowDecodeThreads          = 0;
+    private RowDecodeQueue<RowChangeData>   rowDecodeQueue            = null;
+
     // Built-in task to manage relay logs.
     private RelayLogTask                    relayLogTask              = null;
     private Thread                          relayLogThread            = null;
     private LinkedBlockingQueue<File>       relayLogQueue             = null;
+    private RelayEventBuffer                relayEventBuffer          = null;
 
     // Varchar type fields can be retrieved and stored in THL either using
     // String datatype or bytes arrays. By default, using string datatype.
@@ -151,11 +164,11 @@ public class MySQLExtractor implements RawExtractor
     // time datatypes are logged in the binlog in Maria10)
     private boolean                         isMaria10                 = false;
 
-    // Metadata cache variables
-    private TableMetadataCache              metadataCache;
-    private Database                        metadataConnection        = null;
+    // Table metadata, which come from the shared registry of the table
+    // metadata service if there is one.
+    private TableMetadataRegistry           metadataRegistry;
+    private boolean                         privateMetadataRegistry   = false;
     private int                             reconnectTimeoutInSeconds = 180;
-    private long                            lastConnectionTime        = 0;
 
     public String getDatabaseSource()
     {
@@ -257,6 +270,21 @@ public class MySQLExtractor implements RawExtractor
         this.relayLogRetention = relayLogRetention;
     }
 
+    public long getRelayLogBufferSize()
+    {
+        return relayLogBufferSize;
+    }
+
+    /**
+     * Sets the maximum bytes of relay log events to hand from the relay client
+     * to the extractor in memory. If 0, the extractor reads all events from
+     * the relay log files.
+     */
+    public void setRelayLogBufferSize(long relayLogBufferSize)
+    {
+        this.relayLogBufferSize = relayLogBufferSize;
+    }
+
     public String getRelayLogDir()
     {
         return relayLogDir;
@@ -287,6 +315,21 @@ public class MySQLExtractor implements RawExtractor
         this.transactionFragSize = transactionFragSize;
     }
 
+    public int getRowDecodeThreads()
+    {
+        return rowDecodeThreads;
+    }
+
+    /**
+     * Sets the number of threads that decode row images. If 0, row images are
+     * decoded by the thread that reads the binlog. Decodes run in parallel
+     * only within the transaction or fragment being extracted.
+     */
+    public void setRowDecodeThreads(int rowDecodeThreads)
+    {
+        this.rowDecodeThreads = rowDecodeThreads;
+    }
+
     public String getJdbcHeader()
     {
         return jdbcHeader;
@@ -339,6 +382,14 @@ public class MySQLExtractor implements RawExtractor
                         + position.getPosition());
             long indexCheckStart = System.currentTimeMillis();
 
+            // When the relay client is running we are notified of writes to
+            // the relay log. Otherwise mysqld writes the binlog and we must
+            // poll, backing off while the log is idle. The build targets
+            // Java 5, which has no API to watch files for changes.
+            RelayLogPosition relayMonitor = null;
+            long relayChanges = 0;
+            long tailWait = MIN_TAIL_WAIT;
+
             // Read from the binlog.
             while (position.available() == 0)
             {
@@ -369,8 +420,27 @@ public class MySQLExtractor implements RawExtractor
                     indexCheckStart = System.currentTimeMillis();
                 }
 
-                // Sleep for a while.
-                Thread.sleep(10);
+                // Wait for more data. The relay change count is read before
+                // the next available() check so that we cannot miss a write.
+                RelayLogPosition currentMonitor = (relayLogTask == null)
+                        ? null
+                        : relayLogTask.getPositionMonitor();
+                if (currentMonitor != relayMonitor)
+                {
+                    relayMonitor = currentMonitor;
+                    if (relayMonitor != null)
+                        relayChanges = relayMonitor.getChangeCount();
+                }
+                else if (relayMonitor != null)
+                {
+                    relayMonitor.waitForChange(relayChanges, RELAY_TAIL_WAIT);
+                    relayChanges = relayMonitor.getChangeCount();
+                }
+                else
+                {
+                    Thread.sleep(tailWait);
+                    tailWait = Math.min(tailWait * 2, MAX_TAIL_WAIT);
+                }
             }
 
             // We can assume a V4 format description as we don't support MySQL
@@ -378,10 +448,19 @@ public class MySQLExtractor implements RawExtractor
             FormatDescriptionLogEvent descriptionEvent = new FormatDescriptionLogEvent(
                     4, checksumAlgo, isMaria10);
 
+            // Take the event from the relay client if it is in memory.
+            // Otherwise we read it from the log.
+            byte[] receivedEvent = null;
+            if (relayEventBuffer != null)
+            {
+                receivedEvent = relayEventBuffer.take(position.getFileName(),
+                        position.getPosition());
+            }
+
             // Read from the log.
             LogEvent event = LogEvent.readLogEvent(runtime, position,
-                    descriptionEvent, parseStatements, useBytesForStrings,
-                    prefetchSchemaNameLDI);
+                    receivedEvent, descriptionEvent, parseStatements,
+                    useBytesForStrings, prefetchSchemaNameLDI);
 
             if (event instanceof FormatDescriptionLogEvent)
             {
@@ -530,6 +609,10 @@ public class MySQLExtractor implements RawExtractor
         long sessionId = -1;
         ArrayList<DBMSData> dataArray = new ArrayList<DBMSData>();
 
+        // Discard row decodes left over from an event that failed.
+        if (rowDecodeQueue != null)
+            rowDecodeQueue.cancel();
+
         boolean foundRowsLogEvent = false;
         LinkedList<ReplOption> savedOptions = new LinkedList<ReplOption>();
 
@@ -932,13 +1015,7 @@ public class MySQLExtractor implements RawExtractor
                     RowsLogEvent rowsEvent = (RowsLogEvent) logEvent;
                     TableMapLogEvent tableEvent = tableEvents.get(rowsEvent
                             .getTableId());
-                    rowsEvent.processExtractedEvent(rowChangeData, tableEvent);
-                    rowChangeData.addOption("time_zone", "'+00:00'");
-                    if (useBytesForStrings)
-                    {
-                        rowChangeData.addOption("##charset", Charset
-                                .defaultCharset().displayName());
-                    }
+                    decodeRows(rowsEvent, tableEvent, rowChangeData);
                     dataArray.add(rowChangeData);
                     foundRowsLogEvent = true;
                 }
@@ -1161,6 +1238,10 @@ public class MySQLExtractor implements RawExtractor
                         dbmsEvent.addMetadataOption(
                                 ReplOptionParams.UNSAFE_FOR_BLOCK_COMMIT, "");
 
+                    // Row images must be complete before the event is
+                    // returned.
+                    if (rowDecodeQueue != null)
+                        rowDecodeQueue.waitAll();
                     return dbmsEvent;
                 }
             }
@@ -1194,71 +1275,71 @@ public class MySQLExtractor implements RawExtractor
     }
 
     /**
-     * Fetches metadata for the table from the cache or from the database if
-     * needed
-     * 
-     * @param tableEvent the table event that is currently handled
+     * Decodes the row images of a rows event into row change data. If there
+     * are row decode threads, this submits the work to them and returns at
+     * once. The row change data is already in place in the event, so results
+     * stay in binlog order however the decodes finish.
      */
-    private void fetchMetadata(TableMapLogEvent tableEvent)
-            throws SQLException, ReplicatorException
+    private void decodeRows(final RowsLogEvent rowsEvent,
+            final TableMapLogEvent tableEvent, final RowChangeData rowChangeData)
+            throws ReplicatorException, InterruptedException
     {
-        if (metadataCache == null)
-            metadataCache = new TableMetadataCache(5000);
-
-        Table table = metadataCache.retrieve(tableEvent.getDatabaseName(),
-                tableEvent.getTableName());
-
-        if (table == null || table.getTableId() != tableEvent.getTableId())
+        Callable<RowChangeData> decode = new Callable<RowChangeData>()
         {
-            // If table is not in the cache or the table identifier changed, we
-            // need to fetch it from database
-            prepareMetadataConnection();
-
-            table = metadataConnection.findTable(tableEvent.getDatabaseName(),
-                    tableEvent.getTableName(), false);
-
-            if (table != null)
+            public RowChangeData call() throws ReplicatorException
             {
-                table.setTableId(tableEvent.getTableId());
-                metadataCache.store(table);
+                rowsEvent.processExtractedEvent(rowChangeData, tableEvent);
+                rowChangeData.addOption("time_zone", "'+00:00'");
+                if (useBytesForStrings)
+                {
+                    rowChangeData.addOption("##charset", Charset
+                            .defaultCharset().displayName());
+                }
+                return rowChangeData;
             }
-        }
-        else if (logger.isDebugEnabled())
-            logger.debug("Table " + tableEvent.getDatabaseName() + "."
-                    + tableEvent.getTableName() + " found in cache.");
+        };
 
-        if (table == null)
+        if (rowDecodeQueue == null)
         {
-            logger.warn("No metadata found for table "
-                    + tableEvent.getDatabaseName() + "."
-                    + tableEvent.getTableName());
+            try
+            {
+                decode.call();
+            }
+            catch (ReplicatorException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new ExtractorException("Row decoding failed", e);
+            }
         }
         else
-        {
-            tableEvent.setTable(table);
-        }
+            rowDecodeQueue.submit(decode);
     }
 
     /**
-     * Prepare the metadata connection for use : connect or reconnect if needed.
+     * Fetches metadata for the table from the cache or from the database if
+     * needed
+     * 
+     * @param tableEvent the table event that is currently handled
      */
-    private void prepareMetadataConnection() throws SQLException,
-            ReplicatorException
+    private void fetchMetadata(TableMapLogEvent tableEvent)
+            throws SQLException, ReplicatorException
     {
-        if (metadataConnection == null)
-            metadataConnection = dataSourceImpl.getConnection();
+        // The registry reloads the table if the table ID changed.
+        Table table = metadataRegistry.getTable(tableEvent.getDatabaseName(),
+                tableEvent.getTableName(), tableEvent.getTableId());
 
-        long currentTime = System.currentTimeMillis();
-        if (lastConnectionTime == 0)
+        if (table == null)
         {
-            lastConnectionTime = currentTime;
+            logger.warn("No metadata found for table "
+                    + tableEvent.getDatabaseName() + "."
+                    + tableEvent.getTableName());
         }
-        else if (reconnectTimeoutInSeconds > 0
-                && currentTime - lastConnectionTime > reconnectTimeoutInSeconds * 1000)
+        else
         {
-            // Time to reconnect
-            dataSourceImpl.releaseConnection(metadataConnection);
-            metadataConnection = dataSourceImpl.getConnection();
+            tableEvent.setTable(table);
         }
     }
 
@@ -1469,6 +1550,14 @@ public class MySQLExtractor implements RawExtractor
      */
     public void prepare(PluginContext context) throws ReplicatorException
     {
+        // Start row decode threads if requested.
+        if (rowDecodeThreads > 0)
+        {
+            logger.info("Starting row decode threads: threads="
+                    + rowDecodeThreads);
+            rowDecodeQueue = new RowDecodeQueue<RowChangeData>(
+                    rowDecodeThreads, rowDecodeThreads * 4);
+        }
 
         // Locate our data source from which we are extracting.
         logger.info("Connecting to data source");
@@ -1479,6 +1568,18 @@ public class MySQLExtractor implements RawExtractor
                     + dataSource);
         }
 
+        // Use the shared metadata registry if available.
+        metadataRegistry = TableMetadataService.findRegistry(context,
+                dataSource);
+        if (metadataRegistry == null)
+        {
+            metadataRegistry = new TableMetadataRegistry(dataSource,
+                    dataSourceImpl, 5000);
+            metadataRegistry
+                    .setReconnectTimeoutInSeconds(reconnectTimeoutInSeconds);
+            privateMetadataRegistry = true;
+        }
+
         // Compute our MySQL DBMS URL.
         connectionSpec = dataSourceImpl.getConnectionSpec();
         url = connectionSpec.createUrl(false);
@@ -1678,6 +1779,13 @@ public class MySQLExtractor implements RawExtractor
         relayClient.setServerId(serverId);
         relayClient.setLogQueue(relayLogQueue);
         relayClient.setReadTimeout(relayLogReadTimeout);
+        if (relayLogBufferSize > 0)
+        {
+            logger.info("Constructing relay event buffer: size="
+                    + relayLogBufferSize);
+            relayEventBuffer = new RelayEventBuffer(relayLogBufferSize);
+            relayClient.setEventBuffer(relayEventBuffer);
+        }
         relayClient.setDeterministicIo(deterministicIo);
         relayClient.connect();
 
@@ -1804,6 +1912,14 @@ public class MySQLExtractor implements RawExtractor
     /** Stops relay log operation. */
     private synchronized void stopRelayLogs()
     {
+        // Drop buffered events. Each relay client gets a new buffer.
+        if (relayEventBuffer != null)
+        {
+            logger.info("Releasing relay event buffer: hits="
+                    + relayEventBuffer.getHits() + " misses="
+                    + relayEventBuffer.getMisses());
+            relayEventBuffer = null;
+        }
         if (relayLogTask == null || relayLogTask.isFinished())
             return;
 
@@ -1838,10 +1954,16 @@ public class MySQLExtractor implements RawExtractor
      */
     public void release(PluginContext context) throws ReplicatorException
     {
-        if (metadataConnection != null)
+        if (rowDecodeQueue != null)
+        {
+            rowDecodeQueue.shutdown();
+            rowDecodeQueue = null;
+        }
+        if (metadataRegistry != null)
         {
-            metadataConnection.close();
-            metadataConnection = null;
+            if (privateMetadataRegistry)
+                metadataRegistry.release();
+            metadataRegistry = null;
         }
         stopRelayLogs();
     }
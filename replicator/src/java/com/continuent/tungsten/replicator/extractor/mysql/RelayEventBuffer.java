@@ -0,0 +1,145 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.extractor.mysql;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds binlog events received by the relay log client so that the extractor
+ * can take them from memory instead of reading them back from the relay log.
+ * Events are keyed by relay log file name and offset. The buffer is bounded
+ * by total event bytes; when it is full the oldest events are dropped and the
+ * extractor reads them from the relay log as usual.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class RelayEventBuffer
+{
+    private final long                          maxBytes;
+    private final LinkedHashMap<String, byte[]> events = new LinkedHashMap<String, byte[]>();
+    private long                                bytes  = 0;
+    private long                                hits   = 0;
+    private long                                misses = 0;
+
+    /**
+     * Creates a new buffer.
+     * 
+     * @param maxBytes Maximum number of event bytes to hold
+     */
+    public RelayEventBuffer(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds an event written to the relay log, dropping the oldest events if
+     * necessary to make room. Events larger than the buffer are not kept.
+     * 
+     * @param fileName Relay log file name
+     * @param offset Offset of the event in the relay log
+     * @param event Event bytes including the common header
+     */
+    public synchronized void put(String fileName, long offset, byte[] event)
+    {
+        if (event.length > maxBytes)
+            return;
+        Iterator<byte[]> iter = events.values().iterator();
+        while (bytes + event.length > maxBytes && iter.hasNext())
+        {
+            bytes -= iter.next().length;
+            iter.remove();
+        }
+        events.put(key(fileName, offset), event);
+        bytes += event.length;
+    }
+
+    /**
+     * Removes and returns the event at a relay log position. Older events are
+     * removed as well, as the extractor has read past them.
+     * 
+     * @param fileName Relay log file name
+     * @param offset Offset of the event in the relay log
+     * @return Event bytes or null if the event is not in the buffer
+     */
+    public synchronized byte[] take(String fileName, long offset)
+    {
+        String key = key(fileName, offset);
+        if (!events.containsKey(key))
+        {
+            misses++;
+            return null;
+        }
+
+        Iterator<Map.Entry<String, byte[]>> iter = events.entrySet()
+                .iterator();
+        while (iter.hasNext())
+        {
+            Map.Entry<String, byte[]> entry = iter.next();
+            iter.remove();
+            bytes -= entry.getValue().length;
+            if (key.equals(entry.getKey()))
+            {
+                hits++;
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /** Drops all events. */
+    public synchronized void clear()
+    {
+        events.clear();
+        bytes = 0;
+    }
+
+    /** Returns the number of events in the buffer. */
+    public synchronized int size()
+    {
+        return events.size();
+    }
+
+    /** Returns the number of event bytes in the buffer. */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /** Returns the number of events taken from the buffer. */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** Returns the number of events the extractor looked for and missed. */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    // Generate the key for a relay log position.
+    private static String key(String fileName, long offset)
+    {
+        return fileName + ":" + offset;
+    }
+}
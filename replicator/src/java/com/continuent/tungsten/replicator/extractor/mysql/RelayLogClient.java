@@ -77,6 +77,7 @@ public class RelayLogClient
     private long                      readTimeout                 = 60;
     private boolean                   deterministicIo             = false;
     private LinkedBlockingQueue<File> logQueue                    = null;
+    private RelayEventBuffer          eventBuffer                 = null;
 
     // Relay storage and positioning information.
     private File                      relayLog;
@@ -197,6 +198,19 @@ public class RelayLogClient
         this.logQueue = logQueue;
     }
 
+    public synchronized RelayEventBuffer getEventBuffer()
+    {
+        return eventBuffer;
+    }
+
+    /**
+     * Sets a buffer to receive a copy of each event written to the relay log.
+     */
+    public synchronized void setEventBuffer(RelayEventBuffer eventBuffer)
+    {
+        this.eventBuffer = eventBuffer;
+    }
+
     /**
      * Returns the network read delay timeout.
      */
@@ -559,6 +573,15 @@ public class RelayLogClient
         return logPosition.clone();
     }
 
+    /**
+     * Returns the live relay log position, which clients may wait on to learn
+     * when new data are written to the relay log.
+     */
+    public RelayLogPosition getPositionMonitor()
+    {
+        return logPosition;
+    }
+
     /**
      * Sends a binlog dump request to server.
      * 
@@ -695,6 +718,17 @@ public class RelayLogClient
         }
         relayOutput.write(bytes, header, writeLength);
         relayOutput.flush();
+
+        // Hand a copy of the event to the extractor before updating the
+        // position, which wakes it up. Events that span several packets are
+        // left for the extractor to read from the relay log.
+        if (eventBuffer != null && !extended
+                && packet.getDataLength() < MySQLPacket.MAX_LENGTH)
+        {
+            byte[] event = new byte[writeLength];
+            System.arraycopy(bytes, header, event, 0, writeLength);
+            eventBuffer.put(relayLog.getName(), relayBytes, event);
+        }
         relayBytes += writeLength;
         logPosition.setPosition(relayLog, relayBytes);
     }
@@ -24,7 +24,8 @@ import java.io.File;
 
 /**
  * Simple class to track the relay log position using synchronized methods to
- * ensure the file and offset are always updated consistently.
+ * ensure the file and offset are always updated consistently. Threads may also
+ * wait on the position to learn when the relay log has been written.
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  */
@@ -32,6 +33,7 @@ public class RelayLogPosition
 {
     protected File curFile;
     protected long curOffset;
+    protected long changeCount;
 
     public RelayLogPosition()
     {
@@ -41,11 +43,50 @@ public class RelayLogPosition
     {
         this.curFile = file;
         this.curOffset = offset;
+        changed();
     }
 
     public synchronized void setOffset(int offset)
     {
         this.curOffset = offset;
+        changed();
+    }
+
+    // Count the change and wake up waiters.
+    private void changed()
+    {
+        changeCount++;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of times the position has changed.
+     */
+    public synchronized long getChangeCount()
+    {
+        return changeCount;
+    }
+
+    /**
+     * Waits until the position changes after a previously observed change
+     * count or the timeout expires.
+     * 
+     * @param lastChangeCount Change count seen by the caller
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return True if the position has changed
+     */
+    public synchronized boolean waitForChange(long lastChangeCount,
+            long timeoutMillis) throws InterruptedException
+    {
+        long endTime = System.currentTimeMillis() + timeoutMillis;
+        while (changeCount == lastChangeCount)
+        {
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+        return true;
     }
     
     public synchronized File getFile()
@@ -114,4 +114,12 @@ public class RelayLogTask implements Runnable
     {
         return relayClient.getPosition();
     }
+
+    /**
+     * Returns the live relay log position, which is notified on every write.
+     */
+    public RelayLogPosition getPositionMonitor()
+    {
+        return relayClient.getPositionMonitor();
+    }
 }
\ No newline at end of file
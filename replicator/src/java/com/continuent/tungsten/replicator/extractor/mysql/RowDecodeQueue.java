@@ -0,0 +1,128 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Initial developer(s): agent
+ * Contributor(s):
+ */
+
+package com.continuent.tungsten.replicator.extractor.mysql;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.continuent.tungsten.common.concurrent.SimpleJobService;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.extractor.ExtractorException;
+
+/**
+ * Runs row image decodes for the MySQL extractor on a pool of threads. Each
+ * decode fills in a row change that is already in place in its event, so row
+ * changes stay in binlog order however the decodes finish. Callers wait for
+ * all decodes of an event before returning it.
+ * <p/>
+ * The number of outstanding decodes is bounded. Once the bound is reached,
+ * submitting a decode first waits for the oldest one.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RowDecodeQueue<V>
+{
+    private final SimpleJobService<V>   service;
+    private final int                   maxPending;
+    private final LinkedList<Future<V>> pending = new LinkedList<Future<V>>();
+
+    /**
+     * Creates a new queue and starts its threads.
+     *
+     * @param threads Number of decode threads
+     * @param maxPending Maximum number of decodes that may be outstanding
+     */
+    public RowDecodeQueue(int threads, int maxPending)
+    {
+        this.maxPending = maxPending;
+        this.service = new SimpleJobService<V>("mysql-row-decode", threads,
+                maxPending, 60);
+    }
+
+    /**
+     * Submits a decode, waiting first for the oldest outstanding decode if
+     * the queue is full.
+     *
+     * @throws ReplicatorException Thrown if a decode we waited for failed
+     */
+    public void submit(Callable<V> decode) throws ReplicatorException,
+            InterruptedException
+    {
+        if (pending.size() >= maxPending)
+            waitFor(pending.removeFirst());
+        pending.add(service.submit(decode));
+    }
+
+    /**
+     * Waits for all outstanding decodes in the order they were submitted.
+     *
+     * @throws ReplicatorException Thrown if a decode failed, in which case
+     *             decodes after it are cancelled
+     */
+    public void waitAll() throws ReplicatorException, InterruptedException
+    {
+        while (pending.size() > 0)
+            waitFor(pending.removeFirst());
+    }
+
+    /** Cancels outstanding decodes, whose results are no longer needed. */
+    public void cancel()
+    {
+        for (Future<V> decode : pending)
+            decode.cancel(true);
+        pending.clear();
+    }
+
+    /** Returns the number of outstanding decodes. */
+    public int getPending()
+    {
+        return pending.size();
+    }
+
+    /** Cancels outstanding decodes and stops the decode threads. */
+    public void shutdown()
+    {
+        cancel();
+        service.shutdownNow();
+    }
+
+    // Wait for a single decode and pass up its failure, if any.
+    private void waitFor(Future<V> decode) throws ReplicatorException,
+            InterruptedException
+    {
+        try
+        {
+            decode.get();
+        }
+        catch (ExecutionException e)
+        {
+            cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof ReplicatorException)
+                throw (ReplicatorException) cause;
+            else
+                throw new ExtractorException("Row decoding failed", cause);
+        }
+    }
+}
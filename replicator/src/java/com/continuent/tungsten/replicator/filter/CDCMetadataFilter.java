@@ -57,7 +57,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:stephane.giron@continuent.com">Stephane Giron</a>
  * @version 1.0
  */
-public class CDCMetadataFilter implements Filter
+public class CDCMetadataFilter implements SerialFilter
 {
     private static Logger           logger            = Logger.getLogger(CDCMetadataFilter.class);
 
@@ -30,11 +30,12 @@ import org.apache.log4j.Logger;
 
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.database.Column;
-import com.continuent.tungsten.replicator.database.Database;
 import com.continuent.tungsten.replicator.database.MySQLOperationMatcher;
 import com.continuent.tungsten.replicator.database.SqlOperation;
 import com.continuent.tungsten.replicator.database.SqlOperationMatcher;
 import com.continuent.tungsten.replicator.database.Table;
+import com.continuent.tungsten.replicator.database.TableMetadataRegistry;
+import com.continuent.tungsten.replicator.database.TableMetadataService;
 import com.continuent.tungsten.replicator.datasource.SqlDataSource;
 import com.continuent.tungsten.replicator.dbms.DBMSData;
 import com.continuent.tungsten.replicator.dbms.OneRowChange;
@@ -52,20 +53,23 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:stephane.giron@continuent.com">Stephane Giron</a>
  * @version 1.0
  */
-public class ColumnNameFilter implements Filter
+public class ColumnNameFilter implements SerialFilter
 {
     private static Logger                               logger              = Logger.getLogger(ColumnNameFilter.class);
 
-    // Metadata cache is a hashtable indexed by the database name and each
-    // database uses a hashtable indexed by the table name (This is done in
-    // order to be able to drop all table definitions at once if a DROP DATABASE
-    // is trapped). Filling metadata cache is done in a lazy way. It will be
-    // updated only when a table is used for the first time by a row event.
-    private Hashtable<String, Hashtable<String, Table>> metadataCache;
+    // Table metadata come from the shared registry of the table metadata
+    // service if there is one or otherwise from a private registry. Either way
+    // metadata are loaded lazily when a row event first uses a table.
+    private TableMetadataRegistry                       registry;
+    private boolean                                     privateRegistry     = false;
+
+    // Generated definitions for missing tables, indexed by schema.table. These
+    // are dropped whenever the registry sees a schema change.
+    private Hashtable<String, Table>                    missingTables;
+    private long                                        missingTablesVersion;
 
     // Connection information.
     private SqlDataSource                               dataSourceImpl;
-    Database                                            conn                = null;
 
     // Properties.
     private String                                      dataSource;
@@ -98,19 +102,23 @@ public class ColumnNameFilter implements Filter
             msg += "and signed flag ";
         logger.info(msg += "will be queried from the DBMS");
 
-        // Initialize cache for tables.
-        metadataCache = new Hashtable<String, Hashtable<String, Table>>();
-
-        // Locate our data source that we use to pick up metadata and create
-        // connection.
-        logger.info("Connecting to data source");
+        // Locate our data source that we use to pick up metadata.
         dataSourceImpl = (SqlDataSource) context.getDataSource(dataSource);
         if (dataSourceImpl == null)
         {
             throw new ReplicatorException("Unable to locate data source: name="
                     + dataSource);
         }
-        conn = dataSourceImpl.getConnection();
+
+        // Use the shared metadata registry if available.
+        registry = TableMetadataService.findRegistry(context, dataSource);
+        if (registry == null)
+        {
+            registry = new TableMetadataRegistry(dataSource, dataSourceImpl,
+                    5000);
+            privateRegistry = true;
+        }
+        missingTables = new Hashtable<String, Table>();
     }
 
     /**
@@ -120,16 +128,13 @@ public class ColumnNameFilter implements Filter
      */
     public void release(PluginContext context) throws ReplicatorException
     {
-        if (metadataCache != null)
+        if (registry != null)
         {
-            metadataCache.clear();
-            metadataCache = null;
-        }
-        if (conn != null)
-        {
-            dataSourceImpl.releaseConnection(conn);
-            conn = null;
+            if (privateRegistry)
+                registry.release();
+            registry = null;
         }
+        missingTables = null;
     }
 
     /**
@@ -150,7 +155,7 @@ public class ColumnNameFilter implements Filter
                 RowChangeData rdata = (RowChangeData) dataElem;
                 for (OneRowChange orc : rdata.getRowChanges())
                 {
-                    getColumnInformation(orc);
+                    getColumnInformation(orc, event.getSeqno());
                 }
             }
             else if (dataElem instanceof StatementData)
@@ -164,98 +169,54 @@ public class ColumnNameFilter implements Filter
                     query = new String(sdata.getQueryAsBytes());
 
                 SqlOperation sqlOperation = sqlMatcher.match(query);
-
-                if (sqlOperation.getOperation() == SqlOperation.DROP
-                        && sqlOperation.getObjectType() == SqlOperation.SCHEMA)
-                {
-                    // "drop database" statement detected : remove database
-                    // metadata
-                    String dbName = sqlOperation.getSchema();
-                    if (metadataCache.remove(dbName) != null)
-                    {
-                        if (logger.isDebugEnabled())
-                            logger.debug("DROP DATABASE detected - Removing database metadata for '"
-                                    + dbName + "'");
-                    }
-                    else if (logger.isDebugEnabled())
-                        logger.debug("DROP DATABASE detected - no cached database metadata to delete for '"
-                                + dbName + "'");
-                    continue;
-                }
-                else if (sqlOperation.getOperation() == SqlOperation.ALTER)
-                {
-                    // Detected an alter table statement / Dropping table
-                    // metadata for the concerned table
-                    String name = sqlOperation.getName();
-                    String defaultDB = sdata.getDefaultSchema();
-                    removeTableMetadata(name, sqlOperation.getSchema(),
-                            defaultDB);
-                    continue;
-                }
-
+                int invalidated = registry.invalidate(sqlOperation,
+                        sdata.getDefaultSchema(), event.getSeqno(),
+                        event.getEpochNumber(), query);
+                if (invalidated > 0 && logger.isDebugEnabled())
+                    logger.debug("Table metadata invalidation: stmt=" + query
+                            + " invalidated=" + invalidated);
             }
         }
         return event;
     }
 
-    private void removeTableMetadata(String tableName, String schemaName,
-            String defaultDB)
-    {
-        if (schemaName != null)
-        {
-            Hashtable<String, Table> tableCache = metadataCache.get(schemaName);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("ALTER TABLE detected - Removing table metadata for '"
-                            + schemaName + "." + tableName + "'");
-            }
-            else if (logger.isDebugEnabled())
-                logger.debug("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + schemaName + "." + tableName + "'");
-        }
-        else
-        {
-            Hashtable<String, Table> tableCache = metadataCache.get(defaultDB);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-                logger.info("ALTER TABLE detected - Removing table metadata for '"
-                        + defaultDB + "." + tableName + "'");
-            else
-                logger.info("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + defaultDB + "." + tableName + "'");
-        }
-    }
-
-    // Fetch information about schema.
-    private void getColumnInformation(OneRowChange orc)
+    // Fetch information about schema as of the event seqno.
+    private void getColumnInformation(OneRowChange orc, long seqno)
             throws ReplicatorException
     {
         String tableName = orc.getTableName();
 
-        if (!metadataCache.containsKey(orc.getSchemaName()))
+        // Drop generated definitions if the schema may have changed.
+        long version = registry.getVersion();
+        if (version != missingTablesVersion)
         {
-            // Nothing defined yet in this database
-            metadataCache.put(orc.getSchemaName(),
-                    new Hashtable<String, Table>());
+            missingTables.clear();
+            missingTablesVersion = version;
         }
 
-        Hashtable<String, Table> dbCache = metadataCache.get(orc
-                .getSchemaName());
+        // Use a generated definition if we already know the table is missing.
+        // Without a table ID we cannot tell if the table changed, so we look
+        // it up again for every row.
+        String key = orc.getSchemaName() + "." + tableName;
+        Table table = missingTables.get(key);
+        if (table != null
+                && (orc.getTableId() == -1 || table.getTableId() != orc
+                        .getTableId()))
+        {
+            missingTables.remove(key);
+            table = null;
+        }
 
-        if (!dbCache.containsKey(tableName) || orc.getTableId() == -1
-                || dbCache.get(tableName).getTableId() != orc.getTableId())
+        if (table == null)
         {
-            // This table was not processed yet or schema changed since it was
-            // cached : fetch information about its primary key
-            if (dbCache.remove(tableName) != null && logger.isDebugEnabled())
-                logger.debug("Detected a schema change for table "
-                        + orc.getSchemaName() + "." + tableName
-                        + " - Removing table metadata from cache");
-            Table newTable = null;
             try
             {
-                newTable = conn.findTable(orc.getSchemaName(),
-                        orc.getTableName(), false);
+                if (orc.getTableId() == -1)
+                    table = registry.reloadTable(orc.getSchemaName(),
+                            tableName, seqno);
+                else
+                    table = registry.getTable(orc.getSchemaName(), tableName,
+                            orc.getTableId(), seqno);
             }
             catch (SQLException e)
             {
@@ -264,42 +225,39 @@ public class ColumnNameFilter implements Filter
                                 + orc.getSchemaName() + " table="
                                 + orc.getTableName());
             }
-            if (newTable == null)
+        }
+        if (table == null)
+        {
+            if (ignoreMissingTables)
             {
-                if (ignoreMissingTables)
+                // If we are ignoring missing tables, manufacture a
+                // table definition with generated column names.
+                if (logger.isDebugEnabled())
                 {
-                    // If we are ignoring missing tables, manufacture a
-                    // table definition with generated column names.
-                    if (logger.isDebugEnabled())
-                    {
-                        logger.debug("Ignored a missing table: name="
-                                + orc.getSchemaName() + "." + tableName);
-                    }
-                    newTable = new Table(orc.getSchemaName(),
-                            orc.getTableName());
-                    int maxCols = Math.max(orc.getColumnSpec().size(), orc
-                            .getKeySpec().size());
-                    for (int i = 0; i < maxCols; i++)
-                    {
-                        Column column = new Column("col_" + i, Types.OTHER);
-                        newTable.AddColumn(column);
-                    }
+                    logger.debug("Ignored a missing table: name="
+                            + orc.getSchemaName() + "." + tableName);
                 }
-                else
+                table = new Table(orc.getSchemaName(), orc.getTableName());
+                int maxCols = Math.max(orc.getColumnSpec().size(), orc
+                        .getKeySpec().size());
+                for (int i = 0; i < maxCols; i++)
                 {
-                    // Otherwise generate an error.
-                    throw new ReplicatorException(
-                            "Unable to find column metadata; table may be missing: schema="
-                                    + orc.getSchemaName() + " table="
-                                    + orc.getTableName());
+                    Column column = new Column("col_" + i, Types.OTHER);
+                    table.AddColumn(column);
                 }
+                table.setTableId(orc.getTableId());
+                missingTables.put(key, table);
+            }
+            else
+            {
+                // Otherwise generate an error.
+                throw new ReplicatorException(
+                        "Unable to find column metadata; table may be missing: schema="
+                                + orc.getSchemaName() + " table="
+                                + orc.getTableName());
             }
-            newTable.setTableId(orc.getTableId());
-            dbCache.put(tableName, newTable);
         }
 
-        Table table = dbCache.get(tableName);
-
         ArrayList<Column> columns = table.getAllColumns();
         int index = 0;
         for (Iterator<ColumnSpec> iterator = orc.getColumnSpec().iterator(); iterator
@@ -37,6 +37,8 @@ import com.continuent.tungsten.replicator.database.MySQLOperationMatcher;
 import com.continuent.tungsten.replicator.database.SqlOperation;
 import com.continuent.tungsten.replicator.database.SqlOperationMatcher;
 import com.continuent.tungsten.replicator.database.Table;
+import com.continuent.tungsten.replicator.database.TableMetadataRegistry;
+import com.continuent.tungsten.replicator.database.TableMetadataService;
 import com.continuent.tungsten.replicator.datasource.SqlDataSource;
 import com.continuent.tungsten.replicator.dbms.DBMSData;
 import com.continuent.tungsten.replicator.dbms.OneRowChange;
@@ -66,7 +68,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:linas.virbalas@continuent.com">Linas Virbalas</a>
  * @version 1.0
  */
-public class EnumToStringFilter implements Filter
+public class EnumToStringFilter implements SerialFilter
 {
     static class TableWithEnums
     {
@@ -97,12 +99,14 @@ public class EnumToStringFilter implements Filter
 
     private static Logger                                        logger               = Logger.getLogger(EnumToStringFilter.class);
 
-    // Metadata cache is a hashtable indexed by the database name and each
-    // database uses a hashtable indexed by the table name (This is done in
-    // order to be able to drop all table definitions at once if a DROP DATABASE
-    // is trapped). Filling metadata cache is done in a lazy way. It will be
-    // updated only when a table is used for the first time by a row event.
-    private Hashtable<String, Hashtable<String, TableWithEnums>> metadataCache;
+    // Table metadata come from the shared registry of the table metadata
+    // service if there is one or otherwise from a private registry. Enum
+    // definitions are cached in a hashtable indexed by schema.table and are
+    // recomputed when the registry returns a new table definition. Filling
+    // the caches is done in a lazy way when a row event first uses a table.
+    private TableMetadataRegistry                                registry;
+    private boolean                                              privateRegistry      = false;
+    private Hashtable<String, TableWithEnums>                    metadataCache;
 
     // Connection information.
     private SqlDataSource                                        dataSourceImpl;
@@ -150,7 +154,7 @@ public class EnumToStringFilter implements Filter
      */
     public void prepare(PluginContext context) throws ReplicatorException
     {
-        metadataCache = new Hashtable<String, Hashtable<String, TableWithEnums>>();
+        metadataCache = new Hashtable<String, TableWithEnums>();
 
         // Locate our data source that we use to pick up metadata and create
         // connection.
@@ -162,6 +166,15 @@ public class EnumToStringFilter implements Filter
                     + dataSource);
         }
         conn = dataSourceImpl.getConnection();
+
+        // Use the shared metadata registry if available.
+        registry = TableMetadataService.findRegistry(context, dataSource);
+        if (registry == null)
+        {
+            registry = new TableMetadataRegistry(dataSource, dataSourceImpl,
+                    5000);
+            privateRegistry = true;
+        }
     }
 
     /**
@@ -176,6 +189,12 @@ public class EnumToStringFilter implements Filter
             metadataCache.clear();
             metadataCache = null;
         }
+        if (registry != null)
+        {
+            if (privateRegistry)
+                registry.release();
+            registry = null;
+        }
         if (conn != null)
         {
             dataSourceImpl.releaseConnection(conn);
@@ -229,70 +248,16 @@ public class EnumToStringFilter implements Filter
                     query = new String(sdata.getQueryAsBytes());
 
                 SqlOperation sqlOperation = sqlMatcher.match(query);
-
-                if (sqlOperation.getOperation() == SqlOperation.DROP
-                        && sqlOperation.getObjectType() == SqlOperation.SCHEMA)
-                {
-                    // "drop database" statement detected : remove database
-                    // metadata
-                    String dbName = sqlOperation.getSchema();
-                    if (metadataCache.remove(dbName) != null)
-                    {
-                        if (logger.isDebugEnabled())
-                            logger.debug("DROP DATABASE detected - Removing database metadata for '"
-                                    + dbName + "'");
-                    }
-                    else if (logger.isDebugEnabled())
-                        logger.debug("DROP DATABASE detected - no cached database metadata to delete for '"
-                                + dbName + "'");
-                    continue;
-                }
-                else if (sqlOperation.getOperation() == SqlOperation.ALTER)
-                {
-                    // Detected an alter table statement / Dropping table
-                    // metadata for the concerned table
-                    String name = sqlOperation.getName();
-                    String defaultDB = sdata.getDefaultSchema();
-                    removeTableMetadata(name, sqlOperation.getSchema(),
-                            defaultDB);
-                    continue;
-                }
-
+                int invalidated = registry.invalidate(sqlOperation,
+                        sdata.getDefaultSchema());
+                if (invalidated > 0 && logger.isDebugEnabled())
+                    logger.debug("Table metadata invalidation: stmt=" + query
+                            + " invalidated=" + invalidated);
             }
         }
         return event;
     }
 
-    private void removeTableMetadata(String tableName, String schemaName,
-            String defaultDB)
-    {
-        if (schemaName != null)
-        {
-            Hashtable<String, TableWithEnums> tableCache = metadataCache
-                    .get(schemaName);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("ALTER TABLE detected - Removing table metadata for '"
-                            + schemaName + "." + tableName + "'");
-            }
-            else if (logger.isDebugEnabled())
-                logger.debug("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + schemaName + "." + tableName + "'");
-        }
-        else
-        {
-            Hashtable<String, TableWithEnums> tableCache = metadataCache
-                    .get(defaultDB);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-                logger.info("ALTER TABLE detected - Removing table metadata for '"
-                        + defaultDB + "." + tableName + "'");
-            else
-                logger.info("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + defaultDB + "." + tableName + "'");
-        }
-    }
-
     protected String[] parseListType(String listTypeDefinition)
     {
         return parseEnumeration(listTypeDefinition);
@@ -488,48 +453,42 @@ public class EnumToStringFilter implements Filter
             return;
         }
 
-        if (!metadataCache.containsKey(orc.getSchemaName()))
+        // Fetch table metadata. The registry reloads the table if its ID
+        // shows that the schema changed since it was cached. Without a table
+        // ID we look the table up again for every row.
+        Table newTable;
+        if (orc.getTableId() == -1)
+            newTable = registry.reloadTable(orc.getSchemaName(), tableName);
+        else
+            newTable = registry.getTable(orc.getSchemaName(), tableName,
+                    orc.getTableId());
+        // If we cannot find the table, it is possible it has been deleted,
+        // in which case there is nothing to be done.
+        if (newTable == null)
         {
-            // Nothing defined yet in this database
-            metadataCache.put(orc.getSchemaName(),
-                    new Hashtable<String, TableWithEnums>());
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Ignored a missing table: name="
+                        + orc.getSchemaName() + "." + tableName);
+            }
+            return;
         }
 
-        Hashtable<String, TableWithEnums> dbCache = metadataCache.get(orc
-                .getSchemaName());
-
-        if (!dbCache.containsKey(tableName)
-                || orc.getTableId() == -1
-                || dbCache.get(tableName).getTable() == null
-                || dbCache.get(tableName).getTable().getTableId() != orc
-                        .getTableId())
+        // Enum definitions are only valid for the table definition from which
+        // they were computed.
+        String key = orc.getSchemaName() + "." + tableName;
+        TableWithEnums cached = metadataCache.get(key);
+        if (cached == null || cached.getTable() != newTable)
         {
-            // This table was not processed yet or schema changed since it was
-            // cached : fetch information about its primary key
-            if (dbCache.remove(tableName) != null && logger.isDebugEnabled())
-                logger.debug("Detected a schema change for table "
-                        + orc.getSchemaName() + "." + tableName
-                        + " - Removing table metadata from cache");
-            Table newTable = conn.findTable(orc.getSchemaName(),
-                    orc.getTableName(), false);
-            // If we cannot find the table, it is possible it has been deleted,
-            // in which case there is nothing to be done.
-            if (newTable == null)
-            {
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug("Ignored a missing table: name="
-                            + orc.getSchemaName() + "." + tableName);
-                }
-                return;
-            }
-            newTable.setTableId(orc.getTableId());
-            dbCache.put(tableName, new TableWithEnums(newTable));
+            if (cached != null && logger.isDebugEnabled())
+                logger.debug("Detected a schema change for table " + key
+                        + " - Removing enum definitions from cache");
+            metadataCache.put(key, new TableWithEnums(newTable));
         }
 
         // Is there any enum columns in this table? If so, retrieve enum
         // definitions of each enum column.
-        TableWithEnums table = dbCache.get(tableName);
+        TableWithEnums table = metadataCache.get(key);
         // Have we already cached enum definitions?
         HashMap<Integer, String[]> enumDefinitions = table.getEnumDefinitions();
         if (enumDefinitions != null)
@@ -33,7 +33,7 @@ import com.continuent.tungsten.replicator.thl.THLManagerCtrl;
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  * @version 1.0
  */
-public class LoggingFilter implements Filter
+public class LoggingFilter implements SerialFilter
 {
     private static Logger logger = Logger.getLogger(LoggingFilter.class);
 
@@ -37,7 +37,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:edward.archibald@continuent.com">Edward Archibald</a>
  * @version 1.0
  */
-public class MySQLSessionSupportFilter implements Filter
+public class MySQLSessionSupportFilter implements SerialFilter
 {
     private static Logger       logger                = Logger.getLogger(LoggingFilter.class);
 
@@ -22,7 +22,6 @@ package com.continuent.tungsten.replicator.filter;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 
@@ -30,12 +29,13 @@ import org.apache.log4j.Logger;
 
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.database.Column;
-import com.continuent.tungsten.replicator.database.Database;
 import com.continuent.tungsten.replicator.database.Key;
 import com.continuent.tungsten.replicator.database.MySQLOperationMatcher;
 import com.continuent.tungsten.replicator.database.SqlOperation;
 import com.continuent.tungsten.replicator.database.SqlOperationMatcher;
 import com.continuent.tungsten.replicator.database.Table;
+import com.continuent.tungsten.replicator.database.TableMetadataRegistry;
+import com.continuent.tungsten.replicator.database.TableMetadataService;
 import com.continuent.tungsten.replicator.datasource.SqlDataSource;
 import com.continuent.tungsten.replicator.dbms.DBMSData;
 import com.continuent.tungsten.replicator.dbms.OneRowChange;
@@ -53,21 +53,19 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:stephane.giron@continuent.com">Stephane Giron</a>
  * @version 1.0
  */
-public class PrimaryKeyFilter implements Filter
+public class PrimaryKeyFilter implements SerialFilter
 {
     private static Logger                               logger                    = Logger.getLogger(PrimaryKeyFilter.class);
 
-    // Metadata cache is a hashtable indexed by the database name and each
-    // database uses a hashtable indexed by the table name (This is done in
-    // order to be able to drop all table definitions at once if a DROP DATABASE
-    // is trapped). Filling metadata cache is done in a lazy way. It will be
-    // updated only when a table is used for the first time by a row event.
-    private Hashtable<String, Hashtable<String, Table>> metadataCache;
+    // Table metadata come from the shared registry of the table metadata
+    // service if there is one or otherwise from a private registry. Either way
+    // metadata are loaded lazily when a row event first uses a table.
+    private TableMetadataRegistry                       registry;
+    private boolean                                     privateRegistry           = false;
 
     // Connection information.
     private SqlDataSource                               dataSourceImpl;
     private String                                      dataSource;
-    Database                                            conn                      = null;
 
     private List<String>                                tables                    = null;
     private List<String>                                schemas                   = null;
@@ -80,8 +78,6 @@ public class PrimaryKeyFilter implements Filter
     // SQL parser.
     SqlOperationMatcher                                 sqlMatcher                = new MySQLOperationMatcher();
 
-    private long                                        lastConnectionTime;
-
     /**
      * {@inheritDoc}
      * 
@@ -116,18 +112,23 @@ public class PrimaryKeyFilter implements Filter
      */
     public void prepare(PluginContext context) throws ReplicatorException
     {
-        metadataCache = new Hashtable<String, Hashtable<String, Table>>();
-
-        // Locate our data source that we use to pick up metadata and create
-        // connection.
-        logger.info("Connecting to data source");
+        // Locate our data source that we use to pick up metadata.
         dataSourceImpl = (SqlDataSource) context.getDataSource(dataSource);
         if (dataSourceImpl == null)
         {
             throw new ReplicatorException("Unable to locate data source: name="
                     + dataSource);
         }
-        conn = dataSourceImpl.getConnection();
+
+        // Use the shared metadata registry if available.
+        registry = TableMetadataService.findRegistry(context, dataSource);
+        if (registry == null)
+        {
+            registry = new TableMetadataRegistry(dataSource, dataSourceImpl,
+                    5000);
+            registry.setReconnectTimeoutInSeconds(reconnectTimeoutInSeconds);
+            privateRegistry = true;
+        }
     }
 
     /**
@@ -137,15 +138,11 @@ public class PrimaryKeyFilter implements Filter
      */
     public void release(PluginContext context) throws ReplicatorException
     {
-        if (metadataCache != null)
+        if (registry != null)
         {
-            metadataCache.clear();
-            metadataCache = null;
-        }
-        if (conn != null)
-        {
-            dataSourceImpl.releaseConnection(conn);
-            conn = null;
+            if (privateRegistry)
+                registry.release();
+            registry = null;
         }
     }
 
@@ -170,7 +167,7 @@ public class PrimaryKeyFilter implements Filter
                     {
                         // Check for and add primary key information. This
                         // also adds delete column information if desired.
-                        checkForPK(orc);
+                        checkForPK(orc, event.getSeqno());
                     }
                     catch (SQLException e)
                     {
@@ -190,70 +187,20 @@ public class PrimaryKeyFilter implements Filter
                     query = new String(sdata.getQueryAsBytes());
 
                 SqlOperation sqlOperation = sqlMatcher.match(query);
-
-                if (sqlOperation.getOperation() == SqlOperation.DROP
-                        && sqlOperation.getObjectType() == SqlOperation.SCHEMA)
-                {
-                    // "drop database" statement detected : remove database
-                    // metadata
-                    String dbName = sqlOperation.getSchema();
-                    if (metadataCache.remove(dbName) != null)
-                    {
-                        if (logger.isDebugEnabled())
-                            logger.debug("DROP DATABASE detected - Removing database metadata for '"
-                                    + dbName + "'");
-                    }
-                    else if (logger.isDebugEnabled())
-                        logger.debug("DROP DATABASE detected - no cached database metadata to delete for '"
-                                + dbName + "'");
-                    continue;
-                }
-                else if (sqlOperation.getOperation() == SqlOperation.ALTER)
-                {
-                    // Detected an alter table statement / Dropping table
-                    // metadata for the concerned table
-                    String name = sqlOperation.getName();
-                    String defaultDB = sdata.getDefaultSchema();
-                    removeTableMetadata(name, sqlOperation.getSchema(),
-                            defaultDB);
-                    continue;
-                }
-
+                int invalidated = registry.invalidate(sqlOperation,
+                        sdata.getDefaultSchema(), event.getSeqno(),
+                        event.getEpochNumber(), query);
+                if (invalidated > 0 && logger.isDebugEnabled())
+                    logger.debug("Table metadata invalidation: stmt=" + query
+                            + " invalidated=" + invalidated);
             }
         }
         return event;
     }
 
-    private void removeTableMetadata(String tableName, String schemaName,
-            String defaultDB)
-    {
-        if (schemaName != null)
-        {
-            Hashtable<String, Table> tableCache = metadataCache.get(schemaName);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("ALTER TABLE detected - Removing table metadata for '"
-                            + schemaName + "." + tableName + "'");
-            }
-            else if (logger.isDebugEnabled())
-                logger.debug("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + schemaName + "." + tableName + "'");
-        }
-        else if (defaultDB != null)
-        {
-            Hashtable<String, Table> tableCache = metadataCache.get(defaultDB);
-            if (tableCache != null && tableCache.remove(tableName) != null)
-                logger.info("ALTER TABLE detected - Removing table metadata for '"
-                        + defaultDB + "." + tableName + "'");
-            else
-                logger.info("ALTER TABLE detected - no cached table metadata to remove for '"
-                        + defaultDB + "." + tableName + "'");
-        }
-    }
-
     // Add primary keys to row change data.
-    private void checkForPK(OneRowChange orc) throws SQLException
+    private void checkForPK(OneRowChange orc, long seqno)
+            throws SQLException, ReplicatorException
     {
         if (orc.getAction() == ActionType.INSERT && !addPkeyToInserts)
             return;
@@ -271,44 +218,20 @@ public class PrimaryKeyFilter implements Filter
             return;
         }
 
-        if (!metadataCache.containsKey(orc.getSchemaName()))
-        {
-            // Nothing defined yet in this database
-            metadataCache.put(orc.getSchemaName(),
-                    new Hashtable<String, Table>());
-        }
-
-        Hashtable<String, Table> dbCache = metadataCache.get(orc
-                .getSchemaName());
-
-        if (!dbCache.containsKey(tableName) || orc.getTableId() == -1
-                || dbCache.get(tableName).getTableId() != orc.getTableId())
-        {
-            // This table was not processed yet or schema changed since it was
-            // cached : fetch information about its primary key
-            if (dbCache.remove(tableName) != null && logger.isDebugEnabled())
-                logger.debug("Detected a schema change for table "
-                        + orc.getSchemaName() + "." + tableName
-                        + " - Removing table metadata from cache");
-            reconnectIfNeeded();
-            Table newTable = conn.findTable(orc.getSchemaName(),
-                    orc.getTableName(), false);
-            if (newTable != null)
-            {
-                newTable.setTableId(orc.getTableId());
-                dbCache.put(tableName, newTable);
-            }
-            else if (logger.isDebugEnabled())
-                logger.debug("Table " + tableName + " not found in "
-                        + orc.getSchemaName());
-        }
-
-        Table table = dbCache.get(tableName);
+        // Fetch table metadata as of this event. The registry reloads the
+        // table if its ID shows that the schema changed since it was cached.
+        // Without a table ID we look the table up again for every row.
+        Table table;
+        if (orc.getTableId() == -1)
+            table = registry.reloadTable(orc.getSchemaName(), tableName, seqno);
+        else
+            table = registry.getTable(orc.getSchemaName(), tableName,
+                    orc.getTableId(), seqno);
         if (table == null)
         {
             if (logger.isDebugEnabled())
-                logger.debug("Table " + orc.getSchemaName() + "." + tableName
-                        + " not found in cache");
+                logger.debug("Table " + tableName + " not found in "
+                        + orc.getSchemaName());
             return;
         }
 
@@ -431,19 +354,6 @@ public class PrimaryKeyFilter implements Filter
         }
     }
 
-    private void reconnectIfNeeded() throws SQLException
-    {
-        long currentTime = System.currentTimeMillis();
-        if (reconnectTimeoutInSeconds > 0
-                && currentTime - lastConnectionTime > reconnectTimeoutInSeconds * 1000)
-        {
-            // Time to reconnect now
-            lastConnectionTime = currentTime;
-            conn.close();
-            conn.connect();
-        }
-    }
-
     /** Declares the data source name for this filter. */
     public void setDataSource(String dataSource)
     {
@@ -39,7 +39,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  * @version 1.0
  */
-public class PrintEventFilter implements Filter
+public class PrintEventFilter implements SerialFilter
 {    
     private static Logger            logger = Logger.getLogger(PrintEventFilter.class);
 
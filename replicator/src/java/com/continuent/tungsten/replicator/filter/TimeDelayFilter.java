@@ -37,7 +37,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  */
-public class TimeDelayFilter implements Filter
+public class TimeDelayFilter implements SerialFilter
 {
     private static Logger logger = Logger.getLogger(TimeDelayFilter.class);
     private long timeDelayMillis = 0;
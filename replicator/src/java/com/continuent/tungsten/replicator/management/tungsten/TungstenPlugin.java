@@ -1081,6 +1081,17 @@ public class TungstenPlugin extends NotificationBroadcasterSupport
                     props.put("currentBlockSize",
                             Long.toString(progress.getCurrentBlockSize()));
                     props.put("commits", Long.toString(blockCount));
+                    if (progress.getAdaptiveBlockSize() >= 0)
+                    {
+                        props.put("adaptiveBlockSize",
+                                Long.toString(progress.getAdaptiveBlockSize()));
+                        props.put("adaptiveBlockDecision",
+                                progress.getAdaptiveBlockDecision());
+                        props.put("adaptiveBlockIncreases", Long
+                                .toString(progress.getAdaptiveBlockIncreases()));
+                        props.put("adaptiveBlockDecreases", Long
+                                .toString(progress.getAdaptiveBlockDecreases()));
+                    }
                     props.put("lastCommittedBlockTime", Double
                             .toString(progress.getLastCommittedBlockTime()));
                     props.put("appliedLatency",
@@ -1211,6 +1222,15 @@ public class TungstenPlugin extends NotificationBroadcasterSupport
                     props.put("blockCommitInterval",
                             new Double(intervalSecs).toString() + "s");
                     props.put("blockCommitPolicy", stage.getBlockCommitPolicy());
+                    if ("adaptive".equals(stage.getBlockCommitPolicy()))
+                    {
+                        props.put("blockCommitMinRowCount", Integer
+                                .toString(stage.getBlockCommitMinRowCount()));
+                        double targetSecs = (double) stage
+                                .getBlockCommitTargetLatency().longValue() / 1000.0;
+                        props.put("blockCommitTargetLatency",
+                                Double.toString(targetSecs) + "s");
+                    }
 
                     // Add stage components.
                     props.put("applier.name", stage.getApplierSpec().getName());
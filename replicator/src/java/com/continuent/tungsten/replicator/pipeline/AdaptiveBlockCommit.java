@@ -0,0 +1,114 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.pipeline;
+
+/**
+ * Computes the block commit size for stages that use the adaptive block commit
+ * policy. The task reports each commit. If the extractor still has events
+ * waiting and apply latency is not falling, we are falling behind, so the block
+ * size doubles to amortize commit cost. If the extractor has run dry, we are
+ * caught up, so the block size halves toward the minimum to keep latency low.
+ * Blocks that take longer than the target commit latency also halve the block
+ * size. Otherwise the block size stays as it is.
+ * <p>
+ * This class is not synchronized as it is used by a single task thread.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class AdaptiveBlockCommit
+{
+    /** Decisions taken after a commit. */
+    public enum Decision
+    {
+        grow, shrink, hold
+    }
+
+    private final int  minBlockSize;
+    private final int  maxBlockSize;
+    private final long targetLatencyMillis;
+
+    // Current block size and apply latency at the previous commit.
+    private int        blockSize;
+    private long       lastApplyLatencyMillis = -1;
+
+    /**
+     * Creates a new instance that starts at the minimum block size.
+     * 
+     * @param minBlockSize Smallest block size, at least 1
+     * @param maxBlockSize Largest block size
+     * @param targetLatencyMillis Longest time a block should take to commit or
+     *            0 if there is no target
+     */
+    public AdaptiveBlockCommit(int minBlockSize, int maxBlockSize,
+            long targetLatencyMillis)
+    {
+        this.minBlockSize = Math.max(1, minBlockSize);
+        this.maxBlockSize = Math.max(this.minBlockSize, maxBlockSize);
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.blockSize = this.minBlockSize;
+    }
+
+    /** Returns the number of transactions to apply before committing. */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Adjusts the block size after a commit.
+     * 
+     * @param backlogged True if the extractor has more events waiting
+     * @param blockMillis Milliseconds from the previous commit to this one
+     * @param applyLatencyMillis Current apply latency
+     * @return The decision taken
+     */
+    public Decision commit(boolean backlogged, long blockMillis,
+            long applyLatencyMillis)
+    {
+        boolean latencyFalling = lastApplyLatencyMillis >= 0
+                && applyLatencyMillis < lastApplyLatencyMillis;
+        boolean overTarget = targetLatencyMillis > 0
+                && blockMillis > targetLatencyMillis;
+        lastApplyLatencyMillis = applyLatencyMillis;
+
+        Decision decision;
+        if (overTarget || !backlogged)
+            decision = resize(blockSize / 2, Decision.shrink);
+        else if (!latencyFalling)
+            decision = resize(blockSize * 2, Decision.grow);
+        else
+            decision = Decision.hold;
+        return decision;
+    }
+
+    // Set a new block size within bounds and return the decision, which is
+    // hold if the size is unchanged.
+    private Decision resize(int newBlockSize, Decision decision)
+    {
+        newBlockSize = Math.min(maxBlockSize,
+                Math.max(minBlockSize, newBlockSize));
+        if (newBlockSize == blockSize)
+            return Decision.hold;
+        blockSize = newBlockSize;
+        return decision;
+    }
+}
@@ -35,5 +35,12 @@ public enum BlockCommitPolicy
      * Commit block immediately on fragmented transactions, service changes and
      * transactions tagged with unsafe_for_block_commit.
      */
-    strict
+    strict,
+    /**
+     * Commit as for strict but adjust the block size between
+     * blockCommitMinRowCount and blockCommitRowCount, growing it while the
+     * stage falls behind and shrinking it when the stage is caught up or
+     * blocks exceed blockCommitTargetLatency.
+     */
+    adaptive
 }
\ No newline at end of file
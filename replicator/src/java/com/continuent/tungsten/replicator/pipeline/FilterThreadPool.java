@@ -0,0 +1,337 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
+import com.continuent.tungsten.replicator.event.ReplEvent;
+import com.continuent.tungsten.replicator.extractor.Extractor;
+import com.continuent.tungsten.replicator.extractor.ExtractorException;
+import com.continuent.tungsten.replicator.filter.Filter;
+import com.continuent.tungsten.replicator.filter.SerialFilter;
+import com.continuent.tungsten.replicator.plugin.PluginSpecification;
+
+/**
+ * Runs filter chains on a pool of worker threads for a stage task. Each worker
+ * has its own filter instances, so filters do not need to be thread-safe, but
+ * they must not depend on seeing every event. The task extracts events through
+ * the pool, which reads ahead while the extractor has events ready and hands
+ * them to workers. Events come back in the order they were extracted, which
+ * keeps seqno and fragno order for the applier no matter which worker finishes
+ * first.
+ * <p>
+ * Workers filter events before the task asks the stage schedule what to do
+ * with them. Filters on the pool therefore also see events that the task then
+ * skips or never reaches, for example when it stops at a given seqno, so they
+ * must have no effects other than on the events they return.
+ * <p>
+ * Apart from the workers, the pool is used only by the task thread and is not
+ * synchronized.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class FilterThreadPool
+{
+    private static Logger                        logger                    = Logger.getLogger(FilterThreadPool.class);
+
+    /**
+     * Number of events per worker that may be extracted and not yet returned,
+     * which lets workers run ahead of the task thread.
+     */
+    public static final int                      PENDING_EVENTS_PER_THREAD = 16;
+
+    /** Milliseconds to wait for each worker thread to stop. */
+    public static final long                     STOP_TIMEOUT_MILLIS       = 5000;
+
+    private final String                         name;
+    private final List<List<Filter>>             chains;
+    private final int                            maxPending;
+
+    // Jobs waiting for a worker and jobs in extraction order.
+    private final LinkedBlockingQueue<FilterJob> queue                     = new LinkedBlockingQueue<FilterJob>();
+    private final LinkedList<FilterJob>          pending                   = new LinkedList<FilterJob>();
+    private final List<Thread>                   workers                   = new ArrayList<Thread>();
+
+    // Job for the event last returned and an extractor failure that is
+    // reported once pending events are returned.
+    private FilterJob                            currentJob;
+    private ExtractorException                   deferredException;
+
+    // An event submitted for filtering along with its result.
+    private static class FilterJob
+    {
+        private final ReplEvent event;
+        private ReplEvent       result;
+        private Throwable       error;
+        private boolean         done;
+
+        FilterJob(ReplEvent event)
+        {
+            this.event = event;
+        }
+
+        // Waits until filtering is done and returns the filtered event.
+        synchronized ReplEvent await() throws ReplicatorException,
+                InterruptedException
+        {
+            while (!done)
+                wait();
+            if (error instanceof ReplicatorException)
+                throw (ReplicatorException) error;
+            else if (error != null)
+                throw new ReplicatorException("Filter failed: "
+                        + error.getMessage(), error);
+            return result;
+        }
+
+        // Runs the filter chain on the event.
+        void run(List<Filter> chain) throws InterruptedException
+        {
+            try
+            {
+                ReplDBMSEvent filtered = (ReplDBMSEvent) event;
+                for (Filter f : chain)
+                {
+                    if ((filtered = f.filter(filtered)) == null)
+                    {
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Event discarded by filter: name="
+                                    + f.getClass().toString());
+                        }
+                        break;
+                    }
+                }
+                finish(filtered, null);
+            }
+            catch (InterruptedException e)
+            {
+                finish(null, e);
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                finish(null, t);
+            }
+        }
+
+        // Stores the result and wakes up the task thread.
+        synchronized void finish(ReplEvent result, Throwable error)
+        {
+            this.result = result;
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Creates a new pool.
+     * 
+     * @param name Task name, used to name worker threads
+     * @param chains Filter chain for each worker thread
+     */
+    public FilterThreadPool(String name, List<List<Filter>> chains)
+    {
+        this.name = name;
+        this.chains = chains;
+        this.maxPending = chains.size() * PENDING_EVENTS_PER_THREAD;
+    }
+
+    /**
+     * Returns the number of filters at the start of a filter list that may run
+     * on worker threads. Filters run in parallel only if their names are
+     * configured as parallel filters, so this ends at the first filter whose
+     * name is not listed or that is a {@link SerialFilter}.
+     * 
+     * @param filters Filters of a stage task
+     * @param filterSpecs Specifications of the filters in the same order
+     * @param parallelFilters Names of filters that may run in parallel
+     */
+    public static int countParallelFilters(List<Filter> filters,
+            List<PluginSpecification> filterSpecs, List<String> parallelFilters)
+    {
+        int count = 0;
+        for (Filter f : filters)
+        {
+            if (f instanceof SerialFilter)
+                break;
+            if (!parallelFilters.contains(filterSpecs.get(count).getName()))
+                break;
+            count++;
+        }
+        return count;
+    }
+
+    /** Starts worker threads. */
+    public void start()
+    {
+        for (int i = 0; i < chains.size(); i++)
+        {
+            final List<Filter> chain = chains.get(i);
+            Thread worker = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        while (true)
+                            queue.take().run(chain);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Normal shutdown.
+                    }
+                }
+            });
+            worker.setName(name + "-filter-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        logger.info("Started filter threads: task=" + name + " threads="
+                + chains.size() + " maxPending=" + maxPending);
+    }
+
+    /**
+     * Stops worker threads and drops pending events. Workers that are stuck in
+     * a filter that does not respond to interrupts are left behind after a
+     * timeout; they are daemon threads and do not block shutdown.
+     */
+    public void stop()
+    {
+        for (Thread worker : workers)
+            worker.interrupt();
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join(STOP_TIMEOUT_MILLIS);
+                if (worker.isAlive())
+                {
+                    logger.warn("Filter thread did not stop within timeout: task="
+                            + name
+                            + " thread="
+                            + worker.getName()
+                            + " timeoutMillis=" + STOP_TIMEOUT_MILLIS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                logger.warn("Interrupted while waiting for filter threads to stop: task="
+                        + name);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+        queue.clear();
+        pending.clear();
+        currentJob = null;
+        deferredException = null;
+    }
+
+    /**
+     * Returns the next event in extraction order. If no events are pending,
+     * this waits on the extractor. Otherwise it first reads ahead as long as
+     * the extractor has events ready and the pool has room for them.
+     * 
+     * @param extractor Extractor of the stage task
+     * @return Event as it was extracted or null if the extractor returned none
+     */
+    public ReplEvent extract(Extractor extractor) throws ReplicatorException,
+            InterruptedException
+    {
+        if (pending.isEmpty() && deferredException != null)
+        {
+            ExtractorException e = deferredException;
+            deferredException = null;
+            throw e;
+        }
+
+        while (deferredException == null && pending.size() < maxPending
+                && (pending.isEmpty() || extractor.hasMoreEvents()))
+        {
+            ReplEvent event;
+            try
+            {
+                event = extractor.extract();
+            }
+            catch (ExtractorException e)
+            {
+                if (pending.isEmpty())
+                    throw e;
+                deferredException = e;
+                break;
+            }
+            if (event == null)
+                break;
+            submit(event);
+        }
+
+        currentJob = pending.poll();
+        if (currentJob == null)
+            return null;
+        else
+            return currentJob.event;
+    }
+
+    /**
+     * Waits until workers are done with the event last returned by
+     * {@link #extract(Extractor)}.
+     * 
+     * @return Filtered event or null if a filter discarded the event
+     * @throws ReplicatorException Thrown if a filter failed
+     */
+    public ReplEvent awaitFiltered() throws ReplicatorException,
+            InterruptedException
+    {
+        return currentJob.await();
+    }
+
+    /** Returns true if extracted events are waiting to be returned. */
+    public boolean hasPendingEvents()
+    {
+        return !pending.isEmpty();
+    }
+
+    // Submits an event. Events that should not be filtered, such as control
+    // events and events that were filtered upstream, are passed through.
+    private void submit(ReplEvent event)
+    {
+        FilterJob job = new FilterJob(event);
+        pending.add(job);
+        if (event instanceof ReplDBMSEvent
+                && !(event instanceof ReplDBMSFilteredEvent))
+            queue.add(job);
+        else
+            job.finish(event, null);
+    }
+}
@@ -46,6 +46,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.plugin.ReplicatorPlugin;
 import com.continuent.tungsten.replicator.service.PipelineService;
 import com.continuent.tungsten.replicator.storage.ParallelStore;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
 import com.continuent.tungsten.replicator.storage.Store;
 import com.continuent.tungsten.replicator.util.Watch;
 
@@ -77,6 +78,8 @@ public class Pipeline implements ReplicatorPlugin
                                                                           .newCachedThreadPool();
     private TreeMap<String, Future<?>>       offlineRequests      = new TreeMap<String, Future<?>>();
     private int                              channels             = -1;
+    private long                             maxQueueBytes        = 0;
+    private QueueMemoryBudget                queueBudget          = null;
 
     public Pipeline()
     {
@@ -106,6 +109,29 @@ public class Pipeline implements ReplicatorPlugin
         this.autoSync = autoSync;
     }
 
+    public long getMaxQueueBytes()
+    {
+        return maxQueueBytes;
+    }
+
+    /**
+     * Sets the maximum estimated bytes of events held across all in-memory
+     * queues of the pipeline. 0 means no limit.
+     */
+    public void setMaxQueueBytes(long maxQueueBytes)
+    {
+        this.maxQueueBytes = maxQueueBytes;
+    }
+
+    /**
+     * Returns the memory budget shared by in-memory queues or null if there is
+     * no pipeline-wide limit.
+     */
+    public QueueMemoryBudget getQueueBudget()
+    {
+        return queueBudget;
+    }
+
     public void addStage(Stage stage)
     {
         stages.add(stage);
@@ -228,6 +254,14 @@ public class Pipeline implements ReplicatorPlugin
         Stage first = stages.getFirst();
         first.setAutoSync(autoSync);
 
+        // Create the memory budget for in-memory queues.
+        if (maxQueueBytes > 0)
+        {
+            logger.info("Limiting bytes in pipeline queues: maxQueueBytes="
+                    + maxQueueBytes);
+            queueBudget = new QueueMemoryBudget(name, maxQueueBytes, null);
+        }
+
         for (String name : getServiceNames())
         {
             ReplicatorRuntime.configurePlugin(services.get(name), context);
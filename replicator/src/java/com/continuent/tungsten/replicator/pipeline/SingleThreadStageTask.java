@@ -20,6 +20,7 @@
 
 package com.continuent.tungsten.replicator.pipeline;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -76,6 +77,12 @@ public class SingleThreadStageTask implements Runnable
     private long               lastCommitMillis;
     private long               blockCommitIntervalMillis;
     private boolean            strictBlockCommit = true;
+    private AdaptiveBlockCommit adaptiveBlockCommit;
+
+    // Filter instances for filter threads after the first, which uses the
+    // task filters, and the pool that runs them.
+    private List<List<Filter>> workerFilters     = new ArrayList<List<Filter>>();
+    private FilterThreadPool   filterPool;
 
     private volatile boolean   cancelled         = false;
 
@@ -94,6 +101,23 @@ public class SingleThreadStageTask implements Runnable
             this.strictBlockCommit = false;
         this.usingBlockCommit = (blockCommitRowsCount > 1);
         this.taskProgress = stage.getProgressTracker().getTaskProgress(taskId);
+
+        // With adaptive block commit the block size starts at the minimum
+        // and may grow up to the block commit row count.
+        if (usingBlockCommit
+                && stage.getCommitPolicy() == BlockCommitPolicy.adaptive)
+        {
+            long targetLatencyMillis = 0;
+            if (stage.getBlockCommitTargetLatency() != null)
+                targetLatencyMillis = stage.getBlockCommitTargetLatency()
+                        .longValue();
+            this.adaptiveBlockCommit = new AdaptiveBlockCommit(
+                    stage.getBlockCommitMinRowCount(), blockCommitRowsCount,
+                    targetLatencyMillis);
+            this.blockCommitRowsCount = adaptiveBlockCommit.getBlockSize();
+            taskProgress.setAdaptiveBlockSize(blockCommitRowsCount,
+                    AdaptiveBlockCommit.Decision.hold);
+        }
     }
 
     /** Returns the id of this task. */
@@ -129,6 +153,20 @@ public class SingleThreadStageTask implements Runnable
             addShutdownHook(f);
     }
 
+    /**
+     * Sets filter instances for filter threads. Each list holds the filters
+     * that run in parallel for one thread after the first.
+     */
+    public void setWorkerFilters(List<List<Filter>> workerFilters)
+    {
+        this.workerFilters = workerFilters;
+        for (List<Filter> chain : workerFilters)
+        {
+            for (Filter f : chain)
+                addShutdownHook(f);
+        }
+    }
+
     public void setApplier(Applier applier)
     {
         this.applier = applier;
@@ -145,6 +183,11 @@ public class SingleThreadStageTask implements Runnable
         return filters;
     }
 
+    public List<List<Filter>> getWorkerFilters()
+    {
+        return workerFilters;
+    }
+
     public Applier getApplier()
     {
         return applier;
@@ -233,6 +276,10 @@ public class SingleThreadStageTask implements Runnable
             // Initialize the clock for checking block commit interval.
             lastCommitMillis = System.currentTimeMillis();
 
+            // Start filter threads if filters run in parallel. The remaining
+            // filters run on this thread.
+            List<Filter> taskFilters = startFilterPool();
+
             while (!cancelled)
             {
                 // Check for cancellation and exit loop if it has occurred.
@@ -247,7 +294,10 @@ public class SingleThreadStageTask implements Runnable
                 try
                 {
                     taskProgress.beginExtractInterval();
-                    genericEvent = extractor.extract();
+                    if (filterPool == null)
+                        genericEvent = extractor.extract();
+                    else
+                        genericEvent = filterPool.extract(extractor);
                 }
                 catch (ExtractorException e)
                 {
@@ -278,6 +328,22 @@ public class SingleThreadStageTask implements Runnable
                     continue;
                 }
 
+                // If filters run on filter threads, wait until they are done
+                // with this event, as they may change it.
+                ReplEvent filteredEvent = genericEvent;
+                if (filterPool != null)
+                {
+                    taskProgress.beginFilterInterval();
+                    try
+                    {
+                        filteredEvent = filterPool.awaitFiltered();
+                    }
+                    finally
+                    {
+                        taskProgress.endFilterInterval();
+                    }
+                }
+
                 // Issue #15. If we detect a change in the service name, we
                 // should commit now to prevent merging of transactions from
                 // different services in block commit. However, we need to
@@ -374,8 +440,13 @@ public class SingleThreadStageTask implements Runnable
 
                     try
                     {
-                        for (Filter f : filters)
+                        // Filters on filter threads have already run.
+                        if (filterPool != null)
+                            event = (ReplDBMSEvent) filteredEvent;
+                        for (Filter f : taskFilters)
                         {
+                            if (event == null)
+                                break;
                             if ((event = f.filter(event)) == null)
                             {
                                 if (logger.isDebugEnabled())
@@ -613,6 +684,51 @@ public class SingleThreadStageTask implements Runnable
             // Now shut down cleanly.
             emergencyRollback(message, event, e);
         }
+        finally
+        {
+            // Stop filter threads, dropping events they have not returned.
+            if (filterPool != null)
+            {
+                filterPool.stop();
+                filterPool = null;
+            }
+        }
+    }
+
+    /**
+     * Starts filter threads if the stage runs filters on a thread pool. The
+     * filters up to the first serial filter run on filter threads.
+     * 
+     * @return Filters that run on the task thread
+     */
+    private List<Filter> startFilterPool()
+    {
+        if (stage.getFilterThreads() == 0)
+            return filters;
+        int parallelFilters = FilterThreadPool.countParallelFilters(filters,
+                stage.getFilterSpecs(), stage.getParallelFilters());
+        if (parallelFilters == 0)
+        {
+            logInfo("Filter threads are not used as the first filter is not a parallel filter",
+                    null);
+            return filters;
+        }
+
+        List<List<Filter>> chains = new ArrayList<List<Filter>>();
+        chains.add(filters.subList(0, parallelFilters));
+        chains.addAll(workerFilters);
+        filterPool = new FilterThreadPool(name, chains);
+        filterPool.start();
+        return filters.subList(parallelFilters, filters.size());
+    }
+
+    // Returns true if the extractor or filter threads hold more events.
+    private boolean hasMoreEvents()
+    {
+        if (filterPool != null && filterPool.hasPendingEvents())
+            return true;
+        else
+            return extractor.hasMoreEvents();
     }
 
     /**
@@ -624,7 +740,7 @@ public class SingleThreadStageTask implements Runnable
      */
     private boolean extractorQueueEmpty() throws InterruptedException
     {
-        if (extractor.hasMoreEvents())
+        if (hasMoreEvents())
             return false;
         else if (blockCommitIntervalMillis <= 0)
             return true;
@@ -642,7 +758,7 @@ public class SingleThreadStageTask implements Runnable
             while (sleepMillis > 0)
             {
                 Thread.sleep(1);
-                if (extractor.hasMoreEvents())
+                if (hasMoreEvents())
                     return false;
                 sleepMillis = nextCommitMillis - System.currentTimeMillis();
             }
@@ -764,8 +880,7 @@ public class SingleThreadStageTask implements Runnable
         if (doCommit)
         {
             schedule.commit();
-            blockEventCount = 0;
-            lastCommitMillis = System.currentTimeMillis();
+            blockCommitted();
         }
     }
 
@@ -796,8 +911,7 @@ public class SingleThreadStageTask implements Runnable
             if (doCommit)
             {
                 schedule.commit();
-                blockEventCount = 0;
-                lastCommitMillis = System.currentTimeMillis();
+                blockCommitted();
             }
         }
         catch (ApplierException e)
@@ -831,8 +945,30 @@ public class SingleThreadStageTask implements Runnable
     {
         applier.commit();
         schedule.commit();
+        blockCommitted();
+    }
+
+    /**
+     * Resets block commit accounting after a commit. If the adaptive block
+     * commit policy is in effect, this also chooses the size of the next block
+     * and reports the decision in task progress.
+     */
+    private void blockCommitted()
+    {
+        long now = System.currentTimeMillis();
+        if (adaptiveBlockCommit != null && blockEventCount > 0)
+        {
+            AdaptiveBlockCommit.Decision decision = adaptiveBlockCommit
+                    .commit(hasMoreEvents(), now - lastCommitMillis,
+                            taskProgress.getApplyLatencyMillis());
+            blockCommitRowsCount = adaptiveBlockCommit.getBlockSize();
+            taskProgress.setAdaptiveBlockSize(blockCommitRowsCount, decision);
+            if (logger.isDebugEnabled())
+                logger.debug("Adaptive block commit: decision=" + decision
+                        + " blockSize=" + blockCommitRowsCount);
+        }
         blockEventCount = 0;
-        lastCommitMillis = System.currentTimeMillis();
+        lastCommitMillis = now;
     }
 
     /**
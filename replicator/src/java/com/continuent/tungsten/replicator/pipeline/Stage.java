@@ -21,6 +21,7 @@
 package com.continuent.tungsten.replicator.pipeline;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.concurrent.Future;
@@ -59,8 +60,12 @@ public class Stage implements ReplicatorPlugin
     private int                       blockCommitRowCount = 1;
     private Interval                  blockCommitInterval = new Interval(0);
     private String                    blockCommitPolicy   = "strict";
+    private int                       blockCommitMinRowCount = 1;
+    private Interval                  blockCommitTargetLatency = new Interval(1000);
     private BlockCommitPolicy         commitPolicy;
     private boolean                   autoSync            = false;
+    private int                       filterThreads       = 0;
+    private List<String>              parallelFilters     = new ArrayList<String>();
 
     // Read-only parameters.
     private StageProgressTracker      progressTracker;
@@ -176,6 +181,34 @@ public class Stage implements ReplicatorPlugin
         this.blockCommitInterval = blockCommitInterval;
     }
 
+    /**
+     * Returns the smallest block size used by the adaptive block commit
+     * policy.
+     */
+    public int getBlockCommitMinRowCount()
+    {
+        return blockCommitMinRowCount;
+    }
+
+    public void setBlockCommitMinRowCount(int blockCommitMinRowCount)
+    {
+        this.blockCommitMinRowCount = blockCommitMinRowCount;
+    }
+
+    /**
+     * Returns the longest time a block should take to commit when using the
+     * adaptive block commit policy. If set to zero has no effect.
+     */
+    public Interval getBlockCommitTargetLatency()
+    {
+        return blockCommitTargetLatency;
+    }
+
+    public void setBlockCommitTargetLatency(Interval blockCommitTargetLatency)
+    {
+        this.blockCommitTargetLatency = blockCommitTargetLatency;
+    }
+
     /** Returns block commit policy as a string. */
     public String getBlockCommitPolicy()
     {
@@ -218,6 +251,36 @@ public class Stage implements ReplicatorPlugin
         this.applySkipCount = applySkipCount;
     }
 
+    /**
+     * Returns the number of threads on which each task runs filters. If set to
+     * zero, filters run on the task thread.
+     */
+    public int getFilterThreads()
+    {
+        return filterThreads;
+    }
+
+    public void setFilterThreads(int filterThreads)
+    {
+        this.filterThreads = filterThreads;
+    }
+
+    /**
+     * Returns the names of filters that may run on a thread pool if
+     * filterThreads is greater than zero. Filters run on the pool only if
+     * they are named here, and only up to the first filter that is not named
+     * or implements SerialFilter. Other filters run on the task thread.
+     */
+    public List<String> getParallelFilters()
+    {
+        return parallelFilters;
+    }
+
+    public void setParallelFilters(List<String> parallelFilters)
+    {
+        this.parallelFilters = parallelFilters;
+    }
+
     public boolean isAutoSync()
     {
         return autoSync;
@@ -274,17 +337,36 @@ public class Stage implements ReplicatorPlugin
             throw new ReplicatorException(
                     "Stage task count may not be less than 1: stage=" + name
                             + " taskCount=" + taskCount);
+        if (filterThreads < 0)
+            throw new ReplicatorException(
+                    "Stage filter thread count may not be less than 0: stage="
+                            + name + " filterThreads=" + filterThreads);
+        for (String filterName : parallelFilters)
+        {
+            boolean found = false;
+            for (PluginSpecification filterSpec : filterSpecs)
+            {
+                if (filterSpec.getName().equals(filterName))
+                    found = true;
+            }
+            if (!found)
+                throw new ReplicatorException(
+                        "Parallel filter is not in the stage filter list: stage="
+                                + name + " filter=" + filterName);
+        }
 
         // Store the block commit policy.
         if ("lax".equals(blockCommitPolicy))
             commitPolicy = BlockCommitPolicy.lax;
         else if ("strict".equals(blockCommitPolicy))
             commitPolicy = BlockCommitPolicy.strict;
+        else if ("adaptive".equals(blockCommitPolicy))
+            commitPolicy = BlockCommitPolicy.adaptive;
         else
         {
             throw new ReplicatorException("Unrecognized block commit policy;"
-                    + " allowed values are lax or strict: stage=" + name
-                    + " policy=" + blockCommitPolicy);
+                    + " allowed values are lax, strict, or adaptive: stage="
+                    + name + " policy=" + blockCommitPolicy);
         }
 
         // Set up control structures for managing stage tasks.
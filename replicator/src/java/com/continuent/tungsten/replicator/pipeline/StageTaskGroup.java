@@ -135,6 +135,33 @@ public class StageTaskGroup implements ReplicatorPlugin
             }
             tasks[i].setFilters(filterList);
 
+            // If filters run on a thread pool, the first worker uses the
+            // task filters. Other workers need their own instances of the
+            // filters that run in parallel. These get IDs after those of the
+            // tasks so that no two instances share an ID.
+            int parallelFilters = FilterThreadPool.countParallelFilters(
+                    filterList, stage.getFilterSpecs(),
+                    stage.getParallelFilters());
+            if (stage.getFilterThreads() > 0 && parallelFilters > 0)
+            {
+                List<List<Filter>> workerFilters = new ArrayList<List<Filter>>();
+                for (int j = 1; j < stage.getFilterThreads(); j++)
+                {
+                    int workerId = taskCount + i
+                            * (stage.getFilterThreads() - 1) + j - 1;
+                    List<Filter> chain = new ArrayList<Filter>(parallelFilters);
+                    for (PluginSpecification filter : stage.getFilterSpecs()
+                            .subList(0, parallelFilters))
+                    {
+                        Filter f = (Filter) filter.instantiate(workerId);
+                        f.configure(context);
+                        chain.add(f);
+                    }
+                    workerFilters.add(chain);
+                }
+                tasks[i].setWorkerFilters(workerFilters);
+            }
+
             // Instantiate and configure the applier.
             ReplicatorPlugin applier = this.stage.getApplierSpec().instantiate(
                     i);
@@ -184,6 +211,11 @@ public class StageTaskGroup implements ReplicatorPlugin
             {
                 ReplicatorRuntime.preparePlugin(f, context);
             }
+            for (List<Filter> chain : task.getWorkerFilters())
+            {
+                for (Filter f : chain)
+                    ReplicatorRuntime.preparePlugin(f, context);
+            }
 
             ReplicatorRuntime.preparePlugin(task.getApplier(), context);
 
@@ -228,6 +260,11 @@ public class StageTaskGroup implements ReplicatorPlugin
             {
                 ReplicatorRuntime.releasePlugin(f, context);
             }
+            for (List<Filter> chain : tasks[i].getWorkerFilters())
+            {
+                for (Filter f : chain)
+                    ReplicatorRuntime.releasePlugin(f, context);
+            }
 
             ReplicatorRuntime.releasePlugin(tasks[i].getApplier(), context);
         }
@@ -46,6 +46,13 @@ public class TaskProgress
     private long           totalApplyMillis         = 0;
     private TaskState      state                    = TaskState.other;
 
+    // Block size chosen by adaptive block commit, if used, and the decision
+    // taken at the last commit.
+    private long           adaptiveBlockSize        = -1;
+    private String         adaptiveBlockDecision    = null;
+    private long           adaptiveBlockIncreases   = 0;
+    private long           adaptiveBlockDecreases   = 0;
+
     // Used to mark the beginning of a timing interval.
     private long           intervalStartMillis      = 0;
 
@@ -93,6 +100,10 @@ public class TaskProgress
         this.totalApplyMillis = other.getTotalApplyMillis();
         this.totalExtractMillis = other.getTotalExtractMillis();
         this.totalFilterMillis = other.getTotalFilterMillis();
+        this.adaptiveBlockSize = other.getAdaptiveBlockSize();
+        this.adaptiveBlockDecision = other.getAdaptiveBlockDecision();
+        this.adaptiveBlockIncreases = other.getAdaptiveBlockIncreases();
+        this.adaptiveBlockDecreases = other.getAdaptiveBlockDecreases();
     }
 
     /**
@@ -228,6 +239,50 @@ public class TaskProgress
         this.lastCommittedBlockSize = lastCommittedBlockSize;
     }
 
+    /**
+     * Records a block size decision by the adaptive block commit policy.
+     * 
+     * @param blockSize Block size to use for the next block
+     * @param decision Decision that led to this block size
+     */
+    public void setAdaptiveBlockSize(long blockSize,
+            AdaptiveBlockCommit.Decision decision)
+    {
+        this.adaptiveBlockSize = blockSize;
+        this.adaptiveBlockDecision = decision.toString();
+        if (decision == AdaptiveBlockCommit.Decision.grow)
+            adaptiveBlockIncreases++;
+        else if (decision == AdaptiveBlockCommit.Decision.shrink)
+            adaptiveBlockDecreases++;
+    }
+
+    /**
+     * Returns the block size chosen by adaptive block commit or -1 if the task
+     * does not use it.
+     */
+    public long getAdaptiveBlockSize()
+    {
+        return adaptiveBlockSize;
+    }
+
+    /** Returns the last adaptive block commit decision or null if none. */
+    public String getAdaptiveBlockDecision()
+    {
+        return adaptiveBlockDecision;
+    }
+
+    /** Returns the number of times adaptive block commit grew the block. */
+    public long getAdaptiveBlockIncreases()
+    {
+        return adaptiveBlockIncreases;
+    }
+
+    /** Returns the number of times adaptive block commit shrank the block. */
+    public long getAdaptiveBlockDecreases()
+    {
+        return adaptiveBlockDecreases;
+    }
+
     /** Return time in seconds of last committed block. */
     public double getLastCommittedBlockTime()
     {
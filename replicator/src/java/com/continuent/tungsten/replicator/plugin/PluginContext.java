@@ -33,6 +33,7 @@ import com.continuent.tungsten.replicator.datasource.UniversalDataSource;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
 import com.continuent.tungsten.replicator.pipeline.Stage;
 import com.continuent.tungsten.replicator.service.PipelineService;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
 import com.continuent.tungsten.replicator.storage.Store;
 
 /**
@@ -239,6 +240,12 @@ public interface PluginContext
      * pipeline is not active.
      */
     public int getChannels();
+
+    /**
+     * Returns the memory budget shared by in-memory queues of the pipeline or
+     * null if there is none or the pipeline is not active.
+     */
+    public QueueMemoryBudget getQueueBudget();
     
     /**
      * Returns the host time zone. Replicators override the host time zone, so
@@ -34,14 +34,14 @@ import com.continuent.tungsten.replicator.database.Database;
 import com.continuent.tungsten.replicator.database.DatabaseFactory;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplOptionParams;
-import com.continuent.tungsten.replicator.filter.Filter;
+import com.continuent.tungsten.replicator.filter.SerialFilter;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 
 /**
  * @author <a href="mailto:stephane.giron@continuent.com">Stephane Giron</a>
  * @version 1.0
  */
-public class ShardFilter implements Filter
+public class ShardFilter implements SerialFilter
 {
     private static Logger logger = Logger.getLogger(ShardFilter.class);
 
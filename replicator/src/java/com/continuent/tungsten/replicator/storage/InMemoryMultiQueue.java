@@ -48,6 +48,8 @@ public class InMemoryMultiQueue implements Store
     private String                             name;
     private int                                partitions       = 1;
     private int                                maxSize          = 1;
+    private long                               maxBytes         = 0;
+    private QueueMemoryBudget                  budget;
 
     private long                               minStored        = Long.MAX_VALUE;
     private long                               maxStored        = Long.MIN_VALUE;
@@ -90,6 +92,20 @@ public class InMemoryMultiQueue implements Store
         this.maxSize = size;
     }
 
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum estimated bytes of events across all queues. 0 means
+     * no limit.
+     */
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
     public int getPartitions()
     {
         return partitions;
@@ -147,6 +163,8 @@ public class InMemoryMultiQueue implements Store
                     + "=" + failTag);
 
         // Insert into the queue.
+        if (budget != null)
+            budget.acquire(event);
         queues.get(taskId).put(event);
         transactionCount++;
         if (logger.isDebugEnabled())
@@ -171,7 +189,10 @@ public class InMemoryMultiQueue implements Store
      */
     public ReplDBMSEvent get(int taskId) throws InterruptedException
     {
-        return queues.get(taskId).take();
+        ReplDBMSEvent event = queues.get(taskId).take();
+        if (budget != null)
+            budget.release(event);
+        return event;
     }
 
     /**
@@ -181,7 +202,11 @@ public class InMemoryMultiQueue implements Store
     public ReplDBMSEvent get(int taskId, long waitMillis)
             throws InterruptedException
     {
-        return queues.get(taskId).poll(waitMillis, TimeUnit.MILLISECONDS);
+        ReplDBMSEvent event = queues.get(taskId).poll(waitMillis,
+                TimeUnit.MILLISECONDS);
+        if (budget != null && event != null)
+            budget.release(event);
+        return event;
     }
 
     /**
@@ -224,6 +249,9 @@ public class InMemoryMultiQueue implements Store
             queues.add(new LinkedBlockingQueue<ReplDBMSEvent>(maxSize));
         }
         lastHeader = new ReplDBMSHeader[partitions];
+        QueueMemoryBudget pipelineBudget = context.getQueueBudget();
+        if (maxBytes > 0 || pipelineBudget != null)
+            budget = new QueueMemoryBudget(name, maxBytes, pipelineBudget);
     }
 
     /**
@@ -234,6 +262,11 @@ public class InMemoryMultiQueue implements Store
     public void release(PluginContext context) throws ReplicatorException
     {
         queues = null;
+        if (budget != null)
+        {
+            budget.clear();
+            budget = null;
+        }
     }
 
     /**
@@ -246,6 +279,8 @@ public class InMemoryMultiQueue implements Store
         TungstenProperties props = new TungstenProperties();
         props.setLong("maxSize", maxSize);
         props.setLong("eventCount", this.transactionCount);
+        if (budget != null)
+            budget.addStatus(props);
         return props;
     }
 }
\ No newline at end of file
@@ -46,6 +46,8 @@ public class InMemoryQueueStore implements Store
     protected ReplDBMSHeader                     lastHeader;
     protected long                               transactionCount = 0;
     protected int                                partitions       = 1;
+    protected long                               maxBytes         = 0;
+    protected QueueMemoryBudget                  budget;
 
     public String getName()
     {
@@ -67,6 +69,20 @@ public class InMemoryQueueStore implements Store
         this.maxSize = size;
     }
 
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum estimated bytes of events in the queue. 0 means no
+     * limit.
+     */
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
     /** Sets the last header processed. This is required for restart. */
     public void setLastHeader(ReplDBMSHeader header)
     {
@@ -143,6 +159,8 @@ public class InMemoryQueueStore implements Store
     public void put(ReplDBMSEvent event) throws InterruptedException,
             ReplicatorException
     {
+        if (budget != null)
+            budget.acquire(event);
         queue.put(event);
         transactionCount++;
         if (logger.isDebugEnabled())
@@ -158,7 +176,10 @@ public class InMemoryQueueStore implements Store
      */
     public ReplDBMSEvent get() throws InterruptedException
     {
-        return queue.take();
+        ReplDBMSEvent event = queue.take();
+        if (budget != null)
+            budget.release(event);
+        return event;
     }
 
     /**
@@ -168,7 +189,10 @@ public class InMemoryQueueStore implements Store
      */
     public ReplDBMSEvent poll() throws InterruptedException
     {
-        return queue.poll();
+        ReplDBMSEvent event = queue.poll();
+        if (budget != null && event != null)
+            budget.release(event);
+        return event;
     }
 
     /**
@@ -212,6 +236,9 @@ public class InMemoryQueueStore implements Store
     public void prepare(PluginContext context) throws ReplicatorException
     {
         queue = new LinkedBlockingQueue<ReplDBMSEvent>(maxSize);
+        QueueMemoryBudget pipelineBudget = context.getQueueBudget();
+        if (maxBytes > 0 || pipelineBudget != null)
+            budget = new QueueMemoryBudget(name, maxBytes, pipelineBudget);
     }
 
     /**
@@ -223,6 +250,11 @@ public class InMemoryQueueStore implements Store
             InterruptedException
     {
         queue = null;
+        if (budget != null)
+        {
+            budget.clear();
+            budget = null;
+        }
     }
 
     @Override
@@ -235,6 +267,8 @@ public class InMemoryQueueStore implements Store
             props.setLong("storeSize", -1);
         props.setLong("maxSize", maxSize);
         props.setLong("eventCount", this.transactionCount);
+        if (budget != null)
+            budget.addStatus(props);
         return props;
     }
 }
@@ -0,0 +1,217 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.storage;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplEvent;
+
+/**
+ * Tracks the estimated bytes of events held in an in-memory queue and blocks
+ * producers when a byte limit would be exceeded. A budget may have a parent
+ * budget, which is shared by all queues in a pipeline; events must then fit in
+ * both budgets.
+ * <p>
+ * A queue that holds no events may always take one, however large, so that
+ * events larger than the limit and queues that are starved by their neighbors
+ * cannot stall the pipeline. Control events are not counted.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class QueueMemoryBudget
+{
+    private final String            name;
+    private final long              maxBytes;
+    private final QueueMemoryBudget parent;
+    private long                    currentBytes = 0;
+    private long                    peakBytes    = 0;
+
+    /**
+     * Creates a new budget.
+     * 
+     * @param name Name used in status output
+     * @param maxBytes Maximum bytes to hold or 0 for no limit
+     * @param parent Shared budget that also must have room or null
+     */
+    public QueueMemoryBudget(String name, long maxBytes,
+            QueueMemoryBudget parent)
+    {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.parent = parent;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public QueueMemoryBudget getParent()
+    {
+        return parent;
+    }
+
+    public synchronized long getCurrentBytes()
+    {
+        return currentBytes;
+    }
+
+    public synchronized long getPeakBytes()
+    {
+        return peakBytes;
+    }
+
+    /**
+     * Reserves space for an event about to be put in the queue, blocking until
+     * there is room. Does nothing for control events.
+     */
+    public void acquire(ReplEvent event) throws InterruptedException
+    {
+        if (event instanceof ReplDBMSEvent)
+            acquire(event.getEstimatedSize());
+    }
+
+    /**
+     * Returns the space of an event taken from the queue. Does nothing for
+     * control events.
+     */
+    public void release(ReplEvent event)
+    {
+        if (event instanceof ReplDBMSEvent)
+            release(event.getEstimatedSize());
+    }
+
+    /**
+     * Reserves bytes, blocking until this budget and the parent budget, if
+     * any, have room.
+     */
+    public void acquire(long bytes) throws InterruptedException
+    {
+        synchronized (this)
+        {
+            while (maxBytes > 0 && currentBytes > 0
+                    && currentBytes + bytes > maxBytes)
+            {
+                wait();
+            }
+            add(bytes);
+        }
+
+        if (parent != null)
+        {
+            try
+            {
+                parent.acquireFor(this, bytes);
+            }
+            catch (InterruptedException e)
+            {
+                releaseLocal(bytes);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns bytes to this budget and the parent budget, if any.
+     */
+    public void release(long bytes)
+    {
+        releaseLocal(bytes);
+        if (parent != null)
+            parent.release(bytes);
+    }
+
+    /**
+     * Returns all bytes held by this budget, for example when the queue is
+     * discarded.
+     */
+    public void clear()
+    {
+        long bytes;
+        synchronized (this)
+        {
+            bytes = currentBytes;
+            currentBytes = 0;
+            notifyAll();
+        }
+        if (parent != null)
+            parent.release(bytes);
+    }
+
+    /**
+     * Adds budget values to store status properties.
+     */
+    public void addStatus(TungstenProperties props)
+    {
+        props.setLong("maxBytes", maxBytes);
+        props.setLong("storeBytes", getCurrentBytes());
+        props.setLong("peakBytes", getPeakBytes());
+        if (parent != null)
+        {
+            props.setLong("pipelineMaxBytes", parent.getMaxBytes());
+            props.setLong("pipelineBytes", parent.getCurrentBytes());
+            props.setLong("pipelinePeakBytes", parent.getPeakBytes());
+        }
+    }
+
+    // Reserve bytes on behalf of a child budget that has already counted
+    // them. The child is admitted regardless if it holds no other events.
+    private synchronized void acquireFor(QueueMemoryBudget child, long bytes)
+            throws InterruptedException
+    {
+        while (maxBytes > 0 && currentBytes > 0
+                && currentBytes + bytes > maxBytes
+                && child.getCurrentBytes() > bytes)
+        {
+            wait();
+        }
+        add(bytes);
+    }
+
+    // Count reserved bytes.
+    private void add(long bytes)
+    {
+        currentBytes += bytes;
+        if (currentBytes > peakBytes)
+            peakBytes = currentBytes;
+    }
+
+    // Return bytes to this budget only and wake waiting producers.
+    private synchronized void releaseLocal(long bytes)
+    {
+        currentBytes = Math.max(0, currentBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * Returns a string representation of the budget.
+     */
+    public synchronized String toString()
+    {
+        return name + " currentBytes=" + currentBytes + " peakBytes="
+                + peakBytes + " maxBytes=" + maxBytes;
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.pipeline.Stage;
+import com.continuent.tungsten.replicator.plugin.PluginContext;
+
+/**
+ * Implements an in-memory event store on a preallocated ring buffer. Unlike
+ * {@link InMemoryQueueStore} this store does not allocate or lock on each
+ * event, which makes it cheaper for handoff between stages at high event
+ * rates.
+ * <p/>
+ * The ring buffer is safe for a single producer and a single consumer only,
+ * i.e., the store must sit between two stages that each run a single task.
+ * Preparing the store fails if a stage that uses it runs more tasks.
+ * The buffer capacity is maxSize rounded up to the next power of two. Threads
+ * that must wait for space or events do so according to the wait strategy:
+ * <ul>
+ * <li>spin - Busy wait. Lowest latency but burns a CPU per waiting thread.</li>
+ * <li>yield - Yield the CPU between checks.</li>
+ * <li>park - Spin briefly, then park until the other side signals. This is the
+ * default and uses no CPU when the pipeline is idle.</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RingBufferQueueStore extends InMemoryQueueStore
+{
+    private static Logger     logger       = Logger.getLogger(RingBufferQueueStore.class);
+
+    /** Wait strategies for threads that find the buffer full or empty. */
+    public enum WaitStrategy
+    {
+        SPIN, YIELD, PARK
+    }
+
+    // Number of busy checks before parking and the maximum time to park.
+    // Parking is timed so that a missed signal can only delay a thread.
+    private static final int  PARK_SPINS   = 100;
+    private static final long PARK_NANOS   = 1000000L;
+
+    // Properties.
+    private String            waitStrategy = "park";
+
+    // Ring buffer. head is the position of the next event to take and is
+    // written only by the consumer. tail is the position of the next event to
+    // put and is written only by the producer.
+    private WaitStrategy      strategy;
+    private ReplDBMSEvent[]   ring;
+    private int               capacity;
+    private int               mask;
+    private final AtomicLong  head         = new AtomicLong();
+    private final AtomicLong  tail         = new AtomicLong();
+    private volatile Thread   waitingProducer;
+    private volatile Thread   waitingConsumer;
+
+    public String getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+
+    /** Sets the wait strategy: spin, yield, or park. */
+    public void setWaitStrategy(String waitStrategy)
+    {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /** Returns the ring buffer capacity, which is a power of two. */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Puts an event in the buffer, waiting if it is full.
+     * 
+     * @throws ReplicatorException
+     */
+    public void put(ReplDBMSEvent event) throws InterruptedException,
+            ReplicatorException
+    {
+        if (budget != null)
+            budget.acquire(event);
+
+        long t = tail.get();
+        int attempts = 0;
+        while (t - head.get() >= capacity)
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (strategy == WaitStrategy.PARK && attempts >= PARK_SPINS)
+            {
+                waitingProducer = Thread.currentThread();
+                if (t - head.get() >= capacity)
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                waitingProducer = null;
+            }
+            else
+            {
+                idle();
+                attempts++;
+            }
+        }
+
+        ring[(int) t & mask] = event;
+        tail.set(t + 1);
+        if (strategy == WaitStrategy.PARK)
+            signal(waitingConsumer);
+
+        transactionCount++;
+        if (logger.isDebugEnabled())
+        {
+            if (transactionCount % 10000 == 0)
+                logger.debug("Ring buffer store: xacts=" + transactionCount
+                        + " size=" + size());
+        }
+    }
+
+    /**
+     * Removes and returns next event from the buffer, waiting if empty.
+     */
+    public ReplDBMSEvent get() throws InterruptedException
+    {
+        long h = head.get();
+        int attempts = 0;
+        while (h >= tail.get())
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (strategy == WaitStrategy.PARK && attempts >= PARK_SPINS)
+            {
+                waitingConsumer = Thread.currentThread();
+                if (h >= tail.get())
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                waitingConsumer = null;
+            }
+            else
+            {
+                idle();
+                attempts++;
+            }
+        }
+        return take(h);
+    }
+
+    /**
+     * Removes and returns next event from the buffer, returning null if empty.
+     */
+    public ReplDBMSEvent poll() throws InterruptedException
+    {
+        long h = head.get();
+        if (h >= tail.get())
+            return null;
+        else
+            return take(h);
+    }
+
+    /**
+     * Returns but does not remove next event from the buffer if it exists or
+     * returns null if buffer is empty.
+     */
+    public ReplDBMSEvent peek()
+    {
+        long h = head.get();
+        if (h >= tail.get())
+            return null;
+        else
+            return ring[(int) h & mask];
+    }
+
+    /**
+     * Returns the current number of events in the buffer.
+     */
+    public int size()
+    {
+        // Read head first so that the difference cannot be negative.
+        long h = head.get();
+        long t = tail.get();
+        return (int) (t - h);
+    }
+
+    // Removes the event at the given head position and frees its slot.
+    private ReplDBMSEvent take(long h)
+    {
+        int index = (int) h & mask;
+        ReplDBMSEvent event = ring[index];
+        ring[index] = null;
+        head.set(h + 1);
+        if (strategy == WaitStrategy.PARK)
+            signal(waitingProducer);
+        if (budget != null)
+            budget.release(event);
+        return event;
+    }
+
+    // Waits briefly before checking the buffer again.
+    private void idle()
+    {
+        if (strategy == WaitStrategy.YIELD)
+            Thread.yield();
+    }
+
+    // Wakes up a parked thread, if there is one.
+    private void signal(Thread waiter)
+    {
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.InMemoryQueueStore#configure(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void configure(PluginContext context) throws ReplicatorException
+    {
+        super.configure(context);
+        try
+        {
+            strategy = WaitStrategy.valueOf(waitStrategy.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ReplicatorException(
+                    "Invalid wait strategy; must be spin, yield, or park: waitStrategy="
+                            + waitStrategy);
+        }
+        if (maxSize < 1)
+        {
+            throw new ReplicatorException(
+                    "Ring buffer size must be at least 1: maxSize=" + maxSize);
+        }
+    }
+
+    /**
+     * Check that stages using the store run a single task and allocate the
+     * ring buffer. {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.InMemoryQueueStore#prepare(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void prepare(PluginContext context) throws ReplicatorException
+    {
+        super.prepare(context);
+        queue = null;
+
+        // The ring buffer is only safe for one producer and one consumer.
+        for (Stage stage : context.getStages())
+        {
+            if (stage.getTaskCount() > 1
+                    && (usesStore(stage.getExtractor0()) || usesStore(stage
+                            .getApplier0())))
+            {
+                throw new ReplicatorException(
+                        "Ring buffer store may only be used by stages with a single task: store="
+                                + name + " stage=" + stage.getName()
+                                + " taskCount=" + stage.getTaskCount());
+            }
+        }
+
+        capacity = 1;
+        while (capacity < maxSize)
+            capacity <<= 1;
+        mask = capacity - 1;
+        ring = new ReplDBMSEvent[capacity];
+        head.set(0);
+        tail.set(0);
+        logger.info("Allocated ring buffer store: name=" + name
+                + " capacity=" + capacity + " waitStrategy="
+                + strategy.toString().toLowerCase());
+    }
+
+    // Returns true if a stage extractor or applier is an adapter on this store.
+    private boolean usesStore(Object plugin)
+    {
+        return plugin instanceof InMemoryQueueAdapter
+                && name.equals(((InMemoryQueueAdapter) plugin).getStoreName());
+    }
+
+    /**
+     * Release ring buffer. {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.InMemoryQueueStore#release(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void release(PluginContext context) throws ReplicatorException,
+            InterruptedException
+    {
+        super.release(context);
+        ring = null;
+    }
+
+    @Override
+    public TungstenProperties status()
+    {
+        TungstenProperties props = super.status();
+        if (ring != null)
+            props.setLong("storeSize", size());
+        props.setLong("capacity", capacity);
+        props.setString("waitStrategy", waitStrategy);
+        return props;
+    }
+}
@@ -38,6 +38,7 @@ import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.event.ReplOptionParams;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.storage.ParallelStore;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
 import com.continuent.tungsten.replicator.util.AtomicCounter;
 import com.continuent.tungsten.replicator.util.WatchPredicate;
 
@@ -73,6 +74,8 @@ public class ParallelQueueStore implements ParallelStore
 
     // Queue parameters.
     private int                                                 maxSize            = 1;
+    private long                                                maxBytes           = 0;
+    private QueueMemoryBudget                                   budget;
     private int                                                 partitions         = 1;
     private boolean                                             syncEnabled        = true;
     private int                                                 syncInterval       = 100;
@@ -131,6 +134,17 @@ public class ParallelQueueStore implements ParallelStore
         this.maxSize = size;
     }
 
+    /** Maximum estimated bytes of events across all queues. */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
     /** Sets the number of queue partitions. */
     public void setPartitions(int partitions)
     {
@@ -316,6 +330,8 @@ public class ParallelQueueStore implements ParallelStore
 
         // Add event to the queue, increment the active store size, and remember
         // the event.
+        if (budget != null)
+            budget.acquire(event);
         queues.get(response.getPartition()).put(event);
         long size = activeSize.incrAndGetSeqno();
         transactionCount++;
@@ -423,6 +439,8 @@ public class ParallelQueueStore implements ParallelStore
         assertTaskIdWithinRange(taskId);
         ReplEvent event = queues.get(taskId).take();
         long size = activeSize.decrAndGetSeqno();
+        if (budget != null)
+            budget.release(event);
         if (logger.isDebugEnabled())
         {
             if (event instanceof ReplDBMSEvent)
@@ -509,6 +527,11 @@ public class ParallelQueueStore implements ParallelStore
             queues.add(new LinkedBlockingQueue<ReplEvent>(maxSize));
         }
 
+        // Create the memory budget if the store or pipeline limits bytes.
+        QueueMemoryBudget pipelineBudget = context.getQueueBudget();
+        if (maxBytes > 0 || pipelineBudget != null)
+            budget = new QueueMemoryBudget(name, maxBytes, pipelineBudget);
+
         // Add queue metadata required by stateful partitioners.
         if (partitioner instanceof StatefulPartitioner)
         {
@@ -532,6 +555,11 @@ public class ParallelQueueStore implements ParallelStore
     {
         queues = null;
         lastHeaders = null;
+        if (budget != null)
+        {
+            budget.clear();
+            budget = null;
+        }
     }
 
     // Validate that the taskId is in the accepted range of partitions.
@@ -587,6 +615,8 @@ public class ParallelQueueStore implements ParallelStore
         props.setBoolean("stopRequested", stopRequested);
         props.setInt("criticalPartition", criticalPartition);
         props.setString("partitionerClass", partitionerClass);
+        if (budget != null)
+            budget.addStatus(props);
         for (int i = 0; i < queues.size(); i++)
         {
             props.setInt("store.queueSize." + i, queues.get(i).size());
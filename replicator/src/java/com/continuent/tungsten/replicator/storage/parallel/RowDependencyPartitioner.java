@@ -0,0 +1,420 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.storage.parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnSpec;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnVal;
+import com.continuent.tungsten.replicator.dbms.RowChangeData;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
+import com.continuent.tungsten.replicator.plugin.PluginContext;
+
+/**
+ * Implements a partitioner that assigns transactions to partitions using the
+ * key values of the rows they change rather than the shard ID. This allows
+ * transactions on the same schema to apply in parallel as long as they do not
+ * touch the same rows.
+ * <p/>
+ * Each transaction is assigned to the partition given by the hash of its first
+ * row key, so that assignments are the same when events are replayed after a
+ * restart. The partitioner tracks the keys of transactions that are still in
+ * flight, i.e., above the committed sequence number of the pipeline. If a
+ * transaction touches a key in flight on another partition it is marked
+ * critical, which forces all partitions to commit before it proceeds. The
+ * following transactions are also treated as critical and assigned to partition
+ * 0:
+ * <ul>
+ * <li>Transactions containing statements, which includes all DDL</li>
+ * <li>Row changes on tables without key information</li>
+ * <li>Fragmented transactions</li>
+ * </ul>
+ * Row keys come from the key columns of each row change. Inserts carry keys
+ * only if the PrimaryKeyFilter runs upstream with addPkeyToInserts enabled;
+ * otherwise they are serialized. Conflicts on unique secondary keys and foreign
+ * keys are not detected.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RowDependencyPartitioner implements StatefulPartitioner
+{
+    private static Logger                logger        = Logger.getLogger(RowDependencyPartitioner.class);
+
+    // Parameters.
+    private int                          availablePartitions;
+    private int                          maxKeys       = 100000;
+
+    // Plugin context used to find the committed position.
+    private PluginContext                context;
+
+    // Keys of transactions in flight and the order in which to release them.
+    private Map<String, KeyOwner>        keyOwners     = new HashMap<String, KeyOwner>();
+    private LinkedList<InFlightTransact> inFlight      = new LinkedList<InFlightTransact>();
+
+    // Response for the current transaction, which is reused for fragments.
+    private long                         lastSeqno     = -1;
+    private PartitionerResponse          lastResponse;
+
+    // Statistics.
+    private long                         parallelCount = 0;
+    private long                         serialCount   = 0;
+    private long                         conflictCount = 0;
+
+    // Records the partition and seqno that last claimed a key.
+    private static class KeyOwner
+    {
+        final int  partition;
+        final long seqno;
+
+        KeyOwner(int partition, long seqno)
+        {
+            this.partition = partition;
+            this.seqno = seqno;
+        }
+    }
+
+    // Keys claimed by a single transaction.
+    private static class InFlightTransact
+    {
+        final long         seqno;
+        final List<String> keys;
+
+        InFlightTransact(long seqno, List<String> keys)
+        {
+            this.seqno = seqno;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Sets the maximum number of in-flight keys to track. Once the limit is
+     * reached the next transaction is serialized, which clears all keys.
+     */
+    public void setMaxKeys(int maxKeys)
+    {
+        this.maxKeys = maxKeys;
+    }
+
+    public int getMaxKeys()
+    {
+        return maxKeys;
+    }
+
+    /** Returns the number of transactions assigned without serialization. */
+    public long getParallelCount()
+    {
+        return parallelCount;
+    }
+
+    /** Returns the number of transactions that required serialization. */
+    public long getSerialCount()
+    {
+        return serialCount;
+    }
+
+    /** Returns the number of serializations caused by key conflicts. */
+    public long getConflictCount()
+    {
+        return conflictCount;
+    }
+
+    /** Returns the number of keys currently tracked as in flight. */
+    public synchronized int getInFlightKeys()
+    {
+        return keyOwners.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.Partitioner#setPartitions(int)
+     */
+    public synchronized void setPartitions(int availablePartitions)
+    {
+        this.availablePartitions = availablePartitions;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.Partitioner#setContext(com.continuent.tungsten.replicator.plugin.PluginContext)
+     */
+    public void setContext(PluginContext context)
+    {
+        this.context = context;
+    }
+
+    /**
+     * {@inheritDoc} Queue sizes are not used, as assignments must not depend
+     * on timing or they would differ after restart.
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.StatefulPartitioner#setPartitionMetadata(java.util.List)
+     */
+    public void setPartitionMetadata(List<PartitionMetadata> partitions)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.Partitioner#partition(com.continuent.tungsten.replicator.event.ReplDBMSHeader,
+     *      int)
+     */
+    public synchronized PartitionerResponse partition(ReplDBMSHeader event,
+            int taskId) throws ReplicatorException
+    {
+        // Without row data we cannot tell what the event touches.
+        if (!(event instanceof ReplDBMSEvent))
+            return serialize(event.getSeqno());
+        ReplDBMSEvent rde = (ReplDBMSEvent) event;
+
+        // Later fragments go wherever the first fragment went.
+        if (rde.getFragno() > 0)
+        {
+            if (rde.getSeqno() == lastSeqno && lastResponse != null)
+                return lastResponse;
+            else
+                return serialize(rde.getSeqno());
+        }
+
+        // Free keys of committed transactions, then serialize anything we
+        // cannot analyze.
+        releaseCommitted(getCommittedSeqno());
+        if (!rde.getLastFrag())
+            return serialize(rde.getSeqno());
+        List<String> keys = getRowKeys(rde.getData());
+        if (keys == null || keys.size() == 0)
+            return serialize(rde.getSeqno());
+
+        // Assign to the partition of the first key and check that no other
+        // partition has any of our keys in flight.
+        int partition = (keys.get(0).hashCode() & Integer.MAX_VALUE)
+                % availablePartitions;
+        for (String key : keys)
+        {
+            KeyOwner owner = keyOwners.get(key);
+            if (owner != null && owner.partition != partition)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Serializing transaction due to key conflict: seqno="
+                            + rde.getSeqno()
+                            + " partition="
+                            + partition
+                            + " owner=" + owner.partition + " key=" + key);
+                }
+                conflictCount++;
+                return serialize(rde.getSeqno(), partition);
+            }
+        }
+        if (keyOwners.size() + keys.size() > maxKeys)
+            return serialize(rde.getSeqno(), partition);
+
+        // Claim the keys and return a parallel assignment.
+        KeyOwner owner = new KeyOwner(partition, rde.getSeqno());
+        for (String key : keys)
+        {
+            keyOwners.put(key, owner);
+        }
+        inFlight.add(new InFlightTransact(rde.getSeqno(), keys));
+        parallelCount++;
+        return respond(rde.getSeqno(), new PartitionerResponse(partition,
+                false));
+    }
+
+    /**
+     * Returns the committed seqno below which no transactions are in flight.
+     * Returns -1 if no context is available.
+     */
+    protected long getCommittedSeqno()
+    {
+        if (context == null)
+            return -1;
+        else
+            return context.getCommittedSeqno();
+    }
+
+    // Drop keys of transactions that have committed on all partitions.
+    private void releaseCommitted(long committedSeqno)
+    {
+        while (inFlight.size() > 0
+                && inFlight.getFirst().seqno <= committedSeqno)
+        {
+            InFlightTransact transact = inFlight.removeFirst();
+            for (String key : transact.keys)
+            {
+                KeyOwner owner = keyOwners.get(key);
+                if (owner != null && owner.seqno == transact.seqno)
+                    keyOwners.remove(key);
+            }
+        }
+    }
+
+    // Return a critical response on partition 0.
+    private PartitionerResponse serialize(long seqno)
+    {
+        return serialize(seqno, 0);
+    }
+
+    // Return a critical response. The parallel queue blocks until all
+    // partitions have committed, so nothing remains in flight.
+    private PartitionerResponse serialize(long seqno, int partition)
+    {
+        keyOwners.clear();
+        inFlight.clear();
+        serialCount++;
+        return respond(seqno, new PartitionerResponse(partition, true));
+    }
+
+    // Remember the response for later fragments of the same transaction.
+    private PartitionerResponse respond(long seqno, PartitionerResponse response)
+    {
+        lastSeqno = seqno;
+        lastResponse = response;
+        return response;
+    }
+
+    /**
+     * Returns the keys of all rows changed by the transaction or null if the
+     * transaction contains anything other than keyed row changes.
+     */
+    protected List<String> getRowKeys(List<DBMSData> data)
+    {
+        List<String> keys = new ArrayList<String>();
+        for (DBMSData dbmsData : data)
+        {
+            if (!(dbmsData instanceof RowChangeData))
+                return null;
+            for (OneRowChange orc : ((RowChangeData) dbmsData).getRowChanges())
+            {
+                if (!addRowKeys(orc, keys))
+                    return null;
+            }
+        }
+        return keys;
+    }
+
+    // Add the keys of a single row change. Key values identify the row before
+    // the change; column values projected onto the key columns identify it
+    // afterwards. Returns false if the row change has no usable keys.
+    private boolean addRowKeys(OneRowChange orc, List<String> keys)
+    {
+        List<ColumnSpec> keySpec = orc.getKeySpec();
+        if (keySpec == null || keySpec.size() == 0)
+            return false;
+        String table = orc.getSchemaName() + "." + orc.getTableName();
+        int count = 0;
+
+        // Before images.
+        for (List<ColumnVal> keyValues : orc.getKeyValues())
+        {
+            if (keyValues.size() == 0)
+                continue;
+            else if (keyValues.size() != keySpec.size())
+                return false;
+            keys.add(rowKey(table, keySpec, keyValues));
+            count++;
+        }
+
+        // After images.
+        if (orc.getColumnValues().size() > 0)
+        {
+            int[] positions = new int[keySpec.size()];
+            for (int i = 0; i < keySpec.size(); i++)
+            {
+                positions[i] = -1;
+                List<ColumnSpec> columnSpec = orc.getColumnSpec();
+                for (int j = 0; j < columnSpec.size(); j++)
+                {
+                    if (columnSpec.get(j).getIndex() == keySpec.get(i)
+                            .getIndex())
+                    {
+                        positions[i] = j;
+                        break;
+                    }
+                }
+                if (positions[i] < 0)
+                    return false;
+            }
+            for (List<ColumnVal> columnValues : orc.getColumnValues())
+            {
+                List<ColumnVal> projection = new ArrayList<ColumnVal>(
+                        positions.length);
+                for (int position : positions)
+                {
+                    if (position >= columnValues.size())
+                        return false;
+                    projection.add(columnValues.get(position));
+                }
+                keys.add(rowKey(table, keySpec, projection));
+                count++;
+            }
+        }
+        return count > 0;
+    }
+
+    // Generate a key string. Each value is prefixed by its length so that
+    // values containing separators cannot collide.
+    private String rowKey(String table, List<ColumnSpec> keySpec,
+            List<ColumnVal> values)
+    {
+        StringBuffer sb = new StringBuffer(table);
+        for (int i = 0; i < keySpec.size(); i++)
+        {
+            Object value = values.get(i).getValue();
+            String valueString;
+            if (value == null)
+                valueString = "";
+            else if (value instanceof byte[])
+                valueString = Arrays.toString((byte[]) value);
+            else
+                valueString = value.toString();
+            sb.append('|').append(keySpec.get(i).getIndex());
+            sb.append(value == null ? "#" : ":").append(valueString.length());
+            sb.append(':').append(valueString);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + " parallel=" + parallelCount
+                + " serial=" + serialCount + " conflicts=" + conflictCount
+                + " inFlightKeys=" + keyOwners.size();
+    }
+}
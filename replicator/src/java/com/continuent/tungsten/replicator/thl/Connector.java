@@ -60,6 +60,7 @@ public class Connector implements ReplicatorPlugin
     protected long              lastEpochNumber;
     protected int               heartbeatMillis = 3000;
     protected String            lastEventId;
+    protected String            eventSerializer;
 
     private String              remoteURI       = null;
 
@@ -131,6 +132,7 @@ public class Connector implements ReplicatorPlugin
 
         // Perform handshake with server.
         protocol = new Protocol(pluginContext, clientSocket, resetPeriod);
+        protocol.setEventSerializer(eventSerializer);
         SeqNoRange seqNoRange = protocol.clientHandshake(lastEpochNumber,
                 lastSeqno, heartbeatMillis, lastEventId);
 
@@ -148,6 +150,14 @@ public class Connector implements ReplicatorPlugin
     {
         if (!closed)
         {
+            if (protocol != null && protocol.getCompression() != null)
+            {
+                logger.info("Closing compressed THL connection: codec="
+                        + protocol.getCompression() + " "
+                        + protocol.getCompressionStats());
+            }
+            if (protocol != null)
+                protocol.close();
             clientSocket.close();
             closed = true;
         }
@@ -286,4 +296,14 @@ public class Connector implements ReplicatorPlugin
     {
         this.lastEventId = lastEventId;
     }
+
+    /**
+     * Sets the event serializer class of the log to which received events are
+     * written. If the server uses the same serializer we request raw log
+     * records, which can be stored without serializing them again.
+     */
+    public void setEventSerializer(String eventSerializer)
+    {
+        this.eventSerializer = eventSerializer;
+    }
 }
\ No newline at end of file
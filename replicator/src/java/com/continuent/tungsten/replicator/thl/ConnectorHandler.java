@@ -39,6 +39,8 @@ import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.plugin.ReplicatorPlugin;
 import com.continuent.tungsten.replicator.thl.log.LogConnection;
+import com.continuent.tungsten.replicator.thl.log.LogEventReplReader;
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
 import com.continuent.tungsten.replicator.thl.log.LogTimeoutException;
 
 /**
@@ -329,7 +331,11 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
             LogValidator logValidator = new LogValidator();
 
             // TUC-2 Added log validator to check log for divergent
-            // epoch numbers on last common sequence number.
+            // epoch numbers on last common sequence number. Offering our
+            // serializer allows clients to request raw log records.
+            protocol.setEventSerializer(thl.getEventSerializer());
+            protocol.setCompression(thl.getCompression());
+            protocol.setCompressionStats(thl.getCompressionStats());
             protocol.serverHandshake(logValidator, minSeqno, maxSeqno);
 
             // Name the thread so that developers can see which source ID we
@@ -363,8 +369,11 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
                         altSeqno = -1;
                     }
 
-                    // Establish the connection.
+                    // Establish the connection. Records are only forwarded or
+                    // decoded for the client, so we can read recently
+                    // committed records from the log's record cache.
                     connection = thl.connect(true);
+                    connection.setUseEventCache(true);
                     if (!connection.seek(seqno))
                     {
                         String message = "Requested event (#" + seqno + " / "
@@ -382,6 +391,44 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
                 long i = 0;
                 while (i < prefetchRange)
                 {
+                    // If the client accepts raw log records, forward them as
+                    // stored without deserializing.
+                    if (protocol.isRawRecords())
+                    {
+                        LogRecord record = null;
+                        try
+                        {
+                            record = connection.nextRecord(true);
+                        }
+                        catch (LogTimeoutException e)
+                        {
+                            sendHeartbeat(protocol);
+                            continue;
+                        }
+                        if (record == null)
+                            continue;
+
+                        // Only the header is visible, so filtered events count
+                        // as a single seqno. Clients that negotiated raw
+                        // records count them the same way.
+                        LogEventReplReader header = new LogEventReplReader(
+                                record, null, false);
+                        try
+                        {
+                            checkFirstSeqno(protocol, seqno, header.getSeqno());
+                            if (header.isLastFrag())
+                                i++;
+                            protocol.sendReplRecord(record,
+                                    header.getSeqno() >= thl
+                                            .getMaxStoredSeqno());
+                        }
+                        finally
+                        {
+                            header.done();
+                        }
+                        continue;
+                    }
+
                     // Get the next event from the log, waiting if necessary. If
                     // the read times out send a heartbeat and try again.
                     THLEvent event = null;
@@ -405,24 +452,8 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
 
                     // If we could not check the first event back to confirm log
                     // consistency, do that now.
-                    if (checkFirstSeqno)
-                    {
-                        logger.info("Checking first seqno returned by THL for consistency: client expected seqno="
-                                + seqno
-                                + " server returned seqno="
-                                + event.getSeqno());
+                    checkFirstSeqno(protocol, seqno, event.getSeqno());
 
-                        if (event.getSeqno() != seqno)
-                        {
-                            THLException e = new THLException(
-                                    "Server does not have seqno expected by the client: client requested seqno="
-                                            + seqno + " server seqno returned="
-                                            + event.getSeqno());
-                            protocol.sendError(e.getMessage());
-                            throw e;
-                        }
-                        checkFirstSeqno = false;
-                    }
                     // Peel off and process the underlying replication event.
                     ReplEvent revent = event.getReplEvent();
                     if (revent instanceof ReplDBMSEvent
@@ -550,6 +581,8 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
                 connection.release();
 
             // Close TCP/IP.
+            if (protocol != null)
+                protocol.close();
             try
             {
                 socket.close();
@@ -568,8 +601,31 @@ public class ConnectorHandler implements ReplicatorPlugin, Runnable
         }
     }
 
+    // If we could not check the first event back to confirm log consistency,
+    // do that now.
+    private void checkFirstSeqno(Protocol protocol, long seqno,
+            long returnedSeqno) throws IOException, THLException
+    {
+        if (checkFirstSeqno)
+        {
+            logger.info("Checking first seqno returned by THL for consistency: client expected seqno="
+                    + seqno + " server returned seqno=" + returnedSeqno);
+
+            if (returnedSeqno != seqno)
+            {
+                THLException e = new THLException(
+                        "Server does not have seqno expected by the client: client requested seqno="
+                                + seqno + " server seqno returned="
+                                + returnedSeqno);
+                protocol.sendError(e.getMessage());
+                throw e;
+            }
+            checkFirstSeqno = false;
+        }
+    }
+
     private void sendEvent(Protocol protocol, ReplEvent event, boolean forceSend)
-            throws IOException
+            throws IOException, ReplicatorException
     {
         protocol.sendReplEvent(event, forceSend);
     }
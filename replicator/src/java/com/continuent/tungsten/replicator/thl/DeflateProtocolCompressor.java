@@ -0,0 +1,119 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses protocol frames using deflate at its fastest level. This
+ * compresses considerably better than the LZ codec at a higher CPU cost.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class DeflateProtocolCompressor implements ProtocolCompressor
+{
+    public static final String NAME     = "deflate";
+
+    private Deflater           deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater           inflater = new Inflater();
+    private byte[]             chunk    = new byte[8192];
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#getName()
+     */
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#compress(byte[],
+     *      int)
+     */
+    public byte[] compress(byte[] data, int length)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(length / 2 + 16);
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        while (!deflater.finished())
+        {
+            int count = deflater.deflate(chunk);
+            baos.write(chunk, 0, count);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#decompress(byte[],
+     *      int, int, int)
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int rawLength)
+            throws IOException
+    {
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        try
+        {
+            int count = 0;
+            while (count < rawLength && !inflater.finished())
+            {
+                int n = inflater.inflate(raw, count, rawLength - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                count += n;
+            }
+            if (count != rawLength)
+                throw new IOException(
+                        "Deflated frame is truncated: expected length="
+                                + rawLength + " actual length=" + count);
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Deflated frame is corrupt: "
+                    + e.getMessage());
+        }
+        return raw;
+    }
+
+    /**
+     * Releases native zlib memory held by the deflater and inflater.
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#close()
+     */
+    public void close()
+    {
+        deflater.end();
+        inflater.end();
+    }
+}
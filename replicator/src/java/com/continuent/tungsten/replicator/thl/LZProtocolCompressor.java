@@ -0,0 +1,194 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.io.IOException;
+
+/**
+ * Compresses protocol frames using a simple LZ77 scheme that trades
+ * compression ratio for speed. Compressed data consist of tokens, each of which
+ * starts with a control byte:
+ * 
+ * <pre><code>
+ * 0xxxxxxx                     Literal run of x+1 bytes, which follow
+ * 1xxxxxxx [offset hi][lo]     Copy x+4 bytes starting offset bytes back
+ * </code></pre>
+ * Matches are found using a single hash table lookup on the next four bytes,
+ * which is what makes the codec fast.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LZProtocolCompressor implements ProtocolCompressor
+{
+    public static final String NAME        = "lz";
+
+    private static final int   HASH_BITS   = 14;
+    private static final int   MIN_MATCH   = 4;
+    private static final int   MAX_MATCH   = MIN_MATCH + 0x7f;
+    private static final int   MAX_LITERAL = 0x80;
+    private static final int   MAX_OFFSET  = 0xffff;
+
+    private int[]              table       = new int[1 << HASH_BITS];
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#getName()
+     */
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#compress(byte[],
+     *      int)
+     */
+    public byte[] compress(byte[] data, int length)
+    {
+        // Output can only grow by one control byte per literal run.
+        byte[] out = new byte[length + length / MAX_LITERAL + 1];
+        int op = 0;
+        int ip = 0;
+        int literalStart = 0;
+        for (int i = 0; i < table.length; i++)
+            table[i] = -1;
+
+        while (ip + MIN_MATCH <= length)
+        {
+            int h = hash(data, ip);
+            int ref = table[h];
+            table[h] = ip;
+            if (ref >= 0 && ip - ref <= MAX_OFFSET
+                    && data[ref] == data[ip]
+                    && data[ref + 1] == data[ip + 1]
+                    && data[ref + 2] == data[ip + 2]
+                    && data[ref + 3] == data[ip + 3])
+            {
+                int len = MIN_MATCH;
+                while (len < MAX_MATCH && ip + len < length
+                        && data[ref + len] == data[ip + len])
+                    len++;
+
+                op = writeLiterals(data, literalStart, ip, out, op);
+                int offset = ip - ref;
+                out[op++] = (byte) (0x80 | (len - MIN_MATCH));
+                out[op++] = (byte) (offset >>> 8);
+                out[op++] = (byte) offset;
+                ip += len;
+                literalStart = ip;
+            }
+            else
+                ip++;
+        }
+        op = writeLiterals(data, literalStart, length, out, op);
+
+        byte[] result = new byte[op];
+        System.arraycopy(out, 0, result, 0, op);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#decompress(byte[],
+     *      int, int, int)
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int rawLength)
+            throws IOException
+    {
+        byte[] raw = new byte[rawLength];
+        int ip = offset;
+        int end = offset + length;
+        int op = 0;
+        try
+        {
+            while (ip < end)
+            {
+                int control = data[ip++] & 0xff;
+                if (control < 0x80)
+                {
+                    int len = control + 1;
+                    System.arraycopy(data, ip, raw, op, len);
+                    ip += len;
+                    op += len;
+                }
+                else
+                {
+                    int len = (control & 0x7f) + MIN_MATCH;
+                    int ref = op
+                            - (((data[ip] & 0xff) << 8) | (data[ip + 1] & 0xff));
+                    ip += 2;
+                    if (ref < 0)
+                        throw new IOException(
+                                "LZ frame is corrupt: invalid match offset");
+                    // Matches may overlap the output, so copy byte by byte.
+                    for (int i = 0; i < len; i++)
+                        raw[op++] = raw[ref++];
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("LZ frame is corrupt: data overrun");
+        }
+        if (op != rawLength)
+            throw new IOException("LZ frame is truncated: expected length="
+                    + rawLength + " actual length=" + op);
+        return raw;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.thl.ProtocolCompressor#close()
+     */
+    public void close()
+    {
+        // Nothing to release.
+    }
+
+    // Writes pending literals as runs of up to MAX_LITERAL bytes.
+    private int writeLiterals(byte[] data, int start, int end, byte[] out,
+            int op)
+    {
+        while (start < end)
+        {
+            int len = Math.min(MAX_LITERAL, end - start);
+            out[op++] = (byte) (len - 1);
+            System.arraycopy(data, start, out, op, len);
+            op += len;
+            start += len;
+        }
+        return op;
+    }
+
+    // Hashes the four bytes at the given position.
+    private int hash(byte[] data, int pos)
+    {
+        int v = (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8)
+                | ((data[pos + 2] & 0xff) << 16) | ((data[pos + 3] & 0xff) << 24);
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
@@ -22,9 +22,12 @@ package com.continuent.tungsten.replicator.thl;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
@@ -40,6 +43,10 @@ import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
 import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.management.OpenReplicatorManager;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
+import com.continuent.tungsten.replicator.thl.log.LogCompression;
+import com.continuent.tungsten.replicator.thl.log.LogEventReplReader;
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
+import com.continuent.tungsten.replicator.thl.serializer.Serializer;
 
 /**
  * This class defines a Protocol
@@ -57,6 +64,10 @@ public class Protocol
     public static String         VERSION                  = "version";
     public static String         MIN_SEQNO                = "min_seqno";
     public static String         MAX_SEQNO                = "max_seqno";
+    public static String         EVENT_SERIALIZER         = "event_serializer";
+    public static String         FRAMED                   = "framed";
+    public static String         CREDIT_WINDOW            = "credit_window";
+    public static String         COMPRESSION              = "compression";
 
     protected PluginContext      pluginContext            = null;
     protected SocketWrapper      socket                   = null;
@@ -72,20 +83,51 @@ public class Protocol
     private long                 prefetchIndex            = 0;
     private boolean              allPreviousFragmentsDone = true;
 
+    // Credit-based flow control. The client grants the server a window of
+    // events and replenishes credits as it consumes them, so that the server
+    // streams continuously without running ahead of the client.
+    private int                  windowSize               = 0;
+    private boolean              flowControl              = false;
+    private long                 credits                  = 0;
+    private long                 consumed                 = 0;
+
     protected int                resetPeriod;
     private int                  objectsSent              = 0;
 
     protected ObjectInputStream  ois                      = null;
     protected ObjectOutputStream oos                      = null;
 
+    // Binary framing. Both sides exchange the handshake using Java
+    // serialization and then switch to framed messages if they agree to do
+    // so. Framed messages share the buffered socket streams.
+    private boolean              framing                  = false;
+    private ProtocolFrameCodec   frameCodec               = null;
+    private BufferedInputStream  bis                      = null;
+    private BufferedOutputStream bos                      = null;
+    private DataInputStream      dis                      = null;
+    private DataOutputStream     dos                      = null;
+
+    // Frame compression, which is chosen by the server and only available
+    // with framing.
+    private String               compression              = null;
+    private ProtocolCompressor   compressor               = null;
+    private LogCompression       recordDecompressors      = new LogCompression();
+    private ProtocolCompressionStats compressionStats = new ProtocolCompressionStats();
+
     protected String             clientSourceId           = null;
     private long                 clientLastEpochNumber    = -1;
     private long                 clientLastSeqno          = -1;
 
     private int                  bufferSize;
-    private ArrayList<ReplEvent> buffer                   = new ArrayList<ReplEvent>();
+    private ArrayList<Serializable> buffer = new ArrayList<Serializable>();
     private boolean              buffering                = false;
 
+    // Raw record transfer. If enabled the server sends log records as stored
+    // in its log and the client deserializes them using the same serializer.
+    private String               eventSerializer          = null;
+    private Serializer           recordSerializer         = null;
+    private boolean              rawRecords               = false;
+
     private String               rmiHost                  = null;
     private int                  rmiPort                  = -1;
 
@@ -105,8 +147,8 @@ public class Protocol
         this.pluginContext = context;
         this.socket = socket;
 
-        oos = new ObjectOutputStream(new BufferedOutputStream(
-                socket.getOutputStream()));
+        bos = new BufferedOutputStream(socket.getOutputStream());
+        oos = new ObjectOutputStream(bos);
         oos.flush();
 
         // Retrieve parameters available only in a casual Replicator service.
@@ -135,6 +177,12 @@ public class Protocol
         buffering = bufferSize > 0;
         if (buffering && logger.isDebugEnabled())
             logger.debug("THL protocol buffering enabled: size=" + bufferSize);
+        this.framing = context.getReplicatorProperties().getBoolean(
+                ReplicatorConf.THL_PROTOCOL_FRAMED,
+                ReplicatorConf.THL_PROTOCOL_FRAMED_DEFAULT, false);
+        this.windowSize = context.getReplicatorProperties().getInt(
+                ReplicatorConf.THL_PROTOCOL_WINDOW_SIZE,
+                ReplicatorConf.THL_PROTOCOL_WINDOW_SIZE_DEFAULT, false);
     }
 
     /**
@@ -162,6 +210,90 @@ public class Protocol
         return clientLastSeqno;
     }
 
+    /**
+     * Sets the name of the local event serializer class. If set on both sides
+     * and the names match, the client may request raw log records instead of
+     * replication events. This must be called before the handshake.
+     */
+    public void setEventSerializer(String eventSerializer)
+    {
+        this.eventSerializer = eventSerializer;
+    }
+
+    /**
+     * Returns true if the handshake negotiated transfer of raw log records.
+     */
+    public boolean isRawRecords()
+    {
+        return rawRecords;
+    }
+
+    /**
+     * Sets the name of the codec the server offers to compress frames. Null or
+     * "none" disables compression. This must be called before the handshake.
+     */
+    public void setCompression(String compression)
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * Sets statistics to count bytes before and after compression. Statistics
+     * may be shared between protocol instances.
+     */
+    public void setCompressionStats(ProtocolCompressionStats compressionStats)
+    {
+        this.compressionStats = compressionStats;
+    }
+
+    /**
+     * Returns statistics on bytes sent and received before and after
+     * compression.
+     */
+    public ProtocolCompressionStats getCompressionStats()
+    {
+        return compressionStats;
+    }
+
+    /**
+     * Returns the name of the negotiated compression codec or null if frames
+     * are not compressed.
+     */
+    public String getCompression()
+    {
+        return frameCodec == null ? null : compression;
+    }
+
+    /**
+     * Returns a compressor for the given codec name or null if the name is
+     * null, "none", or unknown.
+     */
+    public static ProtocolCompressor createCompressor(String name)
+    {
+        if (DeflateProtocolCompressor.NAME.equals(name))
+            return new DeflateProtocolCompressor();
+        else if (LZProtocolCompressor.NAME.equals(name))
+            return new LZProtocolCompressor();
+        else
+            return null;
+    }
+
+    /**
+     * Returns true if messages are exchanged as binary frames.
+     */
+    public boolean isFramed()
+    {
+        return frameCodec != null;
+    }
+
+    /**
+     * Returns true if the handshake negotiated credit-based flow control.
+     */
+    public boolean isFlowControl()
+    {
+        return flowControl;
+    }
+
     /**
      * Returns server capabilities downloaded to client.
      */
@@ -176,10 +308,14 @@ public class Protocol
     protected ProtocolMessage readMessage() throws IOException,
             ReplicatorException
     {
+        if (frameCodec != null)
+        {
+            return frameCodec.read(dis);
+        }
         if (ois == null)
         {
-            ois = new ObjectInputStream(new BufferedInputStream(
-                    socket.getInputStream()));
+            bis = new BufferedInputStream(socket.getInputStream());
+            ois = new ObjectInputStream(bis);
         }
         Object obj;
         try
@@ -201,15 +337,44 @@ public class Protocol
      */
     protected void writeMessage(ProtocolMessage msg) throws IOException
     {
-        oos.writeObject(msg);
-        oos.flush();
-
-        objectsSent++;
+        if (frameCodec != null)
+        {
+            frameCodec.write(msg, dos);
+            dos.flush();
+            return;
+        }
+        // Reset ahead of the next object rather than after the current one so
+        // that no stream data trails the last handshake message when we
+        // switch to framing.
         if (objectsSent >= resetPeriod)
         {
             objectsSent = 0;
             oos.reset();
         }
+        oos.writeObject(msg);
+        oos.flush();
+        objectsSent++;
+    }
+
+    /**
+     * Switch to binary framed messages. This must be called on each side right
+     * after the last serialized handshake message. Object streams do not read
+     * ahead, so the next frame is the first unread data on the socket. Frames
+     * are compressed with the negotiated compressor, if any.
+     */
+    private void startFraming()
+            throws IOException
+    {
+        if (ois == null)
+        {
+            bis = new BufferedInputStream(socket.getInputStream());
+            ois = new ObjectInputStream(bis);
+        }
+        dis = new DataInputStream(bis);
+        dos = new DataOutputStream(bos);
+        frameCodec = new ProtocolFrameCodec();
+        frameCodec.setCompressor(compressor);
+        frameCodec.setStats(compressionStats);
     }
 
     /**
@@ -226,6 +391,16 @@ public class Protocol
                 ManifestParser.parseReleaseWithBuildNumber());
         handshake.setCapability(MIN_SEQNO, new Long(minSeqNo).toString());
         handshake.setCapability(MAX_SEQNO, new Long(maxSeqNo).toString());
+        if (eventSerializer != null)
+            handshake.setCapability(EVENT_SERIALIZER, eventSerializer);
+        if (framing)
+        {
+            handshake.setCapability(FRAMED, "true");
+            compressor = createCompressor(compression);
+            if (compressor != null)
+                handshake.setCapability(COMPRESSION, compressor.getName());
+        }
+        handshake.setCapability(CREDIT_WINDOW, "true");
         serverCapabilities = new TungstenProperties(handshake.getCapabilities());
         writeMessage(handshake);
         ProtocolMessage response = readMessage();
@@ -236,7 +411,37 @@ public class Protocol
             try
             {
                 validator.validateResponse(handshakeResponse);
+                rawRecords = eventSerializer != null
+                        && "true".equals(handshakeResponse
+                                .getOption(ProtocolParams.RAW_RECORDS));
+                boolean framed = framing
+                        && "true".equals(handshakeResponse
+                                .getOption(ProtocolParams.FRAMED));
+                String window = handshakeResponse
+                        .getOption(ProtocolParams.CREDIT_WINDOW);
+                if (window != null)
+                {
+                    windowSize = Integer.parseInt(window);
+                    credits = windowSize;
+                    flowControl = windowSize > 0;
+                }
+                if (compressor != null
+                        && !(framed && compressor.getName().equals(
+                                handshakeResponse
+                                        .getOption(ProtocolParams.COMPRESSION))))
+                {
+                    compressor.close();
+                    compressor = null;
+                }
                 writeMessage(new ProtocolOK(new SeqNoRange(minSeqNo, maxSeqNo)));
+                if (framed)
+                {
+                    startFraming();
+                    if (compressor != null)
+                        logger.info("THL frame compression enabled: client="
+                                + clientSourceId + " codec="
+                                + compressor.getName());
+                }
             }
             catch (THLException e)
             {
@@ -283,11 +488,76 @@ public class Protocol
         response.setOption(ProtocolParams.RMI_PORT, Integer.toString(rmiPort));
         if (lastEventId != null)
             response.setOption(ProtocolParams.INIT_EVENT_ID, lastEventId);
+
+        // Ask for raw log records if the server uses the same serializer we
+        // do. Older servers do not advertise a serializer and just ignore the
+        // option.
+        Serializer serializer = null;
+        if (eventSerializer != null
+                && eventSerializer.equals(serverCapabilities
+                        .getString(EVENT_SERIALIZER)))
+        {
+            try
+            {
+                serializer = (Serializer) Class.forName(eventSerializer)
+                        .newInstance();
+                response.setOption(ProtocolParams.RAW_RECORDS, "true");
+            }
+            catch (Exception e)
+            {
+                logger.warn("Unable to load event serializer; raw log record transfer disabled: class="
+                        + eventSerializer);
+            }
+        }
+
+        // Ask for binary framing if the server offers it.
+        boolean framed = framing
+                && "true".equals(serverCapabilities.getString(FRAMED));
+        if (framed)
+        {
+            response.setOption(ProtocolParams.FRAMED, "true");
+
+            // Accept compression if the server offers a codec we know.
+            compressor = createCompressor(serverCapabilities
+                    .getString(COMPRESSION));
+            if (compressor != null)
+            {
+                compression = compressor.getName();
+                response.setOption(ProtocolParams.COMPRESSION, compression);
+            }
+        }
+
+        // Grant an initial window of events if the server supports flow
+        // control. Otherwise the server sends as fast as it can.
+        boolean windowed = windowSize > 0
+                && "true".equals(serverCapabilities.getString(CREDIT_WINDOW));
+        if (windowed)
+            response.setOption(ProtocolParams.CREDIT_WINDOW,
+                    Integer.toString(windowSize));
         writeMessage(response);
 
         ProtocolMessage okOrNok = readMessage();
         if (okOrNok instanceof ProtocolOK)
         {
+            if (framed)
+            {
+                startFraming();
+                if (compressor != null)
+                    logger.info("THL frame compression enabled: codec="
+                            + compressor.getName());
+            }
+            if (windowed)
+            {
+                flowControl = true;
+                logger.info("THL flow control enabled: window=" + windowSize);
+            }
+            if (serializer != null)
+            {
+                recordSerializer = serializer;
+                rawRecords = true;
+                logger.info("Raw log record transfer enabled: serializer="
+                        + eventSerializer);
+            }
             return (SeqNoRange) okOrNok.getPayload();
         }
         else if (okOrNok instanceof ProtocolNOK)
@@ -312,7 +582,7 @@ public class Protocol
         ReplEvent ret = null;
         if (!buffer.isEmpty())
         {
-            ret = buffer.remove(0);
+            ret = toReplEvent(buffer.remove(0));
         }
         else
         {
@@ -342,9 +612,9 @@ public class Protocol
             if (msg.getPayload() instanceof ArrayList<?>)
             {
                 // Receiving buffered events
-                buffer = (ArrayList<ReplEvent>) msg.getPayload();
+                buffer = (ArrayList<Serializable>) msg.getPayload();
                 if (!buffer.isEmpty())
-                    ret = buffer.remove(0);
+                    ret = toReplEvent(buffer.remove(0));
                 else
                     logger.warn("Received an empty buffer");
             }
@@ -354,6 +624,10 @@ public class Protocol
                 String message = (String) msg.getPayload();
                 throw new THLException(message);
             }
+            else if (msg instanceof ProtocolReplRecord)
+            {
+                ret = toReplEvent(msg);
+            }
             else if (!(msg instanceof ProtocolReplEvent))
             {
                 // Receiving an invalid message (neither a ProtocolReplEvent or
@@ -366,13 +640,29 @@ public class Protocol
                 ret = ((ProtocolReplEvent) msg).getReplEvent();
         }
 
+        // Return credits to the server once we have consumed half the window.
+        // The server takes one credit for each event or record it sends, so
+        // only count messages that carried one.
+        if (flowControl && ret != null)
+        {
+            consumed++;
+            if (consumed >= Math.max(1, windowSize / 2))
+            {
+                writeMessage(new ProtocolCredit(consumed));
+                consumed = 0;
+            }
+        }
+
         if (ret instanceof ReplDBMSEvent)
         {
             if (((ReplDBMSEvent) ret).getLastFrag())
 
             {
                 allPreviousFragmentsDone = true;
-                if (ret instanceof ReplDBMSFilteredEvent)
+                // The server only sees record headers when it sends raw
+                // records, so it counts filtered events as a single seqno.
+                // Count them the same way to stay in step with it.
+                if (ret instanceof ReplDBMSFilteredEvent && !rawRecords)
                 {
                     ReplDBMSFilteredEvent event = (ReplDBMSFilteredEvent) ret;
 
@@ -401,6 +691,33 @@ public class Protocol
         return ret;
     }
 
+    /**
+     * Converts a received buffer element to a replication event. Raw log
+     * records are deserialized and retain their data so that the client can
+     * store them without serializing again.
+     */
+    private ReplEvent toReplEvent(Serializable element)
+            throws ReplicatorException
+    {
+        if (element instanceof ProtocolReplRecord)
+        {
+            if (recordSerializer == null)
+                throw new THLException(
+                        "Protocol error; received raw log record without negotiating raw record transfer");
+            LogRecord logRecord = ((ProtocolReplRecord) element).getLogRecord();
+            LogEventReplReader eventReader = new LogEventReplReader(
+                    logRecord, recordSerializer, true);
+            ReplEvent event = eventReader.deserializeEvent(
+                    recordDecompressors).getReplEvent();
+            if (event instanceof ReplDBMSEvent)
+                ((ReplDBMSEvent) event).setLogRecordData(logRecord.getData());
+            eventReader.done();
+            return event;
+        }
+        else
+            return (ReplEvent) element;
+    }
+
     /**
      * Wait for an event request from client.
      */
@@ -408,17 +725,69 @@ public class Protocol
             throws ReplicatorException, IOException
     {
         ProtocolMessage msg = readMessage();
+        while (msg instanceof ProtocolCredit)
+        {
+            credits += ((ProtocolCredit) msg).getCredits();
+            msg = readMessage();
+        }
         if (msg instanceof ProtocolReplEventRequest == false)
             throw new THLException("Protocol error");
         return (ProtocolReplEventRequest) msg;
     }
 
+    /**
+     * Take a credit to send one event if flow control is enabled, waiting for
+     * the client to grant more credits if none are left (server side).
+     */
+    private void acquireCredit() throws IOException, ReplicatorException
+    {
+        if (!flowControl)
+            return;
+
+        // Pick up credits the client has already sent once we are down to the
+        // last half of the window. Reads do not block as the client flushes
+        // each message.
+        while (credits < windowSize / 2 && bis.available() > 0)
+            receiveCredit();
+
+        // If we are out of credits send anything we have buffered and wait.
+        if (credits == 0)
+        {
+            flushBuffer();
+            while (credits == 0)
+                receiveCredit();
+        }
+        credits--;
+    }
+
+    // Reads a credit message from the client.
+    private void receiveCredit() throws IOException, ReplicatorException
+    {
+        ProtocolMessage msg = readMessage();
+        if (msg instanceof ProtocolCredit)
+            credits += ((ProtocolCredit) msg).getCredits();
+        else
+            throw new THLException("Protocol error; expected credit: "
+                    + msg.getClass().getName());
+    }
+
+    // Sends buffered events to the client.
+    private void flushBuffer() throws IOException
+    {
+        if (buffering && buffer.size() > 0)
+        {
+            writeMessage(new ProtocolMessage(buffer));
+            buffer.clear();
+        }
+    }
+
     /**
      * Send a replication event to the client.
      */
     public void sendReplEvent(ReplEvent event, boolean forceSend)
-            throws IOException
+            throws IOException, ReplicatorException
     {
+        acquireCredit();
         if (buffering)
         {
             buffer.add(event);
@@ -435,15 +804,35 @@ public class Protocol
     }
 
     /**
-     * Send an error message back to client.
+     * Send a raw log record to the client. This is only valid if raw record
+     * transfer was negotiated during the handshake.
      */
-    public void sendError(String message) throws IOException
+    public void sendReplRecord(LogRecord logRecord, boolean forceSend)
+            throws IOException, ReplicatorException
     {
-        if (buffering && buffer.size() > 0)
+        acquireCredit();
+        ProtocolReplRecord record = new ProtocolReplRecord(logRecord);
+        if (buffering)
         {
-            writeMessage(new ProtocolMessage(buffer));
-            buffer.clear();
+            buffer.add(record);
+            if (forceSend || buffer.size() >= bufferSize)
+            {
+                writeMessage(new ProtocolMessage(buffer));
+                buffer.clear();
+            }
+        }
+        else
+        {
+            writeMessage(record);
         }
+    }
+
+    /**
+     * Send an error message back to client.
+     */
+    public void sendError(String message) throws IOException
+    {
+        flushBuffer();
         writeMessage(new ProtocolNOK(message));
     }
 
@@ -452,11 +841,21 @@ public class Protocol
      */
     public void sendHeartbeat() throws IOException
     {
-        if (buffering && buffer.size() > 0)
+        flushBuffer();
+        writeMessage(new ProtocolHeartbeat());
+    }
+
+    /**
+     * Releases resources held by the protocol, such as native compression
+     * buffers. The socket is closed separately by the caller.
+     */
+    public void close()
+    {
+        if (compressor != null)
         {
-            writeMessage(new ProtocolMessage(buffer));
-            buffer.clear();
+            compressor.close();
+            compressor = null;
         }
-        writeMessage(new ProtocolHeartbeat());
+        recordDecompressors.close();
     }
 }
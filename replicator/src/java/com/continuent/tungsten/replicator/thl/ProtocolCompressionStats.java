@@ -0,0 +1,85 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts bytes sent or received in protocol frames before and after
+ * compression. Counts may be shared across connections.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class ProtocolCompressionStats
+{
+    private AtomicLong rawBytes        = new AtomicLong();
+    private AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * Adds the size of a single frame.
+     * 
+     * @param raw Frame length before compression
+     * @param compressed Frame length as sent over the network
+     */
+    public void add(long raw, long compressed)
+    {
+        rawBytes.addAndGet(raw);
+        compressedBytes.addAndGet(compressed);
+    }
+
+    /** Returns the total length of frames before compression. */
+    public long getRawBytes()
+    {
+        return rawBytes.get();
+    }
+
+    /** Returns the total length of frames as sent over the network. */
+    public long getCompressedBytes()
+    {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Returns the ratio of compressed to raw bytes or 1.0 if nothing has been
+     * counted yet.
+     */
+    public double getRatio()
+    {
+        long raw = rawBytes.get();
+        if (raw == 0)
+            return 1.0;
+        else
+            return (double) compressedBytes.get() / raw;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "rawBytes=" + getRawBytes() + " compressedBytes="
+                + getCompressedBytes();
+    }
+}
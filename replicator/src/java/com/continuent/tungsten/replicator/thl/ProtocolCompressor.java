@@ -0,0 +1,68 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.io.IOException;
+
+/**
+ * Denotes a codec used to compress protocol frames on the network. Each frame
+ * is compressed independently, so implementations may reuse internal state
+ * between calls but must not carry data from one frame to the next.
+ * Implementations are not thread-safe.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public interface ProtocolCompressor
+{
+    /**
+     * Returns the name used to negotiate this codec during the handshake.
+     */
+    public String getName();
+
+    /**
+     * Compresses data.
+     * 
+     * @param data Buffer containing uncompressed data
+     * @param length Number of bytes to compress starting at offset 0
+     * @return Compressed data
+     */
+    public byte[] compress(byte[] data, int length);
+
+    /**
+     * Decompresses data.
+     * 
+     * @param data Buffer containing compressed data
+     * @param offset Offset of first compressed byte
+     * @param length Number of compressed bytes
+     * @param rawLength Length of the data before compression
+     * @return Uncompressed data
+     * @throws IOException Thrown if the data are corrupt
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int rawLength)
+            throws IOException;
+
+    /**
+     * Releases resources held by the codec. The codec may not be used after
+     * this call.
+     */
+    public void close();
+}
@@ -0,0 +1,51 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+/**
+ * This class defines a flow control message sent by clients to grant the
+ * server permission to send a further number of events.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class ProtocolCredit extends ProtocolMessage
+{
+    static final long serialVersionUID = 1L;
+    long              credits;
+
+    /**
+     * Instantiate credit message.
+     * 
+     * @param credits Number of additional events the server may send
+     */
+    public ProtocolCredit(long credits)
+    {
+        super(null);
+        this.credits = credits;
+    }
+
+    /** Returns the number of additional events the server may send. */
+    public long getCredits()
+    {
+        return credits;
+    }
+}
@@ -0,0 +1,409 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplEvent;
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
+import com.continuent.tungsten.replicator.thl.serializer.ProtobufSerializer;
+
+/**
+ * Encodes protocol messages as length-prefixed binary frames. Replication
+ * events use the same protobuf encoding as the THL, which is far cheaper than
+ * Java serialization of the event object graph. Frames have the following
+ * layout:
+ * 
+ * <pre><code>
+ * [int frame length][byte message type][message body]
+ * </code></pre>
+ * Batches contain a count followed by the elements, each of which is written
+ * as a type byte, a length, and a body. Messages or events we do not know how
+ * to encode are sent as Java-serialized objects so that nothing is lost.
+ * <p/>
+ * If a compressor is set, frames large enough to benefit are compressed as a
+ * whole and sent with a COMPRESSED type followed by the uncompressed length.
+ * Readers always accept compressed frames if they have a compressor.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class ProtocolFrameCodec
+{
+    /** Request for events from the client. */
+    public static final byte         REQUEST      = 1;
+
+    /** Replication event encoded using protobuf. */
+    public static final byte         EVENT        = 2;
+
+    /** Raw log record. */
+    public static final byte         RECORD       = 3;
+
+    /** Heartbeat message. */
+    public static final byte         HEARTBEAT    = 4;
+
+    /** Error message. */
+    public static final byte         NOK          = 5;
+
+    /** Batch of events and/or log records. */
+    public static final byte         BATCH        = 6;
+
+    /** Java-serialized object. */
+    public static final byte         OBJECT       = 7;
+
+    /** Flow control credit from the client. */
+    public static final byte         CREDIT       = 8;
+
+    /** Compressed frame. */
+    public static final byte         COMPRESSED   = 9;
+
+    // Frames smaller than this are not worth compressing.
+    private static final int         MIN_COMPRESS = 128;
+
+    private ProtobufSerializer       serializer;
+    private ProtocolCompressor       compressor;
+    private ProtocolCompressionStats stats;
+
+    /**
+     * Creates a new codec instance.
+     */
+    public ProtocolFrameCodec()
+    {
+        serializer = new ProtobufSerializer();
+    }
+
+    /**
+     * Sets the compressor used for frames or null to disable compression.
+     */
+    public void setCompressor(ProtocolCompressor compressor)
+    {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Sets statistics to count frame sizes before and after compression.
+     */
+    public void setStats(ProtocolCompressionStats stats)
+    {
+        this.stats = stats;
+    }
+
+    /**
+     * Writes a single message as a frame. The caller must flush the stream.
+     * 
+     * @param msg Message to write
+     * @param out Stream to which we write the frame
+     */
+    public void write(ProtocolMessage msg, DataOutputStream out)
+            throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+
+        if (msg instanceof ProtocolReplEventRequest)
+        {
+            ProtocolReplEventRequest request = (ProtocolReplEventRequest) msg;
+            dos.writeByte(REQUEST);
+            dos.writeLong(request.getSeqNo());
+            dos.writeLong(request.getPrefetchRange());
+        }
+        else if (msg instanceof ProtocolReplEvent
+                && ((ProtocolReplEvent) msg).getReplEvent() instanceof ReplDBMSEvent)
+        {
+            dos.writeByte(EVENT);
+            writeEvent((ReplDBMSEvent) msg.getPayload(), dos);
+        }
+        else if (msg instanceof ProtocolReplRecord)
+        {
+            dos.writeByte(RECORD);
+            writeRecord((ProtocolReplRecord) msg, dos);
+        }
+        else if (msg instanceof ProtocolHeartbeat)
+        {
+            dos.writeByte(HEARTBEAT);
+        }
+        else if (msg instanceof ProtocolCredit)
+        {
+            dos.writeByte(CREDIT);
+            dos.writeLong(((ProtocolCredit) msg).getCredits());
+        }
+        else if (msg instanceof ProtocolNOK
+                && msg.getPayload() instanceof String)
+        {
+            dos.writeByte(NOK);
+            writeString((String) msg.getPayload(), dos);
+        }
+        else if (msg.getClass() == ProtocolMessage.class
+                && msg.getPayload() instanceof List<?>)
+        {
+            List<?> batch = (List<?>) msg.getPayload();
+            dos.writeByte(BATCH);
+            dos.writeInt(batch.size());
+            for (Object element : batch)
+                writeElement(element, dos);
+        }
+        else
+        {
+            dos.writeByte(OBJECT);
+            writeObject(msg, dos);
+        }
+        dos.flush();
+
+        byte[] frame = baos.toByteArray();
+        int rawLength = frame.length;
+
+        // Compress if it helps, falling back to the plain frame otherwise.
+        if (compressor != null && rawLength >= MIN_COMPRESS)
+        {
+            byte[] compressed = compressor.compress(frame, rawLength);
+            if (compressed.length + 5 < rawLength)
+            {
+                out.writeInt(compressed.length + 5);
+                out.writeByte(COMPRESSED);
+                out.writeInt(rawLength);
+                out.write(compressed);
+                count(rawLength, compressed.length + 5);
+                return;
+            }
+        }
+        out.writeInt(rawLength);
+        out.write(frame);
+        count(rawLength, rawLength);
+    }
+
+    /**
+     * Reads a single frame and returns the message it contains.
+     * 
+     * @param in Stream from which we read the frame
+     * @return A protocol message equivalent to the message that was written
+     */
+    public ProtocolMessage read(DataInputStream in) throws IOException,
+            ReplicatorException
+    {
+        int length = in.readInt();
+        if (length <= 0)
+            throw new THLException("Invalid protocol frame length: " + length);
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+
+        // Expand compressed frames.
+        if (frame[0] == COMPRESSED)
+        {
+            if (compressor == null || length < 5)
+                throw new THLException(
+                        "Received compressed protocol frame without negotiating compression");
+            int rawLength = ((frame[1] & 0xff) << 24)
+                    | ((frame[2] & 0xff) << 16) | ((frame[3] & 0xff) << 8)
+                    | (frame[4] & 0xff);
+            frame = compressor.decompress(frame, 5, length - 5, rawLength);
+            count(rawLength, length);
+        }
+        else
+            count(length, length);
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                frame));
+        byte type = dis.readByte();
+        switch (type)
+        {
+            case REQUEST :
+                long seqno = dis.readLong();
+                long prefetchRange = dis.readLong();
+                return new ProtocolReplEventRequest(seqno, prefetchRange);
+            case EVENT :
+                return new ProtocolReplEvent(readEvent(dis));
+            case RECORD :
+                return readRecord(dis);
+            case HEARTBEAT :
+                return new ProtocolHeartbeat();
+            case CREDIT :
+                return new ProtocolCredit(dis.readLong());
+            case NOK :
+                return new ProtocolNOK(readString(dis));
+            case BATCH :
+                int count = dis.readInt();
+                ArrayList<Serializable> batch = new ArrayList<Serializable>(
+                        count);
+                for (int i = 0; i < count; i++)
+                    batch.add(readElement(dis));
+                return new ProtocolMessage(batch);
+            case OBJECT :
+                Object obj = readObject(dis);
+                if (obj instanceof ProtocolMessage)
+                    return (ProtocolMessage) obj;
+                else
+                    throw new THLException("Invalid object in protocol frame: "
+                            + obj.getClass().getName());
+            default :
+                throw new THLException("Invalid protocol frame type: " + type);
+        }
+    }
+
+    // Adds frame sizes, excluding the length prefix, to statistics.
+    private void count(long raw, long compressed)
+    {
+        if (stats != null)
+            stats.add(raw, compressed);
+    }
+
+    // Writes a batch element, which is prefixed by type and length so that
+    // elements may be skipped or read independently.
+    private void writeElement(Object element, DataOutputStream dos)
+            throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream elementDos = new DataOutputStream(baos);
+        byte type;
+        if (element instanceof ReplDBMSEvent)
+        {
+            type = EVENT;
+            writeEvent((ReplDBMSEvent) element, elementDos);
+        }
+        else if (element instanceof ProtocolReplRecord)
+        {
+            type = RECORD;
+            writeRecord((ProtocolReplRecord) element, elementDos);
+        }
+        else
+        {
+            type = OBJECT;
+            writeObject(element, elementDos);
+        }
+        elementDos.flush();
+
+        dos.writeByte(type);
+        dos.writeInt(baos.size());
+        baos.writeTo(dos);
+    }
+
+    // Reads a batch element.
+    private Serializable readElement(DataInputStream dis) throws IOException,
+            ReplicatorException
+    {
+        byte type = dis.readByte();
+        int length = dis.readInt();
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        DataInputStream elementDis = new DataInputStream(
+                new ByteArrayInputStream(bytes));
+        switch (type)
+        {
+            case EVENT :
+                return readEvent(elementDis);
+            case RECORD :
+                return readRecord(elementDis);
+            case OBJECT :
+                return (Serializable) readObject(elementDis);
+            default :
+                throw new THLException("Invalid protocol batch element type: "
+                        + type);
+        }
+    }
+
+    // Writes an event using protobuf serialization.
+    private void writeEvent(ReplDBMSEvent event, DataOutputStream dos)
+            throws IOException
+    {
+        serializer.serializeEvent(new THLEvent(event.getEventId(), event), dos);
+    }
+
+    // Reads a protobuf-serialized event.
+    private ReplEvent readEvent(DataInputStream dis) throws IOException
+    {
+        return serializer.deserializeEvent(dis).getReplEvent();
+    }
+
+    // Writes a raw log record.
+    private void writeRecord(ProtocolReplRecord record, DataOutputStream dos)
+            throws IOException
+    {
+        LogRecord logRecord = record.getLogRecord();
+        byte[] data = logRecord.getData();
+        dos.writeByte(logRecord.getCrcType());
+        dos.writeLong(logRecord.getCrc());
+        dos.writeInt(data.length);
+        dos.write(data);
+    }
+
+    // Reads a raw log record.
+    private ProtocolReplRecord readRecord(DataInputStream dis)
+            throws IOException
+    {
+        byte crcType = dis.readByte();
+        long crc = dis.readLong();
+        byte[] data = new byte[dis.readInt()];
+        dis.readFully(data);
+        return new ProtocolReplRecord(new LogRecord(null, -1, data, crcType,
+                crc));
+    }
+
+    // Writes a string that may be longer than writeUTF() permits.
+    private void writeString(String value, DataOutputStream dos)
+            throws IOException
+    {
+        byte[] bytes = value.getBytes("UTF-8");
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    // Reads a string.
+    private String readString(DataInputStream dis) throws IOException
+    {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    // Writes a Java-serialized object.
+    private void writeObject(Object obj, DataOutputStream dos)
+            throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(dos);
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    // Reads a Java-serialized object.
+    private Object readObject(DataInputStream dis) throws IOException,
+            ReplicatorException
+    {
+        try
+        {
+            ObjectInputStream ois = new ObjectInputStream(dis);
+            return ois.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new THLException(e.getMessage());
+        }
+    }
+}
@@ -37,4 +37,29 @@ public class ProtocolParams
     
     /** Client's RMI port. **/
     public static final String RMI_PORT = "rmiPort";
+
+    /**
+     * Client request to receive raw log records instead of replication events.
+     * Only honored if the client uses the same event serializer as the server.
+     */
+    public static final String RAW_RECORDS = "rawRecords";
+
+    /**
+     * Client request to exchange binary framed messages after the handshake.
+     * Only honored if the server offers framing in its capabilities.
+     */
+    public static final String FRAMED = "framed";
+
+    /**
+     * Number of events the client allows the server to send before it must
+     * wait for further credits. Only honored if the server offers flow
+     * control in its capabilities.
+     */
+    public static final String CREDIT_WINDOW = "creditWindow";
+
+    /**
+     * Name of the codec the client accepts to compress frames. Only honored
+     * if the server offers the same codec in its capabilities.
+     */
+    public static final String COMPRESSION = "compression";
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
+
+/**
+ * Carries a raw THL log record from server to client. The payload is the
+ * record data exactly as stored in the server log, which the client may write
+ * to its own log without serializing the event again.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class ProtocolReplRecord extends ProtocolMessage
+{
+    private static final long serialVersionUID = 1L;
+
+    private final byte        crcType;
+    private final long        crc;
+
+    /**
+     * Creates a new message from a log record.
+     */
+    public ProtocolReplRecord(LogRecord logRecord)
+    {
+        super(logRecord.getData());
+        this.crcType = logRecord.getCrcType();
+        this.crc = logRecord.getCrc();
+    }
+
+    /**
+     * Returns a log record containing the transmitted data.
+     */
+    public LogRecord getLogRecord()
+    {
+        return new LogRecord(null, -1, (byte[]) getPayload(), crcType, crc);
+    }
+}
@@ -31,6 +31,7 @@ import com.continuent.tungsten.common.cluster.resource.OpenReplicatorParams;
 import com.continuent.tungsten.replicator.InSequenceNotification;
 import com.continuent.tungsten.replicator.OutOfSequenceNotification;
 import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.applier.Applier;
 import com.continuent.tungsten.replicator.conf.ReplicatorConf;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
@@ -38,9 +39,11 @@ import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
 import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.extractor.Extractor;
 import com.continuent.tungsten.replicator.extractor.ExtractorException;
+import com.continuent.tungsten.replicator.pipeline.Stage;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.plugin.PluginLoader;
 import com.continuent.tungsten.replicator.plugin.ShutdownHook;
+import com.continuent.tungsten.replicator.storage.Store;
 
 /**
  * Implements an extractor to pull events from a remote THL.
@@ -67,6 +70,7 @@ public class RemoteTHLExtractor implements Extractor, ShutdownHook
     private String           preferredRole        = null;
     private int              preferredRoleTimeout = 32;
     private int              retryInterval        = 1;
+    private boolean          rawRecords           = false;
 
     // Connection control variables.
     private PluginContext    pluginContext;
@@ -76,6 +80,9 @@ public class RemoteTHLExtractor implements Extractor, ShutdownHook
 
     private ReplEvent        pendingEvent;
 
+    // Serializer of the log to which we store raw records, if enabled.
+    private String           rawRecordSerializer;
+
     // Set to show that we have been shut down.
     private volatile boolean shutdown             = false;
 
@@ -188,6 +195,21 @@ public class RemoteTHLExtractor implements Extractor, ShutdownHook
         this.retryInterval = retryTimeout;
     }
 
+    public boolean isRawRecords()
+    {
+        return rawRecords;
+    }
+
+    /**
+     * If true, request raw log records from the master when events are stored
+     * directly in a local THL. This avoids deserializing events on the master
+     * and serializing them again on the local THL.
+     */
+    public void setRawRecords(boolean rawRecords)
+    {
+        this.rawRecords = rawRecords;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -379,6 +401,39 @@ public class RemoteTHLExtractor implements Extractor, ShutdownHook
      */
     public void prepare(PluginContext context) throws ReplicatorException
     {
+        if (rawRecords)
+        {
+            rawRecordSerializer = findRawRecordSerializer(context);
+            if (rawRecordSerializer == null)
+            {
+                logger.info("Raw log records are not used; events are filtered or not stored in a THL");
+            }
+        }
+    }
+
+    // Raw log records are only safe if our stage stores events directly in a
+    // THL, as filters could alter events after they are deserialized. If so,
+    // return the serializer used by the THL.
+    private String findRawRecordSerializer(PluginContext context)
+    {
+        for (Stage stage : context.getStages())
+        {
+            if (stage.getTaskCount() != 1 || stage.getExtractor0() != this)
+                continue;
+            if (stage.getFilters0().size() > 0)
+                return null;
+
+            Applier applier = stage.getApplier0();
+            if (applier instanceof THLStoreApplier)
+            {
+                Store store = context.getStore(((THLStoreApplier) applier)
+                        .getStoreName());
+                if (store instanceof THL)
+                    return ((THL) store).getEventSerializer();
+            }
+            return null;
+        }
+        return null;
     }
 
     /**
@@ -499,6 +554,7 @@ public class RemoteTHLExtractor implements Extractor, ShutdownHook
                     conn.setResetPeriod(resetPeriod);
                     conn.setHeartbeatMillis(heartbeatMillis);
                     conn.setLastEventId(this.lastEventId);
+                    conn.setEventSerializer(rawRecordSerializer);
                     if (this.lastEvent == null
                             || this.checkSerialization == false)
                     {
@@ -29,6 +29,7 @@ import org.apache.log4j.Logger;
 import com.continuent.tungsten.common.cluster.resource.physical.Replicator;
 import com.continuent.tungsten.common.config.Interval;
 import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.common.io.MappedFilePool;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.datasource.CommitSeqno;
 import com.continuent.tungsten.replicator.datasource.CommitSeqnoAccessor;
@@ -43,6 +44,7 @@ import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.storage.Store;
 import com.continuent.tungsten.replicator.thl.log.DiskLog;
 import com.continuent.tungsten.replicator.thl.log.LogConnection;
+import com.continuent.tungsten.replicator.thl.log.LogRecordCache;
 import com.continuent.tungsten.replicator.thl.serializer.ProtobufSerializer;
 import com.continuent.tungsten.replicator.util.AtomicCounter;
 
@@ -106,6 +108,22 @@ public class THL implements Store
     /** If true, fsync when flushing. */
     private boolean             fsyncOnFlush         = false;
 
+    /** Approximate bytes between seqno index entries. 0 disables. */
+    private long                seqnoIndexInterval   = 262144;
+
+    /** Codec used to compress events in log records. */
+    private String              logCompression       = "none";
+
+    /** Codec offered to clients to compress network frames. */
+    private String              compression          = "none";
+
+    /** Committed log records kept in memory for readers; 0 disables. */
+    private int                 eventCacheSize       = 0;
+    private long                eventCacheBytes      = 16777216;
+
+    /** Idle memory mappings of sealed log files; 0 disables mapped reads. */
+    private int                 mappedFilePoolSize   = 0;
+
     // Catalog access and disk log.
     private UniversalConnection conn                 = null;
     private CommitSeqno         commitSeqno          = null;
@@ -118,6 +136,7 @@ public class THL implements Store
 
     // Storage connectivity.
     private Server              server               = null;
+    private ProtocolCompressionStats compressionStats = new ProtocolCompressionStats();
 
     private boolean             readOnly             = false;
 
@@ -217,6 +236,14 @@ public class THL implements Store
         this.eventSerializer = eventSerializer;
     }
 
+    /**
+     * Returns the event serializer name.
+     */
+    public String getEventSerializer()
+    {
+        return eventSerializer;
+    }
+
     /**
      * Sets the log file retention interval.
      */
@@ -258,6 +285,79 @@ public class THL implements Store
         this.fsyncOnFlush = fsyncOnFlush;
     }
 
+    /**
+     * Sets the approximate number of bytes between entries in the per-file
+     * seqno index. 0 disables seqno indexes.
+     */
+    public void setSeqnoIndexInterval(long seqnoIndexInterval)
+    {
+        this.seqnoIndexInterval = seqnoIndexInterval;
+    }
+
+    /**
+     * Sets the codec used to compress events stored in the log, which may be
+     * "deflate", "lz", or "none".
+     */
+    public void setLogCompression(String logCompression)
+    {
+        this.logCompression = logCompression;
+    }
+
+    /**
+     * Sets the number of recently committed log records kept in memory so that
+     * clients reading near the log tail do not read them from disk. 0
+     * disables the cache.
+     */
+    public void setEventCacheSize(int eventCacheSize)
+    {
+        this.eventCacheSize = eventCacheSize;
+    }
+
+    /**
+     * Sets the approximate maximum bytes of log records in the event cache. 0
+     * means no byte limit.
+     */
+    public void setEventCacheBytes(long eventCacheBytes)
+    {
+        this.eventCacheBytes = eventCacheBytes;
+    }
+
+    /**
+     * Sets the number of idle memory mappings of sealed log files kept for
+     * reuse. If greater than 0, log files that have rotated are read through
+     * memory mappings. The default is 0.
+     */
+    public void setMappedFilePoolSize(int mappedFilePoolSize)
+    {
+        this.mappedFilePoolSize = mappedFilePoolSize;
+    }
+
+    /**
+     * Sets the codec offered to clients to compress network traffic, which may
+     * be "deflate", "lz", or "none".
+     */
+    public void setCompression(String compression)
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the codec offered to clients to compress network traffic.
+     */
+    public String getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * Returns statistics on network bytes before and after compression for all
+     * clients.
+     */
+    public ProtocolCompressionStats getCompressionStats()
+    {
+        return compressionStats;
+    }
+
     public void setReadOnly(String ro)
     {
         readOnly = (ro.equals("true"));
@@ -396,6 +496,11 @@ public class THL implements Store
             // Only used with fsync.
             diskLog.setFlushIntervalMillis(flushIntervalMillis);
         }
+        diskLog.setSeqnoIndexInterval(seqnoIndexInterval);
+        diskLog.setLogCompression(logCompression);
+        diskLog.setEventCacheSize(eventCacheSize);
+        diskLog.setEventCacheBytes(eventCacheBytes);
+        diskLog.setMappedFilePoolSize(mappedFilePoolSize);
         diskLog.setReadOnly(readOnly);
         diskLog.prepare();
         logger.info("Log preparation is complete");
@@ -729,7 +834,30 @@ public class THL implements Store
         props.setLong("flushIntervalMillis", diskLog.getFlushIntervalMillis());
         props.setLong("timeoutMillis", diskLog.getTimeoutMillis());
         props.setLong("logConnectionTimeout", logConnectionTimeout);
+        props.setLong("seqnoIndexInterval", seqnoIndexInterval);
         props.setBoolean("readOnly", readOnly);
+        props.setString("logCompression", logCompression);
+        props.setString("compression", compression);
+        props.setLong("networkRawBytes", compressionStats.getRawBytes());
+        props.setLong("networkCompressedBytes",
+                compressionStats.getCompressedBytes());
+        props.setInt("eventCacheSize", eventCacheSize);
+        LogRecordCache recordCache = diskLog.getRecordCache();
+        if (recordCache != null)
+        {
+            props.setLong("eventCacheEvents", recordCache.size());
+            props.setLong("eventCacheBytes", recordCache.getBytes());
+            props.setLong("eventCacheHits", recordCache.getHits());
+            props.setLong("eventCacheMisses", recordCache.getMisses());
+        }
+        props.setInt("mappedFilePoolSize", mappedFilePoolSize);
+        MappedFilePool mappedFilePool = diskLog.getMappedFilePool();
+        if (mappedFilePool != null)
+        {
+            props.setInt("mappedFiles", mappedFilePool.getMappedFiles());
+            props.setLong("mappedFileMaps", mappedFilePool.getMaps());
+            props.setLong("mappedFileUnmaps", mappedFilePool.getUnmaps());
+        }
 
         return props;
     }
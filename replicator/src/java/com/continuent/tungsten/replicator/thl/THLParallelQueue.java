@@ -22,8 +22,11 @@ package com.continuent.tungsten.replicator.thl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -38,6 +41,8 @@ import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.event.ReplOptionParams;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
 import com.continuent.tungsten.replicator.storage.ParallelStore;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
+import com.continuent.tungsten.replicator.storage.parallel.PartitionMetadata;
 import com.continuent.tungsten.replicator.storage.parallel.Partitioner;
 import com.continuent.tungsten.replicator.storage.parallel.PartitionerResponse;
 import com.continuent.tungsten.replicator.storage.parallel.SimplePartitioner;
@@ -58,6 +63,13 @@ import com.continuent.tungsten.replicator.util.WatchPredicate;
  * <p/>
  * Applier tasks are known as "channels" in replicator end-user documentation.
  * <p/>
+ * If the sharedReader property is set, a single thread reads the THL and
+ * dispatches events to the per-task queues instead of each task reading the
+ * full log. A slow channel then holds back the shared reader once its queue is
+ * full, which is also bounded by the maximum offline interval. The shared
+ * reader is required for a {@link StatefulPartitioner}, which is called only
+ * once per transaction in put().
+ * <p/>
  * This class makes a very strong assumption that shard IDs are correctly
  * assigned in prior stages. If not, parallelization may fail due to conflicts
  * when transactions are assigned to incorrect channels. This in turn can lead
@@ -74,12 +86,14 @@ public class THLParallelQueue implements ParallelStore
     // Queue parameters.
     private String                    name;
     private int                       maxSize             = 100;
+    private long                      maxBytes            = 0;
     private int                       maxControlEvents    = 1000;
     private int                       partitions          = 1;
     private int                       syncInterval        = 5000;
     private int                       maxOfflineInterval  = 10;
     private int                       maxDelayInterval    = 60;
     private String                    thlStoreName        = "thl";
+    private boolean                   sharedReader        = false;
 
     // Plugin context in case we need to make inquiries.
     private PluginContext             context;
@@ -89,6 +103,9 @@ public class THLParallelQueue implements ParallelStore
 
     // Read task control information.
     private List<THLParallelReadTask> readTasks;
+    private THLParallelSharedReader   sharedReaderTask;
+    private AtomicInteger             startedTasks        = new AtomicInteger(
+                                                                  0);
     private ReplDBMSEvent             lastInsertedEvent;
 
     // Headers used to track the restart position from downstream tasks.
@@ -107,6 +124,9 @@ public class THLParallelQueue implements ParallelStore
     private long                      serializationCount  = 0;
     private long                      discardCount        = 0;
 
+    // Partitions assigned by a stateful partitioner, indexed by seqno.
+    private Map<Long, Integer>        assignments;
+
     // Flag to insert stop synchronization event at next transaction boundary.
     private boolean                   stopRequested       = false;
 
@@ -141,6 +161,17 @@ public class THLParallelQueue implements ParallelStore
         this.maxSize = size;
     }
 
+    /** Maximum estimated bytes of events in individual queues. */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
     /** Sets the number of queue partitions. */
     public void setPartitions(int partitions)
     {
@@ -225,6 +256,21 @@ public class THLParallelQueue implements ParallelStore
         this.maxDelayInterval = maxDelayInterval;
     }
 
+    public boolean isSharedReader()
+    {
+        return sharedReader;
+    }
+
+    /**
+     * If set to true, use a single thread to read the THL and dispatch events
+     * to all partitions rather than a separate reader per partition. This
+     * avoids reading and decoding each log record once per channel.
+     */
+    public void setSharedReader(boolean sharedReader)
+    {
+        this.sharedReader = sharedReader;
+    }
+
     /** Returns the current head seqno to which read tasks may advance. */
     public long getHeadSeqno()
     {
@@ -259,6 +305,9 @@ public class THLParallelQueue implements ParallelStore
                 {
                     readTasks.get(i).setRestartHeader(restartHeader);
                 }
+                if (sharedReaderTask != null)
+                    sharedReaderTask
+                            .setRestartSeqno(restartHeader.getSeqno() + 1);
             }
         }
     }
@@ -362,6 +411,11 @@ public class THLParallelQueue implements ParallelStore
                     + response.getPartition() + " critical="
                     + response.isCritical());
         }
+
+        // Record stateful assignments for the shared reader, which must not
+        // call the partitioner a second time.
+        if (assignments != null && event.getFragno() == 0)
+            assignments.put(event.getSeqno(), response.getPartition());
         if (response.isCritical()
                 && (criticalPartition != response.getPartition()))
         {
@@ -654,12 +708,17 @@ public class THLParallelQueue implements ParallelStore
             }
         }
 
-        // Stateful partitioners are not accepted.
+        // Stateful partitioners must see each event exactly once, which
+        // is only possible when a shared reader dispatches events.
         if (partitioner instanceof StatefulPartitioner)
         {
-            throw new ReplicatorException(
-                    "This store does not support StatefulPartitioner implementations: class="
-                            + partitionerClass);
+            if (!sharedReader)
+            {
+                throw new ReplicatorException(
+                        "StatefulPartitioner implementations require sharedReader=true: class="
+                                + partitionerClass);
+            }
+            assignments = new ConcurrentHashMap<Long, Integer>();
         }
 
         // Set the sync interval only if sync'ing is enabled.
@@ -702,16 +761,40 @@ public class THLParallelQueue implements ParallelStore
         // Instantiate reader tasks, followed by array of last sequence numbers
         // to permit propagation of restart points from each output task.
         readTasks = new ArrayList<THLParallelReadTask>(partitions);
+        QueueMemoryBudget pipelineBudget = context.getQueueBudget();
         for (int i = 0; i < partitions; i++)
         {
             THLParallelReadTask readTask = new THLParallelReadTask(i, thl,
                     partitioner, headSeqnoCounter, intervalGuard, maxSize,
                     maxControlEvents, syncInterval,
                     context.getEventDispatcher());
+            readTask.setSharedReader(sharedReader);
+            if (maxBytes > 0 || pipelineBudget != null)
+            {
+                readTask.setMemoryBudget(new QueueMemoryBudget(name + "." + i,
+                        maxBytes, pipelineBudget));
+            }
             readTasks.add(readTask);
             readTask.prepare(context);
         }
         lastHeaders = new ReplDBMSHeader[partitions];
+
+        // If requested, create a single reader to feed all tasks.
+        if (sharedReader)
+        {
+            sharedReaderTask = new THLParallelSharedReader(thl, partitioner,
+                    headSeqnoCounter, readTasks, context.getEventDispatcher());
+            sharedReaderTask.setAssignments(assignments);
+            sharedReaderTask.prepare(context);
+        }
+
+        // Add queue metadata required by stateful partitioners.
+        if (partitioner instanceof StatefulPartitioner)
+        {
+            List<PartitionMetadata> metadata = new ArrayList<PartitionMetadata>(
+                    readTasks);
+            ((StatefulPartitioner) partitioner).setPartitionMetadata(metadata);
+        }
     }
 
     /**
@@ -729,7 +812,17 @@ public class THLParallelQueue implements ParallelStore
             logger.info("Releasing THL parallel queue store: "
                     + status.toString());
 
-            // Stop processing.
+            // Stop processing, starting with the shared reader if we have one.
+            // Tasks must be deregistered before they are released so that the
+            // reader thread no longer posts to them.
+            if (sharedReaderTask != null)
+            {
+                sharedReaderTask.stop();
+                for (THLParallelReadTask readTask : readTasks)
+                    sharedReaderTask.deregister(readTask);
+                sharedReaderTask.release();
+                sharedReaderTask = null;
+            }
             for (THLParallelReadTask readTask : readTasks)
             {
                 // Stop the task thread again for good measure.
@@ -742,19 +835,26 @@ public class THLParallelQueue implements ParallelStore
     }
 
     /**
-     * Start the reader for a particular task.
+     * Start the reader for a particular task. The shared reader, if used,
+     * starts along with the first task.
      */
     public void start(int taskId)
     {
         this.readTasks.get(taskId).start();
+        startedTasks.incrementAndGet();
+        if (sharedReaderTask != null)
+            sharedReaderTask.start();
     }
 
     /**
-     * Stop the reader for a particular task.
+     * Stop the reader for a particular task. The shared reader, if used, stops
+     * along with the last task.
      */
     public void stop(int taskId)
     {
         this.readTasks.get(taskId).stop();
+        if (startedTasks.decrementAndGet() <= 0 && sharedReaderTask != null)
+            sharedReaderTask.stop();
     }
 
     // Validate that the taskId is in the accepted range of partitions.
@@ -816,6 +916,15 @@ public class THLParallelQueue implements ParallelStore
         props.setBoolean("stopRequested", stopRequested);
         props.setInt("criticalPartition", criticalPartition);
         props.setString("intervalGuard", intervalGuard.toString());
+        props.setBoolean("sharedReader", sharedReader);
+        props.setLong("maxBytes", maxBytes);
+        QueueMemoryBudget pipelineBudget = context.getQueueBudget();
+        if (pipelineBudget != null)
+        {
+            props.setLong("pipelineMaxBytes", pipelineBudget.getMaxBytes());
+            props.setLong("pipelineBytes", pipelineBudget.getCurrentBytes());
+            props.setLong("pipelinePeakBytes", pipelineBudget.getPeakBytes());
+        }
         for (int i = 0; i < readTasks.size(); i++)
         {
             props.setString("store." + i, readTasks.get(i).toString());
@@ -38,6 +38,7 @@ import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeaderData;
 import com.continuent.tungsten.replicator.event.ReplEvent;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
 import com.continuent.tungsten.replicator.util.AtomicIntervalGuard;
 import com.continuent.tungsten.replicator.util.WatchPredicate;
 
@@ -92,6 +93,9 @@ public class THLParallelReadQueue
     // Interval guard for reporting our position.
     private AtomicIntervalGuard<?>                     intervalGuard;
 
+    // Memory budget for events in the queue, if bytes are limited.
+    private volatile QueueMemoryBudget                 budget;
+
     // Statistical counters.
     private AtomicLong                                 acceptCount  = new AtomicLong(
                                                                             0);
@@ -147,6 +151,21 @@ public class THLParallelReadQueue
         }
     }
 
+    /**
+     * Sets a memory budget to limit the estimated bytes of events in the
+     * queue.
+     */
+    public void setMemoryBudget(QueueMemoryBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    /** Returns the memory budget or null if bytes are not limited. */
+    public QueueMemoryBudget getMemoryBudget()
+    {
+        return budget;
+    }
+
     /** Returns current sequence number we have read. */
     public long getReadSeqno()
     {
@@ -191,6 +210,8 @@ public class THLParallelReadQueue
             watchPredicates.clear();
             watchPredicates = null;
         }
+        if (budget != null)
+            budget.clear();
     }
 
     // UPSTREAM QUEUE INTERFACE. These methods perform operations that
@@ -320,6 +341,9 @@ public class THLParallelReadQueue
             logger.debug("Adding event to parallel queue: taskId=" + taskId
                     + " seqno=" + replDBMSEvent.getSeqno());
         }
+        QueueMemoryBudget currentBudget = budget;
+        if (currentBudget != null)
+            currentBudget.acquire(replDBMSEvent);
         eventQueue.put(replDBMSEvent);
         acceptCount.incrementAndGet();
 
@@ -489,6 +513,9 @@ public class THLParallelReadQueue
 
         // Grab the next event. We poll to ensure a timeout.
         ReplEvent event = eventQueue.poll(timeout, unit);
+        QueueMemoryBudget currentBudget = budget;
+        if (currentBudget != null && event != null)
+            currentBudget.release(event);
 
         // Report the event we are processing to interval tracking if we got
         // something.
@@ -34,6 +34,8 @@ import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeaderData;
 import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.plugin.PluginContext;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
+import com.continuent.tungsten.replicator.storage.parallel.PartitionMetadata;
 import com.continuent.tungsten.replicator.storage.parallel.Partitioner;
 import com.continuent.tungsten.replicator.storage.parallel.PartitionerResponse;
 import com.continuent.tungsten.replicator.thl.log.LogConnection;
@@ -50,7 +52,7 @@ import com.continuent.tungsten.replicator.util.WatchPredicate;
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  * @version 1.0
  */
-public class THLParallelReadTask implements Runnable
+public class THLParallelReadTask implements Runnable, PartitionMetadata
 {
     private static Logger          logger               = Logger.getLogger(THLParallelReadTask.class);
 
@@ -76,6 +78,7 @@ public class THLParallelReadTask implements Runnable
     private long                   restartSeqno         = 0;
     private long                   restartExtractMillis = Long.MAX_VALUE;
     private ReplDBMSHeader         lastHeader;
+    private QueueMemoryBudget      budget;
 
     // Pending control events to be integrated into the event queue and seqno
     // of next event if known.
@@ -94,6 +97,9 @@ public class THLParallelReadTask implements Runnable
     // Flag indicating task is cancelled.
     private volatile boolean       cancelled            = false;
 
+    // If true, events are posted by a shared reader instead of our own thread.
+    private boolean                sharedReader         = false;
+
     /**
      * Instantiate a read task.
      */
@@ -123,6 +129,52 @@ public class THLParallelReadTask implements Runnable
         this.lastHeader = header;
     }
 
+    /**
+     * Sets a memory budget to limit bytes in the read queue. This must be
+     * called before prepare().
+     */
+    public synchronized void setMemoryBudget(QueueMemoryBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    /** Returns the task ID on whose behalf we are reading. */
+    public int getTaskId()
+    {
+        return taskId;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.PartitionMetadata#getPartitionNumber()
+     */
+    public int getPartitionNumber()
+    {
+        return taskId;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.continuent.tungsten.replicator.storage.parallel.PartitionMetadata#getCurrentSize()
+     */
+    public long getCurrentSize()
+    {
+        THLParallelReadQueue queue = readQueue;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * If set to true, the task does not read the log itself but receives
+     * events through post() from a {@link THLParallelSharedReader}. This must
+     * be called before prepare().
+     */
+    public synchronized void setSharedReader(boolean sharedReader)
+    {
+        this.sharedReader = sharedReader;
+    }
+
     /**
      * Connect to THL and seek start sequence number. Must be called before
      * run().
@@ -134,9 +186,19 @@ public class THLParallelReadTask implements Runnable
         this.readQueue = new THLParallelReadQueue(taskId, maxSize,
                 maxControlEvents, restartSeqno, syncInterval, lastHeader,
                 intervalGuard);
+        readQueue.setMemoryBudget(budget);
+
+        // Report our starting position to the interval guard.
+        intervalGuard.report(taskId, restartSeqno, restartExtractMillis);
+
+        // A shared reader supplies our events, so we are done.
+        if (sharedReader)
+            return;
 
-        // Connect to the log.
+        // Connect to the log. Records are decoded by each reader, so we can
+        // read recently committed records from the log's record cache.
         connection = thl.connect(true);
+        connection.setUseEventCache(true);
 
         // Add a read filter that will accept only events that are in this
         // partition. We use an inner class so we can access the partitioner
@@ -169,9 +231,6 @@ public class THLParallelReadTask implements Runnable
             }
         };
         connection.setReadFilter(filter);
-
-        // Report our starting position to the interval guard.
-        intervalGuard.report(taskId, restartSeqno, restartExtractMillis);
     }
 
     /**
@@ -179,7 +238,7 @@ public class THLParallelReadTask implements Runnable
      */
     public synchronized void start()
     {
-        if (this.taskThread == null)
+        if (this.taskThread == null && !sharedReader)
         {
             taskThread = new Thread(this);
             taskThread.setName("store-" + thl.getName() + "-" + taskId);
@@ -216,6 +275,9 @@ public class THLParallelReadTask implements Runnable
         {
             connection.release();
             connection = null;
+        }
+        if (readQueue != null)
+        {
             readQueue.release();
             readQueue = null;
         }
@@ -310,6 +372,32 @@ public class THLParallelReadTask implements Runnable
                 + " store=" + thl.getName() + " taskId=" + taskId);
     }
 
+    /**
+     * Posts an event read by a shared reader. Events that belong to other
+     * partitions must arrive as header-only events with no ReplEvent, exactly
+     * as our own read filter would produce them.
+     * 
+     * @param thlEvent Event to post
+     * @throws InterruptedException Thrown if we are interrupted while waiting
+     *             for queue space
+     */
+    public void post(THLEvent thlEvent) throws InterruptedException
+    {
+        if (lowWaterMark.get() == 0)
+            lowWaterMark.set(thlEvent.getSeqno());
+        readCount.incrementAndGet();
+        readQueue.post(thlEvent);
+    }
+
+    /**
+     * Records a failure from a shared reader so that the next call to get()
+     * reports it.
+     */
+    public void setThrowable(Throwable throwable)
+    {
+        this.throwable = throwable;
+    }
+
     // QUEUE INTERFACE STARTS HERE.
 
     /**
@@ -413,6 +501,11 @@ public class THLParallelReadTask implements Runnable
         sb.append(" accepted=").append(readQueue.getAcceptCount());
         sb.append(" discarded=").append(readQueue.getDiscardCount());
         sb.append(" events=").append(readQueue.size());
+        if (budget != null)
+        {
+            sb.append(" bytes=").append(budget.getCurrentBytes());
+            sb.append(" peak_bytes=").append(budget.getPeakBytes());
+        }
         return sb.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,375 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.fsm.event.EventDispatcher;
+import com.continuent.tungsten.replicator.ErrorNotification;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.event.ReplDBMSHeaderData;
+import com.continuent.tungsten.replicator.plugin.PluginContext;
+import com.continuent.tungsten.replicator.storage.parallel.Partitioner;
+import com.continuent.tungsten.replicator.storage.parallel.PartitionerResponse;
+import com.continuent.tungsten.replicator.thl.log.LogConnection;
+import com.continuent.tungsten.replicator.util.AtomicCounter;
+
+/**
+ * Reads the THL once on behalf of all read tasks of a parallel queue. Each
+ * record is partitioned a single time and the full event is posted to the
+ * owning task. Other tasks receive a header-only event so that they advance
+ * their positions exactly as they would if they had read and filtered the log
+ * themselves.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class THLParallelSharedReader implements Runnable
+{
+    private static Logger                   logger       = Logger.getLogger(THLParallelSharedReader.class);
+
+    // Read tasks to which we dispatch events, indexed by task ID.
+    private final List<THLParallelReadTask> readTasks;
+
+    // Tasks that no longer accept events and the task to which we are
+    // posting, both protected by the post lock.
+    private final Object                    postLock     = new Object();
+    private final Set<THLParallelReadTask>  deregistered = new HashSet<THLParallelReadTask>();
+    private THLParallelReadTask             postingTask;
+
+    // Partitioner instance.
+    private final Partitioner               partitioner;
+
+    // Counter to coordinate queue operation.
+    private final AtomicCounter             headSeqnoCounter;
+
+    // Dispatcher to report errors.
+    private final EventDispatcher           dispatcher;
+
+    // Assignments made by a stateful partitioner, if used.
+    private Map<Long, Integer>              assignments;
+
+    // Starting position.
+    private long                            restartSeqno = 0;
+
+    // Connection to the log.
+    private final THL                       thl;
+    private LogConnection                   connection;
+
+    // Thread ID for the reader.
+    private volatile Thread                 readerThread;
+
+    // Flag indicating reader is cancelled.
+    private volatile boolean                cancelled    = false;
+
+    /**
+     * Instantiate a shared reader.
+     */
+    public THLParallelSharedReader(THL thl, Partitioner partitioner,
+            AtomicCounter headSeqnoCounter,
+            List<THLParallelReadTask> readTasks, EventDispatcher dispatcher)
+    {
+        this.thl = thl;
+        this.partitioner = partitioner;
+        this.headSeqnoCounter = headSeqnoCounter;
+        this.readTasks = readTasks;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the sequence number from which to start reading. This must be
+     * called before start() and must match the restart position of the read
+     * tasks.
+     */
+    public synchronized void setRestartSeqno(long restartSeqno)
+    {
+        this.restartSeqno = restartSeqno;
+    }
+
+    /**
+     * Sets a map of partition assignments by seqno. If set, the reader uses
+     * these in place of the partitioner, removing each after the last fragment
+     * of its transaction. Events with no assignment were discarded by the
+     * queue and go to no partition.
+     */
+    public synchronized void setAssignments(Map<Long, Integer> assignments)
+    {
+        this.assignments = assignments;
+    }
+
+    /**
+     * Connect to the THL. Must be called before run().
+     */
+    public synchronized void prepare(PluginContext context)
+            throws ReplicatorException, InterruptedException
+    {
+        connection = thl.connect(true);
+        connection.setUseEventCache(true);
+    }
+
+    /**
+     * Start the reader thread if it is not already running. This must be
+     * called after prepare.
+     */
+    public synchronized void start()
+    {
+        if (this.readerThread == null)
+        {
+            readerThread = new Thread(this);
+            readerThread.setName("store-" + thl.getName() + "-shared");
+            readerThread.start();
+        }
+    }
+
+    /**
+     * Cancel the thread. This must be called prior to release.
+     */
+    public synchronized void stop()
+    {
+        cancelled = true;
+        if (this.readerThread != null)
+        {
+            readerThread.interrupt();
+            try
+            {
+                readerThread.join(2000);
+            }
+            catch (InterruptedException e)
+            {
+            }
+        }
+    }
+
+    /**
+     * Stops posting events to a read task and waits for a post to that task
+     * that is in progress to finish. This must be called after stop() and
+     * before the task is released so that the reader thread does not post to
+     * a released queue.
+     */
+    public void deregister(THLParallelReadTask readTask)
+    {
+        synchronized (postLock)
+        {
+            deregistered.add(readTask);
+            while (postingTask == readTask)
+            {
+                try
+                {
+                    postLock.wait(1000);
+                }
+                catch (InterruptedException e)
+                {
+                    logger.warn("Interrupted while waiting for shared reader to finish posting: task="
+                            + readTask.getTaskId());
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                // The post may be blocked on a full queue; interrupt the
+                // reader again to get it out.
+                if (postingTask == readTask && readerThread != null)
+                {
+                    logger.warn("Shared reader is still posting to released task: task="
+                            + readTask.getTaskId());
+                    readerThread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Free the log connection. Must be called following run().
+     */
+    public synchronized void release()
+    {
+        if (connection != null)
+        {
+            connection.release();
+            connection = null;
+        }
+    }
+
+    /**
+     * Implements read loop on the log to feed all read task queues.
+     */
+    @Override
+    public void run()
+    {
+        long readSeqno = restartSeqno;
+
+        try
+        {
+            // Seek to initial position to start reading.
+            if (!connection.seek(restartSeqno))
+            {
+                throw new THLException(
+                        "Unable to locate starting seqno in log: seqno="
+                                + restartSeqno + " store=" + thl.getName());
+            }
+
+            // Read records until we are cancelled.
+            while (!cancelled)
+            {
+                THLEvent thlEvent = connection.next();
+                readSeqno = thlEvent.getSeqno();
+
+                // Ensure it is safe to process this value. This also ensures
+                // that stateful assignments for the seqno are present.
+                headSeqnoCounter.waitSeqnoGreaterEqual(thlEvent.getSeqno());
+
+                // Assign the event to a partition.
+                int partition = assign(thlEvent);
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Read event from THL for shared dispatch: seqno="
+                            + thlEvent.getSeqno()
+                            + " fragno="
+                            + thlEvent.getFragno()
+                            + " partition=" + partition);
+                }
+
+                // Post the full event to its owner and a header-only event to
+                // everyone else.
+                THLEvent headerEvent = null;
+                for (THLParallelReadTask readTask : readTasks)
+                {
+                    synchronized (postLock)
+                    {
+                        if (deregistered.contains(readTask))
+                            continue;
+                        postingTask = readTask;
+                    }
+                    try
+                    {
+                        if (readTask.getTaskId() == partition)
+                            readTask.post(thlEvent);
+                        else
+                        {
+                            if (headerEvent == null)
+                                headerEvent = toHeaderEvent(thlEvent);
+                            readTask.post(headerEvent);
+                        }
+                    }
+                    finally
+                    {
+                        synchronized (postLock)
+                        {
+                            postingTask = null;
+                            postLock.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            if (!cancelled)
+                logger.warn("Unexpected interrupt before shared reader thread was cancelled");
+        }
+        catch (Throwable e)
+        {
+            // Fail all tasks so that callers pick up the error, then try to
+            // log it at the point of failure.
+            for (THLParallelReadTask readTask : readTasks)
+            {
+                readTask.setThrowable(e);
+            }
+            try
+            {
+                String msg = "Shared read failed on transaction log: seqno="
+                        + readSeqno;
+                logger.error(msg, e);
+                dispatcher.put(new ErrorNotification(msg, e));
+            }
+            catch (InterruptedException e1)
+            {
+                logger.warn("Task cancelled while posting error notification",
+                        null);
+            }
+            catch (Throwable t1)
+            {
+                logger.warn("Failure while attempting to log an error: " + e,
+                        t1);
+            }
+        }
+
+        logger.info("Terminating shared parallel reader thread: seqno="
+                + readSeqno + " store=" + thl.getName());
+    }
+
+    // Find the partition for an event. Without a stateful partitioner, we
+    // use the same header information that a per-task read filter would see.
+    private int assign(THLEvent thlEvent) throws ReplicatorException
+    {
+        if (assignments != null)
+        {
+            Integer partition;
+            if (thlEvent.getLastFrag())
+                partition = assignments.remove(thlEvent.getSeqno());
+            else
+                partition = assignments.get(thlEvent.getSeqno());
+            return (partition == null) ? -1 : partition;
+        }
+
+        ReplDBMSHeaderData header = new ReplDBMSHeaderData(
+                thlEvent.getSeqno(), thlEvent.getFragno(),
+                thlEvent.getLastFrag(), thlEvent.getSourceId(),
+                thlEvent.getEpochNumber(), thlEvent.getEventId(),
+                thlEvent.getShardId(), thlEvent.getSourceTstamp(), 0);
+        PartitionerResponse response = partitioner.partition(header, 0);
+        return response.getPartition();
+    }
+
+    // Generate a header-only copy of an event for tasks that do not own it.
+    private THLEvent toHeaderEvent(THLEvent thlEvent)
+    {
+        return new THLEvent(thlEvent.getSeqno(), thlEvent.getFragno(),
+                thlEvent.getLastFrag(), thlEvent.getSourceId(),
+                THLEvent.REPL_DBMS_EVENT, thlEvent.getEpochNumber(),
+                new Timestamp(System.currentTimeMillis()),
+                thlEvent.getSourceTstamp(), thlEvent.getEventId(),
+                thlEvent.getShardId(), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(this.getClass().getSimpleName());
+        sb.append(" thread_name=");
+        if (readerThread == null)
+            sb.append("null");
+        else
+            sb.append(readerThread.getName());
+        sb.append(" restart_seqno=").append(restartSeqno);
+        return sb.toString();
+    }
+}
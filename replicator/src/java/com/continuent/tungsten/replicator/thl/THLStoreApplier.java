@@ -146,7 +146,8 @@ public class THLStoreApplier implements Applier
         THLEvent thlEvent = new THLEvent(event.getEventId(), event);
         try
         {
-            client.store(thlEvent, doCommit);
+            // Events received as raw log records are stored as is.
+            client.store(thlEvent, event.getLogRecordData(), doCommit);
             if (doCommit)
             {
                 // Commit to the log first so it becomes visible as quickly as
@@ -26,6 +26,8 @@ import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 
+import com.continuent.tungsten.common.io.MappedFilePool;
+import com.continuent.tungsten.common.io.WriteNotifier;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.thl.THLException;
 import com.continuent.tungsten.replicator.thl.serializer.ProtobufSerializer;
@@ -119,6 +121,38 @@ public class DiskLog
     private LogFlushTask         logSyncTask;
     private Thread               logSyncThread;
 
+    /**
+     * Approximate number of bytes between entries in the seqno index of each
+     * log file. 0 disables seqno indexes.
+     */
+    private long                 seqnoIndexInterval         = 262144;
+
+    /** Codec used to compress events in new log records. */
+    private String               logCompression             = LogCompression.NONE_NAME;
+    private byte                 logCompressionId           = 0;
+
+    /** Seqno index of the log file currently open for writing, if any. */
+    private volatile LogSeqnoIndex activeSeqnoIndex;
+
+    /** Signals flushed writes to readers; null unless we hold the write lock. */
+    private WriteNotifier        writeNotifier;
+
+    /**
+     * Cache of recently committed log records for connections that use it,
+     * bounded by number of records and approximate bytes. 0 records disables
+     * the cache.
+     */
+    private int                  eventCacheSize             = 0;
+    private long                 eventCacheBytes            = 0;
+    private LogRecordCache       recordCache;
+
+    /**
+     * Maximum number of idle memory mappings of sealed log files kept for
+     * reuse. 0 disables memory-mapped reads.
+     */
+    private int                  mappedFilePoolSize         = 0;
+    private MappedFilePool       mappedFilePool;
+
     /**
      * Creates a new log instance.
      */
@@ -299,6 +333,88 @@ public class DiskLog
         this.fsyncOnFlush = fsyncOnFlush;
     }
 
+    /**
+     * Sets the approximate number of bytes between seqno index entries. Lower
+     * values make seeks faster at the cost of larger index files. 0 disables
+     * seqno indexes.
+     */
+    public void setSeqnoIndexInterval(long seqnoIndexInterval)
+    {
+        this.seqnoIndexInterval = seqnoIndexInterval;
+    }
+
+    /**
+     * Returns the seqno index interval in bytes.
+     */
+    public long getSeqnoIndexInterval()
+    {
+        return seqnoIndexInterval;
+    }
+
+    /**
+     * Sets the codec used to compress events in new log records, which may be
+     * "lz", "deflate", or "none". Existing records are read regardless of this
+     * setting.
+     */
+    public void setLogCompression(String logCompression)
+    {
+        this.logCompression = logCompression;
+    }
+
+    /**
+     * Returns the ID of the codec used to compress events in new log records
+     * or 0 if records are not compressed.
+     */
+    public byte getLogCompressionId()
+    {
+        return logCompressionId;
+    }
+
+    /**
+     * Sets the maximum number of committed log records kept in memory for
+     * connections that read the log tail. 0 disables the cache.
+     */
+    public void setEventCacheSize(int eventCacheSize)
+    {
+        this.eventCacheSize = eventCacheSize;
+    }
+
+    /**
+     * Sets the maximum size in bytes of log records in the event cache. 0
+     * means the cache is bounded by number of records only.
+     */
+    public void setEventCacheBytes(long eventCacheBytes)
+    {
+        this.eventCacheBytes = eventCacheBytes;
+    }
+
+    /**
+     * Sets the number of idle memory mappings of sealed log files kept for
+     * reuse. If greater than 0, sealed files are read through memory mappings.
+     * The default is 0, which reads all files through buffered I/O.
+     */
+    public void setMappedFilePoolSize(int mappedFilePoolSize)
+    {
+        this.mappedFilePoolSize = mappedFilePoolSize;
+    }
+
+    /**
+     * Returns the pool of log file mappings or null if memory-mapped reads are
+     * disabled.
+     */
+    public MappedFilePool getMappedFilePool()
+    {
+        return mappedFilePool;
+    }
+
+    /**
+     * Returns the log record cache or null if it is disabled.
+     */
+    public LogRecordCache getRecordCache()
+    {
+        return recordCache;
+    }
+
     // Administrative API calls.
     public void setReadOnly(boolean readOnly)
     {
@@ -316,6 +432,8 @@ public class DiskLog
         logger.info(String.format("Using directory '%s' for replicator logs",
                 logDirName));
         logger.info("Checksums enabled for log records: " + doChecksum);
+        logCompressionId = LogCompression.getCodecId(logCompression);
+        logger.info("Compression for log records: " + logCompression);
 
         // Ensure log directory is ready for use, which includes creating
         // a new log directory if desired.
@@ -380,7 +498,12 @@ public class DiskLog
             writeLock = new WriteLock(lockFile);
             writeLock.acquire();
             if (writeLock.isLocked())
+            {
+                // Readers in this process can wait for our writes rather than
+                // polling the log files.
                 logger.info("Acquired write lock; log is writable");
+                writeNotifier = new WriteNotifier();
+            }
             else
                 logger.info("Unable to acquire write lock; log is read-only");
         }
@@ -400,6 +523,14 @@ public class DiskLog
         logger.info("Loaded event serializer class: "
                 + eventSerializer.getClass().getName());
 
+        // Allocate the log record cache if enabled.
+        if (eventCacheSize > 0)
+            recordCache = new LogRecordCache(eventCacheSize, eventCacheBytes);
+
+        // Allocate the pool for mapped reads of sealed files if enabled.
+        if (mappedFilePoolSize > 0)
+            mappedFilePool = new MappedFilePool(mappedFilePoolSize);
+
         // If the log does not have any files, initialize the first log file
         // now.
         if (listLogFiles(logDir, DATA_FILENAME_PREFIX).length == 0)
@@ -415,6 +546,7 @@ public class DiskLog
                 String logFileName = getDataFileName(fileIndex);
                 LogFile logFile = new LogFile(logDir, logFileName);
                 logFile.setBufferSize(bufferSize);
+                logFile.setWriteNotifier(writeNotifier);
                 logger.info("Initializing logs: logDir="
                         + logDir.getAbsolutePath() + " file="
                         + logFile.getFile().getName());
@@ -438,6 +570,7 @@ public class DiskLog
         fileIndex = Long.valueOf(logFileName.substring(logFileIndexPos + 1));
 
         LogFile logFile = null;
+        LogSeqnoIndex scanIndex = null;
         boolean recoveryComplete = false;
         try
         {
@@ -455,6 +588,11 @@ public class DiskLog
                 // record(s) to prepare the file for use.
                 iteration++;
                 logFile = openLastFile(readOnly);
+                if (seqnoIndexInterval > 0)
+                {
+                    scanIndex = new LogSeqnoIndex(logDir, logFile.getFile()
+                            .getName(), seqnoIndexInterval);
+                }
                 long maxSeqno = logFile.getBaseSeqno();
                 long lastCompleteEventOffset = LogFile.HEADER_LENGTH;
                 boolean logFileIsEmpty = true;
@@ -473,13 +611,21 @@ public class DiskLog
                 while (!currentRecord.isEmpty())
                 {
                     // See what kind of event we have.
-                    lastRecordType = currentRecord.getData()[0];
+                    lastRecordType = currentRecord.getRecordType();
                     if (lastRecordType == LogRecord.EVENT_REPL)
                     {
                         LogEventReplReader eventReader = new LogEventReplReader(
                                 currentRecord, eventSerializer, doChecksum);
                         lastFrag = eventReader.isLastFrag();
 
+                        // Rebuild the seqno index as we go. Entries past
+                        // the end of a truncated file are dropped later.
+                        if (scanIndex != null && eventReader.getFragno() == 0)
+                        {
+                            scanIndex.add(eventReader.getSeqno(),
+                                    currentRecord.getOffset());
+                        }
+
                         // If we are on a last fragment of an event, update the
                         // last complete transaction offset and store the
                         // sequence number.
@@ -515,8 +661,11 @@ public class DiskLog
                             }
 
                             // Update the index as this completes the current
-                            // index entry.
+                            // index entry. The file is now sealed, so we can
+                            // store its seqno index as well.
                             index.setMaxIndexedSeqno(maxSeqno);
+                            if (scanIndex != null)
+                                writeSeqnoIndex(scanIndex);
 
                             // Create the next file.
                             logFileIndexPos = fileName.lastIndexOf(".");
@@ -658,6 +807,9 @@ public class DiskLog
                 logFile.close();
         }
 
+        // Set up the seqno index on the last file and check the others.
+        prepareSeqnoIndexes(scanIndex);
+
         // If this log is writable, compute the write flush interval.
         logger.info("Setting up log flush policy: fsyncIntervalMillis="
                 + flushIntervalMillis + " fsyncOnFlush=" + this.fsyncOnFlush);
@@ -690,6 +842,228 @@ public class DiskLog
 
         // Terminate the log flush thread.
         stopLogSyncTask();
+
+        // Release idle file mappings.
+        if (mappedFilePool != null)
+            mappedFilePool.clear();
+    }
+
+    // Verifies seqno indexes on sealed log files and opens the index of the
+    // active log file, reusing the index built during the recovery scan when
+    // it describes the same file.
+    private void prepareSeqnoIndexes(LogSeqnoIndex scanIndex)
+            throws InterruptedException
+    {
+        if (seqnoIndexInterval <= 0)
+            return;
+
+        String lastFileName = index.getLastFile();
+        if (isWritable() && activeSeqnoIndex == null)
+        {
+            if (scanIndex != null
+                    && scanIndex.getLogFileName().equals(lastFileName))
+            {
+                scanIndex.truncate(new File(logDir, lastFileName).length());
+                writeSeqnoIndex(scanIndex);
+                activeSeqnoIndex = scanIndex;
+            }
+            else
+                openActiveSeqnoIndex();
+        }
+
+        // Sealed files are checked only if they have an index. Missing
+        // indexes are built on demand the first time a seek needs them.
+        for (String fileName : index.getFileNames())
+        {
+            if (fileName.equals(lastFileName))
+                continue;
+            LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(logDir, fileName,
+                    seqnoIndexInterval);
+            if (!seqnoIndex.getFile().exists())
+                continue;
+
+            boolean valid = seqnoIndex.load();
+            if (valid)
+            {
+                LogFile logFile = new LogFile(logDir, fileName);
+                logFile.setBufferSize(bufferSize);
+                try
+                {
+                    logFile.openRead();
+                    valid = seqnoIndex.verify(logFile);
+                }
+                catch (ReplicatorException e)
+                {
+                    valid = false;
+                }
+                finally
+                {
+                    logFile.close();
+                }
+            }
+            if (!valid)
+            {
+                logger.warn("Seqno index does not match log file and will be rebuilt: "
+                        + seqnoIndex.getFile().getAbsolutePath());
+                if (isWritable())
+                    LogSeqnoIndex.deleteIndexFile(logDir, fileName);
+            }
+        }
+
+        // Remove indexes whose log files no longer exist.
+        if (isWritable())
+        {
+            for (File indexFile : listLogFiles(logDir,
+                    LogSeqnoIndex.INDEX_FILENAME_PREFIX))
+            {
+                String suffix = indexFile.getName().substring(
+                        LogSeqnoIndex.INDEX_FILENAME_PREFIX.length());
+                if (!index.fileNameExists(DATA_FILENAME_PREFIX + suffix))
+                {
+                    logger.info("Removing orphaned seqno index file: "
+                            + indexFile.getAbsolutePath());
+                    indexFile.delete();
+                }
+            }
+        }
+    }
+
+    // Opens the seqno index of the last log file for writing, building it
+    // from the log file if necessary and dropping any entries beyond the end
+    // of the file.
+    private void openActiveSeqnoIndex() throws InterruptedException
+    {
+        activeSeqnoIndex = null;
+        String lastFileName = index.getLastFile();
+        if (seqnoIndexInterval <= 0 || lastFileName == null)
+            return;
+
+        LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(logDir, lastFileName,
+                seqnoIndexInterval);
+        if (!seqnoIndex.load())
+        {
+            seqnoIndex = buildSeqnoIndex(lastFileName);
+            if (seqnoIndex == null)
+                seqnoIndex = new LogSeqnoIndex(logDir, lastFileName,
+                        seqnoIndexInterval);
+        }
+        seqnoIndex.truncate(new File(logDir, lastFileName).length());
+        writeSeqnoIndex(seqnoIndex);
+        activeSeqnoIndex = seqnoIndex;
+    }
+
+    // Builds a seqno index by scanning a log file. Returns null if the file
+    // cannot be read.
+    private LogSeqnoIndex buildSeqnoIndex(String fileName)
+            throws InterruptedException
+    {
+        LogFile logFile = new LogFile(logDir, fileName);
+        logFile.setBufferSize(bufferSize);
+        try
+        {
+            logFile.openRead();
+            LogSeqnoIndex seqnoIndex = LogSeqnoIndex.build(logFile,
+                    seqnoIndexInterval);
+            logger.info("Built seqno index for log file: file=" + fileName
+                    + " entries=" + seqnoIndex.size());
+            return seqnoIndex;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to build seqno index for log file: file="
+                    + fileName + " message=" + e.getMessage());
+            return null;
+        }
+        catch (ReplicatorException e)
+        {
+            logger.warn("Unable to build seqno index for log file: file="
+                    + fileName + " message=" + e.getMessage());
+            return null;
+        }
+        finally
+        {
+            logFile.close();
+        }
+    }
+
+    // Stores a seqno index. Failures are logged but otherwise ignored as the
+    // index is only an optimization.
+    private void writeSeqnoIndex(LogSeqnoIndex seqnoIndex)
+    {
+        try
+        {
+            seqnoIndex.write();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to write seqno index: file="
+                    + seqnoIndex.getFile().getAbsolutePath() + " message="
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a newly written event to the seqno index of the active log file.
+     * 
+     * @param dataFile Log file to which the event was written
+     * @param seqno Sequence number of the event
+     * @param offset Offset of the record containing fragment 0 of the event
+     */
+    void updateSeqnoIndex(LogFile dataFile, long seqno, long offset)
+    {
+        LogSeqnoIndex seqnoIndex = activeSeqnoIndex;
+        if (seqnoIndex == null
+                || !seqnoIndex.getLogFileName().equals(
+                        dataFile.getFile().getName()))
+            return;
+
+        try
+        {
+            seqnoIndex.append(seqno, offset);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to update seqno index: file="
+                    + seqnoIndex.getFile().getAbsolutePath() + " message="
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the seqno index entry that is closest to but before a particular
+     * sequence number in a log file or null if there is no suitable entry.
+     * Seqno indexes on sealed log files are built the first time they are
+     * needed.
+     * 
+     * @param logFile Log file open for reading
+     * @param seqno Sequence number we are seeking
+     */
+    LogSeqnoIndexEntry findSeqnoIndexEntry(LogFile logFile, long seqno)
+            throws ReplicatorException, InterruptedException
+    {
+        if (seqnoIndexInterval <= 0)
+            return null;
+
+        String fileName = logFile.getFile().getName();
+        LogSeqnoIndex seqnoIndex = activeSeqnoIndex;
+        if (seqnoIndex == null || !seqnoIndex.getLogFileName().equals(fileName))
+        {
+            seqnoIndex = new LogSeqnoIndex(logDir, fileName,
+                    seqnoIndexInterval);
+            if (!seqnoIndex.load())
+            {
+                // The last file is still growing and is indexed only by the
+                // writer, so we do not build an index for it here.
+                if (fileName.equals(index.getLastFile()))
+                    return null;
+                seqnoIndex = buildSeqnoIndex(fileName);
+                if (seqnoIndex == null)
+                    return null;
+                if (isWritable())
+                    writeSeqnoIndex(seqnoIndex);
+            }
+        }
+        return seqnoIndex.find(seqno, logFile.getLength());
     }
 
     // Start log sync task.
@@ -735,7 +1109,7 @@ public class DiskLog
     void checkLogSyncTask() throws InterruptedException
     {
         // Ensure that sync thread is healthy. If not, restart it.
-        if (flushIntervalMillis > 0 && logSyncTask.isFinished())
+        if (logSyncTask != null && logSyncTask.isFinished())
         {
             stopLogSyncTask();
             startLogSyncTask();
@@ -861,13 +1235,16 @@ public class DiskLog
         // Increment the log index here.
         fileIndex = (fileIndex + 1) % Integer.MAX_VALUE;
 
-        // Write the new record into the log.
+        // Write the new record into the log and close the file, which is now
+        // sealed. Readers may map the file once the next file exists, so it
+        // must be complete first.
         try
         {
             LogEventRotateWriter writer = new LogEventRotateWriter(
                     dataFile.getFile(), fileIndex, doChecksum);
             LogRecord logRec = writer.write();
             dataFile.writeRecord(logRec, 0);
+            dataFile.close();
         }
         catch (IOException e)
         {
@@ -896,11 +1273,7 @@ public class DiskLog
         if (name == null)
             return null;
         else
-        {
-            LogFile logFile = new LogFile(logDir, name);
-            logFile.setBufferSize(bufferSize);
-            return logFile;
-        }
+            return newReadLogFile(new File(logDir, name));
     }
 
     /**
@@ -909,15 +1282,28 @@ public class DiskLog
     LogFile getLogFile(String name)
     {
         if (index.fileNameExists(name))
-        {
-            LogFile logFile = new LogFile(logDir, name);
-            logFile.setBufferSize(bufferSize);
-            return logFile;
-        }
+            return newReadLogFile(new File(logDir, name));
         else
             return null;
     }
 
+    // Create a log file instance for reading. Files that precede the last
+    // file in the index are sealed and may be read through a memory mapping.
+    // A file that is not yet in the index may still be in the middle of being
+    // created by the writer, so it is never mapped. File names have a fixed
+    // width index, hence compare in log order.
+    private LogFile newReadLogFile(File file)
+    {
+        LogFile logFile = new LogFile(file);
+        logFile.setBufferSize(bufferSize);
+        logFile.setWriteNotifier(writeNotifier);
+        String lastFile = index.getLastFile();
+        if (mappedFilePool != null && lastFile != null
+                && file.getName().compareTo(lastFile) < 0)
+            logFile.setMappedFilePool(mappedFilePool);
+        return logFile;
+    }
+
     /**
      * Returns the name of a log file based on an index
      * 
@@ -943,8 +1329,7 @@ public class DiskLog
         File newFile = new File(logDir, newFileName);
         if (newFile.exists())
         {
-            LogFile logFile = new LogFile(newFile);
-            logFile.setBufferSize(bufferSize);
+            LogFile logFile = newReadLogFile(newFile);
             logFile.openRead();
             return logFile;
         }
@@ -1022,6 +1407,14 @@ public class DiskLog
                 truncateFile(client, lie, lowSeqno);
             }
         }
+
+        // The last log file may have changed or been truncated, so reopen
+        // its seqno index.
+        openActiveSeqnoIndex();
+
+        // Cached records may no longer match the log.
+        if (recordCache != null)
+            recordCache.clear();
     }
 
     // Drops a file completely.
@@ -1029,10 +1422,13 @@ public class DiskLog
     {
         index.removeFile(entry.fileName);
         File f = new File(logDir, entry.fileName);
+        if (mappedFilePool != null)
+            mappedFilePool.invalidate(f);
         if (!f.delete())
         {
             logger.warn("Unable to delete log file: " + f.getAbsolutePath());
         }
+        LogSeqnoIndex.deleteIndexFile(logDir, entry.fileName);
     }
 
     // Truncates the file at a particular sequence number.
@@ -1046,6 +1442,8 @@ public class DiskLog
             // connection,if any, as we are going to truncate the file.
             // If there is a current log file connection, close it.
             cursorManager.releaseConnection(client);
+            if (mappedFilePool != null)
+                mappedFilePool.invalidate(new File(logDir, entry.fileName));
 
             // Open a new log file and get to work.
             logFile = openFile(entry.fileName, false);
@@ -1055,7 +1453,7 @@ public class DiskLog
             {
 
                 // See what kind of event we have.
-                byte recordType = currentRecord.getData()[0];
+                byte recordType = currentRecord.getRecordType();
                 if (recordType == LogRecord.EVENT_REPL)
                 {
                     LogEventReplReader eventReader = new LogEventReplReader(
@@ -1135,12 +1533,9 @@ public class DiskLog
         // deferred sync is enabled.
         LogFile data = new LogFile(logDir, logFileName);
         if (!readOnly)
-        {
-            data.setLogSyncTask(logSyncTask);
-            data.setFlushIntervalMillis(flushIntervalMillis);
-            data.setFsyncOnFlush(readOnly);
-        }
+            setWritePolicy(data);
         data.setBufferSize(bufferSize);
+        data.setWriteNotifier(writeNotifier);
 
         // Ensure the file exists.
         if (!data.getFile().exists())
@@ -1176,7 +1571,9 @@ public class DiskLog
         // Open new log file and update index. 
         String logFileName = getDataFileName(fileIndex);
         LogFile dataFile = new LogFile(logDir, logFileName);
+        setWritePolicy(dataFile);
         dataFile.setBufferSize(bufferSize);
+        dataFile.setWriteNotifier(writeNotifier);
         if (dataFile.getFile().exists())
         {
             throw new THLException("New log file exists already: "
@@ -1187,9 +1584,26 @@ public class DiskLog
         // Add the file to the volatile index.
         index.addNewFile(seqno, logFileName);
 
+        // Start a seqno index on the new file.
+        if (seqnoIndexInterval > 0)
+        {
+            LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(logDir, logFileName,
+                    seqnoIndexInterval);
+            writeSeqnoIndex(seqnoIndex);
+            activeSeqnoIndex = seqnoIndex;
+        }
+
         return dataFile;
     }
 
+    // Apply flush and sync settings to a log file opened for writing.
+    private void setWritePolicy(LogFile dataFile)
+    {
+        dataFile.setLogSyncTask(logSyncTask);
+        dataFile.setFlushIntervalMillis(flushIntervalMillis);
+        dataFile.setFsyncOnFlush(fsyncOnFlush);
+    }
+
     /**
      * getIndex returns a String representation of the index, built from the
      * configured log directory.
@@ -0,0 +1,126 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl.log;
+
+import com.continuent.tungsten.replicator.thl.DeflateProtocolCompressor;
+import com.continuent.tungsten.replicator.thl.LZProtocolCompressor;
+import com.continuent.tungsten.replicator.thl.ProtocolCompressor;
+import com.continuent.tungsten.replicator.thl.THLException;
+
+/**
+ * Defines codecs used to compress serialized events in log records. Compressed
+ * records store the codec ID so that logs written with different settings can
+ * be read without configuration. The codecs are the same block codecs used to
+ * compress THL network frames.
+ * <p/>
+ * Instances hold the decompressors of a single reader, such as a log
+ * connection, which reuses them for each record. Decompressors may hold native
+ * memory, so the reader must call {@link #close()} when it is done.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LogCompression
+{
+    /** Codec name that disables compression. */
+    public static final String                       NONE_NAME = "none";
+
+    /** ID of the fast LZ codec. */
+    public static final byte                         LZ        = 1;
+
+    /** ID of the deflate codec. */
+    public static final byte                         DEFLATE   = 2;
+
+    // Decompressors indexed by codec ID, created on first use.
+    private final ProtocolCompressor[]               readers   = new ProtocolCompressor[DEFLATE + 1];
+
+    /**
+     * Returns the codec ID for a codec name or 0 if the name is null or
+     * "none".
+     * 
+     * @throws THLException Thrown if the codec name is unknown
+     */
+    public static byte getCodecId(String name) throws THLException
+    {
+        if (name == null || NONE_NAME.equals(name))
+            return 0;
+        else if (LZProtocolCompressor.NAME.equals(name))
+            return LZ;
+        else if (DeflateProtocolCompressor.NAME.equals(name))
+            return DEFLATE;
+        else
+            throw new THLException("Unknown log compression codec: " + name);
+    }
+
+    /**
+     * Returns a new compressor for the given codec ID or null if the ID is 0.
+     * 
+     * @throws THLException Thrown if the codec ID is unknown
+     */
+    public static ProtocolCompressor createCompressor(byte codecId)
+            throws THLException
+    {
+        switch (codecId)
+        {
+            case 0 :
+                return null;
+            case LZ :
+                return new LZProtocolCompressor();
+            case DEFLATE :
+                return new DeflateProtocolCompressor();
+            default :
+                throw new THLException("Unknown log compression codec ID: "
+                        + codecId);
+        }
+    }
+
+    /**
+     * Returns this reader's compressor to decompress records written with the
+     * given codec ID.
+     * 
+     * @throws THLException Thrown if the codec ID is unknown
+     */
+    public ProtocolCompressor getReader(byte codecId) throws THLException
+    {
+        if (codecId <= 0 || codecId > DEFLATE)
+            throw new THLException("Unknown log compression codec ID: "
+                    + codecId);
+        if (readers[codecId] == null)
+            readers[codecId] = createCompressor(codecId);
+        return readers[codecId];
+    }
+
+    /**
+     * Releases the decompressors. They are created again if the instance is
+     * used afterwards.
+     */
+    public void close()
+    {
+        for (int i = 0; i < readers.length; i++)
+        {
+            if (readers[i] != null)
+            {
+                readers[i].close();
+                readers[i] = null;
+            }
+        }
+    }
+}
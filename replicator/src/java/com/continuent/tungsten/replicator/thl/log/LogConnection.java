@@ -22,7 +22,9 @@ package com.continuent.tungsten.replicator.thl.log;
 
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 
 import org.apache.log4j.Logger;
@@ -30,6 +32,7 @@ import org.apache.log4j.Logger;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
 import com.continuent.tungsten.replicator.event.ReplEvent;
+import com.continuent.tungsten.replicator.thl.ProtocolCompressor;
 import com.continuent.tungsten.replicator.thl.THLEvent;
 import com.continuent.tungsten.replicator.thl.THLException;
 import com.continuent.tungsten.replicator.thl.serializer.Serializer;
@@ -65,7 +68,7 @@ public class LogConnection
     // Disk log parameters.
     private DiskLog            diskLog;
     private LogCursor          cursor;
-    private Queue<THLEvent>    pendingEvent  = new LinkedList<THLEvent>();
+    private Queue<LogRecord>   pendingEvent  = new LinkedList<LogRecord>();
     private long               pendingSeqno;
     private short              lastFragno    = -1;
 
@@ -75,10 +78,29 @@ public class LogConnection
     private int                logFileSize;
     private int                timeoutMillis;
     private int                logRotateMillis;
+    private ProtocolCompressor compressor;
+    private LogCompression     decompressors = new LogCompression();
 
     // Filter used to decide whether to deserialize events on input.
     private LogEventReadFilter readFilter;
 
+    // If true, read recently committed records from the log's record cache.
+    private boolean            useEventCache = false;
+
+    // Seqno to look up next in the record cache, or UNINITIALIZED if the last
+    // record read did not end a transaction.
+    private long               cacheSeqno    = UNINITIALIZED;
+
+    // If set, records were returned from the cache and the cursor must be
+    // positioned on this seqno before reading the file, skipping the record
+    // there if it was already returned.
+    private long               lazySeqno     = UNINITIALIZED;
+    private boolean            lazySkip;
+
+    // Records written by this connection that are added to the record cache
+    // once they are committed.
+    private LinkedHashMap<Long, LogRecord> uncachedRecords = new LinkedHashMap<Long, LogRecord>();
+
     /**
      * Instantiates a client on a disk log.
      * 
@@ -120,6 +142,17 @@ public class LogConnection
         this.readFilter = readFilter;
     }
 
+    /**
+     * If set to true, seek() and reads use the log's cache of recently
+     * committed records when possible instead of reading the log file. Cached
+     * record data are shared, but events are decoded separately for each
+     * read. This has no effect if the cache is disabled.
+     */
+    public void setUseEventCache(boolean useEventCache)
+    {
+        this.useEventCache = useEventCache;
+    }
+
     /**
      * Sets the timeout in milliseconds for blocking reads on this connection.
      * The value overrides the read timeout for the log as a whole.
@@ -161,6 +194,12 @@ public class LogConnection
                 cursor.release();
                 cursor = null;
             }
+            if (compressor != null)
+            {
+                compressor.close();
+                compressor = null;
+            }
+            decompressors.close();
             diskLog = null;
             done = true;
         }
@@ -209,7 +248,29 @@ public class LogConnection
             throws ReplicatorException, InterruptedException
     {
         assertNotDone();
+        cacheSeqno = UNINITIALIZED;
+        lazySeqno = UNINITIALIZED;
+
+        // If the record is cached, we only position the cursor if a later
+        // read misses the cache.
+        LogRecordCache recordCache = diskLog.getRecordCache();
+        if (useEventCache && recordCache != null && fragno == 0
+                && recordCache.contains(seqno))
+        {
+            clearReadState();
+            pendingSeqno = UNINITIALIZED;
+            cacheSeqno = seqno;
+            lazySeqno = seqno;
+            lazySkip = false;
+            return true;
+        }
+        return seekLog(seqno, fragno);
+    }
 
+    // Positions the cursor on an event in the log file.
+    private boolean seekLog(long seqno, short fragno)
+            throws ReplicatorException, InterruptedException
+    {
         // If we have a previous read state, clear it now.
         if (cursor != null)
         {
@@ -257,6 +318,30 @@ public class LogConnection
             return true;
         }
 
+        // If the file has a seqno index, skip ahead to the last indexed
+        // transaction before the one we want.
+        LogSeqnoIndexEntry indexEntry = diskLog.findSeqnoIndexEntry(logFile,
+                seqno);
+        if (indexEntry != null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Using seqno index to position log file: "
+                        + indexEntry);
+            }
+            try
+            {
+                logFile.seekOffset(indexEntry.getOffset());
+            }
+            catch (IOException e)
+            {
+                throw new THLException(
+                        "Unable to position log file using seqno index: file="
+                                + logFile.getFile().getName() + " offset="
+                                + indexEntry.getOffset(), e);
+            }
+        }
+
         // Track the previous event log record. This enables us to return
         // filtered events, which skip sequence numbers.
         LogRecord previousLogRecord = null;
@@ -308,7 +393,7 @@ public class LogConnection
                                         logger.debug("Found containing filtered event: seqno="
                                                 + seqno);
                                     }
-                                    pendingEvent.add(trialEvent);
+                                    pendingEvent.add(previousLogRecord);
                                     return true;
                                 }
                             }
@@ -327,8 +412,7 @@ public class LogConnection
                         break;
                 }
 
-                byte[] bytes = logRecord.getData();
-                byte recordType = bytes[0];
+                byte recordType = logRecord.getRecordType();
                 if (recordType == LogRecord.EVENT_REPL)
                 {
                     // We have an event. Check the header.
@@ -342,7 +426,7 @@ public class LogConnection
                         if (logger.isDebugEnabled())
                             logger.debug("Found requested event (" + seqno
                                     + "/" + fragno + ")");
-                        pendingEvent.add(deserialize(logRecord));
+                        pendingEvent.add(logRecord);
                         break;
                     }
                     else if (eventReader.getSeqno() > seqno
@@ -354,8 +438,8 @@ public class LogConnection
                         if (logger.isDebugEnabled())
                             logger.debug("Found filtered event (" + seqno + "/"
                                     + fragno + ")");
-                        pendingEvent.add(deserialize(previousLogRecord));
-                        pendingEvent.add(deserialize(logRecord));
+                        pendingEvent.add(previousLogRecord);
+                        pendingEvent.add(logRecord);
                         break;
                     }
                     else if (eventReader.getSeqno() > seqno
@@ -397,7 +481,7 @@ public class LogConnection
                         if (logger.isDebugEnabled())
                             logger.debug("Found suspected filtered event ("
                                     + seqno + "/" + fragno + ")");
-                        pendingEvent.add(deserialize(previousLogRecord));
+                        pendingEvent.add(previousLogRecord);
                     }
                     break;
                 }
@@ -435,7 +519,7 @@ public class LogConnection
         // information only.
         if (readFilter == null || readFilter.accept(eventReader))
         {
-            event = eventReader.deserializeEvent();
+            event = eventReader.deserializeEvent(decompressors);
         }
         else
         {
@@ -483,6 +567,8 @@ public class LogConnection
 
         // Clear any pending state.
         clearReadState();
+        cacheSeqno = UNINITIALIZED;
+        lazySeqno = UNINITIALIZED;
 
         // Try to seek on the file.
         LogFile logFile = diskLog.getLogFile(name);
@@ -527,21 +613,72 @@ public class LogConnection
      */
     public synchronized THLEvent next(boolean block)
             throws ReplicatorException, InterruptedException
+    {
+        LogRecord logRecord = nextLogRecord(block);
+        if (logRecord == null)
+            return null;
+        else
+            return deserialize(logRecord);
+    }
+
+    /**
+     * Returns the next event in the log as a raw log record without
+     * deserializing the event it contains. The record checksum is verified if
+     * checksums are enabled on the log. Positioning and blocking behavior is
+     * identical to {@link #next(boolean)}, which allows clients to forward
+     * records to another log without paying the cost of deserialization.
+     * 
+     * @param block If true, read blocks until next event is available
+     * @return A log record containing a replication event or null if we are
+     *         non-blocking
+     */
+    public synchronized LogRecord nextRecord(boolean block)
+            throws ReplicatorException, InterruptedException
+    {
+        LogRecord logRecord = nextLogRecord(block);
+        if (logRecord != null && doChecksum)
+            logRecord.verifyChecksum();
+        return logRecord;
+    }
+
+    // Reads the next replication event record from the record cache or the
+    // log file.
+    private LogRecord nextLogRecord(boolean block)
+            throws ReplicatorException, InterruptedException
     {
         assertNotDone();
 
         // Ensure we have a cursor from a previous seek.
-        if (cursor == null)
+        if (cursor == null && lazySeqno == UNINITIALIZED)
         {
             throw new THLException(
                     "Must seek before attempting to read next event");
         }
 
+        // Use the record cache if possible. Otherwise make sure the cursor
+        // is positioned after records already returned from the cache.
+        if (pendingEvent.size() == 0)
+        {
+            LogRecord cachedRecord = nextCachedRecord();
+            if (cachedRecord != null)
+                return cachedRecord;
+        }
+        if (lazySeqno != UNINITIALIZED && !positionCursor(block))
+            return null;
+
+        return noteRecord(readLogRecord(block));
+    }
+
+    // Reads the next replication event record from the log file, handling
+    // log rotation and positioning after a seek. Only the record header is
+    // read.
+    private LogRecord readLogRecord(boolean block)
+            throws ReplicatorException, InterruptedException
+    {
         // If we have a pending event, just hand that back.
         if (pendingEvent.size() > 0)
         {
-            THLEvent event = pendingEvent.remove();
-            return event;
+            return pendingEvent.remove();
         }
 
         // Retrieve the log file and optionally note the name.
@@ -558,8 +695,9 @@ public class LogConnection
             readTimeoutMillis = timeoutMillis;
 
         // Scan for the record.
-        THLEvent event = null;
-        while (event == null)
+        LogRecord eventRecord = null;
+        long eventSeqno = -1;
+        while (eventRecord == null)
         {
             try
             {
@@ -572,20 +710,30 @@ public class LogConnection
                     return null;
                 }
 
-                byte[] bytes = logRecord.getData();
-                byte recordType = bytes[0];
+                byte recordType = logRecord.getRecordType();
                 if (recordType == LogRecord.EVENT_REPL)
                 {
-                    event = deserialize(logRecord);
-                    if (event.getSeqno() < this.pendingSeqno)
+                    // Read the header only. Checksums are verified when the
+                    // record is returned.
+                    LogEventReplReader eventReader = new LogEventReplReader(
+                            logRecord, eventSerializer, false);
+                    try
+                    {
+                        eventSeqno = eventReader.getSeqno();
+                    }
+                    finally
+                    {
+                        eventReader.done();
+                    }
+                    if (eventSeqno < this.pendingSeqno)
                     {
                         // If we are seeking a future event, keep trying.
-                        event = null;
                         continue;
                     }
                     else
                     {
                         // Otherwise return what we found.
+                        eventRecord = logRecord;
                         break;
                     }
                 }
@@ -673,15 +821,104 @@ public class LogConnection
         // sure we found what we expected.
         if (pendingSeqno != UNINITIALIZED)
         {
-            if (event.getSeqno() != pendingSeqno)
+            if (eventSeqno != pendingSeqno)
                 throw new LogPositionException(
                         "Log seek failure: expected seqno=" + pendingSeqno
-                                + " found seqno=" + event.getSeqno());
+                                + " found seqno=" + eventSeqno);
             pendingSeqno = UNINITIALIZED;
         }
 
         // Return the event.
-        return event;
+        return eventRecord;
+    }
+
+    // Returns the record for the next seqno from the record cache or null if
+    // it is not cached.
+    private LogRecord nextCachedRecord()
+    {
+        LogRecordCache recordCache = diskLog.getRecordCache();
+        if (!useEventCache || recordCache == null
+                || cacheSeqno == UNINITIALIZED)
+            return null;
+
+        LogRecord logRecord = recordCache.get(cacheSeqno);
+        if (logRecord != null)
+        {
+            lazySeqno = cacheSeqno;
+            lazySkip = true;
+            cacheSeqno++;
+        }
+        return logRecord;
+    }
+
+    // Positions the cursor in the log file after returning records from the
+    // record cache. Returns false if a non-blocking read could not read back
+    // the last record returned from the cache, in which case we try again on
+    // the next read.
+    private boolean positionCursor(boolean block) throws ReplicatorException,
+            InterruptedException
+    {
+        long seqno = lazySeqno;
+        lazySeqno = UNINITIALIZED;
+        if (!seekLog(seqno, (short) 0))
+        {
+            throw new LogPositionException(
+                    "Unable to position log after reading cached records: seqno="
+                            + seqno);
+        }
+        if (!lazySkip)
+            return true;
+
+        // Skip the last record returned from the cache.
+        LogRecord logRecord = readLogRecord(block);
+        if (logRecord == null)
+        {
+            lazySeqno = seqno;
+            return false;
+        }
+        LogEventReplReader eventReader = new LogEventReplReader(logRecord,
+                eventSerializer, false);
+        long foundSeqno;
+        try
+        {
+            foundSeqno = eventReader.getSeqno();
+        }
+        finally
+        {
+            eventReader.done();
+        }
+        if (foundSeqno != seqno)
+        {
+            throw new LogPositionException(
+                    "Log seek failure after reading cached records: expected seqno="
+                            + seqno + " found seqno=" + foundSeqno);
+        }
+        return true;
+    }
+
+    // Notes the seqno that follows a record read from the log so that the
+    // next read can use the record cache.
+    private LogRecord noteRecord(LogRecord logRecord)
+            throws ReplicatorException
+    {
+        if (logRecord != null && useEventCache
+                && diskLog.getRecordCache() != null)
+        {
+            LogEventReplReader eventReader = new LogEventReplReader(logRecord,
+                    eventSerializer, false);
+            try
+            {
+                if (eventReader.isLastFrag())
+                    cacheSeqno = eventReader.getSeqno() + 1;
+                else
+                    cacheSeqno = UNINITIALIZED;
+            }
+            finally
+            {
+                eventReader.done();
+            }
+        }
+        return logRecord;
     }
 
     /**
@@ -703,6 +940,23 @@ public class LogConnection
      */
     public synchronized void store(THLEvent event, boolean commit)
             throws ReplicatorException, InterruptedException
+    {
+        store(event, null, commit);
+    }
+
+    /**
+     * Store a THL event at the end of the log using previously serialized
+     * record data, for example a record read from another log with the same
+     * serializer. The record data must correspond to the event, which supplies
+     * header values used to check and position the write. If the record data
+     * are null we serialize the event instead.
+     * 
+     * @param event THLEvent to store
+     * @param recordData Serialized log record data or null
+     * @param commit If true, flush to storage
+     */
+    public synchronized void store(THLEvent event, byte[] recordData,
+            boolean commit) throws ReplicatorException, InterruptedException
     {
         assertWritable();
 
@@ -769,23 +1023,54 @@ public class LogConnection
                 cursor = new LogCursor(dataFile, event.getSeqno());
             }
 
-            // Write the event to byte stream.
-            LogEventReplWriter eventWriter = new LogEventReplWriter(event,
-                    eventSerializer, doChecksum, dataFile.getFile());
-            LogRecord logRecord = eventWriter.write();
+            // Write the event to byte stream unless we already have it.
+            LogRecord logRecord;
+            if (recordData == null)
+            {
+                if (compressor == null && diskLog.getLogCompressionId() != 0)
+                    compressor = LogCompression.createCompressor(diskLog
+                            .getLogCompressionId());
+                LogEventReplWriter eventWriter = new LogEventReplWriter(event,
+                        eventSerializer, doChecksum, dataFile.getFile(),
+                        compressor);
+                logRecord = eventWriter.write();
+            }
+            else
+            {
+                if (recordData.length == 0
+                        || recordData[0] != LogRecord.EVENT_REPL)
+                {
+                    throw new THLException(
+                            "Invalid log record data for event: seqno="
+                                    + eventSeqno + " fragno=" + eventFragno);
+                }
+                logRecord = new LogRecord(dataFile.getFile(), -1, recordData,
+                        LogRecord.CRC_TYPE_NONE, 0);
+                if (doChecksum)
+                    logRecord.storeCrc(LogRecord.CRC_TYPE_32);
+            }
 
-            // Write to the file.
+            // Write to the file and index the first fragment of each
+            // transaction.
+            long offset = dataFile.getOffset();
             dataFile.writeRecord(logRecord, logFileSize);
+            if (event.getFragno() == 0)
+                diskLog.updateSeqnoIndex(dataFile, event.getSeqno(), offset);
             diskLog.setMaxSeqno(event.getSeqno());
             if (event.getLastFrag())
                 lastFragno = -1;
             else
                 lastFragno = event.getFragno();
 
+            // Hold complete transactions for the record cache.
+            if (event.getFragno() == 0 && event.getLastFrag())
+                holdForCache(eventSeqno, logRecord);
+
             // If it is time to commit, make it happen!
             if (commit)
             {
                 dataFile.flush();
+                cacheCommittedRecords();
             }
         }
         catch (IOException e)
@@ -820,20 +1105,48 @@ public class LogConnection
                         + cursor.getLastSeqno() + " log file="
                         + dataFile.getFile().getName());
             }
+            cacheCommittedRecords();
 
             // This is a good time to make sure the sync thread is running.
             diskLog.checkLogSyncTask();
         }
     }
 
+    // Holds a record containing a complete transaction until it is
+    // committed. We keep no more records than the cache itself.
+    private void holdForCache(long seqno, LogRecord logRecord)
+    {
+        LogRecordCache recordCache = diskLog.getRecordCache();
+        if (recordCache == null)
+            return;
+        if (uncachedRecords.size() >= recordCache.getMaxRecords())
+        {
+            Long oldest = uncachedRecords.keySet().iterator().next();
+            uncachedRecords.remove(oldest);
+        }
+        uncachedRecords.put(seqno, logRecord);
+    }
+
+    // Adds committed records to the record cache.
+    private void cacheCommittedRecords()
+    {
+        LogRecordCache recordCache = diskLog.getRecordCache();
+        if (recordCache == null || uncachedRecords.isEmpty())
+            return;
+        for (Map.Entry<Long, LogRecord> entry : uncachedRecords.entrySet())
+            recordCache.put(entry.getKey(), entry.getValue());
+        uncachedRecords.clear();
+    }
+
     /**
      * Rollback transactions stored in the log.
      */
     public synchronized void rollback() throws ReplicatorException
     {
         // Rollback is not necessary. Reopening the log will roll back
-        // incomplete transactions.
+        // incomplete transactions. Uncommitted records are not cached.
         assertWritable();
+        uncachedRecords.clear();
     }
 
     /**
@@ -843,6 +1156,7 @@ public class LogConnection
             throws ReplicatorException, InterruptedException
     {
         assertWritable();
+        uncachedRecords.clear();
         diskLog.delete(this, low, high);
     }
 
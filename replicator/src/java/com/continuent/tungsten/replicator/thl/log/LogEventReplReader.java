@@ -20,10 +20,12 @@
 
 package com.continuent.tungsten.replicator.thl.log;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 
 import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.thl.ProtocolCompressor;
 import com.continuent.tungsten.replicator.thl.THLEvent;
 import com.continuent.tungsten.replicator.thl.THLException;
 import com.continuent.tungsten.replicator.thl.serializer.Serializer;
@@ -31,8 +33,9 @@ import com.continuent.tungsten.replicator.thl.serializer.Serializer;
 /**
  * This class encapsulates operations to read a log record header and serialized
  * THLEvent for an event. It automatically reads the header but does not
- * deserialize the event until asked to. You should call done() after use to
- * free resources.
+ * deserialize the event until asked to. Compressed events are likewise only
+ * decompressed when deserialized. You should call done() after use to free
+ * resources.
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  */
@@ -51,6 +54,7 @@ public class LogEventReplReader
     private long            seqno;
     private short           fragno;
     private boolean         lastFrag;
+    private boolean         compressed;
     private long            epochNumber;
     private String          sourceId;
     private String          eventId;
@@ -95,7 +99,9 @@ public class LogEventReplReader
                     + logRecord.getOffset() + " type=" + recordType);
         seqno = dis.readLong();
         fragno = dis.readShort();
-        lastFrag = (dis.readByte() == 1);
+        byte flags = dis.readByte();
+        lastFrag = (flags & LogRecord.FLAG_LAST_FRAG) != 0;
+        compressed = (flags & LogRecord.FLAG_COMPRESSED) != 0;
         epochNumber = dis.readLong();
         sourceId = dis.readUTF();
         eventId = dis.readUTF();
@@ -128,6 +134,11 @@ public class LogEventReplReader
         return lastFrag;
     }
 
+    public boolean isCompressed()
+    {
+        return compressed;
+    }
+
     public long getEpochNumber()
     {
         return epochNumber;
@@ -153,11 +164,47 @@ public class LogEventReplReader
         return sourceTStamp;
     }
 
-    /** Deserialize and return the event. */
+    /**
+     * Deserialize and return the event. Compressed events are decompressed
+     * with a temporary decompressor; readers that deserialize many events
+     * should supply their own.
+     */
     public THLEvent deserializeEvent() throws ReplicatorException
+    {
+        if (!compressed)
+            return deserializeEvent(null);
+        LogCompression decompressors = new LogCompression();
+        try
+        {
+            return deserializeEvent(decompressors);
+        }
+        finally
+        {
+            decompressors.close();
+        }
+    }
+
+    /**
+     * Deserialize and return the event, using decompressors of the caller for
+     * compressed events.
+     */
+    public THLEvent deserializeEvent(LogCompression decompressors)
+            throws ReplicatorException
     {
         try
         {
+            if (compressed)
+            {
+                ProtocolCompressor compressor = decompressors.getReader(dis
+                        .readByte());
+                int rawLength = dis.readInt();
+                byte[] data = logRecord.getData();
+                int offset = data.length - dis.available();
+                byte[] raw = compressor.decompress(data, offset, data.length
+                        - offset, rawLength);
+                return serializer.deserializeEvent(new ByteArrayInputStream(
+                        raw));
+            }
             THLEvent thlEvent = serializer.deserializeEvent(dis);
             return thlEvent;
         }
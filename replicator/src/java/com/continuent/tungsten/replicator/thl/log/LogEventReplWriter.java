@@ -20,39 +20,56 @@
 
 package com.continuent.tungsten.replicator.thl.log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 
 import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.thl.ProtocolCompressor;
 import com.continuent.tungsten.replicator.thl.THLEvent;
 import com.continuent.tungsten.replicator.thl.THLException;
 import com.continuent.tungsten.replicator.thl.serializer.Serializer;
 
 /**
  * This class encapsulates operations to write a log record header and
- * serialized THLEvent.
+ * serialized THLEvent. If a compressor is supplied the serialized event is
+ * compressed, but the header is not, so that it can be read cheaply.
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  */
 public class LogEventReplWriter
 {
     // Inputs
-    private THLEvent   event;
-    private Serializer serializer;
-    private boolean    checkCRC;
-    private File       file;
+    private THLEvent           event;
+    private Serializer         serializer;
+    private boolean            checkCRC;
+    private File               file;
+    private ProtocolCompressor compressor;
 
     /**
      * Instantiate the writer.
      */
     public LogEventReplWriter(THLEvent event, Serializer serializer,
             boolean checkCRC, File file) throws ReplicatorException
+    {
+        this(event, serializer, checkCRC, file, null);
+    }
+
+    /**
+     * Instantiate the writer with a compressor for the serialized event.
+     * 
+     * @param compressor Compressor or null to store events uncompressed
+     */
+    public LogEventReplWriter(THLEvent event, Serializer serializer,
+            boolean checkCRC, File file, ProtocolCompressor compressor)
+            throws ReplicatorException
     {
         this.event = event;
         this.serializer = serializer;
         this.checkCRC = checkCRC;
         this.file = file;
+        this.compressor = compressor;
     }
 
     /**
@@ -63,18 +80,45 @@ public class LogEventReplWriter
         LogRecord logRecord = new LogRecord(file, -1, checkCRC);
         try
         {
+            // Serialize and compress the event first if we are compressing.
+            // We only keep the compressed version if it is smaller.
+            byte flags = (event.getLastFrag() ? LogRecord.FLAG_LAST_FRAG : 0);
+            byte[] compressed = null;
+            int rawLength = 0;
+            if (compressor != null)
+            {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                serializer.serializeEvent(event, baos);
+                byte[] raw = baos.toByteArray();
+                rawLength = raw.length;
+                compressed = compressor.compress(raw, rawLength);
+                if (compressed.length + 5 < rawLength)
+                    flags |= LogRecord.FLAG_COMPRESSED;
+                else
+                    compressed = raw;
+            }
+
             DataOutputStream dos = new DataOutputStream(logRecord.write());
             dos.writeByte(LogRecord.EVENT_REPL);
             dos.writeLong(event.getSeqno());
             dos.writeShort(event.getFragno());
-            dos.writeByte((event.getLastFrag() ? 1 : 0));
+            dos.writeByte(flags);
             dos.writeLong(event.getEpochNumber());
             dos.writeUTF(event.getSourceId());
             dos.writeUTF(event.getEventId());
             dos.writeUTF(event.getShardId());
             dos.writeLong(event.getSourceTstamp().getTime());
 
-            serializer.serializeEvent(event, dos);
+            if (compressed == null)
+                serializer.serializeEvent(event, dos);
+            else if ((flags & LogRecord.FLAG_COMPRESSED) == 0)
+                dos.write(compressed);
+            else
+            {
+                dos.writeByte(LogCompression.getCodecId(compressor.getName()));
+                dos.writeInt(rawLength);
+                dos.write(compressed);
+            }
             dos.flush();
             logRecord.done();
 
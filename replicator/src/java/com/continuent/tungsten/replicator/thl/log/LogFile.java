@@ -22,11 +22,16 @@ package com.continuent.tungsten.replicator.thl.log;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.log4j.Logger;
 
 import com.continuent.tungsten.common.io.BufferedFileDataInput;
 import com.continuent.tungsten.common.io.BufferedFileDataOutput;
+import com.continuent.tungsten.common.io.FileDataInput;
+import com.continuent.tungsten.common.io.MappedFileDataInput;
+import com.continuent.tungsten.common.io.MappedFilePool;
+import com.continuent.tungsten.common.io.WriteNotifier;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.thl.THLException;
 
@@ -57,6 +62,12 @@ public class LogFile
      */
     private static final int   MAX_RECORD_LENGTH  = 1000000000;
 
+    /**
+     * Maximum time readers wait for a write notification before checking the
+     * file directly.
+     */
+    private static final int   NOTIFY_POLL_MILLIS = 1000;
+
     /** Return immediately from write when there are no data. */
     public static final int    NO_WAIT            = 0;
 
@@ -82,11 +93,17 @@ public class LogFile
     // Log sync task.
     private LogFlushTask           logFlushTask        = null;
 
+    // Notifier to signal or await flushed writes within this process.
+    private WriteNotifier          writeNotifier       = null;
+
+    // Pool for memory-mapped reads; set only if the file is sealed.
+    private MappedFilePool         mappedFilePool      = null;
+
     // Current access mode.
     private AccessMode             mode                = null;
 
     // Input control data.
-    private BufferedFileDataInput  dataInput;
+    private FileDataInput          dataInput;
 
     // Output parameters.
     private BufferedFileDataOutput dataOutput;
@@ -139,6 +156,26 @@ public class LogFile
         this.logFlushTask = logFlushTask;
     }
 
+    /**
+     * Sets a notifier shared by writers and readers of the log. Writers signal
+     * the notifier when they flush. Readers wait on it for new data instead of
+     * polling the file. This must be set before opening the file.
+     */
+    public synchronized void setWriteNotifier(WriteNotifier writeNotifier)
+    {
+        this.writeNotifier = writeNotifier;
+    }
+
+    /**
+     * Sets a pool of memory mappings used to read the file. This must be set
+     * only for sealed files that will not change while open, and before
+     * opening the file. If the file cannot be mapped we use buffered reads.
+     */
+    public synchronized void setMappedFilePool(MappedFilePool mappedFilePool)
+    {
+        this.mappedFilePool = mappedFilePool;
+    }
+
     public synchronized long getFlushIntervalMillis()
     {
         return flushIntervalMillis;
@@ -189,10 +226,13 @@ public class LogFile
         }
 
         // Open and read the file header so we are correctly positioned in the
-        // file to begin reading.
+        // file to begin reading. Sealed files are mapped if possible.
         try
         {
-            dataInput = new BufferedFileDataInput(file, bufferSize);
+            if (mappedFilePool != null)
+                dataInput = openMapped();
+            if (dataInput == null)
+                dataInput = openBuffered();
         }
         catch (IOException e)
         {
@@ -203,6 +243,55 @@ public class LogFile
         checkFileHeader(dataInput);
     }
 
+    // Open the file for buffered reading.
+    private FileDataInput openBuffered() throws IOException,
+            InterruptedException
+    {
+        BufferedFileDataInput bufferedInput = new BufferedFileDataInput(file,
+                bufferSize);
+        if (writeNotifier != null)
+            bufferedInput.setWriteNotifier(writeNotifier, NOTIFY_POLL_MILLIS);
+        return bufferedInput;
+    }
+
+    // Switch from mapped to buffered reads at the current position. This is
+    // necessary if we run out of mapped data before reaching the rotate
+    // record, which means the file was not sealed when we mapped it.
+    private void switchToBuffered() throws IOException, InterruptedException
+    {
+        long offset = dataInput.getOffset();
+        logger.info("Mapped log file is incomplete; switching to buffered reads: file="
+                + file.getName() + " offset=" + offset);
+        dataInput.close();
+        mappedFilePool.invalidate(file);
+        mappedFilePool = null;
+        dataInput = openBuffered();
+        dataInput.seek(offset);
+    }
+
+    // Map the file for reading, returning null if this is not possible.
+    private FileDataInput openMapped()
+    {
+        try
+        {
+            return new MappedFileDataInput(file, mappedFilePool);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to map log file; using buffered reads: file="
+                    + file.getName() + " exception=" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the file is open for reading through a memory mapping.
+     */
+    public synchronized boolean isMapped()
+    {
+        return dataInput instanceof MappedFileDataInput;
+    }
+
     /**
      * Prepare the log file for writing. The write offset is automatically set
      * to the end of the file.
@@ -321,8 +410,25 @@ public class LogFile
                 {
                     if (logFlushTask != null)
                         logFlushTask.removeLogFile(this);
+                    if (fsyncOnFlush)
+                    {
+                        // Ensure data are durable before we let go of the
+                        // file, as a deferred fsync may still be pending.
+                        try
+                        {
+                            dataOutput.fsync();
+                        }
+                        catch (IOException e)
+                        {
+                            logger.warn("Unable to sync log file on close: file="
+                                    + file.getName() + " exception="
+                                    + e.getMessage());
+                        }
+                    }
                     dataOutput.close();
                     dataOutput = null;
+                    if (writeNotifier != null)
+                        writeNotifier.notifyWrite();
                 }
             }
             mode = null;
@@ -333,7 +439,7 @@ public class LogFile
      * Read the file header and return the log sequence number stored in the
      * file header.
      */
-    private long checkFileHeader(BufferedFileDataInput bfdi)
+    private long checkFileHeader(FileDataInput bfdi)
             throws ReplicatorException, InterruptedException
     {
         int magic = 0;
@@ -494,6 +600,8 @@ public class LogFile
             ReplicatorException
     {
         assertReadMode();
+        if (isMapped() && dataInput.available() < RECORD_LENGTH_SIZE)
+            switchToBuffered();
         long offset = dataInput.getOffset();
         if (logger.isDebugEnabled())
             logger.debug("Reading log file position=" + offset);
@@ -552,6 +660,12 @@ public class LogFile
         waitMillis = waitMillis
                 + (int) (startIntervalMillis - System.currentTimeMillis());
         int remainingRecordLength = recordLength - RECORD_LENGTH_SIZE;
+        if (isMapped() && dataInput.available() < remainingRecordLength)
+        {
+            dataInput.reset();
+            switchToBuffered();
+            return readRecord(waitMillis);
+        }
         available = dataInput.waitAvailable(remainingRecordLength, waitMillis);
 
         if (available < remainingRecordLength)
@@ -573,9 +687,17 @@ public class LogFile
             }
         }
 
-        // Finally, there's enough to read a record, so get it.
-        byte[] bytesToRead = new byte[recordLength - LogRecord.NON_DATA_BYTES];
-        dataInput.readFully(bytesToRead);
+        // Finally, there's enough to read a record, so get it. Mapped files
+        // return a slice of the mapping, which we copy as the record may
+        // outlive the mapping once the pool unmaps it.
+        ByteBuffer bytesToRead = dataInput.readBuffer(recordLength
+                - LogRecord.NON_DATA_BYTES);
+        if (isMapped())
+        {
+            byte[] bytes = new byte[bytesToRead.remaining()];
+            bytesToRead.get(bytes);
+            bytesToRead = ByteBuffer.wrap(bytes);
+        }
         byte crcType = dataInput.readByte();
         long crc = dataInput.readLong();
         return new LogRecord(file, offset, bytesToRead, crcType, crc);
@@ -721,6 +843,10 @@ public class LogFile
 
         nextFlushMillis = System.currentTimeMillis() + this.flushIntervalMillis;
         needsFlush = false;
+
+        // Wake up readers waiting for data.
+        if (writeNotifier != null)
+            writeNotifier.notifyWrite();
     }
 
     /**
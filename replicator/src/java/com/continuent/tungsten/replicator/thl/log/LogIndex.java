@@ -177,7 +177,7 @@ public class LogIndex
                     LogRecord record1 = lf.readRecord(0);
                     if (!record1.isEmpty() && !record1.isTruncated())
                     {
-                        if (record1.getData()[0] == LogRecord.EVENT_REPL)
+                        if (record1.getRecordType() == LogRecord.EVENT_REPL)
                         {
                             LogEventReplReader eventReader = new LogEventReplReader(
                                     record1, null, false);
@@ -187,7 +187,7 @@ public class LogIndex
                         else
                         {
                             logger.warn("Unexpected record type in first log record: type="
-                                    + record1.getData()[0]
+                                    + record1.getRecordType()
                                     + " file="
                                     + lf.getFile().getAbsolutePath());
                         }
@@ -481,7 +481,10 @@ public class LogIndex
             if (filesToPurge.length > 0)
             {
                 for (File file : filesToPurge)
+                {
                     removeFile(file.getName());
+                    LogSeqnoIndex.deleteIndexFile(logDir, file.getName());
+                }
 
                 FileCommands.deleteFiles(filesToPurge, false);
             }
@@ -27,11 +27,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 
+import com.continuent.tungsten.common.io.ByteBufferInputStream;
+
 /**
  * Encapsulates a log record from the Tungsten disk log.
+ * <p>
+ * Records read from memory-mapped log files hold their data as a slice of the
+ * mapping rather than a byte array. Such data are valid only until the log file
+ * is closed. getData() copies them to an array, which remains valid.
  * 
  * @author <a href="mailto:robert.hodges@continuent.com">Robert Hodges</a>
  * @version 1.0
@@ -42,29 +49,36 @@ public class LogRecord
      * Number of bytes in length field plus CRC. The record length is this
      * number plus the number of bytes of data (currently 4 + 1 + 8).
      */
-    public static final int       NON_DATA_BYTES = 13;
+    public static final int       NON_DATA_BYTES  = 13;
 
     /** Denotes record header information. */
-    public static final byte      EVENT_REPL     = 0x01;
+    public static final byte      EVENT_REPL      = 0x01;
 
     /** Denotes a replication event */
-    public static final byte      EVENT_ROTATE   = 0x02;
+    public static final byte      EVENT_ROTATE    = 0x02;
 
     /** Record does not have a CRC computed. */
-    public static final byte      CRC_TYPE_NONE  = 0x00;
+    public static final byte      CRC_TYPE_NONE   = 0x00;
 
     /** Record uses conventional CRC-32 computed by Java CRC32 class. */
-    public static final byte      CRC_TYPE_32    = 0x01;
+    public static final byte      CRC_TYPE_32     = 0x01;
+
+    /** Replication event header flag set on the last fragment. */
+    public static final byte      FLAG_LAST_FRAG  = 0x01;
+
+    /** Replication event header flag set if the event is compressed. */
+    public static final byte      FLAG_COMPRESSED = 0x02;
 
     private File                  file;
     private byte[]                data;
+    private ByteBuffer            buffer;
     private long                  offset;
     private byte                  crcType;
     private long                  crc;
-    private boolean               truncated      = false;
+    private boolean               truncated       = false;
 
     // Computed CRC from checkCRC() call.
-    private long                  computedCrc    = -1;
+    private long                  computedCrc     = -1;
 
     private ByteArrayInputStream  read;
     private ByteArrayOutputStream write;
@@ -106,16 +120,69 @@ public class LogRecord
         this.truncated = false;
     }
 
+    /**
+     * Creates a readable record whose data are held in a buffer, which may be
+     * a slice of a memory-mapped file.
+     * 
+     * @param offset File offset at which this record was read
+     * @param buffer Data in record from position 0 to the buffer limit
+     * @param crcType Type of CRC check to use
+     * @param crc CRC value
+     */
+    public LogRecord(File file, long offset, ByteBuffer buffer, byte crcType,
+            long crc)
+    {
+        this(file, offset, (byte[]) null, crcType, crc);
+        if (buffer.hasArray() && buffer.arrayOffset() == 0
+                && buffer.limit() == buffer.array().length)
+            this.data = buffer.array();
+        else
+            this.buffer = buffer;
+    }
+
     /**
      * Returns the computed length of this record in the file, including length
      * field, data, and CRC.
      */
     public long getRecordLength()
     {
-        if (data == null)
+        if (isEmpty())
+            return 0;
+        else
+            return getDataLength() + NON_DATA_BYTES;
+    }
+
+    /**
+     * Returns the number of bytes of data in the record.
+     */
+    public int getDataLength()
+    {
+        if (data != null)
+            return data.length;
+        else if (buffer != null)
+            return buffer.limit();
+        else
             return 0;
+    }
+
+    /**
+     * Returns the record type, which is the first byte of data. This does not
+     * copy data held in a buffer.
+     */
+    public byte getRecordType()
+    {
+        if (data != null)
+            return data[0];
         else
-            return data.length + NON_DATA_BYTES;
+            return buffer.get(0);
+    }
+
+    /**
+     * Returns the file to which this record belongs.
+     */
+    public File getFile()
+    {
+        return file;
     }
 
     /**
@@ -128,10 +195,20 @@ public class LogRecord
 
     /**
      * Returns the underlying byte buffer. Must call done() when writing before
-     * calling this method.
+     * calling this method. Data held in a buffer are copied to an array on the
+     * first call.
      */
     public byte[] getData()
     {
+        if (data == null && buffer != null)
+        {
+            byte[] bytes = new byte[buffer.limit()];
+            ByteBuffer source = buffer.duplicate();
+            source.position(0);
+            source.get(bytes);
+            data = bytes;
+            buffer = null;
+        }
         return data;
     }
 
@@ -162,7 +239,7 @@ public class LogRecord
      */
     public boolean isEmpty()
     {
-        return data == null;
+        return data == null && buffer == null;
     }
 
     /**
@@ -170,11 +247,14 @@ public class LogRecord
      */
     public long computeCrc() throws IOException
     {
-        if (data == null || crcType == CRC_TYPE_NONE)
+        if (isEmpty() || crcType == CRC_TYPE_NONE)
             computedCrc = 0;
         else if (crcType == CRC_TYPE_32)
         {
-            computedCrc = computeCrc32(data);
+            if (data != null)
+                computedCrc = computeCrc32(data);
+            else
+                computedCrc = computeCrc32(buffer);
         }
         else
         {
@@ -279,9 +359,34 @@ public class LogRecord
 
     }
 
+    /**
+     * Static routine to compute CRC 32 on the data in a buffer from position 0
+     * to the limit. The buffer position is not changed.
+     */
+    public static long computeCrc32(ByteBuffer buffer)
+    {
+        CRC32 crc32 = new CRC32();
+        ByteBuffer source = buffer.duplicate();
+        source.position(0);
+        byte[] buf = new byte[Math.min(8192, Math.max(source.limit(), 1))];
+        while (source.hasRemaining())
+        {
+            int len = Math.min(buf.length, source.remaining());
+            source.get(buf, 0, len);
+            crc32.update(buf, 0, len);
+        }
+        return crc32.getValue();
+    }
+
     /** Returns a stream to read record contents. */
     public InputStream read()
     {
+        if (data == null && buffer != null)
+        {
+            ByteBuffer source = buffer.duplicate();
+            source.position(0);
+            return new ByteBufferInputStream(source);
+        }
         return new ByteArrayInputStream(data);
     }
 
@@ -331,20 +436,22 @@ public class LogRecord
         StringBuffer sb = new StringBuffer();
         sb.append(this.getClass().getSimpleName());
         sb.append(": offset=").append(offset);
-        if (data == null)
+        if (isEmpty())
         {
             sb.append(" data=[] length=0");
         }
         else
         {
             sb.append(" data=");
-            for (int i = 0; i < 10 && i < data.length; i++)
+            int length = getDataLength();
+            for (int i = 0; i < 10 && i < length; i++)
             {
-                sb.append(String.format("%2X", data[i]));
+                byte b = (data == null) ? buffer.get(i) : data[i];
+                sb.append(String.format("%2X", b));
             }
-            if (data.length >= 10)
+            if (length >= 10)
                 sb.append("...");
-            sb.append("] length=").append(data.length);
+            sb.append("] length=").append(length);
         }
         sb.append(" crcType=").append(crcType);
         sb.append(" crc=").append(crc);
@@ -364,6 +471,9 @@ public class LogRecord
         LogRecord that = (LogRecord) o;
         if (offset != that.getOffset())
             return false;
+
+        // Compare data as arrays, copying buffered data if necessary.
+        getData();
         if (data == null)
         {
             if (that.getData() != null)
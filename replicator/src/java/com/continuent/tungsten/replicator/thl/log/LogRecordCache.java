@@ -0,0 +1,165 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Initial developer(s): agent
+ * Contributor(s):
+ */
+
+package com.continuent.tungsten.replicator.thl.log;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds recently committed log records keyed by seqno so that connections
+ * reading near the tail of the log can return them without reading the log
+ * file. Only records that contain a complete transaction are cached. Records
+ * are aged out in FIFO order once the cache exceeds a number of records or an
+ * approximate number of bytes.
+ * <p/>
+ * Record data are shared between readers, which must not modify them. Each
+ * lookup returns a new LogRecord instance on the shared data.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LogRecordCache
+{
+    private static Logger                  logger  = Logger.getLogger(LogRecordCache.class);
+
+    private final int                      maxRecords;
+    private final long                     maxBytes;
+    private final LinkedList<Long>         fifo    = new LinkedList<Long>();
+    private final HashMap<Long, LogRecord> records = new HashMap<Long, LogRecord>();
+
+    // Accounting.
+    private long                           bytes   = 0;
+    private long                           hits    = 0;
+    private long                           misses  = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxRecords Maximum number of records, which must be greater than
+     *            0
+     * @param maxBytes Maximum bytes of cached records; 0 means no byte limit
+     */
+    public LogRecordCache(int maxRecords, long maxBytes)
+    {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        logger.info("Allocating THL log record cache: maxRecords="
+                + maxRecords + " maxBytes=" + maxBytes);
+    }
+
+    /**
+     * Adds a record containing a complete transaction, clearing space if
+     * necessary. Records larger than the byte limit are not cached.
+     */
+    public synchronized void put(long seqno, LogRecord record)
+    {
+        long recordBytes = record.getRecordLength();
+        if (records.containsKey(seqno))
+            return;
+        if (maxBytes > 0 && recordBytes > maxBytes)
+            return;
+
+        while (records.size() >= maxRecords
+                || (maxBytes > 0 && bytes + recordBytes > maxBytes))
+        {
+            removeOldest();
+        }
+        fifo.add(seqno);
+        records.put(seqno, record);
+        bytes += recordBytes;
+    }
+
+    /**
+     * Returns a copy of the cached record for a seqno or null if it is not in
+     * the cache.
+     */
+    public synchronized LogRecord get(long seqno)
+    {
+        LogRecord record = records.get(seqno);
+        if (record == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new LogRecord(record.getFile(), record.getOffset(),
+                record.getData(), record.getCrcType(), record.getCrc());
+    }
+
+    /**
+     * Returns true if a record for the seqno is cached. This does not count as
+     * a lookup.
+     */
+    public synchronized boolean contains(long seqno)
+    {
+        return records.containsKey(seqno);
+    }
+
+    /** Returns the maximum number of cached records. */
+    public int getMaxRecords()
+    {
+        return maxRecords;
+    }
+
+    /**
+     * Removes all cached records, for example after the log is truncated.
+     */
+    public synchronized void clear()
+    {
+        fifo.clear();
+        records.clear();
+        bytes = 0;
+    }
+
+    /** Returns the number of cached records. */
+    public synchronized int size()
+    {
+        return records.size();
+    }
+
+    /** Returns the approximate bytes of cached records. */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /** Returns the number of lookups that found a record. */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not find a record. */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    // Age out the oldest record.
+    private void removeOldest()
+    {
+        Long seqno = fifo.remove();
+        LogRecord old = records.remove(seqno);
+        bytes -= old.getRecordLength();
+    }
+}
@@ -0,0 +1,457 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+
+/**
+ * Implements a sparse index of sequence numbers to file offsets within a single
+ * log file. The index contains an entry for the first fragment of a
+ * transaction roughly every <code>interval</code> bytes, which allows seek
+ * operations to jump close to the desired event rather than scanning from the
+ * file header. Index files live beside the log file they describe and are
+ * named after it, e.g., thl.index.0000000001 for thl.data.0000000001.
+ * <p/>
+ * The index is a hint only. Missing, partial or stale entries never cause
+ * incorrect reads as long as each entry points to the start of a record with
+ * the indexed sequence number, which is checked by {@link #verify(LogFile)}.
+ * Index operations are fully synchronized as the index of the active log file
+ * is shared between the writer and readers.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LogSeqnoIndex
+{
+    private static Logger                 logger                = Logger.getLogger(LogSeqnoIndex.class);
+
+    /** Prefix for seqno index files. */
+    public static final String            INDEX_FILENAME_PREFIX = "thl.index.";
+
+    // Header fields values.
+    private static final int              MAGIC_NUMBER          = 0xC001D00D;
+    private static final short            MAJOR_VERSION         = 0x0001;
+    private static final short            MINOR_VERSION         = 0x0001;
+
+    /** Length of index file header in bytes. */
+    public static final int               HEADER_LENGTH         = 8;
+
+    /** Length of a single entry (seqno + offset) in bytes. */
+    public static final int               ENTRY_LENGTH          = 16;
+
+    private final String                  logFileName;
+    private final File                    indexFile;
+    private final long                    interval;
+    private ArrayList<LogSeqnoIndexEntry> entries               = new ArrayList<LogSeqnoIndexEntry>();
+
+    /**
+     * Creates a new, empty index.
+     * 
+     * @param logDir Log directory
+     * @param logFileName Name of the log file described by this index
+     * @param interval Minimum number of bytes between indexed records
+     */
+    public LogSeqnoIndex(File logDir, String logFileName, long interval)
+    {
+        this.logFileName = logFileName;
+        this.indexFile = getIndexFile(logDir, logFileName);
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the index file corresponding to a particular log file.
+     * 
+     * @param logDir Log directory
+     * @param logFileName Name of the log file, e.g., thl.data.0000000001
+     */
+    public static File getIndexFile(File logDir, String logFileName)
+    {
+        String suffix = logFileName.substring(logFileName.lastIndexOf('.') + 1);
+        return new File(logDir, INDEX_FILENAME_PREFIX + suffix);
+    }
+
+    /**
+     * Deletes the index file corresponding to a log file if it exists.
+     */
+    public static void deleteIndexFile(File logDir, String logFileName)
+    {
+        File indexFile = getIndexFile(logDir, logFileName);
+        if (indexFile.exists() && !indexFile.delete())
+        {
+            logger.warn("Unable to delete seqno index file: "
+                    + indexFile.getAbsolutePath());
+        }
+    }
+
+    /** Returns the name of the log file described by this index. */
+    public String getLogFileName()
+    {
+        return logFileName;
+    }
+
+    /** Returns the file in which the index is stored. */
+    public File getFile()
+    {
+        return indexFile;
+    }
+
+    /** Returns the number of entries in the index. */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Loads the index from storage, discarding any partially written entry at
+     * the end of the file.
+     * 
+     * @return true if the index was loaded, false if the file is missing or
+     *         does not contain a valid index
+     */
+    public synchronized boolean load()
+    {
+        entries.clear();
+        if (!indexFile.exists())
+            return false;
+
+        long entryCount = (indexFile.length() - HEADER_LENGTH) / ENTRY_LENGTH;
+        DataInputStream dis = null;
+        try
+        {
+            dis = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)));
+            if (dis.readInt() != MAGIC_NUMBER)
+            {
+                logger.warn("Invalid magic number in seqno index file: "
+                        + indexFile.getAbsolutePath());
+                return false;
+            }
+            if (dis.readShort() != MAJOR_VERSION)
+            {
+                logger.warn("Incompatible major version in seqno index file: "
+                        + indexFile.getAbsolutePath());
+                return false;
+            }
+            dis.readShort();
+
+            LogSeqnoIndexEntry last = null;
+            for (long i = 0; i < entryCount; i++)
+            {
+                LogSeqnoIndexEntry entry = new LogSeqnoIndexEntry(
+                        dis.readLong(), dis.readLong());
+                if (last != null
+                        && (entry.seqno <= last.seqno || entry.offset <= last.offset))
+                {
+                    logger.warn("Out-of-order entry in seqno index file: file="
+                            + indexFile.getAbsolutePath() + " previous="
+                            + last + " current=" + entry);
+                    entries.clear();
+                    return false;
+                }
+                entries.add(entry);
+                last = entry;
+            }
+            return true;
+        }
+        catch (EOFException e)
+        {
+            logger.warn("Seqno index file is truncated: "
+                    + indexFile.getAbsolutePath());
+            entries.clear();
+            return false;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to read seqno index file: "
+                    + indexFile.getAbsolutePath(), e);
+            entries.clear();
+            return false;
+        }
+        finally
+        {
+            if (dis != null)
+            {
+                try
+                {
+                    dis.close();
+                }
+                catch (IOException e)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the full index to storage, replacing any existing index file. The
+     * index is first written to a temporary file and renamed so that
+     * concurrent readers never see a partial header.
+     */
+    public synchronized void write() throws IOException
+    {
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName()
+                + ".tmp");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempFile)));
+        try
+        {
+            dos.writeInt(MAGIC_NUMBER);
+            dos.writeShort(MAJOR_VERSION);
+            dos.writeShort(MINOR_VERSION);
+            for (LogSeqnoIndexEntry entry : entries)
+            {
+                dos.writeLong(entry.seqno);
+                dos.writeLong(entry.offset);
+            }
+        }
+        finally
+        {
+            dos.close();
+        }
+        if (!tempFile.renameTo(indexFile))
+        {
+            // Some platforms do not allow rename over an existing file.
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile))
+            {
+                throw new IOException("Unable to rename seqno index file: "
+                        + tempFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Adds a transaction to the index if it is at least <code>interval</code>
+     * bytes beyond the last indexed record.
+     * 
+     * @param seqno Sequence number of the event
+     * @param offset Offset of the log record holding fragment 0 of the event
+     * @return true if a new entry was added
+     */
+    public synchronized boolean add(long seqno, long offset)
+    {
+        if (!entries.isEmpty())
+        {
+            LogSeqnoIndexEntry last = entries.get(entries.size() - 1);
+            if (seqno <= last.seqno || offset - last.offset < interval)
+                return false;
+        }
+        entries.add(new LogSeqnoIndexEntry(seqno, offset));
+        return true;
+    }
+
+    /**
+     * Adds a transaction to the index as with {@link #add(long, long)} and
+     * appends any new entry to the index file.
+     */
+    public synchronized void append(long seqno, long offset)
+            throws IOException
+    {
+        if (!add(seqno, offset))
+            return;
+
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+        try
+        {
+            // Position after the last complete entry so that a previously
+            // torn write does not misalign the file.
+            raf.seek(HEADER_LENGTH + (long) (entries.size() - 1)
+                    * ENTRY_LENGTH);
+            raf.writeLong(seqno);
+            raf.writeLong(offset);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the entry with the highest sequence number that is strictly less
+     * than the requested seqno and lies before the given file length, or null
+     * if there is no such entry. Using a strictly lower entry ensures that
+     * seek always reads at least one record before the desired event, which is
+     * required to locate filtered events.
+     * 
+     * @param seqno Sequence number we are seeking
+     * @param maxOffset Current length of the log file
+     */
+    public synchronized LogSeqnoIndexEntry find(long seqno, long maxOffset)
+    {
+        int low = 0;
+        int high = entries.size() - 1;
+        LogSeqnoIndexEntry found = null;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            LogSeqnoIndexEntry entry = entries.get(mid);
+            if (entry.seqno < seqno)
+            {
+                found = entry;
+                low = mid + 1;
+            }
+            else
+                high = mid - 1;
+        }
+
+        // Back up if the file has not caught up with the index yet.
+        if (found != null && found.offset >= maxOffset)
+        {
+            for (int i = low - 1; i >= 0; i--)
+            {
+                found = entries.get(i);
+                if (found.offset < maxOffset)
+                    return found;
+            }
+            return null;
+        }
+        return found;
+    }
+
+    /**
+     * Drops entries at or beyond the given file length. This must be called
+     * whenever the underlying log file is truncated.
+     * 
+     * @param length New log file length
+     * @return true if entries were removed
+     */
+    public synchronized boolean truncate(long length)
+    {
+        boolean truncated = false;
+        while (!entries.isEmpty()
+                && entries.get(entries.size() - 1).offset >= length)
+        {
+            entries.remove(entries.size() - 1);
+            truncated = true;
+        }
+        return truncated;
+    }
+
+    /**
+     * Verifies the index against the log file it describes. Each entry must
+     * lie within the file, and the last entry must point to fragment 0 of the
+     * indexed sequence number. Checking the last entry is sufficient to catch
+     * indexes that belong to a previous incarnation of the log file.
+     * 
+     * @param logFile Log file, which must be open for reading
+     * @return true if the index is consistent with the log file
+     */
+    public synchronized boolean verify(LogFile logFile)
+            throws InterruptedException
+    {
+        if (entries.isEmpty())
+            return true;
+
+        LogSeqnoIndexEntry last = entries.get(entries.size() - 1);
+        try
+        {
+            if (last.offset < LogFile.HEADER_LENGTH
+                    || last.offset >= logFile.getLength())
+                return false;
+
+            logFile.seekOffset(last.offset);
+            LogRecord logRecord = logFile.readRecord(0);
+            if (logRecord.isEmpty()
+                    || logRecord.getRecordType() != LogRecord.EVENT_REPL)
+                return false;
+
+            LogEventReplReader eventReader = new LogEventReplReader(logRecord,
+                    null, false);
+            boolean matches = eventReader.getSeqno() == last.seqno
+                    && eventReader.getFragno() == 0;
+            eventReader.done();
+            return matches;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to verify seqno index: file="
+                    + indexFile.getAbsolutePath() + " message="
+                    + e.getMessage());
+            return false;
+        }
+        catch (ReplicatorException e)
+        {
+            logger.warn("Unable to verify seqno index: file="
+                    + indexFile.getAbsolutePath() + " message="
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Builds an index by scanning a log file from the beginning.
+     * 
+     * @param logFile Log file, which must be open for reading
+     * @param interval Minimum number of bytes between indexed records
+     */
+    public static LogSeqnoIndex build(LogFile logFile, long interval)
+            throws IOException, InterruptedException, ReplicatorException
+    {
+        File file = logFile.getFile();
+        LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(file.getParentFile(),
+                file.getName(), interval);
+        logFile.seekOffset(LogFile.HEADER_LENGTH);
+        LogRecord logRecord = logFile.readRecord(0);
+        while (!logRecord.isEmpty())
+        {
+            byte recordType = logRecord.getRecordType();
+            if (recordType == LogRecord.EVENT_REPL)
+            {
+                LogEventReplReader eventReader = new LogEventReplReader(
+                        logRecord, null, false);
+                if (eventReader.getFragno() == 0)
+                    seqnoIndex.add(eventReader.getSeqno(),
+                            logRecord.getOffset());
+                eventReader.done();
+            }
+            else
+                break;
+            logRecord = logFile.readRecord(0);
+        }
+        return seqnoIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return this.getClass().getSimpleName() + " " + indexFile.getName()
+                + " entries=" + entries.size() + " interval=" + interval;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl.log;
+
+/**
+ * Denotes a single entry in a seqno index, which gives the offset of the first
+ * fragment of a transaction within a log file.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LogSeqnoIndexEntry
+{
+    long seqno;
+    long offset;
+
+    /**
+     * Creates a new <code>LogSeqnoIndexEntry</code> object
+     * 
+     * @param seqno Sequence number of the indexed event
+     * @param offset Offset of the log record containing fragment 0 of the
+     *            event
+     */
+    public LogSeqnoIndexEntry(long seqno, long offset)
+    {
+        this.seqno = seqno;
+        this.offset = offset;
+    }
+
+    /** Returns the sequence number of the indexed event. */
+    public long getSeqno()
+    {
+        return seqno;
+    }
+
+    /** Returns the file offset of the indexed event. */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + " seqno=" + seqno
+                + " offset=" + offset;
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Initial developer(s): agent
+ * Contributor(s):
+ */
+
+package com.continuent.tungsten.replicator.applier;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.conf.ReplicatorConf;
+import com.continuent.tungsten.replicator.conf.ReplicatorMonitor;
+import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
+import com.continuent.tungsten.replicator.database.Database;
+import com.continuent.tungsten.replicator.database.DatabaseFactory;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.RowChangeData;
+import com.continuent.tungsten.replicator.dbms.RowChangeData.ActionType;
+import com.continuent.tungsten.replicator.management.MockOpenReplicatorContext;
+import com.continuent.tungsten.replicator.pipeline.PipelineHelper;
+
+/**
+ * This class tests batching of row changes in the JdbcApplier, including
+ * checks of update counts for batched UPDATE and DELETE statements and
+ * reporting of the row that failed in a batch. Tests run against an embedded
+ * Derby database.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class JdbcApplierBatchTest
+{
+    private static final String SCHEMA = "jdbcbatch";
+    private static final String TABLE  = "t1";
+
+    private Database            conn;
+
+    /**
+     * Load the Derby driver.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+    }
+
+    /**
+     * Create an empty test table.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        conn = DatabaseFactory.createDatabase("jdbc:derby:testdb;create=true",
+                null, null);
+        conn.connect();
+        try
+        {
+            conn.execute("CREATE SCHEMA " + SCHEMA);
+        }
+        catch (SQLException e)
+        {
+            // Schema already exists.
+        }
+        try
+        {
+            conn.execute("DROP TABLE " + SCHEMA + "." + TABLE);
+        }
+        catch (SQLException e)
+        {
+            // Table does not exist.
+        }
+        conn.execute("CREATE TABLE " + SCHEMA + "." + TABLE
+                + " (id INT PRIMARY KEY, v INT)");
+        conn.setAutoCommit(false);
+    }
+
+    /**
+     * Drop the test table and release the connection.
+     */
+    @After
+    public void tearDown() throws Exception
+    {
+        if (conn != null)
+        {
+            conn.rollback();
+            conn.setAutoCommit(true);
+            conn.execute("DROP TABLE " + SCHEMA + "." + TABLE);
+            conn.close();
+        }
+    }
+
+    /**
+     * Verify that batched inserts, updates, and deletes are applied and that
+     * update counts are checked when the driver returns them.
+     */
+    @Test
+    public void testBatchedRowChanges() throws Exception
+    {
+        TestApplier applier = createApplier("stop", false);
+
+        applier.applyRowChangeData(rows(ActionType.INSERT, new int[]{1, 2, 3},
+                new int[]{10, 20, 30}), null);
+        Assert.assertEquals("Insert batch executed", 1, applier.batches);
+        assertValue(1, 10);
+        assertValue(3, 30);
+
+        applier.applyRowChangeData(rows(ActionType.UPDATE, new int[]{1, 2, 3},
+                new int[]{11, 21, 31}), null);
+        Assert.assertEquals("Update batch executed", 2, applier.batches);
+        assertValue(1, 11);
+        assertValue(2, 21);
+        assertValue(3, 31);
+
+        applier.applyRowChangeData(rows(ActionType.DELETE, new int[]{1, 3},
+                null), null);
+        Assert.assertEquals("Delete batch executed", 3, applier.batches);
+        Assert.assertEquals("Rows left", 1, countRows());
+    }
+
+    /**
+     * Verify that an UPDATE that changes no rows in a batch stops the applier
+     * under the STOP policy and that the error names the row.
+     */
+    @Test
+    public void testZeroRowUpdateInBatch() throws Exception
+    {
+        TestApplier applier = createApplier("stop", false);
+        applier.applyRowChangeData(rows(ActionType.INSERT, new int[]{1, 2},
+                new int[]{10, 20}), null);
+
+        try
+        {
+            applier.applyRowChangeData(rows(ActionType.UPDATE, new int[]{1,
+                    99, 2}, new int[]{11, 991, 21}), null);
+            throw new Exception("Applied 0-row update under STOP policy");
+        }
+        catch (ReplicatorException e)
+        {
+            Assert.assertTrue("Error names failing row: " + e.getExtraData(),
+                    e.getExtraData().contains("ROW# = 1"));
+        }
+    }
+
+    /**
+     * Verify that a batch whose counts are not returned by the driver is
+     * rolled back and applied one row at a time, so that each row is applied
+     * once and 0-row updates are still detected, and that later UPDATE and
+     * DELETE statements are not batched.
+     */
+    @Test
+    public void testUnknownCountsFallBackToSingleRows() throws Exception
+    {
+        TestApplier applier = createApplier("stop", true);
+        applier.applyRowChangeData(rows(ActionType.INSERT, new int[]{1, 2, 3},
+                new int[]{10, 20, 30}), null);
+        Assert.assertEquals("Insert batch executed", 1, applier.batches);
+
+        // Deleting the rows twice would fail the count check, so this
+        // proves the rolled back batch is applied only once.
+        applier.applyRowChangeData(rows(ActionType.DELETE, new int[]{1, 2},
+                null), null);
+        Assert.assertEquals("Delete batch executed and rolled back", 2,
+                applier.batches);
+        Assert.assertEquals("Rows left", 1, countRows());
+        assertValue(3, 30);
+
+        // Further updates are not batched and are still checked.
+        try
+        {
+            applier.applyRowChangeData(rows(ActionType.UPDATE, new int[]{3,
+                    1}, new int[]{31, 11}), null);
+            throw new Exception("Applied 0-row update under STOP policy");
+        }
+        catch (ReplicatorException e)
+        {
+            Assert.assertTrue("Error names failing row: " + e.getExtraData(),
+                    e.getExtraData().contains("ROW# = 1"));
+        }
+        Assert.assertEquals("No more batches", 2, applier.batches);
+        assertValue(3, 31);
+    }
+
+    /**
+     * Verify that a failing row in a batch is mapped back from the
+     * BatchUpdateException to the row change that caused it.
+     */
+    @Test
+    public void testBatchFailureNamesFailingRow() throws Exception
+    {
+        TestApplier applier = createApplier("warn", false);
+        applier.applyRowChangeData(rows(ActionType.INSERT, new int[]{2},
+                new int[]{20}), null);
+
+        try
+        {
+            applier.applyRowChangeData(rows(ActionType.INSERT, new int[]{1,
+                    3, 2, 4}, new int[]{10, 30, 20, 40}), null);
+            throw new Exception("Applied duplicate key");
+        }
+        catch (ApplierException e)
+        {
+            Assert.assertTrue("Error names failing row: " + e.getExtraData(),
+                    e.getExtraData().contains("ROW# = 2"));
+        }
+    }
+
+    /**
+     * Verify the failing row is found for drivers that stop at the first
+     * failure and for drivers that continue.
+     */
+    @Test
+    public void testFindFailedRow() throws Exception
+    {
+        Assert.assertEquals("Stopped at failure", 2,
+                JdbcApplier.findFailedRow(new int[]{1, 1}, 4));
+        Assert.assertEquals("Continued after failure", 1, JdbcApplier
+                .findFailedRow(new int[]{1, Statement.EXECUTE_FAILED, 1, 1},
+                        4));
+        Assert.assertEquals("No counts", -1,
+                JdbcApplier.findFailedRow(null, 4));
+        Assert.assertEquals("No failed row", -1,
+                JdbcApplier.findFailedRow(new int[]{1, 1, 1, 1}, 4));
+    }
+
+    // Create an applier that batches row changes on the test connection.
+    private TestApplier createApplier(String policy, boolean hideCounts)
+            throws Exception
+    {
+        TungstenProperties config = new PipelineHelper().createSimpleRuntime();
+        config.setString(ReplicatorConf.APPLIER_FAIL_ON_0_ROW_UPDATE, policy);
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+
+        TestApplier applier = new TestApplier(hideCounts);
+        applier.runtime = runtime;
+        applier.conn = conn;
+        applier.setBatchRowChanges(true);
+        applier.setGetColumnMetadataFromDB(false);
+        return applier;
+    }
+
+    // Generate a row change with one row per key. Values are null for
+    // deletes.
+    private RowChangeData rows(ActionType action, int[] ids, int[] values)
+    {
+        OneRowChange orc = new OneRowChange(SCHEMA, TABLE, action);
+        if (action != ActionType.DELETE)
+        {
+            orc.getColumnSpec().add(spec(orc, "id", 1));
+            orc.getColumnSpec().add(spec(orc, "v", 2));
+        }
+        if (action != ActionType.INSERT)
+            orc.getKeySpec().add(spec(orc, "id", 1));
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (action != ActionType.DELETE)
+            {
+                ArrayList<OneRowChange.ColumnVal> cols = new ArrayList<OneRowChange.ColumnVal>();
+                cols.add(value(orc, ids[i]));
+                cols.add(value(orc, values[i]));
+                orc.getColumnValues().add(cols);
+            }
+            if (action != ActionType.INSERT)
+            {
+                ArrayList<OneRowChange.ColumnVal> keys = new ArrayList<OneRowChange.ColumnVal>();
+                keys.add(value(orc, ids[i]));
+                orc.getKeyValues().add(keys);
+            }
+        }
+
+        RowChangeData rcd = new RowChangeData();
+        rcd.appendOneRowChange(orc);
+        return rcd;
+    }
+
+    private OneRowChange.ColumnSpec spec(OneRowChange orc, String name,
+            int index)
+    {
+        OneRowChange.ColumnSpec spec = orc.new ColumnSpec();
+        spec.setName(name);
+        spec.setType(Types.INTEGER);
+        spec.setIndex(index);
+        return spec;
+    }
+
+    private OneRowChange.ColumnVal value(OneRowChange orc, int value)
+    {
+        OneRowChange.ColumnVal val = orc.new ColumnVal();
+        val.setValue(new Integer(value));
+        return val;
+    }
+
+    private void assertValue(int id, int expected) throws Exception
+    {
+        Statement s = conn.createStatement();
+        ResultSet rs = s.executeQuery("SELECT v FROM " + SCHEMA + "." + TABLE
+                + " WHERE id = " + id);
+        Assert.assertTrue("Row exists: id=" + id, rs.next());
+        Assert.assertEquals("Value of id=" + id, expected, rs.getInt(1));
+        rs.close();
+        s.close();
+    }
+
+    private int countRows() throws Exception
+    {
+        Statement s = conn.createStatement();
+        ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + SCHEMA + "."
+                + TABLE);
+        rs.next();
+        int count = rs.getInt(1);
+        rs.close();
+        s.close();
+        return count;
+    }
+
+    /**
+     * Applier that counts executed batches and can hide update counts from
+     * batches to simulate drivers that return SUCCESS_NO_INFO.
+     */
+    class TestApplier extends JdbcApplier
+    {
+        private final boolean hideCounts;
+        int                   batches = 0;
+
+        TestApplier(boolean hideCounts)
+        {
+            this.hideCounts = hideCounts;
+        }
+
+        protected PreparedStatement prepareRowStatement(String schema,
+                String table, String sql) throws SQLException
+        {
+            final PreparedStatement ps = super.prepareRowStatement(schema,
+                    table, sql);
+            InvocationHandler handler = new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable
+                {
+                    Object result;
+                    try
+                    {
+                        result = method.invoke(ps, args);
+                    }
+                    catch (InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+                    if ("executeBatch".equals(method.getName()))
+                    {
+                        batches++;
+                        int[] counts = (int[]) result;
+                        if (hideCounts)
+                        {
+                            for (int i = 0; i < counts.length; i++)
+                                counts[i] = Statement.SUCCESS_NO_INFO;
+                        }
+                    }
+                    return result;
+                }
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(getClass()
+                    .getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    handler);
+        }
+    }
+}
@@ -125,6 +125,17 @@ public class BatchApplyHelper
      * generates a write to a file for each call to the various load methods.
      */
     public File createMergeProcedure(File dir, String loadName)
+    {
+        return createMergeProcedure(dir, loadName, -1);
+    }
+
+    /**
+     * Create a test Javascript procedure like the one above, except that the
+     * apply method fails for CSV files whose block starts at the given seqno.
+     * A value of -1 means never fail.
+     */
+    public File createMergeProcedure(File dir, String loadName,
+            long failStartSeqno)
     {
         // Write the code.
         StringBuffer code = new StringBuffer();
@@ -136,6 +147,9 @@ public class BatchApplyHelper
                 .append("  runtime.exec('echo begin >> ' + dir + '/begin.stat');\n")
                 .append("}\n")
                 .append("function apply(csvinfo) {\n")
+                .append("  if (csvinfo.startSeqno == " + failStartSeqno + ") {\n")
+                .append("    throw 'Simulated load failure';\n")
+                .append("  }\n")
                 .append("  logger.info('Applying csv: table=' + csvinfo.baseTableMetadata.getName());")
                 .append("  if (csvinfo.key == '') {\n")
                 .append("    output_csv = csvinfo.baseTableMetadata.getName() + '.data';\n")
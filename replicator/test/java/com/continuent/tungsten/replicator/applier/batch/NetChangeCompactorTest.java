@@ -0,0 +1,206 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.applier.batch;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.applier.batch.NetChangeCompactor.NetChange;
+import com.continuent.tungsten.replicator.database.Column;
+import com.continuent.tungsten.replicator.database.Table;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnSpec;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnVal;
+import com.continuent.tungsten.replicator.dbms.RowChangeData.ActionType;
+
+/**
+ * Tests reduction of row changes to net changes per primary key.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class NetChangeCompactorTest extends TestCase
+{
+    private OneRowChange     orc       = new OneRowChange();
+    private Table            table     = createTable("s1", "t1");
+    private List<ColumnSpec> colSpecs  = createSpecs("id", "val");
+    private List<ColumnSpec> keySpecs  = createSpecs("id");
+    private Timestamp        timestamp = new Timestamp(
+                                               System.currentTimeMillis());
+
+    /**
+     * Verify that an insert followed by updates reduces to a single insert of
+     * the final row image.
+     */
+    public void testInsertThenUpdates() throws Exception
+    {
+        NetChangeCompactor compactor = new NetChangeCompactor(100);
+        Assert.assertTrue(compactor.add(table, ActionType.INSERT, 1,
+                timestamp, null, keySpecs, null, colSpecs, rows(row(1, 0))));
+        for (int i = 1; i <= 3; i++)
+        {
+            Assert.assertTrue(compactor.add(table, ActionType.UPDATE, 1 + i,
+                    timestamp, null, keySpecs, rows(row(1)), colSpecs,
+                    rows(row(1, i))));
+        }
+        Assert.assertEquals("keys", 1, compactor.getKeyCount());
+        Assert.assertEquals("rows in", 4, compactor.getRowsIn());
+
+        List<NetChange> changes = compactor.removeAll();
+        Assert.assertEquals("changes", 1, changes.size());
+        NetChange change = changes.get(0);
+        Assert.assertFalse("new row", change.existedBefore());
+        Assert.assertTrue("row exists", change.existsAfter());
+        Assert.assertEquals("final value", 3, change.colValues.get(1)
+                .getValue());
+        Assert.assertEquals("first seqno", 1, change.firstSeqno);
+        Assert.assertEquals("last seqno", 4, change.lastSeqno);
+        Assert.assertEquals("keys after remove", 0, compactor.getKeyCount());
+    }
+
+    /**
+     * Verify that an update followed by a delete reduces to a delete of the
+     * original key, while an insert followed by a delete reduces to nothing.
+     */
+    public void testDeletes() throws Exception
+    {
+        NetChangeCompactor compactor = new NetChangeCompactor(100);
+        compactor.add(table, ActionType.UPDATE, 1, timestamp, null, keySpecs,
+                rows(row(1)), colSpecs, rows(row(1, 10)));
+        compactor.add(table, ActionType.INSERT, 2, timestamp, null, keySpecs,
+                null, colSpecs, rows(row(2, 20)));
+        compactor.add(table, ActionType.DELETE, 3, timestamp, null, keySpecs,
+                rows(row(1), row(2)), keySpecs, null);
+
+        List<NetChange> changes = compactor.removeAll();
+        Assert.assertEquals("changes", 2, changes.size());
+        NetChange updated = changes.get(0);
+        Assert.assertTrue("existed", updated.existedBefore());
+        Assert.assertFalse("deleted", updated.existsAfter());
+        Assert.assertEquals("old key", 1, updated.keyValues.get(0).getValue());
+        NetChange inserted = changes.get(1);
+        Assert.assertFalse("new row", inserted.existedBefore());
+        Assert.assertFalse("deleted", inserted.existsAfter());
+    }
+
+    /**
+     * Verify that changes without a primary key are rejected and that keys are
+     * kept separately for each table.
+     */
+    public void testTablesAndKeys() throws Exception
+    {
+        NetChangeCompactor compactor = new NetChangeCompactor(100);
+        Assert.assertFalse("no key", compactor.add(table, ActionType.INSERT,
+                1, timestamp, null, new ArrayList<ColumnSpec>(), null,
+                colSpecs, rows(row(1, 1))));
+        Assert.assertFalse("full row key", compactor.add(table,
+                ActionType.DELETE, 1, timestamp, null, colSpecs,
+                rows(row(1, 1)), colSpecs, null));
+        Assert.assertEquals("keys", 0, compactor.getKeyCount());
+
+        Table table2 = createTable("s1", "t2");
+        compactor.add(table, ActionType.INSERT, 2, timestamp, null, keySpecs,
+                null, colSpecs, rows(row(1, 1)));
+        compactor.add(table2, ActionType.INSERT, 3, timestamp, null, keySpecs,
+                null, colSpecs, rows(row(1, 1)));
+        Assert.assertEquals("keys", 2, compactor.getKeyCount());
+
+        Assert.assertEquals("t2 changes", 1, compactor.remove(table2).size());
+        Assert.assertEquals("t2 changes after remove", 0,
+                compactor.remove(table2).size());
+        Assert.assertEquals("keys", 1, compactor.getKeyCount());
+    }
+
+    /**
+     * Verify that the compactor reports when it is full.
+     */
+    public void testFull() throws Exception
+    {
+        NetChangeCompactor compactor = new NetChangeCompactor(3);
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertFalse("not full", compactor.isFull());
+            compactor.add(table, ActionType.INSERT, i, timestamp, null,
+                    keySpecs, null, colSpecs, rows(row(i, i)));
+        }
+        Assert.assertTrue("full", compactor.isFull());
+        Assert.assertEquals("changes", 3, compactor.removeAll().size());
+        Assert.assertFalse("not full", compactor.isFull());
+    }
+
+    // Create a table with an id and a value column.
+    private Table createTable(String schema, String name)
+    {
+        Table t = new Table(schema, name);
+        t.AddColumn(new Column("id", Types.INTEGER));
+        t.AddColumn(new Column("val", Types.INTEGER));
+        return t;
+    }
+
+    // Create column specifications with indexes starting at 1.
+    private List<ColumnSpec> createSpecs(String... names)
+    {
+        List<ColumnSpec> specs = new ArrayList<ColumnSpec>();
+        for (int i = 0; i < names.length; i++)
+        {
+            ColumnSpec spec = orc.new ColumnSpec();
+            spec.setIndex(i + 1);
+            spec.setName(names[i]);
+            spec.setType(Types.INTEGER);
+            specs.add(spec);
+        }
+        return specs;
+    }
+
+    // Create a row of column values.
+    private ArrayList<ColumnVal> row(Integer... values)
+    {
+        ArrayList<ColumnVal> row = new ArrayList<ColumnVal>();
+        for (Integer value : values)
+        {
+            ColumnVal val = orc.new ColumnVal();
+            val.setValue(value);
+            row.add(val);
+        }
+        return row;
+    }
+
+    // Create a list of one row.
+    private ArrayList<ArrayList<ColumnVal>> rows(ArrayList<ColumnVal> row)
+    {
+        ArrayList<ArrayList<ColumnVal>> list = new ArrayList<ArrayList<ColumnVal>>();
+        list.add(row);
+        return list;
+    }
+
+    // Create a list of two rows.
+    private ArrayList<ArrayList<ColumnVal>> rows(ArrayList<ColumnVal> row1,
+            ArrayList<ColumnVal> row2)
+    {
+        ArrayList<ArrayList<ColumnVal>> list = rows(row1);
+        list.add(row2);
+        return list;
+    }
+}
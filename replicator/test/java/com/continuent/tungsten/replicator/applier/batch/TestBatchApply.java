@@ -20,12 +20,17 @@
 
 package com.continuent.tungsten.replicator.applier.batch;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import junit.framework.Assert;
 
@@ -33,8 +38,15 @@ import org.apache.log4j.Logger;
 import org.junit.Test;
 
 import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.fsm.core.Event;
+import com.continuent.tungsten.fsm.event.EventDispatcher;
+import com.continuent.tungsten.fsm.event.EventRequest;
+import com.continuent.tungsten.replicator.ErrorNotification;
 import com.continuent.tungsten.replicator.conf.ReplicatorMonitor;
 import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.OneRowChange.ColumnSpec;
+import com.continuent.tungsten.replicator.dbms.RowChangeData;
 import com.continuent.tungsten.replicator.event.EventGenerationHelper;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
@@ -285,6 +297,261 @@ public class TestBatchApply
         pipeline.release(runtime);
     }
 
+    /**
+     * Validate that pipelined loading applies each block once and in order,
+     * with the last block loaded and committed by the time the applier is
+     * released.
+     */
+    @Test
+    public void testBatchPipelinedApply() throws Exception
+    {
+        // Create the pipeline with pipelined loading. Each transaction is a
+        // separate block.
+        String service = "testBatchPipelinedApply";
+        File testDir = helper.prepareTestDir(service);
+        TungstenProperties config = helper.generateBatchApplyProps(testDir,
+                service, false);
+        config.set("replicator.applier.batch-applier.pipelinedLoad", "true");
+        configureAndStartPipeline(config);
+        InMemoryQueueStore queue = (InMemoryQueueStore) pipeline
+                .getStore("queue");
+
+        // Add transactions and wait for them to commit.
+        int count = 20;
+        for (int t = 0; t < count; t++)
+        {
+            queue.put(createRowInsert(t));
+        }
+        Future<ReplDBMSHeader> wait = pipeline.watchForCommittedSequenceNumber(
+                count - 1, false);
+        ReplDBMSHeader lastEvent = wait.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("Expected end seqno", count - 1,
+                lastEvent.getSeqno());
+
+        // Shut down, which waits for the last block to load.
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+
+        // Confirm that every block loaded and committed in seqno order.
+        List<String> applied = readLines(new File(testDir, "apply.stat"));
+        Assert.assertEquals("Expected one load per block", count,
+                applied.size());
+        for (int t = 0; t < count; t++)
+        {
+            Assert.assertTrue("Expected blocks to load in order: "
+                    + applied.get(t), applied.get(t).endsWith("-" + t + ".csv"));
+        }
+        Assert.assertEquals("Expected one commit per block", count,
+                readLines(new File(testDir, "commit.stat")).size());
+    }
+
+    /**
+     * Validate that if a pipelined load fails the pipeline stops and the
+     * restart position is the last block that loaded successfully, even though
+     * later blocks were already written to CSV.
+     */
+    @Test
+    public void testBatchPipelinedApplyFailure() throws Exception
+    {
+        // Create the pipeline with pipelined loading and a load script that
+        // fails on the block starting at seqno 5.
+        String service = "testBatchPipelinedApplyFailure";
+        File testDir = helper.prepareTestDir(service);
+        TungstenProperties config = helper.generateBatchApplyProps(testDir,
+                service, false);
+        config.set("replicator.applier.batch-applier.pipelinedLoad", "true");
+        helper.createMergeProcedure(testDir, "test.js", 5);
+        configureAndStartPipeline(config);
+        InMemoryQueueStore queue = (InMemoryQueueStore) pipeline
+                .getStore("queue");
+
+        // Add transactions. The last one must not commit.
+        int count = 10;
+        for (int t = 0; t < count; t++)
+        {
+            queue.put(createRowInsert(t));
+        }
+        Future<ReplDBMSHeader> wait = pipeline.watchForCommittedSequenceNumber(
+                count - 1, false);
+        try
+        {
+            wait.get(5, TimeUnit.SECONDS);
+            Assert.fail("Pipeline committed past failed load");
+        }
+        catch (TimeoutException e)
+        {
+        }
+        pipeline.shutdown(true);
+        pipeline.release(runtime);
+
+        // Only blocks before the failed block should have committed.
+        Assert.assertEquals("Expected commits before failure", 5,
+                readLines(new File(testDir, "commit.stat")).size());
+
+        // On restart the applier resumes after the last loaded block.
+        runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        pipeline = runtime.getPipeline();
+        Assert.assertEquals("Expected restart position", 4,
+                pipeline.getLastAppliedSeqno());
+        pipeline.release(runtime);
+    }
+
+    /**
+     * Validate that a failed pipelined load is reported through an error
+     * notification even if no further events arrive to apply or commit.
+     */
+    @Test
+    public void testBatchPipelinedApplyFailureNotification() throws Exception
+    {
+        // Create the pipeline with pipelined loading, a load script that
+        // fails on the block starting at seqno 5, and a context that records
+        // error notifications.
+        String service = "testBatchPipelinedApplyFailureNotification";
+        File testDir = helper.prepareTestDir(service);
+        TungstenProperties config = helper.generateBatchApplyProps(testDir,
+                service, false);
+        config.set("replicator.applier.batch-applier.pipelinedLoad", "true");
+        helper.createMergeProcedure(testDir, "test.js", 5);
+        final LinkedBlockingQueue<Event> notifications = new LinkedBlockingQueue<Event>();
+        final EventDispatcher dispatcher = new MockEventDispatcher()
+        {
+            @Override
+            public EventRequest put(Event event) throws InterruptedException
+            {
+                notifications.put(event);
+                return null;
+            }
+        };
+        runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext()
+                {
+                    @Override
+                    public EventDispatcher getEventDispatcher()
+                    {
+                        return dispatcher;
+                    }
+                }, ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        pipeline = runtime.getPipeline();
+        pipeline.start(new MockEventDispatcher());
+        InMemoryQueueStore queue = (InMemoryQueueStore) pipeline
+                .getStore("queue");
+
+        // Add transactions up to the failing block and nothing after it.
+        for (int t = 0; t <= 5; t++)
+        {
+            queue.put(createRowInsert(t));
+        }
+        Event event = notifications.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull("Expected error notification", event);
+        Assert.assertTrue("Expected error notification: " + event,
+                event instanceof ErrorNotification);
+        Assert.assertEquals("Expected failed seqno", 5,
+                ((ErrorNotification) event).getSeqno());
+
+        pipeline.shutdown(true);
+        pipeline.release(runtime);
+    }
+
+    /**
+     * Validate that net change compaction reduces rows that are inserted and
+     * then deleted in the same block to nothing, while other rows are still
+     * written.
+     */
+    @Test
+    public void testBatchNetChangeCompaction() throws Exception
+    {
+        // Create the pipeline with net change compaction and a block size
+        // that holds all transactions.
+        String service = "testBatchNetChangeCompaction";
+        File testDir = helper.prepareTestDir(service);
+        TungstenProperties config = helper.generateBatchApplyProps(testDir,
+                service, false);
+        config.set("replicator.applier.batch-applier.netChangeCompaction",
+                "true");
+        config.set("replicator.stage.q-to-batch-apply.blockCommitRowCount", 20);
+        config.set("replicator.stage.q-to-batch-apply.blockCommitInterval",
+                "1s");
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        pipeline = runtime.getPipeline();
+        InMemoryQueueStore queue = (InMemoryQueueStore) pipeline
+                .getStore("queue");
+
+        // Insert 10 rows with a primary key on id, then delete every other
+        // row.
+        String names[] = new String[]{"id", "val"};
+        for (int t = 0; t < 10; t++)
+        {
+            ReplDBMSEvent insert = eventGenerator.eventFromRowInsert(t,
+                    "schema", "table", names, new Integer[]{t, t}, 0, true);
+            OneRowChange orc = ((RowChangeData) insert.getData().get(0))
+                    .getRowChanges().get(0);
+            ArrayList<ColumnSpec> keySpecs = new ArrayList<ColumnSpec>();
+            keySpecs.add(orc.getColumnSpec().get(0));
+            orc.setKeySpec(keySpecs);
+            queue.put(insert);
+        }
+        for (int t = 0; t < 10; t += 2)
+        {
+            queue.put(eventGenerator.eventFromRowDelete(10 + t / 2, "schema",
+                    "table", new String[]{"id"}, new Integer[]{t}, 0, true));
+        }
+
+        // Start the pipeline and wait for the transactions to commit.
+        pipeline.start(new MockEventDispatcher());
+        Future<ReplDBMSHeader> wait = pipeline.watchForCommittedSequenceNumber(
+                14, false);
+        ReplDBMSHeader lastEvent = wait.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("Expected end seqno", 14, lastEvent.getSeqno());
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+
+        // Only the 5 rows that were not deleted should be staged.
+        Assert.assertEquals("Expected compacted rows", 5,
+                readLines(new File(testDir, "table.data")).size());
+    }
+
+    // Generate a single row insert on a test table.
+    private ReplDBMSEvent createRowInsert(long seqno)
+    {
+        String names[] = new String[2];
+        Integer values[] = new Integer[2];
+        for (int i = 0; i < names.length; i++)
+        {
+            names[i] = "data-" + seqno + "-" + i;
+            values[i] = i;
+        }
+        return eventGenerator.eventFromRowInsert(seqno, "schema", "table",
+                names, values, 0, true);
+    }
+
+    // Read the lines of a file generated by the load script.
+    private List<String> readLines(File file) throws Exception
+    {
+        List<String> lines = new LinkedList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
     /**
      * Create runtime and start the pipeline.
      */
@@ -0,0 +1,136 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * This class tests table-based keys, invalidation, and hit counters in the
+ * PreparedStatementCache. Statements are left null as the cache does not use
+ * them other than to close them on release.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TestPreparedStatementCache
+{
+    /**
+     * Ensure lookups are counted as hits or misses.
+     */
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        PreparedStatementCache psc = new PreparedStatementCache(100);
+        String key = PreparedStatementCache.generateKey("a", "x",
+                "DELETE FROM a.x WHERE id = ?");
+
+        Assert.assertNull("Empty cache", psc.retrieveExtended(key));
+        psc.store(key, null, "DELETE FROM a.x WHERE id = ?");
+        PreparedStatementHolder psh = psc.retrieveExtended(key);
+        Assert.assertNotNull("Found statement", psh);
+        Assert.assertEquals("Query", "DELETE FROM a.x WHERE id = ?",
+                psh.getQuery());
+        psc.retrieveExtended(key);
+
+        Assert.assertEquals("Hits", 2, psc.getHits());
+        Assert.assertEquals("Misses", 1, psc.getMisses());
+        psc.invalidateAll();
+    }
+
+    /**
+     * Ensure we can invalidate statements by table, schema, or SQL operation
+     * and that statements on tables with similar names are left alone.
+     */
+    @Test
+    public void testInvalidation() throws Exception
+    {
+        String[] schemas = {"a", "b", "c"};
+        String[] tableNames = {"x", "y", "z"};
+        PreparedStatementCache psc = this.populateCache(schemas, tableNames);
+        psc.store(PreparedStatementCache.generateKey("a", "xx", "INSERT"),
+                null, "INSERT");
+        psc.store(PreparedStatementCache.generateKey("ab", "x", "INSERT"),
+                null, "INSERT");
+        Assert.assertEquals("Expected cache size", 20, psc.size());
+
+        // Invalidate by table name removes all statements for the table.
+        int invalidated = psc.invalidateTable("a", "x");
+        Assert.assertEquals("Specific table", 2, invalidated);
+        invalidated = psc.invalidateTable("a", "x");
+        Assert.assertEquals("Specific table", 0, invalidated);
+
+        // Invalidate by schema.
+        invalidated = psc.invalidateSchema("a");
+        Assert.assertEquals("Specific schema", 5, invalidated);
+        Assert.assertNotNull("Similar schema", psc
+                .retrieveExtended(PreparedStatementCache.generateKey("ab",
+                        "x", "INSERT")));
+
+        // Invalidate by DROP DATABASE.
+        SqlOperation op = new SqlOperation(SqlOperation.SCHEMA,
+                SqlOperation.DROP, "b", null);
+        invalidated = psc.invalidate(op, "a");
+        Assert.assertEquals("drop database", 6, invalidated);
+
+        // Invalidate by DROP TABLE.
+        op = new SqlOperation(SqlOperation.TABLE, SqlOperation.DROP, "c", "x");
+        invalidated = psc.invalidate(op, "d");
+        Assert.assertEquals("drop table", 2, invalidated);
+
+        // Invalidate by ALTER TABLE using the default schema.
+        op = new SqlOperation(SqlOperation.TABLE, SqlOperation.ALTER, null, "y");
+        invalidated = psc.invalidate(op, "c");
+        Assert.assertEquals("alter table", 2, invalidated);
+
+        // Not invalidated by an insert.
+        op = new SqlOperation(SqlOperation.TABLE, SqlOperation.INSERT, "c", "z");
+        invalidated = psc.invalidate(op, "c");
+        Assert.assertEquals("insert", 0, invalidated);
+        Assert.assertEquals("Remaining statements", 3, psc.size());
+
+        psc.invalidateAll();
+        Assert.assertEquals("Empty cache", 0, psc.size());
+    }
+
+    // Create two statements per table.
+    private PreparedStatementCache populateCache(String[] schemas,
+            String[] tableNames)
+    {
+        PreparedStatementCache psc = new PreparedStatementCache(100);
+        for (String schema : schemas)
+        {
+            for (String tableName : tableNames)
+            {
+                String insert = "INSERT INTO " + schema + "." + tableName
+                        + " VALUES(?)";
+                String delete = "DELETE FROM " + schema + "." + tableName
+                        + " WHERE id = ?";
+                psc.store(PreparedStatementCache.generateKey(schema,
+                        tableName, insert), null, insert);
+                psc.store(PreparedStatementCache.generateKey(schema,
+                        tableName, delete), null, delete);
+            }
+        }
+        return psc;
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.io.File;
+import java.sql.Types;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * This class tests tracking of table definitions from DDL using
+ * TableDefinitionParser and SchemaHistory.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TestSchemaHistory
+{
+    private SqlOperationMatcher matcher = new MySQLOperationMatcher();
+
+    /**
+     * Verify that CREATE TABLE and ALTER TABLE statements produce columns,
+     * types, signed flags, and primary keys like those read from MySQL, and
+     * that statements we cannot follow return null.
+     */
+    @Test
+    public void testParser() throws Exception
+    {
+        TableDefinitionParser parser = new TableDefinitionParser();
+        Table t1 = parser.parseCreate("db", "t1",
+                "CREATE TABLE IF NOT EXISTS `db`.`t1` ("
+                        + "`id` int(10) unsigned NOT NULL,"
+                        + " name varchar(64) DEFAULT 'a,b' COMMENT 'x(y',"
+                        + " amount DECIMAL(10,2), PRIMARY KEY (`id`),"
+                        + " KEY k1 (name(10))) ENGINE=InnoDB");
+        Assert.assertNotNull("Parsed create", t1);
+        Assert.assertEquals("Columns", 3, t1.getColumnCount());
+        Column id = t1.getAllColumns().get(0);
+        Assert.assertEquals("id", id.getName());
+        Assert.assertEquals(Types.INTEGER, id.getType());
+        Assert.assertEquals("INT UNSIGNED", id.getTypeDescription());
+        Assert.assertFalse("Unsigned", id.isSigned());
+        Assert.assertTrue("Not null", id.isNotNull());
+        Column name = t1.getAllColumns().get(1);
+        Assert.assertEquals("name", name.getName());
+        Assert.assertEquals("VARCHAR", name.getTypeDescription());
+        Assert.assertEquals(64, name.getLength());
+        Assert.assertEquals(3, t1.getAllColumns().get(2).getPosition());
+        Assert.assertEquals("Primary key", "id", t1.getPrimaryKey()
+                .getColumns().get(0).getName());
+
+        // Apply several changes in one statement.
+        Table t2 = parser.parseAlter(t1, "ALTER TABLE t1 ADD COLUMN c0 "
+                + "BIGINT FIRST, DROP amount, CHANGE name full_name TEXT,"
+                + " ADD c2 tinyint AFTER id, ENGINE=InnoDB");
+        Assert.assertNotNull("Parsed alter", t2);
+        String[] names = {"c0", "id", "c2", "full_name"};
+        Assert.assertEquals("Columns", names.length, t2.getColumnCount());
+        for (int i = 0; i < names.length; i++)
+        {
+            Column col = t2.getAllColumns().get(i);
+            Assert.assertEquals("Name", names[i], col.getName());
+            Assert.assertEquals("Position", i + 1, col.getPosition());
+        }
+        Assert.assertEquals(Types.LONGVARCHAR, t2.getAllColumns().get(3)
+                .getType());
+        Assert.assertEquals("Original is unchanged", 3, t1.getColumnCount());
+
+        // Change the primary key and rename the table.
+        Table t3 = parser.parseAlter(t2, "ALTER TABLE t1 DROP PRIMARY KEY, "
+                + "ADD PRIMARY KEY (c0, id), RENAME TO db2.t3");
+        Assert.assertEquals("db2", t3.getSchema());
+        Assert.assertEquals("t3", t3.getName());
+        Assert.assertEquals("Key columns", 2, t3.getPrimaryKey().getColumns()
+                .size());
+
+        // Statements we cannot follow.
+        Assert.assertNull(parser.parseCreate("db", "t4",
+                "CREATE TABLE t4 LIKE t1"));
+        Assert.assertNull(parser.parseCreate("db", "t4",
+                "CREATE TABLE t4 (id int) SELECT * FROM t1"));
+        Assert.assertNull("Duplicate column", parser.parseAlter(t1,
+                "ALTER TABLE t1 ADD COLUMN name int"));
+        Assert.assertNull("Missing column", parser.parseAlter(t1,
+                "ALTER TABLE t1 DROP COLUMN nosuch"));
+        Assert.assertNull("Unknown change", parser.parseAlter(t1,
+                "ALTER TABLE t1 CONVERT TO CHARACTER SET utf8"));
+    }
+
+    /**
+     * Verify that the history returns the table definition that applies at
+     * each seqno, including after drop and rename, and that it ignores DDL it
+     * has already seen.
+     */
+    @Test
+    public void testVersionsBySeqno() throws Exception
+    {
+        SchemaHistory history = new SchemaHistory(
+                prepareLogFile("testVersionsBySeqno"));
+        history.open();
+
+        record(history, 10, "create table t1 (id int primary key, v int)");
+        record(history, 20, "alter table t1 add column w int");
+        Assert.assertEquals("Duplicate ignored", 0,
+                record(history, 20, "alter table t1 add column w int"));
+        Assert.assertEquals("Earlier seqno ignored", 0,
+                record(history, 15, "alter table t1 drop column v"));
+        record(history, 30, "rename table t1 to t2");
+        record(history, 40, "drop table if exists t2, t9");
+
+        Assert.assertNull("Before create", history.getTable("db", "t1", 5));
+        Assert.assertEquals(2, history.getTable("db", "t1", 10)
+                .getColumnCount());
+        Assert.assertEquals(2, history.getTable("db", "t1", 19)
+                .getColumnCount());
+        Assert.assertEquals(3, history.getTable("db", "t1", 20)
+                .getColumnCount());
+        Assert.assertNull("After rename", history.getTable("db", "t1", 30));
+        Table t2 = history.getTable("db", "t2", 35);
+        Assert.assertEquals("t2", t2.getName());
+        Assert.assertEquals(3, t2.getColumnCount());
+        Assert.assertNull("After drop", history.getTable("db", "t2", 40));
+
+        history.close();
+    }
+
+    /**
+     * Verify that definitions read from the DBMS are recorded only if the
+     * history has nothing later and that they replace unknown definitions.
+     */
+    @Test
+    public void testRecordLookups() throws Exception
+    {
+        SchemaHistory history = new SchemaHistory(
+                prepareLogFile("testRecordLookups"));
+        history.open();
+
+        Table live = new Table("db", "t1");
+        live.AddColumn(new Column("id", Types.INTEGER));
+        Assert.assertTrue(history.recordTable(live, 100));
+        Assert.assertNull(history.getTable("db", "t1", 99));
+        Assert.assertSame(live, history.getTable("db", "t1", 100));
+
+        // DDL we cannot parse makes the definition unknown until looked up
+        // again.
+        record(history, 110, "alter table t1 partition by hash(id)");
+        Assert.assertNull(history.getTable("db", "t1", 120));
+        Assert.assertTrue(history.recordTable(live, 120));
+        Assert.assertSame(live, history.getTable("db", "t1", 110));
+
+        // Lookups for earlier events do not overwrite later versions.
+        Assert.assertFalse(history.recordTable(live, 50));
+        history.close();
+    }
+
+    /**
+     * Verify that history survives a restart and that DDL already in the log
+     * is not applied twice.
+     */
+    @Test
+    public void testPersistence() throws Exception
+    {
+        File logFile = prepareLogFile("testPersistence");
+        SchemaHistory history = new SchemaHistory(logFile);
+        history.open();
+        record(history, 1, "create table t1 (`a b` int unsigned, c "
+                + "varchar(10), primary key(c))");
+        record(history, 2, "alter table t1 add column d int");
+        record(history, 2, "alter table t1 add column d int");
+        history.close();
+
+        history = new SchemaHistory(logFile);
+        history.open();
+        Assert.assertEquals("Versions", 2, history.getVersionCount());
+        Table t1 = history.getTable("db", "t1", 1);
+        Assert.assertEquals("a b", t1.getAllColumns().get(0).getName());
+        Assert.assertFalse(t1.getAllColumns().get(0).isSigned());
+        Assert.assertEquals("INT UNSIGNED", t1.getAllColumns().get(0)
+                .getTypeDescription());
+        Assert.assertEquals("c", t1.getPrimaryKey().getColumns().get(0)
+                .getName());
+        Assert.assertEquals(3, history.getTable("db", "t1", 2)
+                .getColumnCount());
+
+        // Replaying DDL from the log after restart changes nothing.
+        Assert.assertEquals(0,
+                record(history, 2, "alter table t1 add column d int"));
+        record(history, 3, "alter table t1 drop column d");
+        Assert.assertEquals(2, history.getTable("db", "t1", 3)
+                .getColumnCount());
+        history.close();
+    }
+
+    /**
+     * Verify that adding a column that already exists makes the definition
+     * unknown unless the statement says IF NOT EXISTS, in which case the
+     * existing column is kept.
+     */
+    @Test
+    public void testAlterAddExistingColumn() throws Exception
+    {
+        SchemaHistory history = new SchemaHistory(
+                prepareLogFile("testAlterAddExistingColumn"));
+        history.open();
+
+        record(history, 10, "create table t1 (id int primary key, v int)");
+        Assert.assertEquals("Unknown definition recorded", 1,
+                record(history, 20, "alter table t1 add column V bigint"));
+        Assert.assertNull("Definition unknown after duplicate column",
+                history.getTable("db", "t1", 20));
+        Assert.assertEquals("Earlier definition kept", 2, history
+                .getTable("db", "t1", 19).getColumnCount());
+
+        record(history, 30, "create table t2 (id int primary key, v int)");
+        record(history, 40, "alter table t2 add column if not exists v "
+                + "bigint, add column if not exists w int");
+        Table t2 = history.getTable("db", "t2", 40);
+        Assert.assertNotNull("Definition known with IF NOT EXISTS", t2);
+        Assert.assertEquals("Columns", 3, t2.getColumnCount());
+        Assert.assertEquals("Existing column unchanged", Types.INTEGER, t2
+                .getAllColumns().get(1).getType());
+        Assert.assertEquals("w", t2.getAllColumns().get(2).getName());
+        history.close();
+    }
+
+    /**
+     * Verify that RENAME TABLE moves definitions across chains of renames,
+     * including renames within one statement that swap two tables.
+     */
+    @Test
+    public void testRenameChains() throws Exception
+    {
+        SchemaHistory history = new SchemaHistory(
+                prepareLogFile("testRenameChains"));
+        history.open();
+
+        record(history, 10, "create table t1 (id int primary key)");
+        record(history, 20, "rename table t1 to t2");
+        record(history, 30, "rename table t2 to db2.t3");
+        record(history, 40, "alter table db2.t3 add column v int");
+        Assert.assertNull(history.getTable("db", "t1", 20));
+        Assert.assertEquals("t2", history.getTable("db", "t2", 25).getName());
+        Assert.assertNull(history.getTable("db", "t2", 30));
+        Table t3 = history.getTable("db2", "t3", 30);
+        Assert.assertEquals("db2", t3.getSchema());
+        Assert.assertEquals("t3", t3.getName());
+        Assert.assertEquals(1, t3.getColumnCount());
+        Assert.assertEquals(2, history.getTable("db2", "t3", 40)
+                .getColumnCount());
+
+        // Swap two tables through a temporary name in one statement.
+        record(history, 50, "create table a (id int primary key)");
+        record(history, 60, "create table b (id int primary key, v int)");
+        Assert.assertEquals("Versions from swap", 6, record(history, 70,
+                "rename table a to tmp, b to a, tmp to b"));
+        Table a = history.getTable("db", "a", 70);
+        Assert.assertEquals("a", a.getName());
+        Assert.assertEquals("Definition of b moved to a", 2,
+                a.getColumnCount());
+        Table b = history.getTable("db", "b", 70);
+        Assert.assertEquals("b", b.getName());
+        Assert.assertEquals("Definition of a moved to b", 1,
+                b.getColumnCount());
+        Assert.assertNull(history.getTable("db", "tmp", 70));
+        Assert.assertEquals("Definitions before swap", 1, history
+                .getTable("db", "a", 69).getColumnCount());
+        history.close();
+    }
+
+    /**
+     * Verify that after a restart and truncation DDL beyond the truncation
+     * point is recorded again, even if its seqno was in the history before,
+     * and that the truncation survives another restart.
+     */
+    @Test
+    public void testRestartAfterTruncation() throws Exception
+    {
+        File logFile = prepareLogFile("testRestartAfterTruncation");
+        SchemaHistory history = new SchemaHistory(logFile);
+        history.open();
+        record(history, 10, 1, "create table t1 (id int primary key)");
+        record(history, 20, 1, "alter table t1 add column v int");
+        record(history, 30, 1, "alter table t1 add column w int");
+        Assert.assertTrue(history.recordTable(history.getTable("db", "t1",
+                30), 35));
+        history.close();
+
+        // Reopen and truncate as if the log ended at seqno 20.
+        history = new SchemaHistory(logFile);
+        history.open();
+        Assert.assertEquals("Last DDL before truncation", 30,
+                history.getLastDdlSeqno());
+        Assert.assertEquals("Versions dropped", 2, history.truncate(20));
+        Assert.assertEquals("Last DDL after truncation", 20,
+                history.getLastDdlSeqno());
+        Assert.assertEquals(2, history.getTable("db", "t1", 35)
+                .getColumnCount());
+
+        // DDL from a new stream at the same seqnos is recorded.
+        Assert.assertEquals("New DDL recorded", 1, record(history, 30, 21,
+                "alter table t1 drop column v"));
+        Assert.assertEquals("Replay ignored", 0, record(history, 20, 1,
+                "alter table t1 add column v int"));
+        Assert.assertEquals(1, history.getTable("db", "t1", 30)
+                .getColumnCount());
+        Assert.assertEquals("Epoch of new DDL", 21, history.getDdlEpoch(30));
+        history.close();
+
+        history = new SchemaHistory(logFile);
+        history.open();
+        Assert.assertEquals("Versions after restart", 3,
+                history.getVersionCount());
+        Assert.assertEquals(1, history.getTable("db", "t1", 30)
+                .getColumnCount());
+        Assert.assertEquals("Epoch after restart", 21,
+                history.getDdlEpoch(30));
+        Assert.assertEquals("No DDL at seqno", -1, history.getDdlEpoch(25));
+
+        // Clearing discards everything.
+        history.clear();
+        Assert.assertEquals(0, history.getVersionCount());
+        Assert.assertEquals(-1, history.getLastDdlSeqno());
+        Assert.assertEquals("DDL recorded after clear", 1, record(history, 5,
+                2, "create table t1 (id int primary key)"));
+        history.close();
+    }
+
+    /**
+     * Verify that pruning keeps the version of each table in effect at the
+     * prune point and drops older versions and tables that no longer exist.
+     */
+    @Test
+    public void testPrune() throws Exception
+    {
+        File logFile = prepareLogFile("testPrune");
+        SchemaHistory history = new SchemaHistory(logFile);
+        history.open();
+        record(history, 10, "create table t1 (id int primary key)");
+        record(history, 12, "create table t2 (id int primary key)");
+        record(history, 15, "drop table t2");
+        record(history, 20, "alter table t1 add column v int");
+        record(history, 30, "alter table t1 add column w int");
+        record(history, 40, "create table t3 (id int primary key)");
+        Assert.assertEquals(6, history.getVersionCount());
+
+        Assert.assertEquals("Versions dropped", 3, history.prune(25));
+        Assert.assertEquals("Tables", 2, history.getTableCount());
+        Assert.assertEquals(2, history.getTable("db", "t1", 25)
+                .getColumnCount());
+        Assert.assertEquals(3, history.getTable("db", "t1", 30)
+                .getColumnCount());
+        Assert.assertNull(history.getTable("db", "t2", 25));
+        Assert.assertNotNull(history.getTable("db", "t3", 40));
+        history.close();
+
+        history = new SchemaHistory(logFile);
+        history.open();
+        Assert.assertEquals("Versions after restart", 3,
+                history.getVersionCount());
+        history.close();
+    }
+
+    // Records a statement in the default schema "db".
+    private int record(SchemaHistory history, long seqno, String statement)
+            throws Exception
+    {
+        return record(history, seqno, 0, statement);
+    }
+
+    // Records a statement in the default schema "db" from an epoch.
+    private int record(SchemaHistory history, long seqno, long epochNumber,
+            String statement) throws Exception
+    {
+        SqlOperation op = matcher.match(statement);
+        return history.recordStatement(op, "db", seqno, epochNumber,
+                statement);
+    }
+
+    // Returns a log file in an empty directory.
+    private File prepareLogFile(String dirName)
+    {
+        File dir = new File(dirName);
+        if (dir.exists())
+        {
+            for (File f : dir.listFiles())
+                f.delete();
+        }
+        else
+            dir.mkdirs();
+        return new File(dir, "schema-history.log");
+    }
+}
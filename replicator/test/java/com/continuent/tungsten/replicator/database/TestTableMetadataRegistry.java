@@ -0,0 +1,216 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.database;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * This class tests the TableMetadataRegistry using a connection that returns
+ * generated table definitions and counts lookups.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class TestTableMetadataRegistry
+{
+    /**
+     * Connection that manufactures table definitions. Tables named "missing"
+     * do not exist.
+     */
+    class CountingDatabase extends DerbyDatabase
+    {
+        AtomicInteger lookups = new AtomicInteger();
+        long          delayMillis;
+
+        CountingDatabase() throws SQLException
+        {
+            super();
+        }
+
+        public Table findTable(String schemaName, String tableName,
+                boolean withUniqueIndex) throws SQLException
+        {
+            lookups.incrementAndGet();
+            if (delayMillis > 0)
+            {
+                try
+                {
+                    Thread.sleep(delayMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new SQLException("Interrupted");
+                }
+            }
+            if ("missing".equals(tableName))
+                return null;
+            Table table = new Table(schemaName, tableName);
+            table.AddColumn(new Column("id", Types.INTEGER));
+            return table;
+        }
+    }
+
+    /**
+     * Ensure tables are cached after the first lookup and that missing tables
+     * are not cached.
+     */
+    @Test
+    public void testCaching() throws Exception
+    {
+        CountingDatabase db = new CountingDatabase();
+        TableMetadataRegistry registry = new TableMetadataRegistry("test", db,
+                100);
+
+        Table t1 = registry.getTable("a", "x");
+        Table t2 = registry.getTable("a", "x");
+        Assert.assertNotNull("Found table", t1);
+        Assert.assertSame("Cached table", t1, t2);
+        Assert.assertEquals("One lookup", 1, db.lookups.get());
+
+        Assert.assertNull("Missing table", registry.getTable("a", "missing"));
+        Assert.assertNull("Missing table", registry.getTable("a", "missing"));
+        Assert.assertEquals("Missing tables are not cached", 3,
+                db.lookups.get());
+        Assert.assertEquals("Cache size", 1, registry.size());
+
+        registry.release();
+    }
+
+    /**
+     * Ensure DDL and changed table IDs invalidate cached tables and advance
+     * the version.
+     */
+    @Test
+    public void testInvalidation() throws Exception
+    {
+        CountingDatabase db = new CountingDatabase();
+        TableMetadataRegistry registry = new TableMetadataRegistry("test", db,
+                100);
+
+        // A table ID change reloads the table.
+        Table t1 = registry.getTable("a", "x", 10);
+        Assert.assertEquals("Table ID", 10, t1.getTableId());
+        Assert.assertSame("Same ID", t1, registry.getTable("a", "x", 10));
+        Assert.assertSame("No ID", t1, registry.getTable("a", "x"));
+        long version = registry.getVersion();
+        Table t2 = registry.getTable("a", "x", 11);
+        Assert.assertNotSame("New ID", t1, t2);
+        Assert.assertEquals("Table ID", 11, t2.getTableId());
+        Assert.assertTrue("Version advanced", registry.getVersion() > version);
+
+        // ALTER TABLE with a default schema.
+        registry.getTable("a", "y");
+        SqlOperation op = new SqlOperation(SqlOperation.TABLE,
+                SqlOperation.ALTER, null, "y");
+        Assert.assertEquals("alter table", 1, registry.invalidate(op, "a"));
+
+        // DROP DATABASE.
+        op = new SqlOperation(SqlOperation.SCHEMA, SqlOperation.DROP, "a",
+                null);
+        Assert.assertEquals("drop database", 1, registry.invalidate(op, null));
+        Assert.assertEquals("Cache empty", 0, registry.size());
+
+        // Non-DDL leaves the version alone.
+        version = registry.getVersion();
+        op = new SqlOperation(SqlOperation.TABLE, SqlOperation.INSERT, "a",
+                "x");
+        Assert.assertEquals("insert", 0, registry.invalidate(op, null));
+        Assert.assertEquals("Version unchanged", version, registry.getVersion());
+
+        registry.release();
+    }
+
+    /**
+     * Ensure reloading a table, as done for row changes without a table ID,
+     * reads it every time and replaces the cached definition.
+     */
+    @Test
+    public void testReload() throws Exception
+    {
+        CountingDatabase db = new CountingDatabase();
+        TableMetadataRegistry registry = new TableMetadataRegistry("test", db,
+                100);
+
+        Table t1 = registry.getTable("a", "x");
+        Table t2 = registry.reloadTable("a", "x");
+        Table t3 = registry.reloadTable("a", "x");
+        Assert.assertEquals("Every reload reads the table", 3,
+                db.lookups.get());
+        Assert.assertNotSame("Reload returns new definition", t1, t2);
+        Assert.assertNotSame("Reload returns new definition", t2, t3);
+        Assert.assertSame("Reload replaces cached table", t3,
+                registry.getTable("a", "x"));
+
+        // A table that has gone is dropped from the cache.
+        Assert.assertNull("Missing table", registry.reloadTable("a", "missing"));
+        Assert.assertEquals("Cache size", 1, registry.size());
+
+        registry.release();
+    }
+
+    /**
+     * Ensure concurrent requests for the same table result in a single lookup
+     * and return the same instance.
+     */
+    @Test
+    public void testSharedLookups() throws Exception
+    {
+        final CountingDatabase db = new CountingDatabase();
+        db.delayMillis = 200;
+        final TableMetadataRegistry registry = new TableMetadataRegistry(
+                "test", db, 100);
+
+        final Table[] results = new Table[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int index = i;
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        results[index] = registry.getTable("a", "x");
+                    }
+                    catch (Exception e)
+                    {
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join(10000);
+
+        Assert.assertEquals("One lookup", 1, db.lookups.get());
+        for (Table result : results)
+            Assert.assertSame("Shared table", results[0], result);
+
+        registry.release();
+    }
+}
@@ -20,6 +20,10 @@
 
 package com.continuent.tungsten.replicator.extractor.mysql;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.apache.log4j.BasicConfigurator;
@@ -32,6 +36,10 @@ import com.continuent.tungsten.replicator.conf.ReplicatorConf;
 import com.continuent.tungsten.replicator.conf.ReplicatorMonitor;
 import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
 import com.continuent.tungsten.replicator.datasource.AliasDataSource;
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.OneRowChange;
+import com.continuent.tungsten.replicator.dbms.RowChangeData;
+import com.continuent.tungsten.replicator.event.DBMSEvent;
 import com.continuent.tungsten.replicator.extractor.ExtractorWrapper;
 import com.continuent.tungsten.replicator.management.MockOpenReplicatorContext;
 import com.continuent.tungsten.replicator.pipeline.Pipeline;
@@ -177,6 +185,89 @@ public class BinlogTest extends TestCase
         return;
     }
 
+    /**
+     * Verify that row-based events decoded on row decode threads match those
+     * decoded by the extractor thread.
+     */
+    public void testBinlogRBRRowDecodeThreads() throws Exception
+    {
+        List<String> inline = extractRBR(0);
+        List<String> threaded = extractRBR(2);
+        assertEquals("Same number of events", inline.size(), threaded.size());
+        for (int i = 0; i < inline.size(); i++)
+            assertEquals("Same row changes in event " + i, inline.get(i),
+                    threaded.get(i));
+    }
+
+    // Extract events from the row-based binlog and return their row changes
+    // as strings.
+    private List<String> extractRBR(int rowDecodeThreads) throws Exception
+    {
+        TungstenProperties conf = this.createConfProperties();
+        conf.setString(ReplicatorConf.EXTRACTOR_ROOT + ".mysql.binlog_dir", ".");
+        conf.setString(ReplicatorConf.EXTRACTOR_ROOT
+                + ".mysql.binlog_file_pattern", "binlog_rbr_1");
+        ReplicatorRuntime runtime = new ReplicatorRuntime(conf,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        MySQLExtractor extractor = getMySQLExtractor(runtime);
+        extractor.setStrictVersionChecking(false);
+        extractor.setDataSource("extractor");
+        extractor.setRowDecodeThreads(rowDecodeThreads);
+        extractor.prepare(runtime);
+        extractor.setLastEventId("000001:0");
+
+        List<String> events = new ArrayList<String>();
+        int rowChanges = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            DBMSEvent event = extractor.extract();
+            StringBuffer sb = new StringBuffer();
+            for (DBMSData data : event.getData())
+            {
+                if (data instanceof RowChangeData)
+                {
+                    for (OneRowChange change : ((RowChangeData) data)
+                            .getRowChanges())
+                    {
+                        rowChanges++;
+                        sb.append(change.getAction()).append(' ')
+                                .append(change.getSchemaName()).append('.')
+                                .append(change.getTableName()).append(' ');
+                        appendValues(sb, change.getColumnValues());
+                        appendValues(sb, change.getKeyValues());
+                        sb.append(';');
+                    }
+                }
+            }
+            events.add(sb.toString());
+        }
+        extractor.release(runtime);
+        assertTrue("Found row changes", rowChanges > 0);
+        return events;
+    }
+
+    // Append column values, showing the contents of byte arrays.
+    private void appendValues(StringBuffer sb,
+            List<ArrayList<OneRowChange.ColumnVal>> rows)
+    {
+        for (List<OneRowChange.ColumnVal> row : rows)
+        {
+            sb.append('[');
+            for (OneRowChange.ColumnVal col : row)
+            {
+                Object value = col.getValue();
+                if (value instanceof byte[])
+                    sb.append(Arrays.toString((byte[]) value));
+                else
+                    sb.append(value);
+                sb.append(',');
+            }
+            sb.append(']');
+        }
+    }
+
     public void testApplierRBR() throws Exception
     {
         if (true)
@@ -0,0 +1,81 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.extractor.mysql;
+
+import junit.framework.TestCase;
+
+/**
+ * Implements a simple unit test on the RelayEventBuffer class.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RelayEventBufferTest extends TestCase
+{
+    /**
+     * Verify that events are taken by position and that taking an event also
+     * drops older events.
+     */
+    public void testTake() throws Exception
+    {
+        RelayEventBuffer buffer = new RelayEventBuffer(1000);
+        buffer.put("mysql-bin.000077", 4, new byte[10]);
+        buffer.put("mysql-bin.000077", 14, new byte[20]);
+        buffer.put("mysql-bin.000078", 4, new byte[30]);
+        assertEquals("events buffered", 3, buffer.size());
+        assertEquals("bytes buffered", 60, buffer.getBytes());
+
+        // Missing positions return null.
+        assertNull("no event at offset", buffer.take("mysql-bin.000077", 5));
+        assertEquals("misses", 1, buffer.getMisses());
+
+        // Taking the second event drops the first.
+        byte[] event = buffer.take("mysql-bin.000077", 14);
+        assertNotNull("event found", event);
+        assertEquals("event length", 20, event.length);
+        assertEquals("events left", 1, buffer.size());
+        assertEquals("bytes left", 30, buffer.getBytes());
+        assertNull("older event dropped", buffer.take("mysql-bin.000077", 4));
+
+        event = buffer.take("mysql-bin.000078", 4);
+        assertEquals("event length", 30, event.length);
+        assertEquals("hits", 2, buffer.getHits());
+        assertEquals("empty", 0, buffer.getBytes());
+    }
+
+    /**
+     * Verify that the buffer drops the oldest events to stay within its size
+     * limit and ignores events that cannot fit at all.
+     */
+    public void testBound() throws Exception
+    {
+        RelayEventBuffer buffer = new RelayEventBuffer(100);
+        for (int i = 0; i < 10; i++)
+            buffer.put("mysql-bin.000001", 4 + i * 40, new byte[40]);
+        assertEquals("events kept", 2, buffer.size());
+        assertEquals("bytes kept", 80, buffer.getBytes());
+        assertNull("oldest dropped", buffer.take("mysql-bin.000001", 4));
+        assertNotNull("newest kept", buffer.take("mysql-bin.000001", 364));
+
+        buffer.put("mysql-bin.000001", 404, new byte[101]);
+        assertEquals("too large", 0, buffer.size());
+    }
+}
@@ -74,4 +74,35 @@ public class RelayLogPositionTest extends TestCase
         // Check when the value matches. 
         assertTrue("File and offset match", rlp2.hasReached("mysql-bin.000077", 2333308));
     }
-}
\ No newline at end of file
+
+    /**
+     * Verify that a thread waiting on the position wakes up when the position
+     * changes and times out when it does not.
+     */
+    public void testWaitForChange() throws Exception
+    {
+        final RelayLogPosition rlp = new RelayLogPosition();
+        final File f = new File("/var/lib/mysql/mysql-bin.000077");
+        rlp.setPosition(f, 4);
+        long changes = rlp.getChangeCount();
+
+        // With no writer we time out.
+        assertFalse("No change", rlp.waitForChange(changes, 10));
+
+        // A change from another thread wakes us up.
+        Thread writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                rlp.setPosition(f, 2333308);
+            }
+        });
+        writer.start();
+        assertTrue("Change seen", rlp.waitForChange(changes, 10000));
+        writer.join();
+        assertEquals("offset matches", 2333308, rlp.getOffset());
+
+        // A change that happened before we wait is seen at once.
+        assertTrue("Earlier change seen", rlp.waitForChange(changes, 0));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Initial developer(s): agent
+ * Contributor(s):
+ */
+
+package com.continuent.tungsten.replicator.extractor.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.extractor.ExtractorException;
+
+/**
+ * Implements a unit test on the RowDecodeQueue class.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RowDecodeQueueTest extends TestCase
+{
+    /**
+     * Verify that decodes finishing out of order fill their slots in place and
+     * are all complete once waitAll() returns.
+     */
+    public void testOrdering() throws Exception
+    {
+        RowDecodeQueue<Integer> queue = new RowDecodeQueue<Integer>(4, 16);
+        final int[] slots = new int[8];
+        final List<Integer> finished = Collections
+                .synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < slots.length; i++)
+        {
+            // Earlier decodes take longer, so they finish last.
+            final int slot = i;
+            queue.submit(new Callable<Integer>()
+            {
+                public Integer call() throws Exception
+                {
+                    Thread.sleep((slots.length - slot) * 20);
+                    slots[slot] = slot + 1;
+                    finished.add(slot);
+                    return slot;
+                }
+            });
+        }
+        queue.waitAll();
+
+        assertEquals("No pending decodes", 0, queue.getPending());
+        assertEquals("All decodes finished", slots.length, finished.size());
+        assertTrue("Decodes finished out of order",
+                finished.get(0).intValue() != 0);
+        for (int i = 0; i < slots.length; i++)
+            assertEquals("Slot decoded in place", i + 1, slots[i]);
+        queue.shutdown();
+    }
+
+    /**
+     * Verify that submitting beyond the bound waits for the oldest decode.
+     */
+    public void testBound() throws Exception
+    {
+        RowDecodeQueue<Integer> queue = new RowDecodeQueue<Integer>(1, 2);
+        for (int i = 0; i < 5; i++)
+        {
+            queue.submit(new Callable<Integer>()
+            {
+                public Integer call() throws Exception
+                {
+                    Thread.sleep(10);
+                    return 0;
+                }
+            });
+            assertTrue("Pending decodes bounded", queue.getPending() <= 2);
+        }
+        queue.waitAll();
+        queue.shutdown();
+    }
+
+    /**
+     * Verify that a decode failure is passed up by waitAll(), that replicator
+     * exceptions keep their type while others are wrapped, and that decodes
+     * after the failure are cancelled.
+     */
+    public void testFailure() throws Exception
+    {
+        RowDecodeQueue<Integer> queue = new RowDecodeQueue<Integer>(2, 16);
+        final ReplicatorException failure = new ReplicatorException(
+                "bad row image");
+        queue.submit(new Callable<Integer>()
+        {
+            public Integer call() throws Exception
+            {
+                throw failure;
+            }
+        });
+        for (int i = 0; i < 4; i++)
+        {
+            queue.submit(new Callable<Integer>()
+            {
+                public Integer call() throws Exception
+                {
+                    Thread.sleep(10000);
+                    return 0;
+                }
+            });
+        }
+        try
+        {
+            queue.waitAll();
+            fail("Decode failure not reported");
+        }
+        catch (ReplicatorException e)
+        {
+            assertSame("Decode failure passed up", failure, e);
+        }
+        assertEquals("Later decodes cancelled", 0, queue.getPending());
+
+        // Other exceptions are wrapped.
+        queue.submit(new Callable<Integer>()
+        {
+            public Integer call() throws Exception
+            {
+                throw new IllegalStateException("bad column");
+            }
+        });
+        try
+        {
+            queue.waitAll();
+            fail("Decode failure not reported");
+        }
+        catch (ExtractorException e)
+        {
+            assertTrue("Cause kept",
+                    e.getCause() instanceof IllegalStateException);
+        }
+        queue.shutdown();
+    }
+}
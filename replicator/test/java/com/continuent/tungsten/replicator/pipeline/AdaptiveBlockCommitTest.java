@@ -0,0 +1,115 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.pipeline;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.pipeline.AdaptiveBlockCommit.Decision;
+
+/**
+ * Tests block size decisions made by the adaptive block commit policy.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AdaptiveBlockCommitTest extends TestCase
+{
+    /**
+     * Verify that the block size doubles while the stage is backlogged and
+     * apply latency is not falling and never exceeds the maximum.
+     */
+    public void testGrowWhenBacklogged() throws Exception
+    {
+        AdaptiveBlockCommit abc = new AdaptiveBlockCommit(1, 10, 0);
+        Assert.assertEquals("starts at minimum", 1, abc.getBlockSize());
+
+        long latency = 100;
+        int[] expected = {2, 4, 8, 10};
+        for (int size : expected)
+        {
+            Assert.assertEquals("grows", Decision.grow,
+                    abc.commit(true, 10, latency++));
+            Assert.assertEquals("block size", size, abc.getBlockSize());
+        }
+
+        // At the maximum the size holds.
+        Assert.assertEquals("holds at max", Decision.hold,
+                abc.commit(true, 10, latency++));
+        Assert.assertEquals("block size", 10, abc.getBlockSize());
+    }
+
+    /**
+     * Verify that the block size holds while backlogged if apply latency is
+     * falling, since the current size is already catching up.
+     */
+    public void testHoldWhenLatencyFalling() throws Exception
+    {
+        AdaptiveBlockCommit abc = new AdaptiveBlockCommit(1, 100, 0);
+        abc.commit(true, 10, 1000);
+        abc.commit(true, 10, 2000);
+        Assert.assertEquals("block size", 4, abc.getBlockSize());
+
+        Assert.assertEquals("holds", Decision.hold,
+                abc.commit(true, 10, 1500));
+        Assert.assertEquals("block size", 4, abc.getBlockSize());
+    }
+
+    /**
+     * Verify that the block size halves toward the minimum when the stage is
+     * caught up or a block exceeds the target commit latency.
+     */
+    public void testShrink() throws Exception
+    {
+        AdaptiveBlockCommit abc = new AdaptiveBlockCommit(2, 64, 500);
+        for (int i = 0; i < 5; i++)
+            abc.commit(true, 10, 100 + i);
+        Assert.assertEquals("block size", 64, abc.getBlockSize());
+
+        // Block over target latency shrinks even with a backlog.
+        Assert.assertEquals("over target", Decision.shrink,
+                abc.commit(true, 501, 200));
+        Assert.assertEquals("block size", 32, abc.getBlockSize());
+
+        // Caught up shrinks down to the minimum.
+        int[] expected = {16, 8, 4, 2};
+        for (int size : expected)
+        {
+            Assert.assertEquals("caught up", Decision.shrink,
+                    abc.commit(false, 10, 0));
+            Assert.assertEquals("block size", size, abc.getBlockSize());
+        }
+        Assert.assertEquals("holds at min", Decision.hold,
+                abc.commit(false, 10, 0));
+        Assert.assertEquals("block size", 2, abc.getBlockSize());
+    }
+
+    /**
+     * Verify that out-of-range bounds are corrected.
+     */
+    public void testBounds() throws Exception
+    {
+        AdaptiveBlockCommit abc = new AdaptiveBlockCommit(0, 0, 0);
+        Assert.assertEquals("min at least 1", 1, abc.getBlockSize());
+        Assert.assertEquals("no growth", Decision.hold,
+                abc.commit(true, 10, 10));
+        Assert.assertEquals("block size", 1, abc.getBlockSize());
+    }
+}
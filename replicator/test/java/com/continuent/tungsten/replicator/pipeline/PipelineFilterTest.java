@@ -20,6 +20,8 @@
 
 package com.continuent.tungsten.replicator.pipeline;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -38,8 +40,11 @@ import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
+import com.continuent.tungsten.replicator.filter.Filter;
+import com.continuent.tungsten.replicator.filter.LoggingFilter;
 import com.continuent.tungsten.replicator.management.MockEventDispatcher;
 import com.continuent.tungsten.replicator.management.MockOpenReplicatorContext;
+import com.continuent.tungsten.replicator.plugin.PluginSpecification;
 import com.continuent.tungsten.replicator.storage.InMemoryQueueStore;
 
 /**
@@ -360,6 +365,182 @@ public class PipelineFilterTest extends TestCase
         }
     }
 
+    /**
+     * Verify that if a stage runs filters on filter threads, each thread gets
+     * its own filter instances and events come out in order with the same
+     * filtered events as a single-threaded stage.
+     */
+    public void testFilterThreads() throws Exception
+    {
+        SampleFilter.clearCounters();
+
+        // Create configuration with 4 filter threads and 3 fragments per
+        // transaction.
+        TungstenProperties config = helper.createDoubleQueueWithFilter(100, 10,
+                3, 1, true);
+        config.setString("replicator.stage.stage.filterThreads", "4");
+        config.setString("replicator.stage.stage.parallelFilters",
+                "sample-filter");
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        Pipeline pipeline = prepareAndStartPipeline(config, runtime);
+        assertEquals("configured", 4, SampleFilter.configured);
+        assertEquals("prepared", 4, SampleFilter.prepared);
+
+        // Insert fragmented events.
+        InMemoryQueueStore input = (InMemoryQueueStore) pipeline.getStore("q1");
+        for (int i = 0; i < 30; i++)
+        {
+            for (short fragNo = 0; fragNo < 3; fragNo++)
+            {
+                ReplDBMSEvent event = helper.createEvent(i, "db0", fragNo,
+                        fragNo == 2);
+                input.put(event);
+            }
+        }
+        verifyProcessedSeqno(pipeline, 29);
+
+        // Confirm events are in order and multiples of 3 are filtered.
+        InMemoryQueueStore output = (InMemoryQueueStore) pipeline
+                .getStore("q2");
+        long lastSeqno = -1;
+        short lastFragno = -1;
+        int filteredEvents = 0;
+        int nonFilteredEvents = 0;
+        boolean done = false;
+        while (!done)
+        {
+            ReplDBMSEvent event = output.poll();
+            assertNotNull("Expected to read non-null event (last seqno="
+                    + lastSeqno + ")", event);
+            long seqno = event.getSeqno();
+            if (seqno % 3 == 0)
+            {
+                assertTrue("Filtered event: " + seqno,
+                        event instanceof ReplDBMSFilteredEvent);
+                assertTrue("Seqno ascends: " + seqno, seqno > lastSeqno);
+                lastFragno = -1;
+                filteredEvents++;
+            }
+            else
+            {
+                assertFalse("Non-filtered event: " + seqno,
+                        event instanceof ReplDBMSFilteredEvent);
+                if (seqno == lastSeqno)
+                    assertEquals("Fragno ascends: " + seqno, lastFragno + 1,
+                            event.getFragno());
+                else
+                    assertEquals("First fragment: " + seqno, 0,
+                            event.getFragno());
+                lastFragno = event.getFragno();
+                nonFilteredEvents++;
+            }
+            lastSeqno = seqno;
+            done = (seqno >= 29 && event.getLastFrag());
+        }
+        assertEquals("Expected number of filtered events", 10, filteredEvents);
+        assertEquals("Expected number of non-filtered events", 60,
+                nonFilteredEvents);
+
+        // Shut down and confirm all filter instances are released.
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+        assertEquals("released", 4, SampleFilter.released);
+    }
+
+    /**
+     * Verify that filters run on the stage thread without worker copies
+     * unless they are named in the stage parallelFilters property, and that
+     * naming a filter that is not in the stage is an error.
+     */
+    public void testParallelFiltersProperty() throws Exception
+    {
+        SampleFilter.clearCounters();
+        TungstenProperties config = helper.createDoubleQueueWithFilter(100, 10,
+                3, 1, true);
+        config.setString("replicator.stage.stage.filterThreads", "4");
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        Pipeline pipeline = prepareAndStartPipeline(config, runtime);
+        assertEquals("configured", 1, SampleFilter.configured);
+
+        InMemoryQueueStore input = (InMemoryQueueStore) pipeline.getStore("q1");
+        for (int i = 0; i < 11; i++)
+            input.put(helper.createEvent(i, "db0"));
+        verifyProcessedSeqno(pipeline, 10);
+        InMemoryQueueStore output = (InMemoryQueueStore) pipeline
+                .getStore("q2");
+        for (int i = 0; i < 11; i++)
+        {
+            ReplDBMSEvent event = output.poll();
+            assertEquals("Seqno in order", i, event.getSeqno());
+            assertEquals("Filtered event: " + i, i % 3 == 0,
+                    event instanceof ReplDBMSFilteredEvent);
+        }
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+
+        // Unknown filter names are rejected.
+        config.setString("replicator.stage.stage.parallelFilters", "nosuch");
+        runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        try
+        {
+            runtime.configure();
+            fail("Unknown parallel filter accepted");
+        }
+        catch (ReplicatorException e)
+        {
+        }
+    }
+
+    /**
+     * Verify that only filters named as parallel filters ahead of the first
+     * filter that is not named or is a serial filter may run on filter
+     * threads.
+     */
+    public void testCountParallelFilters() throws Exception
+    {
+        List<Filter> filters = new ArrayList<Filter>();
+        List<PluginSpecification> specs = new ArrayList<PluginSpecification>();
+        List<String> parallelFilters = new ArrayList<String>();
+        assertEquals("No filters", 0, FilterThreadPool.countParallelFilters(
+                filters, specs, parallelFilters));
+        filters.add(new SampleFilter());
+        filters.add(new SampleFilter());
+        filters.add(new LoggingFilter());
+        filters.add(new SampleFilter());
+        for (int i = 0; i < filters.size(); i++)
+        {
+            specs.add(new PluginSpecification("filter" + i, "filter" + i,
+                    filters.get(i).getClass(), new TungstenProperties()));
+        }
+        assertEquals("No parallel filters", 0,
+                FilterThreadPool.countParallelFilters(filters, specs,
+                        parallelFilters));
+
+        parallelFilters.add("filter0");
+        assertEquals("First filter parallel", 1,
+                FilterThreadPool.countParallelFilters(filters, specs,
+                        parallelFilters));
+        parallelFilters.add("filter2");
+        parallelFilters.add("filter3");
+        assertEquals("Second filter not parallel", 1,
+                FilterThreadPool.countParallelFilters(filters, specs,
+                        parallelFilters));
+        parallelFilters.add("filter1");
+        assertEquals("Serial filter third", 2,
+                FilterThreadPool.countParallelFilters(filters, specs,
+                        parallelFilters));
+        parallelFilters.remove("filter0");
+        assertEquals("First filter not parallel", 0,
+                FilterThreadPool.countParallelFilters(filters, specs,
+                        parallelFilters));
+    }
+
     // Starting with configuration properties and a runtime as input, prepare
     // and start a pipeline.
     private Pipeline prepareAndStartPipeline(TungstenProperties config,
@@ -35,6 +35,7 @@ import org.junit.After;
 import org.junit.Before;
 
 import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.applier.ApplierWrapper;
 import com.continuent.tungsten.replicator.applier.DummyApplier;
 import com.continuent.tungsten.replicator.applier.RawApplier;
@@ -50,6 +51,7 @@ import com.continuent.tungsten.replicator.management.MockEventDispatcher;
 import com.continuent.tungsten.replicator.management.MockOpenReplicatorContext;
 import com.continuent.tungsten.replicator.service.PipelineService;
 import com.continuent.tungsten.replicator.storage.InMemoryQueueStore;
+import com.continuent.tungsten.replicator.storage.RingBufferQueueStore;
 
 /**
  * This class implements a test of the Pipeline class.
@@ -718,6 +720,138 @@ public class PipelineTest extends TestCase
         checkBlockCommitSemantics(events, BlockCommitPolicy.strict, false, null);
     }
 
+    /**
+     * Verify that adaptive block commit starts with small blocks and grows
+     * them while the stage has a backlog, without exceeding the block commit
+     * row count.
+     */
+    public void testAdaptiveBlockCommit() throws Exception
+    {
+        // Create a pipeline with a backlog of events and adaptive block
+        // commit.
+        int eventCount = 100;
+        TungstenProperties config = helper.createDoubleQueueRuntime(
+                eventCount, 16, 0);
+        config.setProperty("replicator.stage.stage.blockCommitPolicy",
+                BlockCommitPolicy.adaptive.toString());
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        Pipeline pipeline = runtime.getPipeline();
+
+        InMemoryQueueStore q1 = (InMemoryQueueStore) pipeline.getStore("q1");
+        for (int seqno = 0; seqno < eventCount; seqno++)
+        {
+            ReplDBMSEvent event = helper.createEvent(seqno, "db01");
+            if (seqno == eventCount - 1)
+                event.getDBMSEvent().setMetaDataOption(
+                        ReplOptionParams.FORCE_COMMIT, "true");
+            q1.put(event);
+        }
+
+        // Start the pipeline and wait for the last event to commit.
+        pipeline.start(new MockEventDispatcher());
+        Future<ReplDBMSHeader> future = pipeline
+                .watchForCommittedSequenceNumber(eventCount - 1, false);
+        ReplDBMSHeader matchingEvent = future.get(5, TimeUnit.SECONDS);
+        assertEquals("Applied sequence number matches", eventCount - 1,
+                matchingEvent.getSeqno());
+
+        // Blocks must have grown from 1 up to but not beyond the maximum.
+        TaskProgress progress = pipeline.getStages().get(0)
+                .getProgressTracker().getTaskProgress(0);
+        logger.info("Adaptive block commit: blocks=" + progress.getBlockCount()
+                + " size=" + progress.getAdaptiveBlockSize() + " increases="
+                + progress.getAdaptiveBlockIncreases());
+        Assert.assertTrue("More than one block", progress.getBlockCount() > 1);
+        Assert.assertTrue("Fewer blocks than events",
+                progress.getBlockCount() < eventCount);
+        Assert.assertTrue("Block size increased",
+                progress.getAdaptiveBlockIncreases() > 0);
+        Assert.assertTrue("Block size within bounds",
+                progress.getAdaptiveBlockSize() >= 1
+                        && progress.getAdaptiveBlockSize() <= 16);
+
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+    }
+
+    /**
+     * Verify that ring buffer stores can replace in-memory queues between
+     * stages and that block commit still occurs when the input is empty.
+     */
+    public void testRingBufferStores() throws Exception
+    {
+        int eventCount = 100;
+        TungstenProperties config = helper.createDoubleQueueRuntime(
+                eventCount, 16, 0);
+        config.setProperty("replicator.store.q1",
+                RingBufferQueueStore.class.getName());
+        config.setProperty("replicator.store.q1.waitStrategy", "yield");
+        config.setProperty("replicator.store.q2",
+                RingBufferQueueStore.class.getName());
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        Pipeline pipeline = runtime.getPipeline();
+
+        // Load half the events, start the pipeline, then load the rest.
+        RingBufferQueueStore q1 = (RingBufferQueueStore) pipeline
+                .getStore("q1");
+        RingBufferQueueStore q2 = (RingBufferQueueStore) pipeline
+                .getStore("q2");
+        for (int seqno = 0; seqno < eventCount / 2; seqno++)
+            q1.put(helper.createEvent(seqno, "db01"));
+        pipeline.start(new MockEventDispatcher());
+        for (int seqno = eventCount / 2; seqno < eventCount; seqno++)
+            q1.put(helper.createEvent(seqno, "db01"));
+
+        // The last event commits once the input is empty.
+        Future<ReplDBMSHeader> future = pipeline
+                .watchForCommittedSequenceNumber(eventCount - 1, false);
+        ReplDBMSHeader matchingEvent = future.get(5, TimeUnit.SECONDS);
+        assertEquals("Applied sequence number matches", eventCount - 1,
+                matchingEvent.getSeqno());
+
+        // Events arrive on the output in order.
+        for (int seqno = 0; seqno < eventCount; seqno++)
+            assertEquals("Output seqno", seqno, q2.poll().getSeqno());
+        assertNull("Output empty", q2.poll());
+
+        pipeline.shutdown(false);
+        pipeline.release(runtime);
+    }
+
+    /**
+     * Verify that a ring buffer store cannot be used by a stage that runs
+     * more than one task.
+     */
+    public void testRingBufferStoreMultipleTasks() throws Exception
+    {
+        TungstenProperties config = helper.createDoubleQueueRuntime(100, 1, 0);
+        config.setProperty("replicator.store.q1",
+                RingBufferQueueStore.class.getName());
+        config.setProperty("replicator.stage.stage.taskCount", "2");
+        ReplicatorRuntime runtime = new ReplicatorRuntime(config,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        try
+        {
+            runtime.prepare();
+            fail("Prepared ring buffer store used by two tasks");
+        }
+        catch (ReplicatorException e)
+        {
+            logger.info("Expected exception: " + e.getMessage());
+        }
+        runtime.release();
+    }
+
     /**
      * Confirm that a given queue of inputs either commits as a single block or
      * not. We do this by preloading the events to the pipeline then counting
@@ -0,0 +1,157 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.store;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.StatementData;
+import com.continuent.tungsten.replicator.event.DBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.storage.QueueMemoryBudget;
+
+/**
+ * Tests memory accounting and blocking on queue memory budgets.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class QueueMemoryBudgetTest extends TestCase
+{
+    /**
+     * Verify that budgets track current and peak bytes and that an empty
+     * budget admits an event larger than its limit.
+     */
+    public void testAccounting() throws Exception
+    {
+        QueueMemoryBudget budget = new QueueMemoryBudget("q", 100, null);
+        budget.acquire(60);
+        budget.acquire(40);
+        assertEquals("current", 100, budget.getCurrentBytes());
+        budget.release(60);
+        budget.release(40);
+        assertEquals("empty", 0, budget.getCurrentBytes());
+
+        budget.acquire(500);
+        assertEquals("oversized event admitted", 500, budget.getCurrentBytes());
+        assertEquals("peak", 500, budget.getPeakBytes());
+        budget.clear();
+        assertEquals("cleared", 0, budget.getCurrentBytes());
+    }
+
+    /**
+     * Verify that a producer blocks when the queue budget is full and resumes
+     * when bytes are released.
+     */
+    public void testBlocking() throws Exception
+    {
+        final QueueMemoryBudget budget = new QueueMemoryBudget("q", 100, null);
+        budget.acquire(80);
+        Thread producer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    budget.acquire(50);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("producer is blocked", producer.isAlive());
+        assertEquals("no extra bytes", 80, budget.getCurrentBytes());
+
+        budget.release(80);
+        producer.join(10000);
+        assertFalse("producer finished", producer.isAlive());
+        assertEquals("bytes after release", 50, budget.getCurrentBytes());
+    }
+
+    /**
+     * Verify that a shared pipeline budget blocks a queue that holds events
+     * and counts bytes from all queues, but admits an event into an empty
+     * queue.
+     */
+    public void testPipelineBudget() throws Exception
+    {
+        QueueMemoryBudget pipeline = new QueueMemoryBudget("p", 100, null);
+        final QueueMemoryBudget q1 = new QueueMemoryBudget("q1", 0, pipeline);
+        QueueMemoryBudget q2 = new QueueMemoryBudget("q2", 0, pipeline);
+
+        q1.acquire(70);
+        q2.acquire(50);
+        assertEquals("pipeline bytes", 120, pipeline.getCurrentBytes());
+
+        Thread producer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    q1.acquire(20);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("producer is blocked", producer.isAlive());
+
+        q2.release(50);
+        producer.join(10000);
+        assertFalse("producer finished", producer.isAlive());
+        assertEquals("q1 bytes", 90, q1.getCurrentBytes());
+        assertEquals("pipeline bytes", 90, pipeline.getCurrentBytes());
+        assertEquals("pipeline peak", 120, pipeline.getPeakBytes());
+
+        q1.clear();
+        assertEquals("pipeline empty", 0, pipeline.getCurrentBytes());
+    }
+
+    /**
+     * Verify that events estimate their size once from their data.
+     */
+    public void testEventSizeEstimate() throws Exception
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 1000; i++)
+            sb.append("x");
+        ArrayList<DBMSData> data = new ArrayList<DBMSData>();
+        data.add(new StatementData(sb.toString(), null, "test"));
+        DBMSEvent dbmsEvent = new DBMSEvent("1", data, new Timestamp(
+                System.currentTimeMillis()));
+        ReplDBMSEvent event = new ReplDBMSEvent(1, dbmsEvent);
+
+        int size = event.getEstimatedSize();
+        assertTrue("size includes statement", size > 1000 && size < 2000);
+        data.add(new StatementData(sb.toString(), null, "test"));
+        assertEquals("size is computed once", size, event.getEstimatedSize());
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.store;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.common.config.TungstenProperties;
+import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.conf.ReplicatorConf;
+import com.continuent.tungsten.replicator.conf.ReplicatorMonitor;
+import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.StatementData;
+import com.continuent.tungsten.replicator.event.DBMSEvent;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.management.MockOpenReplicatorContext;
+import com.continuent.tungsten.replicator.pipeline.PipelineConfigBuilder;
+import com.continuent.tungsten.replicator.plugin.PluginContext;
+import com.continuent.tungsten.replicator.storage.RingBufferQueueStore;
+
+/**
+ * Tests ordering, blocking, and wait strategies of the ring buffer store.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RingBufferQueueStoreTest extends TestCase
+{
+    private PluginContext context;
+
+    /**
+     * Create a context for store configuration.
+     */
+    public void setUp() throws Exception
+    {
+        PipelineConfigBuilder builder = new PipelineConfigBuilder();
+        builder.setProperty(ReplicatorConf.SERVICE_NAME, "ringService");
+        builder.setProperty(ReplicatorConf.METADATA_SCHEMA, "tungsten");
+        context = new ReplicatorRuntime(builder.getConfig(),
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+    }
+
+    /**
+     * Verify that capacity is rounded up to a power of two and that events
+     * come out in order as the buffer wraps around.
+     */
+    public void testOrderAndWrap() throws Exception
+    {
+        RingBufferQueueStore store = createStore(5, "park");
+        assertEquals("capacity is power of two", 8, store.getCapacity());
+        assertNull("empty peek", store.peek());
+        assertNull("empty poll", store.poll());
+
+        long nextIn = 0;
+        long nextOut = 0;
+        for (int round = 0; round < 10; round++)
+        {
+            for (int i = 0; i < 6; i++)
+                store.put(createEvent(nextIn++));
+            assertEquals("size after puts", 6, store.size());
+            assertEquals("peek", nextOut, store.peek().getSeqno());
+            for (int i = 0; i < 6; i++)
+                assertEquals("seqno", nextOut++, store.get().getSeqno());
+            assertEquals("size after gets", 0, store.size());
+        }
+
+        TungstenProperties status = store.status();
+        assertEquals("event count", 60, status.getLong("eventCount"));
+        assertEquals("capacity", 8, status.getLong("capacity"));
+        store.release(context);
+    }
+
+    /**
+     * Verify that a producer waits when the buffer is full and that a waiting
+     * consumer can be interrupted.
+     */
+    public void testBlockingAndInterrupt() throws Exception
+    {
+        final RingBufferQueueStore store = createStore(2, "park");
+        store.put(createEvent(0));
+        store.put(createEvent(1));
+
+        Thread producer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    store.put(createEvent(2));
+                }
+                catch (Exception e)
+                {
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("producer is blocked", producer.isAlive());
+
+        assertEquals("first event", 0, store.get().getSeqno());
+        producer.join(10000);
+        assertFalse("producer finished", producer.isAlive());
+        assertEquals("second event", 1, store.get().getSeqno());
+        assertEquals("third event", 2, store.get().getSeqno());
+
+        final boolean[] interrupted = new boolean[1];
+        Thread consumer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    store.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted[0] = true;
+                }
+            }
+        });
+        consumer.start();
+        consumer.join(200);
+        assertTrue("consumer is blocked", consumer.isAlive());
+        consumer.interrupt();
+        consumer.join(10000);
+        assertTrue("consumer was interrupted", interrupted[0]);
+        store.release(context);
+    }
+
+    /**
+     * Verify that each wait strategy hands off a stream of events between two
+     * threads without loss or reordering.
+     */
+    public void testWaitStrategies() throws Exception
+    {
+        String[] strategies = {"spin", "yield", "park"};
+        for (String strategy : strategies)
+        {
+            final RingBufferQueueStore store = createStore(16, strategy);
+            final int events = 100000;
+            Thread producer = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < events; i++)
+                            store.put(createEvent(i));
+                    }
+                    catch (Exception e)
+                    {
+                    }
+                }
+            });
+            producer.start();
+
+            for (int i = 0; i < events; i++)
+            {
+                assertEquals("seqno in order: strategy=" + strategy, i, store
+                        .get().getSeqno());
+            }
+            producer.join(10000);
+            assertFalse("producer finished", producer.isAlive());
+            assertEquals("buffer empty", 0, store.size());
+            store.release(context);
+        }
+    }
+
+    /**
+     * Verify that an unknown wait strategy is rejected.
+     */
+    public void testInvalidStrategy() throws Exception
+    {
+        RingBufferQueueStore store = new RingBufferQueueStore();
+        store.setName("ring");
+        store.setMaxSize(4);
+        store.setWaitStrategy("sleep");
+        try
+        {
+            store.configure(context);
+            fail("Configured store with invalid wait strategy");
+        }
+        catch (ReplicatorException e)
+        {
+        }
+    }
+
+    // Returns a configured and prepared store.
+    private RingBufferQueueStore createStore(int maxSize, String strategy)
+            throws Exception
+    {
+        RingBufferQueueStore store = new RingBufferQueueStore();
+        store.setName("ring");
+        store.setMaxSize(maxSize);
+        store.setWaitStrategy(strategy);
+        store.configure(context);
+        store.prepare(context);
+        return store;
+    }
+
+    // Returns a simple event with the given seqno.
+    private ReplDBMSEvent createEvent(long seqno)
+    {
+        ArrayList<DBMSData> t = new ArrayList<DBMSData>();
+        t.add(new StatementData("SELECT 1"));
+        DBMSEvent dbmsEvent = new DBMSEvent(new Long(seqno).toString(), null,
+                t, true, new Timestamp(System.currentTimeMillis()));
+        return new ReplDBMSEvent(seqno, dbmsEvent);
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.store.parallel;
+
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.event.EventGenerationHelper;
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.storage.parallel.PartitionerResponse;
+import com.continuent.tungsten.replicator.storage.parallel.RowDependencyPartitioner;
+
+/**
+ * Tests assignment of transactions by the row dependency partitioner.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class RowDependencyPartitionerTest extends TestCase
+{
+    private static final String[] NAMES  = {"id"};
+
+    private EventGenerationHelper helper = new EventGenerationHelper();
+
+    /** Partitioner whose committed seqno is set by the test. */
+    class TestPartitioner extends RowDependencyPartitioner
+    {
+        long committedSeqno = -1;
+
+        protected long getCommittedSeqno()
+        {
+            return committedSeqno;
+        }
+    }
+
+    /**
+     * Verify that transactions on different rows of the same schema are spread
+     * across partitions without serialization and that assignments are the
+     * same for a new partitioner instance, as happens after restart.
+     */
+    public void testNonConflictingRows() throws Exception
+    {
+        TestPartitioner p1 = createPartitioner(4);
+        TestPartitioner p2 = createPartitioner(4);
+        boolean[] used = new boolean[4];
+        for (int i = 0; i < 40; i++)
+        {
+            ReplDBMSEvent event = rowEvent(i, "t1", i);
+            PartitionerResponse r1 = p1.partition(event, 0);
+            PartitionerResponse r2 = p2.partition(event, 0);
+            assertFalse("Distinct rows are not critical", r1.isCritical());
+            assertEquals("Assignment is deterministic", r1.getPartition(),
+                    r2.getPartition());
+            used[r1.getPartition()] = true;
+        }
+        for (int i = 0; i < used.length; i++)
+        {
+            assertTrue("Partition is used: " + i, used[i]);
+        }
+        assertEquals("No serialization", 0, p1.getSerialCount());
+        assertEquals("All keys in flight", 40, p1.getInFlightKeys());
+    }
+
+    /**
+     * Verify that a transaction touching a row in flight on another partition
+     * is serialized, whereas a transaction on the same row assigned to the same
+     * partition is not.
+     */
+    public void testConflictingRows() throws Exception
+    {
+        TestPartitioner p = createPartitioner(4);
+
+        // Find two keys that hash to different partitions.
+        PartitionerResponse r0 = p.partition(rowEvent(0, "t1", 0), 0);
+        int other = 1;
+        while (createPartitioner(4).partition(rowEvent(1, "t1", other), 0)
+                .getPartition() == r0.getPartition())
+        {
+            other++;
+        }
+
+        // Same row, same partition.
+        PartitionerResponse r1 = p.partition(rowEvent(1, "t1", 0), 0);
+        assertFalse("Same row on same partition is not critical",
+                r1.isCritical());
+        assertEquals("Same partition", r0.getPartition(), r1.getPartition());
+
+        // A transaction whose first key is elsewhere but which also touches
+        // row 0 must serialize.
+        ReplDBMSEvent event = rowEvent(2, "t1", other, 0);
+        PartitionerResponse r2 = p.partition(event, 0);
+        assertTrue("Conflicting transaction is critical", r2.isCritical());
+        assertEquals("Conflict counted", 1, p.getConflictCount());
+        assertEquals("Keys cleared after serialization", 0,
+                p.getInFlightKeys());
+
+        // The same row in another table is not a conflict.
+        PartitionerResponse r3 = p.partition(rowEvent(3, "t2", 0), 0);
+        assertFalse("Different table is not critical", r3.isCritical());
+    }
+
+    /**
+     * Verify that keys are released once their transactions commit so that
+     * later transactions no longer conflict with them.
+     */
+    public void testCommittedRelease() throws Exception
+    {
+        TestPartitioner p = createPartitioner(4);
+        PartitionerResponse r0 = p.partition(rowEvent(0, "t1", 0), 0);
+        int other = 1;
+        while (createPartitioner(4).partition(rowEvent(1, "t1", other), 0)
+                .getPartition() == r0.getPartition())
+        {
+            other++;
+        }
+        p.partition(rowEvent(1, "t1", 1000), 0);
+        assertEquals("Two keys in flight", 2, p.getInFlightKeys());
+
+        // Commit the first transaction only.
+        p.committedSeqno = 0;
+        PartitionerResponse r2 = p.partition(rowEvent(2, "t1", other, 0), 0);
+        assertFalse("Committed key does not conflict", r2.isCritical());
+        assertEquals("Committed key released", 3, p.getInFlightKeys());
+    }
+
+    /**
+     * Verify that statements, keyless row changes, and fragmented transactions
+     * are serialized and that all fragments of a transaction go to the same
+     * partition.
+     */
+    public void testSerializedTransactions() throws Exception
+    {
+        TestPartitioner p = createPartitioner(4);
+
+        PartitionerResponse r0 = p.partition(
+                helper.eventFromStatement(0, "db", "create table t3 (i int)"),
+                0);
+        assertTrue("Statement is critical", r0.isCritical());
+        assertEquals("Statement goes to partition 0", 0, r0.getPartition());
+
+        PartitionerResponse r1 = p.partition(helper.eventFromRowInsert(1,
+                "db", "t3", NAMES, new Object[]{"1"}, 0, true), 0);
+        assertTrue("Keyless row change is critical", r1.isCritical());
+
+        PartitionerResponse r2 = p.partition(helper.eventFromRowDelete(2,
+                "db", "t1", NAMES, new Object[]{"5"}, 0, false), 0);
+        PartitionerResponse r3 = p.partition(helper.eventFromRowDelete(2,
+                "db", "t1", NAMES, new Object[]{"6"}, 1, true), 0);
+        assertTrue("Fragmented transaction is critical", r2.isCritical());
+        assertEquals("Fragments share partition", r2.getPartition(),
+                r3.getPartition());
+        assertEquals("Serialized count", 3, p.getSerialCount());
+    }
+
+    /**
+     * Verify that reaching the maximum number of tracked keys serializes the
+     * next transaction, which clears the tracked keys.
+     */
+    public void testMaxKeys() throws Exception
+    {
+        TestPartitioner p = createPartitioner(4);
+        p.setMaxKeys(10);
+        for (int i = 0; i < 10; i++)
+        {
+            assertFalse("Within key limit",
+                    p.partition(rowEvent(i, "t1", i), 0).isCritical());
+        }
+        assertTrue("Key limit exceeded",
+                p.partition(rowEvent(10, "t1", 10), 0).isCritical());
+        assertEquals("Keys cleared", 0, p.getInFlightKeys());
+    }
+
+    // Create a partitioner with the given number of partitions.
+    private TestPartitioner createPartitioner(int partitions)
+    {
+        TestPartitioner partitioner = new TestPartitioner();
+        partitioner.setPartitions(partitions);
+        return partitioner;
+    }
+
+    // Generate a transaction that deletes one or more rows by key.
+    private ReplDBMSEvent rowEvent(long seqno, String table, int... ids)
+    {
+        ReplDBMSEvent event = null;
+        for (int id : ids)
+        {
+            ReplDBMSEvent next = helper.eventFromRowDelete(seqno, "db", table,
+                    NAMES, new Object[]{id}, 0, true);
+            if (event == null)
+                event = next;
+            else
+                event.getData().add(next.getData().get(0));
+        }
+        return event;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *      
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * Initial developer(s): agent
+ * Contributor(s): 
+ */
+
+package com.continuent.tungsten.replicator.thl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
+
+/**
+ * Tests encoding and decoding of THL protocol messages as binary frames.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class ProtocolFrameCodecTest extends TestCase
+{
+    private THLParallelQueueHelper helper = new THLParallelQueueHelper();
+
+    /**
+     * Verify that event requests, heartbeats, and errors survive a round trip.
+     */
+    public void testControlMessages() throws Exception
+    {
+        ProtocolMessage[] messages = roundTrip(new ProtocolReplEventRequest(
+                42, 100), new ProtocolHeartbeat(), new ProtocolNOK(
+                "failed to find seqno"));
+
+        ProtocolReplEventRequest request = (ProtocolReplEventRequest) messages[0];
+        assertEquals("request seqno", 42, request.getSeqNo());
+        assertEquals("request prefetch", 100, request.getPrefetchRange());
+        assertTrue("heartbeat", messages[1] instanceof ProtocolHeartbeat);
+        assertTrue("error", messages[2] instanceof ProtocolNOK);
+        assertEquals("error message", "failed to find seqno",
+                messages[2].getPayload());
+    }
+
+    /**
+     * Verify that replication events and raw log records survive a round trip
+     * both as individual messages and within a batch.
+     */
+    public void testEventsAndRecords() throws Exception
+    {
+        ReplDBMSEvent event = helper.createEvent(7, "db1");
+        byte[] data = new byte[]{1, 2, 3, 4, 5};
+        LogRecord record = new LogRecord(null, -1, data,
+                LogRecord.CRC_TYPE_32, 99);
+
+        ArrayList<Serializable> batch = new ArrayList<Serializable>();
+        batch.add(helper.createEvent(8, "db2"));
+        batch.add(new ProtocolReplRecord(record));
+        batch.add("not an event");
+
+        ProtocolMessage[] messages = roundTrip(new ProtocolReplEvent(event),
+                new ProtocolReplRecord(record), new ProtocolMessage(batch));
+
+        ReplDBMSEvent event2 = (ReplDBMSEvent) ((ProtocolReplEvent) messages[0])
+                .getReplEvent();
+        assertEquals("event seqno", 7, event2.getSeqno());
+        assertEquals("event shard", "db1", event2.getShardId());
+        assertCopy(record, ((ProtocolReplRecord) messages[1]).getLogRecord());
+
+        ArrayList<?> batch2 = (ArrayList<?>) messages[2].getPayload();
+        assertEquals("batch size", 3, batch2.size());
+        assertEquals("batch event seqno", 8,
+                ((ReplDBMSEvent) batch2.get(0)).getSeqno());
+        assertCopy(record, ((ProtocolReplRecord) batch2.get(1)).getLogRecord());
+        assertEquals("batch object", "not an event", batch2.get(2));
+    }
+
+    /**
+     * Verify that each compressor restores repetitive, random, and empty data
+     * exactly and that repetitive data actually compress.
+     */
+    public void testCompressors() throws Exception
+    {
+        ProtocolCompressor[] compressors = {new LZProtocolCompressor(),
+                new DeflateProtocolCompressor()};
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 500; i++)
+            sb.append("insert into test.foo values(").append(i)
+                    .append(", 'some repeated text')\n");
+        byte[] repetitive = sb.toString().getBytes("UTF-8");
+        byte[] random = new byte[10000];
+        new Random(42).nextBytes(random);
+
+        for (ProtocolCompressor compressor : compressors)
+        {
+            String name = compressor.getName();
+            byte[] compressed = compressor.compress(repetitive,
+                    repetitive.length);
+            assertTrue("Repetitive data compress: " + name,
+                    compressed.length < repetitive.length / 4);
+            assertCopy(name, repetitive, compressor.decompress(compressed, 0,
+                    compressed.length, repetitive.length));
+
+            compressed = compressor.compress(random, random.length);
+            assertCopy(name, random, compressor.decompress(compressed, 0,
+                    compressed.length, random.length));
+
+            compressed = compressor.compress(new byte[0], 0);
+            assertEquals("Empty data: " + name, 0, compressor.decompress(
+                    compressed, 0, compressed.length, 0).length);
+            compressor.close();
+        }
+    }
+
+    /**
+     * Verify that batches round trip through compressed frames and that
+     * statistics show fewer compressed than raw bytes.
+     */
+    public void testCompressedFrames() throws Exception
+    {
+        String[] names = {LZProtocolCompressor.NAME,
+                DeflateProtocolCompressor.NAME};
+        for (String name : names)
+        {
+            ArrayList<Serializable> batch = new ArrayList<Serializable>();
+            for (int i = 0; i < 20; i++)
+                batch.add(helper.createEvent(i, "db" + (i % 2)));
+
+            ProtocolCompressionStats stats = new ProtocolCompressionStats();
+            ProtocolMessage[] messages = roundTrip(
+                    Protocol.createCompressor(name), stats,
+                    new ProtocolMessage(batch), new ProtocolHeartbeat());
+
+            ArrayList<?> batch2 = (ArrayList<?>) messages[0].getPayload();
+            assertEquals("batch size: " + name, 20, batch2.size());
+            for (int i = 0; i < 20; i++)
+            {
+                ReplDBMSEvent event = (ReplDBMSEvent) batch2.get(i);
+                assertEquals("seqno: " + name, i, event.getSeqno());
+                assertEquals("shard: " + name, "db" + (i % 2),
+                        event.getShardId());
+            }
+            assertTrue("heartbeat: " + name,
+                    messages[1] instanceof ProtocolHeartbeat);
+            assertTrue("compressed bytes: " + name,
+                    stats.getCompressedBytes() < stats.getRawBytes());
+        }
+        assertNull("no compressor", Protocol.createCompressor("none"));
+    }
+
+    // Writes messages to a buffer and reads them back.
+    private ProtocolMessage[] roundTrip(ProtocolMessage... messages)
+            throws Exception
+    {
+        return roundTrip(null, null, messages);
+    }
+
+    // Writes messages to a buffer using a compressor and reads them back.
+    private ProtocolMessage[] roundTrip(ProtocolCompressor compressor,
+            ProtocolCompressionStats stats, ProtocolMessage... messages)
+            throws Exception
+    {
+        ProtocolFrameCodec codec = new ProtocolFrameCodec();
+        codec.setCompressor(compressor);
+        codec.setStats(stats);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (ProtocolMessage msg : messages)
+            codec.write(msg, dos);
+        dos.flush();
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                baos.toByteArray()));
+        ProtocolMessage[] results = new ProtocolMessage[messages.length];
+        for (int i = 0; i < messages.length; i++)
+            results[i] = codec.read(dis);
+        assertEquals("all frames consumed", 0, dis.available());
+        return results;
+    }
+
+    // Confirms data were restored exactly.
+    private void assertCopy(String name, byte[] expected, byte[] actual)
+    {
+        assertTrue("data match: " + name, Arrays.equals(expected, actual));
+    }
+
+    // Confirms a log record was copied exactly.
+    private void assertCopy(LogRecord expected, LogRecord actual)
+    {
+        assertTrue("record data",
+                Arrays.equals(expected.getData(), actual.getData()));
+        assertEquals("crc type", expected.getCrcType(), actual.getCrcType());
+        assertEquals("crc", expected.getCrc(), actual.getCrc());
+    }
+}
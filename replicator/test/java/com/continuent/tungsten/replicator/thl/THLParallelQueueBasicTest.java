@@ -40,6 +40,7 @@ import com.continuent.tungsten.common.config.TungstenProperties;
 import com.continuent.tungsten.replicator.ReplicatorException;
 import com.continuent.tungsten.replicator.conf.ReplicatorMonitor;
 import com.continuent.tungsten.replicator.conf.ReplicatorRuntime;
+import com.continuent.tungsten.replicator.event.EventGenerationHelper;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSHeader;
@@ -52,6 +53,7 @@ import com.continuent.tungsten.replicator.storage.CommitAction;
 import com.continuent.tungsten.replicator.storage.InMemoryMultiQueue;
 import com.continuent.tungsten.replicator.storage.InMemoryTransactionalQueue;
 import com.continuent.tungsten.replicator.storage.Store;
+import com.continuent.tungsten.replicator.storage.parallel.RowDependencyPartitioner;
 import com.continuent.tungsten.replicator.thl.log.LogConnection;
 
 /**
@@ -267,6 +269,162 @@ public class THLParallelQueueBasicTest
         }
     }
 
+    /**
+     * Verify that a parallel THL queue using a single shared reader assigns
+     * each event to the correct channel exactly as per-channel readers do,
+     * including events that are fragmented.
+     */
+    @Test
+    public void testMultiChannelSharedReader() throws Exception
+    {
+        logger.info("##### testMultiChannelSharedReader #####");
+
+        // Set up and prepare pipeline with the shared reader enabled.
+        TungstenProperties conf = helper.generateTHLParallelPipeline(
+                "testMultiChannelSharedReader", 3, 50, 100, true);
+        conf.setString("replicator.store.thl-queue.sharedReader", "true");
+        runtime = new ReplicatorRuntime(conf, new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        pipeline = runtime.getPipeline();
+        pipeline.start(new MockEventDispatcher());
+
+        // Fetch references to stores.
+        THL thl = (THL) pipeline.getStore("thl");
+        THLParallelQueue tpq = (THLParallelQueue) pipeline
+                .getStore("thl-queue");
+        InMemoryMultiQueue mq = (InMemoryMultiQueue) pipeline
+                .getStore("multi-queue");
+        Assert.assertTrue("Shared reader is enabled", tpq.isSharedReader());
+
+        // Write events to the THL with three different shard IDs. Every
+        // tenth transaction is split into two fragments.
+        LogConnection conn = thl.connect(false);
+        for (int i = 0; i < 90; i++)
+        {
+            String shardId = "db" + (i % 3);
+            if (i % 10 == 0)
+            {
+                ReplDBMSEvent rde1 = helper.createEvent(i, (short) 0, false,
+                        shardId);
+                conn.store(new THLEvent(rde1.getSourceId(), rde1), false);
+                ReplDBMSEvent rde2 = helper.createEvent(i, (short) 1, true,
+                        shardId);
+                conn.store(new THLEvent(rde2.getSourceId(), rde2), false);
+            }
+            else
+            {
+                ReplDBMSEvent rde = helper.createEvent(i, shardId);
+                conn.store(new THLEvent(rde.getSourceId(), rde), false);
+            }
+        }
+        conn.commit();
+        thl.disconnect(conn);
+
+        // Confirm that each parallel queue on the other side gets 30
+        // transactions in order and that fragments arrive together.
+        for (int q = 0; q < 3; q++)
+        {
+            long seqno = -1;
+            String shardId = "db" + q;
+            int transactions = 0;
+            while (transactions < 30)
+            {
+                ReplDBMSEvent rde2 = (ReplDBMSEvent) mq.get(q);
+                Assert.assertTrue("Seqno does not decrease due to partial order",
+                        rde2.getSeqno() >= seqno);
+                Assert.assertEquals("Shard ID matches queue", shardId,
+                        rde2.getShardId());
+                if (rde2.getLastFrag())
+                    transactions++;
+                seqno = rde2.getSeqno();
+            }
+        }
+    }
+
+    /**
+     * Verify that a stateful row dependency partitioner spreads row changes
+     * on a single schema across channels when using a shared reader and that
+     * the same partitioner is rejected without a shared reader.
+     */
+    @Test
+    public void testMultiChannelRowDependency() throws Exception
+    {
+        logger.info("##### testMultiChannelRowDependency #####");
+
+        // Confirm that stateful partitioners require a shared reader.
+        TungstenProperties conf = helper.generateTHLParallelPipeline(
+                "testMultiChannelRowDependency", 3, 50, 100, true);
+        conf.setString("replicator.store.thl-queue.partitionerClass",
+                RowDependencyPartitioner.class.getName());
+        runtime = new ReplicatorRuntime(conf, new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        try
+        {
+            runtime.configure();
+            Assert.fail("Stateful partitioner accepted without shared reader");
+        }
+        catch (ReplicatorException e)
+        {
+            logger.info("Caught expected exception: " + e.getMessage());
+            Assert.assertTrue("Error names shared reader", e.getMessage()
+                    .contains("sharedReader"));
+        }
+        runtime.release();
+
+        // Set up and prepare pipeline with the shared reader enabled.
+        conf.setString("replicator.store.thl-queue.sharedReader", "true");
+        runtime = new ReplicatorRuntime(conf, new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        runtime.configure();
+        runtime.prepare();
+        pipeline = runtime.getPipeline();
+        pipeline.start(new MockEventDispatcher());
+
+        // Fetch references to stores.
+        THL thl = (THL) pipeline.getStore("thl");
+        InMemoryMultiQueue mq = (InMemoryMultiQueue) pipeline
+                .getStore("multi-queue");
+
+        // Write row changes on different keys of a single table and compute
+        // the expected partition of each using a separate partitioner.
+        EventGenerationHelper eventHelper = new EventGenerationHelper();
+        RowDependencyPartitioner expected = new RowDependencyPartitioner();
+        expected.setPartitions(3);
+        List<List<Long>> expectedSeqnos = new ArrayList<List<Long>>();
+        for (int q = 0; q < 3; q++)
+            expectedSeqnos.add(new ArrayList<Long>());
+        LogConnection conn = thl.connect(false);
+        for (int i = 0; i < 60; i++)
+        {
+            ReplDBMSEvent rde = eventHelper.eventFromRowDelete(i, "db0", "t1",
+                    new String[]{"id"}, new Object[]{i}, 0, true);
+            int partition = expected.partition(rde, 0).getPartition();
+            expectedSeqnos.get(partition).add(rde.getSeqno());
+            conn.store(new THLEvent(rde.getSourceId(), rde), false);
+        }
+        conn.commit();
+        thl.disconnect(conn);
+
+        // Confirm that each queue receives its events in order and that
+        // events are spread across more than one queue.
+        int queuesUsed = 0;
+        for (int q = 0; q < 3; q++)
+        {
+            List<Long> seqnos = expectedSeqnos.get(q);
+            if (seqnos.size() > 0)
+                queuesUsed++;
+            for (Long seqno : seqnos)
+            {
+                ReplDBMSEvent rde2 = (ReplDBMSEvent) mq.get(q);
+                Assert.assertEquals("Seqno matches expected partition: q="
+                        + q, seqno.longValue(), rde2.getSeqno());
+            }
+        }
+        Assert.assertTrue("Events use multiple queues", queuesUsed > 1);
+    }
+
     /**
      * Verify that a parallel THL with multiple channels properly do not commit
      * additional transactions after a failure. This includes not committing any
@@ -23,6 +23,7 @@ package com.continuent.tungsten.replicator.thl;
 import java.io.File;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -52,6 +53,8 @@ import com.continuent.tungsten.replicator.pipeline.PipelineConfigBuilder;
 import com.continuent.tungsten.replicator.storage.InMemoryQueueAdapter;
 import com.continuent.tungsten.replicator.storage.InMemoryQueueStore;
 import com.continuent.tungsten.replicator.storage.Store;
+import com.continuent.tungsten.replicator.thl.log.LogConnection;
+import com.continuent.tungsten.replicator.thl.log.LogRecord;
 
 /**
  * Implements a test of THL. This test implements a practical test of the
@@ -491,6 +494,195 @@ public class TestTHL2
         masterRuntime.release();
     }
 
+    /**
+     * Verify that a slave that stores events directly in its THL receives raw
+     * log records and that the records it stores are identical to those in the
+     * master log.
+     */
+    @Test
+    public void testRawRecordTransfer() throws Exception
+    {
+        logger.info("##### testRawRecordTransfer #####");
+
+        // Configure and start server pipeline from queue extractor to THL.
+        TungstenProperties masterConf = generateQueueFedMasterProps("testRawRecordMaster");
+        ReplicatorRuntime masterRuntime = new ReplicatorRuntime(masterConf,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        masterRuntime.configure();
+        masterRuntime.prepare();
+        Pipeline master = masterRuntime.getPipeline();
+        master.start(new MockEventDispatcher());
+
+        // Configure and start slave pipeline with raw records enabled.
+        TungstenProperties slaveConf = generateSlaveProps("testRawRecordSlave",
+                "thl://localhost:2112/", 2113, null);
+        slaveConf.setBoolean(
+                "replicator.extractor.thl-remote-extractor.rawRecords", true);
+        Pipeline slave = this.createMultiThlSlave(slaveConf);
+        RemoteTHLExtractor extractor = (RemoteTHLExtractor) slave.getStage(
+                "extract-c").getExtractor0();
+        Assert.assertTrue("Raw records enabled", extractor.isRawRecords());
+
+        // Write transactions and wait for them to reach the slave.
+        InMemoryQueueStore masterQueue = (InMemoryQueueStore) master
+                .getStore("queue");
+        for (int i = 0; i < 10; i++)
+            masterQueue.put(createEvent(i, "db" + (i % 3)));
+        Future<ReplDBMSHeader> wait = slave.watchForProcessedSequenceNumber(9);
+        ReplDBMSHeader lastEvent = wait.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("Expected last event we put in", 9,
+                lastEvent.getSeqno());
+
+        // Compare log records in each log.
+        THL masterThl = (THL) master.getStore("thl");
+        THL slaveThl = (THL) slave.getStore("thl");
+        LogConnection masterConn = masterThl.connect(true);
+        LogConnection slaveConn = slaveThl.connect(true);
+        Assert.assertTrue("Seek master", masterConn.seek(0));
+        Assert.assertTrue("Seek slave", slaveConn.seek(0));
+        for (int i = 0; i < 10; i++)
+        {
+            LogRecord masterRecord = masterConn.nextRecord(false);
+            LogRecord slaveRecord = slaveConn.nextRecord(false);
+            Assert.assertNotNull("Found master record: " + i, masterRecord);
+            Assert.assertNotNull("Found slave record: " + i, slaveRecord);
+            Assert.assertTrue("Records match: " + i, Arrays.equals(
+                    masterRecord.getData(), slaveRecord.getData()));
+        }
+        masterConn.release();
+        slaveConn.release();
+
+        // The slave log must also return fully deserialized events.
+        LogConnection slaveConn2 = slaveThl.connect(true);
+        Assert.assertTrue("Seek slave", slaveConn2.seek(5));
+        THLEvent thlEvent = slaveConn2.next(false);
+        Assert.assertEquals("Seqno from slave log", 5, thlEvent.getSeqno());
+        Assert.assertEquals("Shard ID from slave log", "db2",
+                thlEvent.getShardId());
+        ReplDBMSEvent replEvent = (ReplDBMSEvent) thlEvent.getReplEvent();
+        Assert.assertEquals("Event data from slave log", 1, replEvent
+                .getData().size());
+        slaveConn2.release();
+
+        // Shut down pipelines.
+        slave.shutdown(true);
+        ((ReplicatorRuntime) slave.getContext()).release();
+        master.shutdown(true);
+        masterRuntime.release();
+    }
+
+    /**
+     * Verify that a slave with a flow control window smaller than the master
+     * buffer size receives all events. This ensures the master sends buffered
+     * events before waiting for credits.
+     */
+    @Test
+    public void testWindowedTransfer() throws Exception
+    {
+        logger.info("##### testWindowedTransfer #####");
+
+        // Configure and start server pipeline with a large buffer.
+        TungstenProperties masterConf = generateQueueFedMasterProps("testWindowedMaster");
+        masterConf.setInt(ReplicatorConf.THL_PROTOCOL_BUFFER_SIZE, 5);
+        ReplicatorRuntime masterRuntime = new ReplicatorRuntime(masterConf,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        masterRuntime.configure();
+        masterRuntime.prepare();
+        Pipeline master = masterRuntime.getPipeline();
+        master.start(new MockEventDispatcher());
+
+        // Configure and start slave pipeline with a small window.
+        TungstenProperties slaveConf = generateSlaveProps("testWindowedSlave",
+                "thl://localhost:2112/", 2113, null);
+        slaveConf.setInt(ReplicatorConf.THL_PROTOCOL_WINDOW_SIZE, 3);
+        ReplicatorRuntime slaveRuntime = new ReplicatorRuntime(slaveConf,
+                new MockOpenReplicatorContext(),
+                ReplicatorMonitor.getInstance());
+        slaveRuntime.configure();
+        slaveRuntime.prepare();
+        Pipeline slave = slaveRuntime.getPipeline();
+        slave.start(new MockEventDispatcher());
+
+        // Write many times the window and wait for them to reach the slave.
+        InMemoryQueueStore masterQueue = (InMemoryQueueStore) master
+                .getStore("queue");
+        for (int i = 0; i < 100; i++)
+            masterQueue.put(createEvent(i, "db" + (i % 3)));
+        Future<ReplDBMSHeader> wait = slave.watchForProcessedSequenceNumber(99);
+        ReplDBMSHeader lastEvent = wait.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("Expected last event we put in", 99,
+                lastEvent.getSeqno());
+
+        // Shut down pipelines.
+        slave.shutdown(true);
+        slaveRuntime.release();
+        master.shutdown(true);
+        masterRuntime.release();
+    }
+
+    /**
+     * Verify that a master configured to compress network traffic transfers
+     * events correctly with each codec and reports fewer compressed than raw
+     * bytes.
+     */
+    @Test
+    public void testCompressedTransfer() throws Exception
+    {
+        logger.info("##### testCompressedTransfer #####");
+        String[] codecs = {"lz", "deflate"};
+        for (String codec : codecs)
+        {
+            // Configure and start server pipeline with compression.
+            TungstenProperties masterConf = generateQueueFedMasterProps("testCompressedMaster");
+            masterConf.setInt(ReplicatorConf.THL_PROTOCOL_BUFFER_SIZE, 10);
+            masterConf.setString("replicator.store.thl.compression", codec);
+            masterConf.setBoolean(ReplicatorConf.THL_PROTOCOL_FRAMED, true);
+            ReplicatorRuntime masterRuntime = new ReplicatorRuntime(
+                    masterConf, new MockOpenReplicatorContext(),
+                    ReplicatorMonitor.getInstance());
+            masterRuntime.configure();
+            masterRuntime.prepare();
+            Pipeline master = masterRuntime.getPipeline();
+            master.start(new MockEventDispatcher());
+
+            // Configure and start slave pipeline, which must also frame
+            // messages to receive compressed ones.
+            TungstenProperties slaveConf = generateSlaveProps(
+                    "testCompressedSlave", "thl://localhost:2112/", 2113, null);
+            slaveConf.setBoolean(ReplicatorConf.THL_PROTOCOL_FRAMED, true);
+            Pipeline slave = this.createMultiThlSlave(slaveConf);
+
+            // Write transactions and wait for them to reach the slave.
+            InMemoryQueueStore masterQueue = (InMemoryQueueStore) master
+                    .getStore("queue");
+            for (int i = 0; i < 100; i++)
+                masterQueue.put(createEvent(i, "db" + (i % 3)));
+            Future<ReplDBMSHeader> wait = slave
+                    .watchForProcessedSequenceNumber(99);
+            ReplDBMSHeader lastEvent = wait.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals("Expected last event we put in: " + codec,
+                    99, lastEvent.getSeqno());
+
+            // Confirm the master compressed traffic.
+            TungstenProperties status = ((THL) master.getStore("thl"))
+                    .status();
+            long raw = status.getLong("networkRawBytes");
+            long compressed = status.getLong("networkCompressedBytes");
+            logger.info("Compression results: codec=" + codec + " raw=" + raw
+                    + " compressed=" + compressed);
+            Assert.assertTrue("Sent bytes: " + codec, raw > 0);
+            Assert.assertTrue("Compressed bytes: " + codec, compressed < raw);
+
+            // Shut down pipelines.
+            slave.shutdown(true);
+            ((ReplicatorRuntime) slave.getContext()).release();
+            master.shutdown(true);
+            masterRuntime.release();
+        }
+    }
+
     // Helper function to create and start a slave pipeline while avoiding test
     // errors due to silly typos in intermediate variables.
     private Pipeline createMultiThlSlave(String svc, String connectUris,
@@ -498,6 +690,13 @@ public class TestTHL2
     {
         TungstenProperties conf = generateSlaveProps(svc, connectUris,
                 localThlPort, preferredRole);
+        return createMultiThlSlave(conf);
+    }
+
+    // Helper function to create and start a slave pipeline from properties.
+    private Pipeline createMultiThlSlave(TungstenProperties conf)
+            throws Exception
+    {
         ReplicatorRuntime runtime = new ReplicatorRuntime(conf,
                 new MockOpenReplicatorContext(),
                 ReplicatorMonitor.getInstance());
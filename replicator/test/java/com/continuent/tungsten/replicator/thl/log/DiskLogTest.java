@@ -24,6 +24,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.RandomAccessFile;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
@@ -32,7 +35,10 @@ import org.apache.log4j.Logger;
 import org.junit.After;
 import org.junit.Before;
 
+import com.continuent.tungsten.common.io.MappedFilePool;
 import com.continuent.tungsten.replicator.ReplicatorException;
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.StatementData;
 import com.continuent.tungsten.replicator.event.DBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSFilteredEvent;
@@ -40,6 +46,7 @@ import com.continuent.tungsten.replicator.event.ReplEvent;
 import com.continuent.tungsten.replicator.thl.THLEvent;
 import com.continuent.tungsten.replicator.thl.THLException;
 import com.continuent.tungsten.replicator.thl.serializer.ProtobufSerializer;
+import com.continuent.tungsten.replicator.thl.serializer.Serializer;
 
 /**
  * Tests public methods on the disk log. The tests in this suite require a
@@ -483,6 +490,55 @@ public class DiskLogTest extends TestCase
         log.release();
     }
 
+    /**
+     * Confirm that once the last fragment of a fragmented transaction is
+     * stored, the fragno check starts over for the seqno, while writes within
+     * the transaction and writes with a lower seqno are still rejected.
+     */
+    public void testFragnoAfterLastFragment() throws Exception
+    {
+        // Create the log.
+        File logDir = prepareLogDir("testFragnoAfterLastFragment");
+        DiskLog log = openLog(logDir, false);
+
+        // Write a transaction with three fragments, checking that a repeated
+        // fragment is rejected before the last one.
+        LogConnection conn = log.connect(false);
+        conn.store(createTHLEvent(25, (short) 0, false, "x"), false);
+        conn.store(createTHLEvent(25, (short) 1, false, "x"), false);
+        try
+        {
+            conn.store(createTHLEvent(25, (short) 1, true, "x"), false);
+            throw new Exception("Able to store the same fragment number again");
+        }
+        catch (LogConsistencyException e)
+        {
+            logger.info("Caught expected exception: " + e.getMessage());
+        }
+        conn.store(createTHLEvent(25, (short) 2, true, "x"), true);
+
+        // A lower seqno is still rejected.
+        try
+        {
+            conn.store(createTHLEvent(24, (short) 0, true, "x"), true);
+            throw new Exception("Able to store a lower seqno");
+        }
+        catch (LogConsistencyException e)
+        {
+            logger.info("Caught expected exception: " + e.getMessage());
+        }
+
+        // After the last fragment any fragno for the same seqno is accepted,
+        // as is the next seqno.
+        conn.store(createTHLEvent(25, (short) 0, true, "x"), true);
+        conn.store(createTHLEvent(26, (short) 0, true, "x"), true);
+        assertEquals("Max seqno", 26, log.getMaxSeqno());
+
+        // All done.
+        conn.release();
+        log.release();
+    }
+
     /**
      * Confirm that seeking a non-existent seqno returns false.
      */
@@ -2235,6 +2291,415 @@ public class DiskLogTest extends TestCase
         log.release();
     }
 
+    /**
+     * Confirm that the seqno index is maintained as we write across multiple
+     * log files and that seeks using the index find every event, including
+     * filtered events, both on the active file and on sealed files.
+     */
+    public void testSeqnoIndexSeek() throws Exception
+    {
+        // Create a log with a small index interval so that each file has
+        // many index entries.
+        File logDir = prepareLogDir("testSeqnoIndexSeek");
+        DiskLog log = openIndexedLog(logDir, false, 100000, 1024);
+
+        // Write events with a filtered range in the middle of each 100.
+        LogConnection conn = log.connect(false);
+        for (long seqno = 0; seqno < 2000; seqno++)
+        {
+            if (seqno % 100 == 50)
+            {
+                conn.store(createFilteredTHLEvent(seqno, seqno + 9, (short) 0),
+                        false);
+                seqno += 9;
+            }
+            else
+                conn.store(createTHLEvent(seqno), false);
+        }
+        conn.commit();
+        conn.release();
+        assertTrue("More than one log file", log.fileCount() > 1);
+
+        // Confirm that each log file has an index with entries.
+        for (String fileName : log.getLogFileNames())
+        {
+            LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(logDir, fileName,
+                    1024);
+            assertTrue("Index exists for " + fileName, seqnoIndex.load());
+            assertTrue("Index has entries for " + fileName,
+                    seqnoIndex.size() > 1);
+        }
+
+        // Seek every event and confirm we get what we asked for.
+        checkSeqnoIndexSeeks(log, 2000);
+        log.release();
+
+        // Remove an index file from a sealed log file, reopen, and confirm
+        // that seeks still work. The index should be rebuilt.
+        String firstFile = log.getLogFileNames()[0];
+        File firstIndex = LogSeqnoIndex.getIndexFile(logDir, firstFile);
+        assertTrue("Deleted index file", firstIndex.delete());
+        DiskLog log2 = openIndexedLog(logDir, false, 100000, 1024);
+        checkSeqnoIndexSeeks(log2, 2000);
+        assertTrue("Index file rebuilt", firstIndex.exists());
+        log2.release();
+    }
+
+    /**
+     * Confirm that damaged or stale seqno index files do not affect seeks and
+     * that indexes are truncated with the log.
+     */
+    public void testSeqnoIndexRepair() throws Exception
+    {
+        File logDir = prepareLogDir("testSeqnoIndexRepair");
+        DiskLog log = openIndexedLog(logDir, false, 100000, 1024);
+        writeEventsToLog(log, 1000);
+        String[] fileNames = log.getLogFileNames();
+        log.release();
+        assertTrue("More than one log file", fileNames.length > 1);
+
+        // Corrupt the first index by replacing its last entry, which points
+        // to a bogus offset. Truncate the last index to a partial entry.
+        File firstIndex = LogSeqnoIndex.getIndexFile(logDir, fileNames[0]);
+        RandomAccessFile raf = new RandomAccessFile(firstIndex, "rw");
+        raf.seek(raf.length() - LogSeqnoIndex.ENTRY_LENGTH);
+        raf.writeLong(999999);
+        raf.writeLong(raf.length() + 10000);
+        raf.close();
+        File lastIndex = LogSeqnoIndex.getIndexFile(logDir,
+                fileNames[fileNames.length - 1]);
+        raf = new RandomAccessFile(lastIndex, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        // Confirm that we can still seek on all events.
+        DiskLog log2 = openIndexedLog(logDir, false, 100000, 1024);
+        checkSeqnoIndexSeeks(log2, 1000);
+
+        // Delete the top of the log and confirm index no longer points past
+        // the end of the last file.
+        LogConnection conn = log2.connect(false);
+        conn.delete(new Long(900), null);
+        conn.release();
+        String lastFile = log2.getLastFile();
+        LogSeqnoIndex seqnoIndex = new LogSeqnoIndex(logDir, lastFile, 1024);
+        assertTrue("Last index loads", seqnoIndex.load());
+        LogSeqnoIndexEntry lastEntry = seqnoIndex.find(Long.MAX_VALUE,
+                Long.MAX_VALUE);
+        if (lastEntry != null)
+        {
+            assertTrue("No entries past end of file",
+                    lastEntry.getOffset() < new File(logDir, lastFile).length());
+        }
+        checkSeqnoIndexSeeks(log2, 900);
+        log2.release();
+
+        // Confirm that a log with indexes disabled still works.
+        DiskLog log3 = openIndexedLog(logDir, true, 100000, 0);
+        checkSeqnoIndexSeeks(log3, 900);
+        log3.release();
+    }
+
+    /**
+     * Confirm that a log may contain a mix of compressed and uncompressed
+     * records, written with different settings, and that all of them read back
+     * correctly after the log is reopened.
+     */
+    public void testCompressedLog() throws Exception
+    {
+        File logDir = prepareLogDir("testCompressedLog");
+        String[] codecs = {"lz", "none", "deflate"};
+        long seqno = 0;
+        for (String codec : codecs)
+        {
+            DiskLog log = new DiskLog();
+            log.setDoChecksum(true);
+            log.setReadOnly(false);
+            log.setEventSerializerClass(this.serializer.getName());
+            log.setLogDir(logDir.getAbsolutePath());
+            log.setLogFileSize(100000);
+            log.setTimeoutMillis(10000);
+            log.setLogCompression(codec);
+            log.prepare();
+
+            LogConnection conn = log.connect(false);
+            for (int i = 0; i < 100; i++)
+            {
+                ArrayList<DBMSData> data = new ArrayList<DBMSData>();
+                data.add(new StatementData("insert into test.foo values("
+                        + seqno + ", 'some text that repeats, repeats, repeats')"));
+                ReplDBMSEvent replEvent = new ReplDBMSEvent(seqno, (short) 0,
+                        true, "local", 1, new Timestamp(
+                                System.currentTimeMillis()), new DBMSEvent(
+                                new Long(seqno).toString(), data,
+                                new Timestamp(System.currentTimeMillis())));
+                conn.store(new THLEvent(new Long(seqno).toString(), replEvent),
+                        false);
+                seqno++;
+            }
+            conn.commit();
+            conn.release();
+            log.release();
+        }
+
+        // Reopen and check records and events.
+        Serializer eventSerializer = (Serializer) serializer.newInstance();
+        DiskLog log = openLog(logDir, true);
+        LogConnection conn = log.connect(true);
+        assertTrue("Seek first event", conn.seek(0));
+        int compressed = 0;
+        for (long i = 0; i < seqno; i++)
+        {
+            LogRecord record = conn.nextRecord(false);
+            LogEventReplReader reader = new LogEventReplReader(record,
+                    eventSerializer, true);
+            if (reader.isCompressed())
+                compressed++;
+            THLEvent e = reader.deserializeEvent();
+            reader.done();
+            assertEquals("Test expected seqno", i, e.getSeqno());
+            StatementData sd = (StatementData) ((ReplDBMSEvent) e
+                    .getReplEvent()).getData().get(0);
+            assertTrue("Statement matches seqno",
+                    sd.getQuery().contains("values(" + i + ","));
+        }
+        assertEquals("Compressed records", 200, compressed);
+        conn.release();
+        log.release();
+    }
+
+    /**
+     * Confirm that committed records are added to the record cache on write,
+     * that connections using the cache read them from it after a write, that
+     * cached and uncached connections return the same events and records, and
+     * that deleting from the log clears the cache.
+     */
+    public void testEventCache() throws Exception
+    {
+        File logDir = prepareLogDir("testEventCache");
+        DiskLog log = new DiskLog();
+        log.setDoChecksum(true);
+        log.setReadOnly(false);
+        log.setEventSerializerClass(this.serializer.getName());
+        log.setLogDir(logDir.getAbsolutePath());
+        log.setLogFileSize(1000000);
+        log.setTimeoutMillis(10000);
+        log.setEventCacheSize(50);
+        log.prepare();
+
+        // The writer caches the last 50 records when it commits.
+        writeEventsToLog(log, 100);
+        LogRecordCache cache = log.getRecordCache();
+        assertEquals("Cache is bounded", 50, cache.size());
+        assertTrue("Cache bytes are counted", cache.getBytes() > 0);
+
+        // Read all events with a caching connection and one that does not
+        // use the cache. Events after the first 50 come from the cache.
+        LogConnection conn1 = log.connect(true);
+        conn1.setUseEventCache(true);
+        LogConnection conn2 = log.connect(true);
+        assertTrue("Seek conn1", conn1.seek(0));
+        assertTrue("Seek conn2", conn2.seek(0));
+        for (long i = 0; i < 100; i++)
+        {
+            THLEvent e1 = conn1.next();
+            THLEvent e2 = conn2.next();
+            assertEquals("Test expected seqno", i, e1.getSeqno());
+            assertEquals("Uncached seqno", i, e2.getSeqno());
+            assertEquals("Same event", e2.getEventId(), e1.getEventId());
+        }
+        assertEquals("Cache hits", 50, cache.getHits());
+
+        // A read after the next write hits the cache, and the cached record
+        // matches the one in the file.
+        LogConnection writer = log.connect(false);
+        writer.store(this.createTHLEvent(100), true);
+        LogRecord cachedRecord = conn1.nextRecord(false);
+        LogRecord fileRecord = conn2.nextRecord(false);
+        assertEquals("Cache hits after write", 51, cache.getHits());
+        assertTrue("Cached record matches log",
+                Arrays.equals(fileRecord.getData(), cachedRecord.getData()));
+
+        // A seek on a cached record reads from the cache. If later records
+        // are no longer cached, reads continue from the log file.
+        LogConnection conn3 = log.connect(true);
+        conn3.setUseEventCache(true);
+        assertTrue("Seek cached record", conn3.seek(60));
+        assertEquals("Read cached record", 60, conn3.next().getSeqno());
+        assertEquals("Cache hits after seek", 52, cache.getHits());
+        cache.clear();
+        for (long i = 61; i <= 100; i++)
+            assertEquals("Read after cache miss", i, conn3.next().getSeqno());
+        assertNull("No more events", conn3.next(false));
+        conn1.release();
+        conn2.release();
+        conn3.release();
+
+        // Deleting from the log clears the cache.
+        writer.store(this.createTHLEvent(101), true);
+        assertEquals("Committed record cached", 1, cache.size());
+        writer.delete(new Long(90), null);
+        writer.release();
+        assertEquals("Cache cleared", 0, cache.size());
+        log.release();
+    }
+
+    /**
+     * Confirm that a log with fsyncOnFlush enabled makes committed
+     * transactions visible to readers, including those in rotated files, and
+     * keeps all data on reopen.
+     */
+    public void testFsyncOnFlush() throws Exception
+    {
+        File logDir = prepareLogDir("testFsyncOnFlush");
+        DiskLog log = new DiskLog();
+        log.setDoChecksum(true);
+        log.setReadOnly(false);
+        log.setEventSerializerClass(this.serializer.getName());
+        log.setLogDir(logDir.getAbsolutePath());
+        log.setLogFileSize(10000);
+        log.setTimeoutMillis(10000);
+        log.setFsyncOnFlush(true);
+        log.prepare();
+
+        // Store transactions in blocks of 10 and commit each block. Each
+        // block is then visible to a reader.
+        LogConnection conn = log.connect(false);
+        LogConnection reader = log.connect(true);
+        assertTrue("Seek reader", reader.seek(0));
+        for (int i = 0; i < 100; i++)
+        {
+            boolean commit = (i % 10 == 9);
+            conn.store(this.createTHLEvent(i), commit);
+            if (commit)
+            {
+                for (int j = i - 9; j <= i; j++)
+                {
+                    THLEvent e = reader.next(false);
+                    assertNotNull("Committed event is visible: seqno=" + j, e);
+                    assertEquals("Reader seqno", j, e.getSeqno());
+                }
+            }
+        }
+        assertTrue("Log rotated", log.getLogFileNames().length > 1);
+        reader.release();
+        conn.release();
+        log.release();
+
+        // Reopen the log and confirm all data are present.
+        log = openLog(logDir, true);
+        assertEquals("Max seqno", 99, log.getMaxSeqno());
+        log.release();
+    }
+
+    /**
+     * Confirm that sealed log files are read through memory mappings that are
+     * released beyond the pool size, while the active file uses buffered
+     * reads, and that both return the same events with valid checksums.
+     */
+    public void testMappedReads() throws Exception
+    {
+        File logDir = prepareLogDir("testMappedReads");
+        DiskLog log = new DiskLog();
+        log.setDoChecksum(true);
+        log.setReadOnly(false);
+        log.setEventSerializerClass(this.serializer.getName());
+        log.setLogDir(logDir.getAbsolutePath());
+        log.setLogFileSize(3000);
+        log.setTimeoutMillis(10000);
+        log.setMappedFilePoolSize(2);
+        log.prepare();
+        writeEventsToLog(log, 200);
+        int files = log.getLogFileNames().length;
+        assertTrue("Log has several files: " + files, files > 4);
+
+        // Read all events twice. Only sealed files are mapped.
+        MappedFilePool pool = log.getMappedFilePool();
+        for (int pass = 0; pass < 2; pass++)
+        {
+            LogConnection conn = log.connect(true);
+            assertTrue("Seek to start", conn.seek(0));
+            for (long i = 0; i < 200; i++)
+            {
+                THLEvent e = conn.next();
+                assertEquals("Expected seqno", i, e.getSeqno());
+            }
+            conn.release();
+        }
+        assertEquals("Sealed files mapped on each pass", (files - 1) * 2,
+                pool.getMaps());
+        assertTrue("Idle mappings are bounded", pool.getMappedFiles() <= 2);
+        assertEquals("Excess mappings released", pool.getMaps()
+                - pool.getMappedFiles(), pool.getUnmaps());
+
+        // Records read from mapped files remain valid after the mappings
+        // are released.
+        List<LogRecord> records = new ArrayList<LogRecord>();
+        LogConnection recordConn = log.connect(true);
+        assertTrue("Seek to start", recordConn.seek(0));
+        for (int i = 0; i < 200; i++)
+            records.add(recordConn.nextRecord(false));
+        recordConn.release();
+        pool.clear();
+        assertEquals("Idle mappings released", 0, pool.getMappedFiles());
+        for (LogRecord record : records)
+            assertTrue("Record checksum is valid", record.checkCrc());
+
+        // Deleting the end of the log drops mappings of affected files.
+        LogConnection writer = log.connect(false);
+        writer.delete(new Long(100), null);
+        writer.release();
+        LogConnection conn = log.connect(true);
+        assertTrue("Seek to start", conn.seek(0));
+        for (long i = 0; i < 100; i++)
+            assertEquals("Expected seqno", i, conn.next().getSeqno());
+        assertNull("Log ends after delete", conn.next(false));
+        conn.release();
+        log.release();
+        assertEquals("All mappings released", 0, pool.getMappedFiles());
+    }
+
+    // Open a log with a particular seqno index interval.
+    private DiskLog openIndexedLog(File logDir, boolean readonly,
+            int fileSize, long seqnoIndexInterval) throws ReplicatorException,
+            InterruptedException
+    {
+        DiskLog log = new DiskLog();
+        log.setDoChecksum(true);
+        log.setReadOnly(readonly);
+        log.setEventSerializerClass(this.serializer.getName());
+        log.setLogDir(logDir.getAbsolutePath());
+        log.setLogFileSize(fileSize);
+        log.setTimeoutMillis(10000);
+        log.setSeqnoIndexInterval(seqnoIndexInterval);
+        log.prepare();
+        return log;
+    }
+
+    // Seek on each seqno in a log and confirm that the next event returned
+    // contains the seqno, which may be a filtered event.
+    private void checkSeqnoIndexSeeks(DiskLog log, long count)
+            throws ReplicatorException, InterruptedException
+    {
+        LogConnection conn = log.connect(true);
+        for (long seqno = 0; seqno < count; seqno++)
+        {
+            assertTrue("Seek on seqno=" + seqno, conn.seek(seqno));
+            THLEvent e = conn.next(false);
+            assertNotNull("Found event for seqno=" + seqno, e);
+            ReplEvent re = e.getReplEvent();
+            if (re instanceof ReplDBMSFilteredEvent)
+            {
+                ReplDBMSFilteredEvent fe = (ReplDBMSFilteredEvent) re;
+                assertTrue("Filtered event contains seqno=" + seqno,
+                        fe.getSeqno() <= seqno && seqno <= fe.getSeqnoEnd());
+            }
+            else
+                assertEquals("Found seqno", seqno, e.getSeqno());
+        }
+        conn.release();
+    }
+
     // Create an empty log directory or if the directory exists remove
     // any files within it.
     private File prepareLogDir(String logDirName) throws Exception
@@ -0,0 +1,92 @@
+/**
+ * VMware Continuent Tungsten Replicator
+ * Copyright (C) 2026 agent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Initial developer(s): agent
+ * Contributor(s):
+ */
+
+package com.continuent.tungsten.replicator.thl.log;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the bounds and accounting of the log record cache.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version 1.0
+ */
+public class LogRecordCacheTest extends TestCase
+{
+    /**
+     * Verify that the cache ages out records to stay within the number of
+     * records.
+     */
+    public void testRecordLimit() throws Exception
+    {
+        LogRecordCache cache = new LogRecordCache(10, 0);
+        for (int i = 1; i <= 20; i++)
+            cache.put(i, makeRecord(100));
+        assertEquals("Cache is full", 10, cache.size());
+        assertNull("Oldest records aged out", cache.get(10));
+        assertNotNull("Newer records remain", cache.get(11));
+        assertTrue("Contains newest record", cache.contains(20));
+    }
+
+    /**
+     * Verify that a cache with a byte limit ages out records to stay within
+     * the limit, does not cache records larger than the limit, and counts hits
+     * and misses.
+     */
+    public void testByteLimit() throws Exception
+    {
+        // Records are charged their data length plus framing bytes.
+        int dataBytes = 100 - LogRecord.NON_DATA_BYTES;
+        LogRecordCache cache = new LogRecordCache(100, 1000);
+        for (int i = 1; i <= 10; i++)
+            cache.put(i, makeRecord(dataBytes));
+        assertEquals("Cache is full by bytes", 10, cache.size());
+        assertEquals("Bytes in use", 1000, cache.getBytes());
+
+        // Adding a larger record ages out enough old records to make room.
+        cache.put(11, makeRecord(250 - LogRecord.NON_DATA_BYTES));
+        assertEquals("Bytes in use", 950, cache.getBytes());
+        assertNull("Oldest records aged out", cache.get(3));
+        assertNotNull("Newer records remain", cache.get(4));
+        assertNotNull("New record cached", cache.get(11));
+
+        // Records larger than the limit are not cached, and adding a record
+        // twice does not charge it twice.
+        cache.put(12, makeRecord(1001));
+        assertNull("Oversize record not cached", cache.get(12));
+        cache.put(11, makeRecord(250 - LogRecord.NON_DATA_BYTES));
+        assertEquals("Bytes in use", 950, cache.getBytes());
+
+        assertEquals("Hits", 2, cache.getHits());
+        assertEquals("Misses", 2, cache.getMisses());
+
+        cache.clear();
+        assertEquals("Cleared cache is empty", 0, cache.size());
+        assertEquals("No bytes in use", 0, cache.getBytes());
+    }
+
+    // Creates a record with the given number of data bytes.
+    private LogRecord makeRecord(int dataBytes)
+    {
+        byte[] data = new byte[dataBytes];
+        data[0] = LogRecord.EVENT_REPL;
+        return new LogRecord(null, -1, data, LogRecord.CRC_TYPE_NONE, 0);
+    }
+}
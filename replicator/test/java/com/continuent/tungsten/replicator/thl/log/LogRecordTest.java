@@ -22,6 +22,7 @@ package com.continuent.tungsten.replicator.thl.log;
 
 import java.io.RandomAccessFile;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 
 import junit.framework.TestCase;
 
@@ -29,8 +30,11 @@ import org.apache.log4j.Logger;
 import org.junit.After;
 import org.junit.Before;
 
+import com.continuent.tungsten.replicator.dbms.DBMSData;
+import com.continuent.tungsten.replicator.dbms.StatementData;
 import com.continuent.tungsten.replicator.event.DBMSEvent;
 import com.continuent.tungsten.replicator.event.ReplDBMSEvent;
+import com.continuent.tungsten.replicator.thl.ProtocolCompressor;
 import com.continuent.tungsten.replicator.thl.THLEvent;
 import com.continuent.tungsten.replicator.thl.serializer.ProtobufSerializer;
 import com.continuent.tungsten.replicator.thl.serializer.Serializer;
@@ -117,6 +121,69 @@ public class LogRecordTest extends TestCase
         tfro.close();
     }
 
+    /**
+     * Confirm that replication events written with each compression codec have
+     * readable headers and deserialize back to the original event, and that
+     * small events that do not benefit from compression are stored as is.
+     */
+    public void testCompressedReplicationEvents() throws Exception
+    {
+        Serializer serializer = new ProtobufSerializer();
+        ArrayList<DBMSData> data = new ArrayList<DBMSData>();
+        for (int i = 0; i < 50; i++)
+            data.add(new StatementData(
+                    "insert into test.foo values(" + i + ", 'repeated text')"));
+        ReplDBMSEvent bigEvent = new ReplDBMSEvent(32, (short) 0, false,
+                "unittest", 1, new Timestamp(System.currentTimeMillis()),
+                new DBMSEvent("big", data, new Timestamp(
+                        System.currentTimeMillis())));
+        ReplDBMSEvent smallEvent = new ReplDBMSEvent(33, (short) 1, true,
+                "unittest", 1, new Timestamp(System.currentTimeMillis()),
+                new DBMSEvent());
+
+        for (String codec : new String[]{"lz", "deflate"})
+        {
+            ProtocolCompressor compressor = LogCompression
+                    .createCompressor(LogCompression.getCodecId(codec));
+
+            // A large event is compressed, but its header is not.
+            LogEventReplWriter writer = new LogEventReplWriter(new THLEvent(
+                    "big", bigEvent), serializer, true, null, compressor);
+            LogRecord logRec = writer.write();
+            LogEventReplWriter plainWriter = new LogEventReplWriter(
+                    new THLEvent("big", bigEvent), serializer, true, null);
+            assertTrue("Compressed record is smaller: " + codec,
+                    logRec.getData().length < plainWriter.write().getData().length);
+
+            LogEventReplReader reader = new LogEventReplReader(logRec,
+                    serializer, true);
+            assertTrue("Record is compressed: " + codec, reader.isCompressed());
+            assertEquals("Checking seqno", 32, reader.getSeqno());
+            assertEquals("Checking last frag", false, reader.isLastFrag());
+            assertEquals("Checking eventId", "big", reader.getEventId());
+            THLEvent outputEvent = reader.deserializeEvent();
+            reader.done();
+            ReplDBMSEvent outputRepl = (ReplDBMSEvent) outputEvent
+                    .getReplEvent();
+            assertEquals("Event seqno", 32, outputEvent.getSeqno());
+            assertEquals("Event data", 50, outputRepl.getData().size());
+            assertEquals("Statement", ((StatementData) data.get(49))
+                    .getQuery(), ((StatementData) outputRepl.getData().get(49))
+                    .getQuery());
+
+            // A small event is left uncompressed.
+            writer = new LogEventReplWriter(new THLEvent("small", smallEvent),
+                    serializer, true, null, compressor);
+            reader = new LogEventReplReader(writer.write(), serializer, true);
+            assertFalse("Record is not compressed: " + codec,
+                    reader.isCompressed());
+            assertEquals("Checking last frag", true, reader.isLastFrag());
+            assertEquals("Event seqno", 33, reader.deserializeEvent()
+                    .getSeqno());
+            reader.done();
+        }
+    }
+
     /**
      * Confirm that a record that has corrupted bytes triggers a checksum
      * failure resulting in a LogConsistencyException.